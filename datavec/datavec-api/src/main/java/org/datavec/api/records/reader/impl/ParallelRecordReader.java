@@ -0,0 +1,482 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.api.records.reader.impl;
+
+import lombok.AllArgsConstructor;
+import lombok.NonNull;
+import org.datavec.api.conf.Configuration;
+import org.datavec.api.records.Record;
+import org.datavec.api.records.metadata.RecordMetaData;
+import org.datavec.api.records.reader.BaseRecordReader;
+import org.datavec.api.records.reader.RecordReader;
+import org.datavec.api.records.reader.factory.RecordReaderFactory;
+import org.datavec.api.split.InputSplit;
+import org.datavec.api.split.StreamInputSplit;
+import org.datavec.api.split.streams.LineRangeInputStream;
+import org.datavec.api.writable.Writable;
+import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.function.Function;
+
+import java.io.*;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A record reader that reads the locations of an {@link InputSplit} (such as a {@link org.datavec.api.split.FileSplit})
+ * in parallel, using multiple record readers on multiple threads.<br>
+ * The input is divided into parts: one per location (file) or, if {@link Builder#splitFiles(boolean)} is true (the
+ * default), large local files are further divided into parts of approximately {@link Builder#splitSize(long)} bytes, at
+ * line boundaries (see {@link LineRangeInputStream}). Splitting files is only valid for line-delimited formats, where
+ * each line is one record - for example, for {@link org.datavec.api.records.reader.impl.csv.CSVRecordReader},
+ * {@link LineRecordReader} and {@link org.datavec.api.records.reader.impl.jackson.JacksonLineRecordReader}.<br>
+ * Each part is read by a new record reader (created by the provided {@link RecordReaderFactory}) on one of
+ * {@link Builder#numThreads(int)} threads. Records are read ahead into bounded queues, and are returned by this record
+ * reader in the same order as they would be by a single record reader reading all locations one after another.<br>
+ * Note that when splitting files, the underlying record readers should not skip any lines: use
+ * {@link Builder#skipNumLines(int)} instead, to skip header lines at the start of each file.
+ * Record metadata ({@link #nextRecord()}, {@link #loadFromMetaData(RecordMetaData)}) is not supported.
+ */
+public class ParallelRecordReader extends BaseRecordReader {
+
+    private static final Object END = new Object();
+
+    private final RecordReaderFactory recordReaderFactory;
+    private final int numThreads;
+    private final boolean splitFiles;
+    private final long splitSize;
+    private final int skipNumLines;
+    private final int batchSize;
+    private final int readAhead;
+    private final int maxPartsInFlight;
+    private Configuration conf;
+
+    private List<Part> parts;
+    private BlockingQueue<Object>[] queues;
+    private Semaphore partPermits;
+    private AtomicInteger nextPart;
+    private ExecutorService executorService;
+
+    private int currentPart;
+    private List<List<Writable>> currentBatch;
+    private int currentBatchIdx;
+
+    protected ParallelRecordReader(Builder builder) {
+        this.recordReaderFactory = builder.recordReaderFactory;
+        this.numThreads = builder.numThreads;
+        this.splitFiles = builder.splitFiles;
+        this.splitSize = builder.splitSize;
+        this.skipNumLines = builder.skipNumLines;
+        this.batchSize = builder.batchSize;
+        this.readAhead = builder.readAhead;
+        this.maxPartsInFlight = (builder.maxPartsInFlight > 0 ? builder.maxPartsInFlight : 2 * builder.numThreads);
+        Preconditions.checkArgument(splitFiles || skipNumLines == 0, "Skipping lines is only supported when splitting" +
+                " files; configure skipping of lines on the underlying record readers instead");
+    }
+
+    @Override
+    public void initialize(InputSplit split) throws IOException, InterruptedException {
+        shutdown();
+        super.initialize(split);
+
+        parts = new ArrayList<>();
+        Iterator<URI> iter = split.locationsIterator();
+        while (iter.hasNext()) {
+            addParts(iter.next(), parts);
+        }
+
+        queues = new BlockingQueue[parts.size()];
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = new LinkedBlockingQueue<>(readAhead);
+        }
+        partPermits = new Semaphore(maxPartsInFlight);
+        nextPart = new AtomicInteger();
+        currentPart = 0;
+        currentBatch = null;
+
+        executorService = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+            private final ThreadFactory factory = Executors.defaultThreadFactory();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = factory.newThread(r);
+                t.setName("ParallelRecordReader-" + t.getName());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        for (int i = 0; i < numThreads; i++) {
+            executorService.execute(new ReaderRunnable());
+        }
+    }
+
+    @Override
+    public void initialize(Configuration conf, InputSplit split) throws IOException, InterruptedException {
+        this.conf = conf;
+        initialize(split);
+    }
+
+    protected void addParts(URI uri, List<Part> parts) throws IOException {
+        boolean isFile = uri.getScheme() == null || uri.getScheme().equalsIgnoreCase("file");
+        if (!splitFiles) {
+            parts.add(new Part(uri, -1, -1));
+            return;
+        }
+        if (!isFile) {
+            throw new IllegalStateException("Splitting of files is only supported for local files: cannot split URI "
+                    + uri + ". Use splitFiles(false) for other URIs");
+        }
+
+        File f = new File(uri);
+        long length = f.length();
+        long start = (skipNumLines > 0 ? headerLength(f) : 0);
+        do {
+            long end = Math.min(length, start + splitSize);
+            parts.add(new Part(uri, start, end));
+            start = end;
+        } while (start < length);
+    }
+
+    /**
+     * @return Number of bytes in the first skipNumLines lines of the file
+     */
+    protected long headerLength(File f) throws IOException {
+        long count = 0;
+        int lines = 0;
+        try (InputStream is = new BufferedInputStream(new FileInputStream(f))) {
+            int b;
+            while (lines < skipNumLines && (b = is.read()) != -1) {
+                count++;
+                if (b == '\n') {
+                    lines++;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public boolean batchesSupported() {
+        return true;
+    }
+
+    @Override
+    public List<List<Writable>> next(int num) {
+        List<List<Writable>> ret = new ArrayList<>(Math.min(num, 10000));
+        while (ret.size() < num && hasNext()) {
+            ret.add(next());
+        }
+        return ret;
+    }
+
+    @Override
+    public List<Writable> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No next element");
+        }
+        List<Writable> next = currentBatch.get(currentBatchIdx++);
+        invokeListeners(next);
+        return next;
+    }
+
+    @Override
+    public boolean hasNext() {
+        Preconditions.checkState(parts != null, "Record reader has not been initialized");
+        while (currentBatch == null || currentBatchIdx >= currentBatch.size()) {
+            if (currentPart >= parts.size()) {
+                return false;
+            }
+
+            Object o;
+            try {
+                o = queues[currentPart].take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for records", e);
+            }
+            if (o == END) {
+                //Part is done: allow the next part to be started
+                queues[currentPart++] = null;
+                partPermits.release();
+                currentBatch = null;
+            } else if (o instanceof Throwable) {
+                throw new RuntimeException("Error reading " + parts.get(currentPart), (Throwable) o);
+            } else {
+                currentBatch = (List<List<Writable>>) o;
+                currentBatchIdx = 0;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return null;
+    }
+
+    @Override
+    public void reset() {
+        Preconditions.checkState(inputSplit != null, "Cannot reset without first initializing");
+        try {
+            inputSplit.reset();
+            initialize(inputSplit);
+        } catch (Exception e) {
+            throw new RuntimeException("Error during ParallelRecordReader reset", e);
+        }
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return inputSplit == null || inputSplit.resetSupported();
+    }
+
+    @Override
+    public List<Writable> record(URI uri, DataInputStream dataInputStream) throws IOException {
+        return createReader(uri).record(uri, dataInputStream);
+    }
+
+    @Override
+    public Record nextRecord() {
+        return new org.datavec.api.records.impl.Record(next(), null);
+    }
+
+    @Override
+    public Record loadFromMetaData(RecordMetaData recordMetaData) throws IOException {
+        throw new UnsupportedOperationException("Loading from metadata not supported for ParallelRecordReader");
+    }
+
+    @Override
+    public List<Record> loadFromMetaData(List<RecordMetaData> recordMetaDatas) throws IOException {
+        throw new UnsupportedOperationException("Loading from metadata not supported for ParallelRecordReader");
+    }
+
+    @Override
+    public void close() throws IOException {
+        shutdown();
+    }
+
+    protected void shutdown() {
+        if (executorService != null) {
+            executorService.shutdownNow();
+            executorService = null;
+        }
+    }
+
+    @Override
+    public void setConf(Configuration conf) {
+        this.conf = conf;
+    }
+
+    @Override
+    public Configuration getConf() {
+        return conf;
+    }
+
+    protected RecordReader createReader(URI uri) {
+        try {
+            return recordReaderFactory.create(uri);
+        } catch (Exception e) {
+            throw new RuntimeException("Error creating record reader for URI " + uri, e);
+        }
+    }
+
+    /**
+     * Read the records of one part, and add them to the queue for that part in batches
+     */
+    protected void readPart(Part part, BlockingQueue<Object> queue) throws Exception {
+        InputSplit split;
+        if (part.start < 0) {
+            split = new StreamInputSplit(Collections.singletonList(part.uri), streamCreatorFn);
+        } else {
+            split = new StreamInputSplit(Collections.singletonList(part.uri), new RangeStreamFunction(part.start, part.end));
+        }
+
+        RecordReader rr = createReader(part.uri);
+        try {
+            if (conf != null) {
+                rr.initialize(conf, split);
+            } else {
+                rr.initialize(split);
+            }
+            List<List<Writable>> batch = new ArrayList<>(batchSize);
+            while (rr.hasNext()) {
+                batch.add(rr.next());
+                if (batch.size() == batchSize) {
+                    queue.put(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                queue.put(batch);
+            }
+        } finally {
+            rr.close();
+        }
+    }
+
+    protected class ReaderRunnable implements Runnable {
+        //Fields are captured so that a worker from before a reset() can't interfere with the new state
+        private final List<Part> parts = ParallelRecordReader.this.parts;
+        private final BlockingQueue<Object>[] queues = ParallelRecordReader.this.queues;
+        private final Semaphore partPermits = ParallelRecordReader.this.partPermits;
+        private final AtomicInteger nextPart = ParallelRecordReader.this.nextPart;
+
+        @Override
+        public void run() {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    //Parts are started in order, and at most maxPartsInFlight parts can be started but not yet
+                    //consumed. Hence the part currently being consumed always has a worker, and memory is bounded
+                    partPermits.acquire();
+                    int idx = nextPart.getAndIncrement();
+                    if (idx >= parts.size()) {
+                        return;
+                    }
+                    BlockingQueue<Object> queue = queues[idx];
+                    try {
+                        readPart(parts.get(idx), queue);
+                    } catch (InterruptedException e) {
+                        throw e;
+                    } catch (Throwable t) {
+                        queue.put(t);
+                    }
+                    queue.put(END);
+                }
+            } catch (InterruptedException e) {
+                //Reader was closed or reset
+            }
+        }
+    }
+
+    @AllArgsConstructor
+    protected static class Part {
+        private final URI uri;
+        private final long start;  //-1 for whole file
+        private final long end;
+
+        @Override
+        public String toString() {
+            return uri + (start < 0 ? "" : " (bytes " + start + " to " + end + ")");
+        }
+    }
+
+    @AllArgsConstructor
+    protected static class RangeStreamFunction implements Function<URI, InputStream>, Serializable {
+        private final long start;
+        private final long end;
+
+        @Override
+        public InputStream apply(URI uri) {
+            try {
+                return new LineRangeInputStream(new File(uri), start, end);
+            } catch (IOException e) {
+                throw new RuntimeException("Error opening stream for file: " + uri, e);
+            }
+        }
+    }
+
+    public static class Builder {
+
+        private final RecordReaderFactory recordReaderFactory;
+        private int numThreads = Runtime.getRuntime().availableProcessors();
+        private boolean splitFiles = true;
+        private long splitSize = 64 * 1024 * 1024;
+        private int skipNumLines = 0;
+        private int batchSize = 128;
+        private int readAhead = 8;
+        private int maxPartsInFlight = -1;
+
+        /**
+         * @param recordReaderFactory Factory used to create a new (uninitialized) record reader for each part of the
+         *                            input. Will be called from multiple threads.
+         */
+        public Builder(@NonNull RecordReaderFactory recordReaderFactory) {
+            this.recordReaderFactory = recordReaderFactory;
+        }
+
+        /**
+         * Number of threads to read parts with. Default: number of available processors
+         */
+        public Builder numThreads(int numThreads) {
+            Preconditions.checkArgument(numThreads > 0, "Number of threads must be positive: got %s", numThreads);
+            this.numThreads = numThreads;
+            return this;
+        }
+
+        /**
+         * Whether to split large files into multiple parts at line boundaries. Must only be true if each line of the
+         * input files is one record. Default: true
+         */
+        public Builder splitFiles(boolean splitFiles) {
+            this.splitFiles = splitFiles;
+            return this;
+        }
+
+        /**
+         * Size of the parts to split files into, in bytes. Default: 64MB
+         */
+        public Builder splitSize(long splitSize) {
+            Preconditions.checkArgument(splitSize > 0, "Split size must be positive: got %s", splitSize);
+            this.splitSize = splitSize;
+            return this;
+        }
+
+        /**
+         * Number of lines (such as headers) to skip at the start of each file. Only supported if splitFiles is true.
+         * Default: 0
+         */
+        public Builder skipNumLines(int skipNumLines) {
+            Preconditions.checkArgument(skipNumLines >= 0, "Number of lines to skip must be >= 0: got %s", skipNumLines);
+            this.skipNumLines = skipNumLines;
+            return this;
+        }
+
+        /**
+         * Number of records per batch, when passing records from the reader threads. Default: 128
+         */
+        public Builder batchSize(int batchSize) {
+            Preconditions.checkArgument(batchSize > 0, "Batch size must be positive: got %s", batchSize);
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Maximum number of batches to read ahead for each part. Default: 8
+         */
+        public Builder readAhead(int readAhead) {
+            Preconditions.checkArgument(readAhead > 0, "Read ahead must be positive: got %s", readAhead);
+            this.readAhead = readAhead;
+            return this;
+        }
+
+        /**
+         * Maximum number of parts that have been started but not yet fully returned. Together with the batch size and
+         * read ahead, this bounds the number of records held in memory. Default: 2 * numThreads
+         */
+        public Builder maxPartsInFlight(int maxPartsInFlight) {
+            Preconditions.checkArgument(maxPartsInFlight > 0, "Max parts in flight must be positive: got %s",
+                    maxPartsInFlight);
+            this.maxPartsInFlight = maxPartsInFlight;
+            return this;
+        }
+
+        public ParallelRecordReader build() {
+            return new ParallelRecordReader(this);
+        }
+    }
+}
@@ -0,0 +1,802 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.api.records.reader.impl.csv;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.datavec.api.conf.Configuration;
+import org.datavec.api.records.Record;
+import org.datavec.api.records.metadata.RecordMetaData;
+import org.datavec.api.records.metadata.RecordMetaDataLine;
+import org.datavec.api.records.reader.BaseRecordReader;
+import org.datavec.api.split.InputSplit;
+import org.datavec.api.split.InputStreamInputSplit;
+import org.datavec.api.split.StringSplit;
+import org.datavec.api.transform.ColumnType;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.writable.*;
+import org.nd4j.base.Preconditions;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * A faster alternative to {@link CSVRecordReader}, for UTF-8 (or ASCII) encoded CSV data.<br>
+ * {@link CSVRecordReader} creates a String for each line, a String for each value, and then a {@link Text} for each
+ * value. This record reader instead reads bytes into a reusable buffer and splits lines into values directly on the
+ * bytes, without creating any Strings. Lines that contain the quote character or the escape character ('\') are
+ * parsed by {@link SerializableCSVParser} as per {@link CSVRecordReader}, hence the output is the same for all input.<br>
+ * <br>
+ * Allocation can be further reduced in a number of ways:<br>
+ * - If a {@link Schema} is provided, values for numerical columns are parsed directly from the bytes, and returned as
+ * {@link IntWritable}, {@link LongWritable}, {@link FloatWritable} or {@link DoubleWritable} instead of {@link Text}.
+ * Values that cannot be parsed for the column type (missing values, etc) are returned as {@link Text}.<br>
+ * - If {@link #setReuseWritables(boolean)} is set to true, {@link #next()} returns the same list and the same
+ * (mutable) writable instances for each record: the values are overwritten on the next call to {@link #next()}. This
+ * should only be used if the caller does not keep a reference to the records - for example, when converting the
+ * values to an INDArray or a primitive array immediately.<br>
+ * - {@link #nextColumns(double[][])} parses numerical values from a batch of records directly into primitive column
+ * arrays, without creating any writables.<br>
+ * <br>
+ * As with {@link CSVRecordReader}, each line is one record: line breaks within quoted values are not supported.
+ * Also as with {@link CSVRecordReader}, skipNumLines lines are skipped at the start of each file - not only at the
+ * start of the first file - when reading a split with multiple files.
+ */
+public class FastCSVRecordReader extends BaseRecordReader {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final char ESCAPE = SerializableCSVParser.DEFAULT_ESCAPE_CHARACTER;
+
+    //Exact powers of 10 for fast path floating point parsing (all exactly representable as doubles)
+    private static final double[] POW10 = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13,
+            1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+    private static final float[] POW10_FLOAT = {1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f};
+
+    protected int skipNumLines;
+    protected char delimiter;
+    protected char quote;
+    protected Schema schema;
+    protected int bufferSize;
+    @Getter @Setter
+    protected boolean reuseWritables = false;
+    protected Configuration conf;
+
+    private SerializableCSVParser csvParser;
+    private ColumnType[] columnTypes;
+
+    //Input state
+    protected URI[] locations;
+    protected int splitIndex = 0;
+    protected int lineIndex = 0; //Line index within the current split
+    protected boolean initialized;
+    private InputStream in;
+    private byte[] buffer;
+    private int pos;
+    private int limit;
+    private boolean eof;
+    private boolean skipLF;
+
+    //Current line: lineStart to lineEnd (exclusive) in the buffer. Valid if lineReady is true
+    private boolean lineReady;
+    private int lineStart;
+    private int lineEnd;
+    //Value start/end positions (in buffer) for the current line, or parsed values if the line needs the CSV parser
+    private int numValues;
+    private int[] valueStarts = new int[16];
+    private int[] valueEnds = new int[16];
+    private String[] parsedValues;
+
+    //Writables reused between calls to next(), if reuseWritables is true
+    private List<Writable> reusedRecord;
+    private Writable[] reusedWritables;
+    private Text[] reusedText;
+
+    public FastCSVRecordReader() {
+        this(0, CSVRecordReader.DEFAULT_DELIMITER);
+    }
+
+    /**
+     * @param skipNumLines Number of lines to skip at the start of each file (i.e., header lines)
+     * @param delimiter    Delimiter character
+     */
+    public FastCSVRecordReader(int skipNumLines, char delimiter) {
+        this(skipNumLines, delimiter, CSVRecordReader.DEFAULT_QUOTE);
+    }
+
+    /**
+     * @param skipNumLines Number of lines to skip at the start of each file (i.e., header lines)
+     * @param delimiter    Delimiter character
+     * @param quote        Quote character
+     */
+    public FastCSVRecordReader(int skipNumLines, char delimiter, char quote) {
+        this(skipNumLines, delimiter, quote, null);
+    }
+
+    /**
+     * @param skipNumLines Number of lines to skip at the start of each file (i.e., header lines)
+     * @param delimiter    Delimiter character
+     * @param quote        Quote character
+     * @param schema       Schema for the data. May be null. If non-null, values for numerical columns are returned as
+     *                     numerical writables instead of Text
+     */
+    public FastCSVRecordReader(int skipNumLines, char delimiter, char quote, Schema schema) {
+        this(skipNumLines, delimiter, quote, schema, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param skipNumLines Number of lines to skip at the start of each file (i.e., header lines)
+     * @param delimiter    Delimiter character
+     * @param quote        Quote character
+     * @param schema       Schema for the data. May be null. If non-null, values for numerical columns are returned as
+     *                     numerical writables instead of Text
+     * @param bufferSize   Initial size of the read buffer, in bytes. The buffer is expanded if required for long lines
+     */
+    public FastCSVRecordReader(int skipNumLines, char delimiter, char quote, Schema schema, int bufferSize) {
+        Preconditions.checkArgument(delimiter < 128 && quote < 128, "Only ASCII delimiter and quote characters are " +
+                "supported: got delimiter '%s', quote '%s'", delimiter, quote);
+        Preconditions.checkArgument(bufferSize > 0, "Buffer size must be positive: got %s", bufferSize);
+        this.skipNumLines = skipNumLines;
+        this.delimiter = delimiter;
+        this.quote = quote;
+        this.schema = schema;
+        this.bufferSize = bufferSize;
+        this.csvParser = new SerializableCSVParser(delimiter, quote);
+        if (schema != null) {
+            columnTypes = schema.getColumnTypes().toArray(new ColumnType[schema.numColumns()]);
+        }
+    }
+
+    @Override
+    public void initialize(InputSplit split) throws IOException, InterruptedException {
+        super.initialize(split);
+        if (split instanceof StringSplit || split instanceof InputStreamInputSplit) {
+            locations = null;
+        } else {
+            List<URI> uris = new ArrayList<>();
+            Iterator<URI> iter = split.locationsIterator();
+            while (iter.hasNext()) {
+                uris.add(iter.next());
+            }
+            locations = uris.toArray(new URI[uris.size()]);
+        }
+        if (buffer == null) {
+            buffer = new byte[bufferSize];
+        }
+        splitIndex = 0;
+        openLocation(0);
+        initialized = true;
+    }
+
+    @Override
+    public void initialize(Configuration conf, InputSplit split) throws IOException, InterruptedException {
+        this.conf = conf;
+        this.skipNumLines = conf.getInt(CSVRecordReader.SKIP_NUM_LINES, this.skipNumLines);
+        this.delimiter = conf.getChar(CSVRecordReader.DELIMITER, this.delimiter);
+        this.quote = conf.getChar(CSVRecordReader.QUOTE, this.quote);
+        Preconditions.checkArgument(delimiter < 128 && quote < 128, "Only ASCII delimiter and quote characters are " +
+                "supported: got delimiter '%s', quote '%s'", delimiter, quote);
+        this.csvParser = new SerializableCSVParser(delimiter, quote);
+        initialize(split);
+    }
+
+    protected void openLocation(int location) throws IOException {
+        closeStream();
+        if (inputSplit instanceof StringSplit) {
+            in = new ByteArrayInputStream(((StringSplit) inputSplit).getData().getBytes(StandardCharsets.UTF_8));
+        } else if (inputSplit instanceof InputStreamInputSplit) {
+            in = ((InputStreamInputSplit) inputSplit).getIs();
+        } else if (location < locations.length) {
+            in = streamCreatorFn.apply(locations[location]);
+        } else {
+            in = null;
+        }
+        pos = 0;
+        limit = 0;
+        eof = (in == null);
+        skipLF = false;
+        lineReady = false;
+        lineIndex = 0;
+
+        for (int i = 0; i < skipNumLines && readLine(); i++) {
+            lineIndex++;
+        }
+    }
+
+    /**
+     * Read the next line into lineStart/lineEnd. Handles \n, \r and \r\n line endings, as per
+     * {@link java.io.BufferedReader#readLine()}
+     *
+     * @return True if a line was read, false if the end of the stream was reached
+     */
+    private boolean readLine() throws IOException {
+        if (skipLF) {
+            if (pos >= limit && !fill()) {
+                return false;
+            }
+            if (buffer[pos] == '\n') {
+                pos++;
+            }
+            skipLF = false;
+        }
+
+        int scan = pos;
+        while (true) {
+            for (; scan < limit; scan++) {
+                byte b = buffer[scan];
+                if (b == '\n' || b == '\r') {
+                    lineStart = pos;
+                    lineEnd = scan;
+                    pos = scan + 1;
+                    skipLF = (b == '\r');
+                    return true;
+                }
+            }
+
+            int offset = scan - pos;
+            if (!fill()) {
+                if (limit > pos) {
+                    //Last line, without a line terminator
+                    lineStart = pos;
+                    lineEnd = limit;
+                    pos = limit;
+                    return true;
+                }
+                return false;
+            }
+            scan = pos + offset;
+        }
+    }
+
+    /**
+     * Move any unread bytes to the start of the buffer (expanding the buffer if it is full), and read more bytes
+     *
+     * @return False if no more bytes could be read
+     */
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        int remaining = limit - pos;
+        if (pos > 0) {
+            System.arraycopy(buffer, pos, buffer, 0, remaining);
+        } else if (remaining == buffer.length) {
+            buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+        }
+        pos = 0;
+        limit = remaining;
+
+        int n;
+        do {
+            n = in.read(buffer, limit, buffer.length - limit);
+        } while (n == 0);
+        if (n < 0) {
+            eof = true;
+            return false;
+        }
+        limit += n;
+        return true;
+    }
+
+    @Override
+    public boolean hasNext() {
+        Preconditions.checkState(initialized, "Record reader has not been initialized");
+        if (lineReady) {
+            return true;
+        }
+        try {
+            while (true) {
+                if (readLine()) {
+                    lineReady = true;
+                    return true;
+                }
+                if (locations == null || splitIndex >= locations.length - 1) {
+                    return false;
+                }
+                openLocation(++splitIndex);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading from input", e);
+        }
+    }
+
+    /**
+     * Split the current line into values, and mark the line as consumed
+     */
+    private void tokenizeLine() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No next element found!");
+        }
+        lineReady = false;
+        lineIndex++;
+        if (!listeners.isEmpty()) {
+            invokeListeners(new String(buffer, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8));
+        }
+
+        numValues = 0;
+        parsedValues = null;
+        int start = lineStart;
+        byte delim = (byte) delimiter;
+        byte q = (byte) quote;
+        for (int i = lineStart; i < lineEnd; i++) {
+            byte b = buffer[i];
+            if (b == delim) {
+                addValue(start, i);
+                start = i + 1;
+            } else if (b == q || b == ESCAPE) {
+                //Quoted values or escape characters: use the CSV parser for this line
+                String line = new String(buffer, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+                try {
+                    parsedValues = csvParser.parseLine(line);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                numValues = parsedValues.length;
+                return;
+            }
+        }
+        addValue(start, lineEnd);
+    }
+
+    private void addValue(int start, int end) {
+        if (numValues == valueStarts.length) {
+            valueStarts = Arrays.copyOf(valueStarts, 2 * numValues);
+            valueEnds = Arrays.copyOf(valueEnds, 2 * numValues);
+        }
+        valueStarts[numValues] = start;
+        valueEnds[numValues++] = end;
+    }
+
+    @Override
+    public List<Writable> next() {
+        tokenizeLine();
+        if (!reuseWritables) {
+            List<Writable> out = new ArrayList<>(numValues);
+            for (int i = 0; i < numValues; i++) {
+                out.add(toWritable(i, null, null));
+            }
+            return out;
+        }
+
+        if (reusedRecord == null || reusedWritables.length < numValues) {
+            int n = Math.max(numValues, (reusedWritables == null ? 0 : 2 * reusedWritables.length));
+            reusedWritables = (reusedWritables == null ? new Writable[n] : Arrays.copyOf(reusedWritables, n));
+            reusedText = (reusedText == null ? new Text[n] : Arrays.copyOf(reusedText, n));
+            reusedRecord = new ArrayList<>(n);
+        }
+        reusedRecord.clear();
+        for (int i = 0; i < numValues; i++) {
+            if (reusedText[i] == null) {
+                reusedText[i] = new Text();
+            }
+            Writable w = toWritable(i, reusedWritables[i], reusedText[i]);
+            if (w != reusedText[i]) {
+                reusedWritables[i] = w;
+            }
+            reusedRecord.add(w);
+        }
+        return reusedRecord;
+    }
+
+    /**
+     * Get the value for the specified column of the current line as a Writable
+     *
+     * @param column Index of the column
+     * @param reuse  Writable to reuse for numerical values, if it has the correct type. May be null
+     * @param text   Text to reuse for non-numerical values. May be null
+     */
+    private Writable toWritable(int column, Writable reuse, Text text) {
+        ColumnType type = (columnTypes != null && column < columnTypes.length ? columnTypes[column] : null);
+        if (type != null) {
+            try {
+                switch (type) {
+                    case Integer:
+                        long l = parseLongValue(column);
+                        if (l < Integer.MIN_VALUE || l > Integer.MAX_VALUE) {
+                            break;
+                        }
+                        if (reuse instanceof IntWritable) {
+                            ((IntWritable) reuse).set((int) l);
+                            return reuse;
+                        }
+                        return new IntWritable((int) l);
+                    case Long:
+                    case Time:
+                        long lv = parseLongValue(column);
+                        if (reuse instanceof LongWritable) {
+                            ((LongWritable) reuse).set(lv);
+                            return reuse;
+                        }
+                        return new LongWritable(lv);
+                    case Float:
+                        float f = parseFloatValue(column);
+                        if (reuse instanceof FloatWritable) {
+                            ((FloatWritable) reuse).set(f);
+                            return reuse;
+                        }
+                        return new FloatWritable(f);
+                    case Double:
+                        double d = parseDoubleValue(column);
+                        if (reuse instanceof DoubleWritable) {
+                            ((DoubleWritable) reuse).set(d);
+                            return reuse;
+                        }
+                        return new DoubleWritable(d);
+                    default:
+                        break;
+                }
+            } catch (NumberFormatException e) {
+                //Invalid or missing value: return as Text
+            }
+        }
+
+        if (text == null) {
+            text = new Text();
+        }
+        if (parsedValues != null) {
+            text.set(parsedValues[column]);
+        } else {
+            text.set(buffer, valueStarts[column], valueEnds[column] - valueStarts[column]);
+        }
+        return text;
+    }
+
+    private long parseLongValue(int column) {
+        if (parsedValues != null) {
+            return Long.parseLong(parsedValues[column]);
+        }
+        return parseLong(buffer, valueStarts[column], valueEnds[column]);
+    }
+
+    private float parseFloatValue(int column) {
+        if (parsedValues != null) {
+            return Float.parseFloat(parsedValues[column]);
+        }
+        return parseFloat(buffer, valueStarts[column], valueEnds[column]);
+    }
+
+    private double parseDoubleValue(int column) {
+        if (parsedValues != null) {
+            return Double.parseDouble(parsedValues[column]);
+        }
+        return parseDouble(buffer, valueStarts[column], valueEnds[column]);
+    }
+
+    /**
+     * Read up to N records, and parse the values as doubles directly into the specified column arrays, where N is the
+     * length of the column arrays. No writables are created.<br>
+     * Columns that should not be parsed (for example, non-numerical columns) can be skipped by passing a null array
+     * for that column. Each record must have at least as many values as there are column arrays.
+     *
+     * @param columns Column arrays to write the values to. columns[i][j] is set to the value of column i for record j.
+     *                All non-null arrays must have the same length
+     * @return Number of records read. This is less than the length of the column arrays only if there are no more records
+     * @throws NumberFormatException If a value cannot be parsed as a double
+     */
+    public int nextColumns(double[][] columns) {
+        int n = -1;
+        for (double[] c : columns) {
+            if (c != null) {
+                Preconditions.checkArgument(n < 0 || c.length == n, "All column arrays must have the same length");
+                n = c.length;
+            }
+        }
+        Preconditions.checkArgument(n >= 0, "At least one column array must be non-null");
+
+        int count = 0;
+        while (count < n && hasNext()) {
+            tokenizeLine();
+            if (numValues < columns.length) {
+                throw new IllegalStateException("Cannot read record: expected at least " + columns.length
+                        + " values, but line " + (lineIndex - 1) + " has " + numValues + " values");
+            }
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i] != null) {
+                    columns[i][count] = parseDoubleValue(i);
+                }
+            }
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public boolean batchesSupported() {
+        return true;
+    }
+
+    /**
+     * Read the next num records. Note that new writables are created for each record even if
+     * {@link #setReuseWritables(boolean)} is set to true
+     */
+    @Override
+    public List<List<Writable>> next(int num) {
+        boolean reuse = reuseWritables;
+        reuseWritables = false;
+        try {
+            List<List<Writable>> ret = new ArrayList<>(Math.min(num, 10000));
+            while (ret.size() < num && hasNext()) {
+                ret.add(next());
+            }
+            return ret;
+        } finally {
+            reuseWritables = reuse;
+        }
+    }
+
+    @Override
+    public Record nextRecord() {
+        List<Writable> next = next();
+        URI uri = (locations == null || locations.length < 1 ? null : locations[splitIndex]);
+        RecordMetaData meta = new RecordMetaDataLine(this.lineIndex - 1, uri, FastCSVRecordReader.class); //-1 as line number has been incremented already...
+        return new org.datavec.api.records.impl.Record(next, meta);
+    }
+
+    @Override
+    public Record loadFromMetaData(RecordMetaData recordMetaData) throws IOException {
+        return loadFromMetaData(Collections.singletonList(recordMetaData)).get(0);
+    }
+
+    @Override
+    public List<Record> loadFromMetaData(List<RecordMetaData> recordMetaDatas) throws IOException {
+        //Loading of individual lines is done by the standard CSV record reader
+        CSVRecordReader rr = new CSVRecordReader(skipNumLines, delimiter, quote);
+        try {
+            rr.initialize(inputSplit);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        List<Record> list = rr.loadFromMetaData(recordMetaDatas);
+        rr.close();
+        for (Record r : list) {
+            r.setRecord(convertTypes(r.getRecord()));
+        }
+        return list;
+    }
+
+    @Override
+    public List<Writable> record(URI uri, DataInputStream dataInputStream) throws IOException {
+        return convertTypes(new CSVRecordReader(skipNumLines, delimiter, quote).record(uri, dataInputStream));
+    }
+
+    /**
+     * Convert the Text values from {@link CSVRecordReader} to the types for this reader
+     */
+    private List<Writable> convertTypes(List<Writable> record) {
+        if (columnTypes == null) {
+            return record;
+        }
+        parsedValues = new String[record.size()];
+        for (int i = 0; i < parsedValues.length; i++) {
+            parsedValues[i] = record.get(i).toString();
+        }
+        List<Writable> out = new ArrayList<>(parsedValues.length);
+        for (int i = 0; i < parsedValues.length; i++) {
+            out.add(toWritable(i, null, null));
+        }
+        parsedValues = null;
+        return out;
+    }
+
+    @Override
+    public void reset() {
+        if (inputSplit == null)
+            throw new UnsupportedOperationException("Cannot reset without first initializing");
+        try {
+            inputSplit.reset();
+            initialize(inputSplit);
+        } catch (Exception e) {
+            throw new RuntimeException("Error during FastCSVRecordReader reset", e);
+        }
+    }
+
+    @Override
+    public boolean resetSupported() {
+        if (inputSplit != null) {
+            return inputSplit.resetSupported();
+        }
+        return true;
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeStream();
+    }
+
+    private void closeStream() throws IOException {
+        if (in != null) {
+            in.close();
+            in = null;
+        }
+    }
+
+    @Override
+    public void setConf(Configuration conf) {
+        this.conf = conf;
+    }
+
+    @Override
+    public Configuration getConf() {
+        return conf;
+    }
+
+    /**
+     * Parse a long value from the specified UTF-8/ASCII bytes, without creating a String.
+     * Equivalent to {@code Long.parseLong(new String(bytes, start, end-start))}
+     *
+     * @param bytes Bytes to parse
+     * @param start Start of the value (inclusive)
+     * @param end   End of the value (exclusive)
+     * @return Parsed value
+     * @throws NumberFormatException If the value is not a valid long
+     */
+    public static long parseLong(byte[] bytes, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = (bytes[i] == '-');
+            i++;
+        }
+        //Up to 18 digits can't overflow; longer values are handled by Long.parseLong
+        if (i == end || end - i > 18) {
+            return Long.parseLong(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int d = bytes[i] - '0';
+            if (d < 0 || d > 9) {
+                return Long.parseLong(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+            }
+            value = 10 * value + d;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parse a double value from the specified UTF-8/ASCII bytes, without creating a String for most values.
+     * Equivalent to {@code Double.parseDouble(new String(bytes, start, end-start))}.<br>
+     * Values with up to 15 significant digits and small exponents (the vast majority of values in typical CSV files)
+     * are parsed directly from the bytes, with a correctly rounded result. All other values (including values with
+     * whitespace, NaN, Infinity, etc) are parsed with {@link Double#parseDouble(String)}.
+     *
+     * @param bytes Bytes to parse
+     * @param start Start of the value (inclusive)
+     * @param end   End of the value (exclusive)
+     * @return Parsed value
+     * @throws NumberFormatException If the value is not a valid double
+     */
+    public static double parseDouble(byte[] bytes, int start, int end) {
+        long packed = scanDecimal(bytes, start, end, (1L << 53), 22);
+        if (packed < 0) {
+            return Double.parseDouble(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+        }
+        //Mantissa and power of 10 are both exactly representable -> a single multiplication or division is
+        //correctly rounded
+        double value = (double) (packed >>> 7);
+        int exp10 = (int) (packed & 0x3F) - 22;
+        value = (exp10 < 0 ? value / POW10[-exp10] : value * POW10[exp10]);
+        return (packed & 0x40) != 0 ? -value : value;
+    }
+
+    /**
+     * Parse a float value from the specified UTF-8/ASCII bytes, without creating a String for most values.
+     * Equivalent to {@code Float.parseFloat(new String(bytes, start, end-start))}. See
+     * {@link #parseDouble(byte[], int, int)} for details.
+     *
+     * @param bytes Bytes to parse
+     * @param start Start of the value (inclusive)
+     * @param end   End of the value (exclusive)
+     * @return Parsed value
+     * @throws NumberFormatException If the value is not a valid float
+     */
+    public static float parseFloat(byte[] bytes, int start, int end) {
+        long packed = scanDecimal(bytes, start, end, (1L << 24), 10);
+        if (packed < 0) {
+            return Float.parseFloat(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+        }
+        float value = (float) (packed >>> 7);
+        int exp10 = (int) (packed & 0x3F) - 22;
+        value = (exp10 < 0 ? value / POW10_FLOAT[-exp10] : value * POW10_FLOAT[exp10]);
+        return (packed & 0x40) != 0 ? -value : value;
+    }
+
+    /**
+     * Scan a decimal value of the form [+-]digits[.digits][(e|E)[+-]digits] into an integer mantissa and a power of 10.
+     *
+     * @return -1 if the value cannot be handled by the fast path (invalid format, mantissa >= maxMantissa or
+     * |exponent| > maxExp10), otherwise (mantissa << 7) | (negative << 6) | (exponent + 22)
+     */
+    private static long scanDecimal(byte[] bytes, int start, int end, long maxMantissa, int maxExp10) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = (bytes[i] == '-');
+            i++;
+        }
+
+        long mantissa = 0;
+        int exp10 = 0;
+        int numDigits = 0;
+        int significantDigits = 0;
+        boolean fraction = false;
+        for (; i < end; i++) {
+            int b = bytes[i];
+            if (b == '.' && !fraction) {
+                fraction = true;
+                continue;
+            }
+            int d = b - '0';
+            if (d < 0 || d > 9) {
+                break;
+            }
+            numDigits++;
+            if (mantissa != 0 || d != 0) {
+                if (++significantDigits > 18) {
+                    return -1;
+                }
+                mantissa = 10 * mantissa + d;
+            }
+            if (fraction) {
+                exp10--;
+            }
+        }
+        if (numDigits == 0) {
+            return -1;
+        }
+
+        if (i < end && (bytes[i] == 'e' || bytes[i] == 'E')) {
+            i++;
+            boolean negativeExp = false;
+            if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+                negativeExp = (bytes[i] == '-');
+                i++;
+            }
+            if (i == end || end - i > 3) {
+                return -1;
+            }
+            int exp = 0;
+            for (; i < end; i++) {
+                int d = bytes[i] - '0';
+                if (d < 0 || d > 9) {
+                    return -1;
+                }
+                exp = 10 * exp + d;
+            }
+            exp10 += (negativeExp ? -exp : exp);
+        }
+        if (i != end) {
+            return -1;
+        }
+
+        if (mantissa == 0) {
+            exp10 = 0;
+        }
+        if (mantissa >= maxMantissa || exp10 < -maxExp10 || exp10 > maxExp10) {
+            return -1;
+        }
+        return (mantissa << 7) | (negative ? 0x40 : 0) | (exp10 + 22);
+    }
+}
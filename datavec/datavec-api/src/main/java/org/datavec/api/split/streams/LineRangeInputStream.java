@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.api.split.streams;
+
+import org.nd4j.base.Preconditions;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * An InputStream for the lines of a file that start within a given byte range.<br>
+ * The stream contains all lines whose first byte is at a position in the range [start, end) of the file, including
+ * the last such line in full even if it extends past the end of the range. A line starts at position 0, and after
+ * each '\n' character. Consequently, if a file is divided into non-overlapping consecutive ranges (for example, [0,a),
+ * [a,b), [b,length)), each line of the file is contained in exactly one of the streams for the ranges, regardless of
+ * where the range boundaries are relative to the lines. This allows large line-delimited files (CSV, JSON lines, etc)
+ * to be read in parallel, in multiple parts.<br>
+ * Note: Lines must be terminated by "\n" or "\r\n"; "\r" alone is not supported as a line terminator.
+ */
+public class LineRangeInputStream extends InputStream {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final RandomAccessFile file;
+    private final long end;
+    private final byte[] buffer;
+    private int bufferPos;
+    private int bufferLimit;
+    private long position;      //File position of buffer[bufferPos]
+    private boolean lineStart;  //True if the next byte is the first byte of a line
+    private boolean done;
+
+    /**
+     * @param file  File to read
+     * @param start Start of the range (inclusive)
+     * @param end   End of the range (exclusive)
+     */
+    public LineRangeInputStream(File file, long start, long end) throws IOException {
+        this(file, start, end, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param file       File to read
+     * @param start      Start of the range (inclusive)
+     * @param end        End of the range (exclusive)
+     * @param bufferSize Size of the read buffer
+     */
+    public LineRangeInputStream(File file, long start, long end, int bufferSize) throws IOException {
+        Preconditions.checkArgument(start >= 0 && end >= start, "Invalid range: start=%s, end=%s", start, end);
+        this.file = new RandomAccessFile(file, "r");
+        this.end = end;
+        this.buffer = new byte[bufferSize];
+
+        if (start == 0) {
+            position = 0;
+            lineStart = true;
+        } else {
+            //Skip to the start of the first line starting at or after position 'start': i.e., after the first '\n'
+            //at or after position start-1. Any line starting before 'start' belongs to the previous range
+            this.file.seek(start - 1);
+            position = start - 1;
+            while (!lineStart) {
+                if (bufferPos == bufferLimit && !fill()) {
+                    break;
+                }
+                byte b = buffer[bufferPos++];
+                position++;
+                lineStart = (b == '\n');
+            }
+        }
+        done = !lineStart || start == end;
+    }
+
+    private boolean fill() throws IOException {
+        int n = file.read(buffer, 0, buffer.length);
+        if (n <= 0) {
+            bufferPos = 0;
+            bufferLimit = 0;
+            return false;
+        }
+        bufferPos = 0;
+        bufferLimit = n;
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int n = read(b, 0, 1);
+        return n <= 0 ? -1 : (b[0] & 0xFF);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (done || (lineStart && position >= end)) {
+            //The next line starts after the end of the range
+            done = true;
+            return -1;
+        }
+        if (bufferPos == bufferLimit && !fill()) {
+            done = true;
+            return -1;
+        }
+
+        int n = Math.min(len, bufferLimit - bufferPos);
+        if (position + n > end) {
+            //Past the end of the range: return bytes only up to the end of the current line. A '\n' at position
+            //end-1 or later terminates the last line of the range
+            int searchFrom = (int) Math.max(0, end - 1 - position);
+            for (int i = bufferPos + searchFrom; i < bufferPos + n; i++) {
+                if (buffer[i] == '\n') {
+                    n = i - bufferPos + 1;
+                    break;
+                }
+            }
+        }
+        System.arraycopy(buffer, bufferPos, b, off, n);
+        bufferPos += n;
+        position += n;
+        lineStart = (b[off + n - 1] == '\n');
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.api.transform.analysis.sketch;
+
+import com.tdunning.math.stats.TDigest;
+import lombok.Getter;
+import org.datavec.api.transform.ColumnType;
+import org.datavec.api.transform.analysis.AnalysisCounter;
+import org.datavec.api.transform.analysis.counter.*;
+import org.datavec.api.writable.Writable;
+
+import java.util.Map;
+
+/**
+ * A single-pass, mergeable, fixed-memory counter for approximate analysis of a single column.<br>
+ * In addition to the standard (fixed size) analysis counter for the column type - i.e., count/mean/stdev/min/max
+ * statistics and a {@link TDigest} for quantiles of numerical columns - the sketch contains:<br>
+ * - A {@link HyperLogLog} sketch for the approximate number of distinct values (all column types except NDArray)<br>
+ * - A {@link HeavyHitters} sketch for the approximate most frequent values (String and Categorical columns). This is
+ * used instead of the exact (and unbounded) map of counts in {@link CategoricalAnalysisCounter}<br>
+ * Consequently, memory use is independent of the number of distinct values in the column.
+ */
+public class ColumnSketch implements AnalysisCounter<ColumnSketch> {
+
+    @Getter
+    private final ColumnType columnType;
+    @Getter
+    private AnalysisCounter counter;
+    @Getter
+    private final HyperLogLog distinct;
+    @Getter
+    private final HeavyHitters heavyHitters;
+    @Getter
+    private long countTotal;
+
+    public ColumnSketch(ColumnType columnType) {
+        this(columnType, HyperLogLog.DEFAULT_PRECISION, HeavyHitters.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param columnType          Type of the column
+     * @param hllPrecision        Precision for the {@link HyperLogLog} distinct values sketch
+     * @param heavyHitterCapacity Maximum number of values to track for the {@link HeavyHitters} sketch
+     */
+    public ColumnSketch(ColumnType columnType, int hllPrecision, int heavyHitterCapacity) {
+        this.columnType = columnType;
+        switch (columnType) {
+            case String:
+                counter = new StringAnalysisCounter();
+                break;
+            case Integer:
+                counter = new IntegerAnalysisCounter();
+                break;
+            case Long:
+            case Time:
+                counter = new LongAnalysisCounter();
+                break;
+            case Double:
+                counter = new DoubleAnalysisCounter();
+                break;
+            case Categorical:
+                counter = null;
+                break;
+            case Bytes:
+                counter = new BytesAnalysisCounter();
+                break;
+            case NDArray:
+                counter = new NDArrayAnalysisCounter();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown column type: " + columnType);
+        }
+        distinct = (columnType == ColumnType.NDArray ? null : new HyperLogLog(hllPrecision));
+        heavyHitters = (columnType == ColumnType.String || columnType == ColumnType.Categorical
+                ? new HeavyHitters(heavyHitterCapacity) : null);
+    }
+
+    @Override
+    public ColumnSketch add(Writable writable) {
+        countTotal++;
+        if (counter != null)
+            counter = counter.add(writable);
+
+        switch (columnType) {
+            case Integer:
+            case Long:
+            case Time:
+                distinct.offer(HyperLogLog.hash(writable.toLong()));
+                break;
+            case Double:
+                distinct.offer(HyperLogLog.hash(Double.doubleToLongBits(writable.toDouble())));
+                break;
+            case String:
+            case Categorical:
+            case Bytes:
+                String s = writable.toString();
+                distinct.offer(HyperLogLog.hash(s));
+                if (heavyHitters != null)
+                    heavyHitters.offer(s);
+                break;
+            default:
+                //NDArray: no distinct values sketch
+        }
+
+        return this;
+    }
+
+    @Override
+    public ColumnSketch merge(ColumnSketch other) {
+        if (columnType != other.columnType)
+            throw new IllegalStateException("Cannot merge sketches for different column types: " + columnType
+                    + " vs " + other.columnType);
+        if (counter != null)
+            counter = counter.merge(other.counter);
+        if (distinct != null)
+            distinct.merge(other.distinct);
+        if (heavyHitters != null)
+            heavyHitters.merge(other.heavyHitters);
+        countTotal += other.countTotal;
+        return this;
+    }
+
+    /**
+     * @return Approximate number of distinct values in the column, or -1 if not available (NDArray columns)
+     */
+    public long getDistinctCount() {
+        return distinct == null ? -1 : distinct.cardinality();
+    }
+
+    /**
+     * Get the approximate most frequent values in the column. Only available for String and Categorical columns.
+     * See {@link HeavyHitters} for the accuracy guarantees.
+     *
+     * @param k Maximum number of values to return
+     * @return Map of values to approximate counts, ordered from highest to lowest count
+     */
+    public Map<String, Long> getTopK(int k) {
+        if (heavyHitters == null)
+            throw new IllegalStateException("Most frequent values are only available for String and Categorical "
+                    + "columns, not " + columnType + " columns");
+        return heavyHitters.getTopK(k);
+    }
+
+    /**
+     * @return Digest for quantiles of the column values, for numerical (Integer, Long, Double, Time) columns; null
+     * otherwise
+     */
+    public TDigest getDigest() {
+        if (counter instanceof IntegerAnalysisCounter)
+            return ((IntegerAnalysisCounter) counter).getDigest();
+        if (counter instanceof LongAnalysisCounter)
+            return ((LongAnalysisCounter) counter).getDigest();
+        if (counter instanceof DoubleAnalysisCounter)
+            return ((DoubleAnalysisCounter) counter).getDigest();
+        return null;
+    }
+
+    /**
+     * Get the approximate quantile of the column values. Only available for numerical (Integer, Long, Double, Time)
+     * columns.
+     *
+     * @param q Quantile, in range 0 to 1 inclusive
+     */
+    public double getQuantile(double q) {
+        TDigest digest = getDigest();
+        if (digest == null)
+            throw new IllegalStateException("Quantiles are only available for numerical columns, not " + columnType
+                    + " columns");
+        return digest.quantile(q);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("ColumnSketch(count=").append(countTotal);
+        if (distinct != null)
+            sb.append(",approxDistinct=").append(getDistinctCount());
+        if (heavyHitters != null)
+            sb.append(",approxTop5=").append(getTopK(5));
+        if (getDigest() != null && countTotal > 0)
+            sb.append(",approxQuantiles=[0.01 -> ").append(getQuantile(0.01)).append(",0.5 -> ")
+                    .append(getQuantile(0.5)).append(",0.99 -> ").append(getQuantile(0.99)).append("]");
+        sb.append(")");
+        return sb.toString();
+    }
+}
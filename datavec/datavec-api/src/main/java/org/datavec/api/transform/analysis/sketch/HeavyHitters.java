@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.api.transform.analysis.sketch;
+
+import lombok.Getter;
+import org.nd4j.base.Preconditions;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Heavy hitters (frequent items) sketch for String values, using the Misra-Gries algorithm.<br>
+ * At most {@code capacity} values are tracked at any time. The count for each tracked value is an underestimate of
+ * the true count by at most {@link #getMaxError()}, which is itself bounded by countTotal / (capacity + 1). Hence any
+ * value that occurs more than countTotal / (capacity + 1) times is guaranteed to be tracked, and when the number of
+ * distinct values is at most the capacity, all counts are exact.<br>
+ * Sketches can be merged (with the same error guarantees), which allows partial sketches to be calculated in parallel.
+ */
+public class HeavyHitters implements Serializable {
+
+    public static final int DEFAULT_CAPACITY = 1000;
+
+    @Getter
+    private final int capacity;
+    private final Map<String, Long> counts = new HashMap<>();
+    @Getter
+    private long countTotal;
+    @Getter
+    private long maxError;
+
+    public HeavyHitters() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity Maximum number of values to track
+     */
+    public HeavyHitters(int capacity) {
+        Preconditions.checkArgument(capacity > 0, "Capacity must be positive, got %s", capacity);
+        this.capacity = capacity;
+    }
+
+    /**
+     * Add a single occurrence of the specified value
+     */
+    public void offer(String value) {
+        countTotal++;
+        Long count = counts.get(value);
+        if (count != null) {
+            counts.put(value, count + 1);
+        } else if (counts.size() < capacity) {
+            counts.put(value, 1L);
+        } else {
+            //Decrement all counts (including the new value, which is not added)
+            decrementAll(1);
+        }
+    }
+
+    /**
+     * Merge the other sketch into this sketch
+     *
+     * @param other Sketch to merge
+     * @return This sketch, after merging
+     */
+    public HeavyHitters merge(HeavyHitters other) {
+        if (other == null)
+            return this;
+        for (Map.Entry<String, Long> e : other.counts.entrySet()) {
+            Long count = counts.get(e.getKey());
+            counts.put(e.getKey(), count == null ? e.getValue() : count + e.getValue());
+        }
+        countTotal += other.countTotal;
+        maxError += other.maxError;
+
+        if (counts.size() > capacity) {
+            //Subtract the (capacity+1)th largest count from all counts: at most 'capacity' values remain
+            long[] values = new long[counts.size()];
+            int i = 0;
+            for (Long l : counts.values()) {
+                values[i++] = l;
+            }
+            Arrays.sort(values);
+            decrementAll(values[values.length - capacity - 1]);
+        }
+        return this;
+    }
+
+    private void decrementAll(long amount) {
+        Iterator<Map.Entry<String, Long>> iter = counts.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<String, Long> e = iter.next();
+            long c = e.getValue() - amount;
+            if (c <= 0) {
+                iter.remove();
+            } else {
+                e.setValue(c);
+            }
+        }
+        maxError += amount;
+    }
+
+    /**
+     * @return Estimated (lower bound) count for the specified value; 0 if the value is not tracked
+     */
+    public long getCount(String value) {
+        Long count = counts.get(value);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * @return Number of values currently tracked by the sketch
+     */
+    public int size() {
+        return counts.size();
+    }
+
+    /**
+     * @return True if the counts are exact: i.e., no values have been discarded from the sketch
+     */
+    public boolean isExact() {
+        return maxError == 0;
+    }
+
+    /**
+     * Get the most frequent values and their estimated counts
+     *
+     * @param k Maximum number of values to return
+     * @return Map of values to estimated counts, ordered from highest to lowest count
+     */
+    public Map<String, Long> getTopK(int k) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(counts.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(Map.Entry<String, Long> o1, Map.Entry<String, Long> o2) {
+                return -Long.compare(o1.getValue(), o2.getValue()); //Highest to lowest
+            }
+        });
+
+        Map<String, Long> out = new LinkedHashMap<>();
+        for (int i = 0; i < k && i < entries.size(); i++) {
+            out.put(entries.get(i).getKey(), entries.get(i).getValue());
+        }
+        return out;
+    }
+}
@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.api.transform.analysis.sketch;
+
+import lombok.Getter;
+import org.nd4j.base.Preconditions;
+
+import java.io.Serializable;
+
+/**
+ * HyperLogLog sketch, for estimating the number of distinct values in a data set using a fixed amount of memory.<br>
+ * With precision p, the sketch uses 2^p bytes (16kB for the default of 14) and has a relative standard error of
+ * approximately 1.04/sqrt(2^p) (0.8% for p=14), independent of the number of values or distinct values.<br>
+ * Sketches with the same precision can be merged: the result is exactly the sketch that would have been obtained
+ * for the combined data, which allows partial sketches to be calculated in parallel.<br>
+ * Values are added as 64-bit hashes - see {@link #hash(long)} and {@link #hash(CharSequence)}.
+ */
+public class HyperLogLog implements Serializable {
+
+    public static final int DEFAULT_PRECISION = 14;
+
+    @Getter
+    private final int precision;
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * @param precision Number of bits of the hash used to select the register. Must be in range 4 to 18 inclusive
+     */
+    public HyperLogLog(int precision) {
+        Preconditions.checkArgument(precision >= 4 && precision <= 18, "Precision must be in range 4 to 18, got %s",
+                precision);
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * Add a value, as a 64-bit hash
+     */
+    public void offer(long hash) {
+        int idx = (int) (hash >>> (64 - precision));
+        //Rank: position of the first 1 bit in the remaining bits. Set the lowest bit to limit the rank to 64-p+1
+        long w = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(w) + 1);
+        if (rank > registers[idx]) {
+            registers[idx] = rank;
+        }
+    }
+
+    /**
+     * @return Estimate of the number of distinct values added to the sketch
+     */
+    public long cardinality() {
+        int m = registers.length;
+        double sum = 0.0;
+        int zeros = 0;
+        for (byte b : registers) {
+            sum += 1.0 / (1L << b);
+            if (b == 0)
+                zeros++;
+        }
+
+        double alpha;
+        switch (m) {
+            case 16:
+                alpha = 0.673;
+                break;
+            case 32:
+                alpha = 0.697;
+                break;
+            case 64:
+                alpha = 0.709;
+                break;
+            default:
+                alpha = 0.7213 / (1.0 + 1.079 / m);
+        }
+        double estimate = alpha * m * (double) m / sum;
+
+        if (estimate <= 2.5 * m && zeros > 0) {
+            //Small range correction: linear counting
+            estimate = m * Math.log(m / (double) zeros);
+        }
+        //No large range correction is required for 64-bit hashes
+        return Math.round(estimate);
+    }
+
+    /**
+     * Merge the other sketch into this sketch
+     *
+     * @param other Sketch to merge. Must have the same precision as this sketch
+     * @return This sketch, after merging
+     */
+    public HyperLogLog merge(HyperLogLog other) {
+        if (other == null)
+            return this;
+        if (precision != other.precision)
+            throw new IllegalStateException("Cannot merge HyperLogLog sketches with different precision: " + precision
+                    + " vs " + other.precision);
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+        return this;
+    }
+
+    /**
+     * 64-bit hash of a long value (MurmurHash3 finalizer)
+     */
+    public static long hash(long value) {
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * 64-bit hash of a String or other character sequence
+     */
+    public static long hash(CharSequence value) {
+        //FNV-1a, followed by a finalizer to ensure the high bits (used for the register index) are well mixed
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return hash(h);
+    }
+}
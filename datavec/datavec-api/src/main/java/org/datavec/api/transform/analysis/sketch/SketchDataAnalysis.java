@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.api.transform.analysis.sketch;
+
+import com.tdunning.math.stats.TDigest;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.datavec.api.transform.ColumnType;
+import org.datavec.api.transform.analysis.AnalysisCounter;
+import org.datavec.api.transform.analysis.DataAnalysis;
+import org.datavec.api.transform.analysis.DataVecAnalysisUtils;
+import org.datavec.api.transform.analysis.columns.ColumnAnalysis;
+import org.datavec.api.transform.analysis.columns.NumericalColumnAnalysis;
+import org.datavec.api.transform.analysis.counter.CategoricalAnalysisCounter;
+import org.datavec.api.transform.schema.Schema;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The SketchDataAnalysis class represents approximate analysis of a data set, calculated in a single pass with fixed
+ * memory per column. See {@link ColumnSketch} for details.<br>
+ * Use {@link #toDataAnalysis()} to convert to a standard {@link DataAnalysis}.
+ */
+@AllArgsConstructor
+@Data
+public class SketchDataAnalysis implements Serializable {
+
+    private static final int DEFAULT_MAX_HISTOGRAM_BUCKETS = 30;
+
+    private Schema schema;
+    private List<ColumnSketch> columnSketches;
+
+    public ColumnSketch getColumnSketch(String column) {
+        return columnSketches.get(schema.getIndexOfColumn(column));
+    }
+
+    /**
+     * Convert to a {@link DataAnalysis}. See {@link #toDataAnalysis(int)} for details.
+     */
+    public DataAnalysis toDataAnalysis() {
+        return toDataAnalysis(DEFAULT_MAX_HISTOGRAM_BUCKETS);
+    }
+
+    /**
+     * Convert to a {@link DataAnalysis}, for use anywhere an exact analysis could be used. Note that:<br>
+     * - Histograms for numerical columns are estimated from the column digests (no second pass over the data is
+     * required); histograms for other columns are not available<br>
+     * - Categorical counts are those of the most frequent values only, as approximated by the {@link HeavyHitters}
+     * sketch. These are exact if the number of categories does not exceed the sketch capacity
+     *
+     * @param maxHistogramBuckets Number of histogram buckets for numerical columns
+     */
+    public DataAnalysis toDataAnalysis(int maxHistogramBuckets) {
+        List<ColumnType> columnTypes = schema.getColumnTypes();
+        List<AnalysisCounter> counters = new ArrayList<>();
+        for (ColumnSketch cs : columnSketches) {
+            if (cs.getColumnType() == ColumnType.Categorical) {
+                HeavyHitters hh = cs.getHeavyHitters();
+                counters.add(new CategoricalAnalysisCounter(hh.getTopK(hh.getCapacity()), cs.getCountTotal()));
+            } else {
+                counters.add(cs.getCounter());
+            }
+        }
+
+        double[][] minsMaxes = new double[counters.size()][2];
+        List<ColumnAnalysis> list = DataVecAnalysisUtils.convertCounters(counters, minsMaxes, columnTypes);
+
+        for (int i = 0; i < list.size(); i++) {
+            TDigest digest = columnSketches.get(i).getDigest();
+            long count = columnSketches.get(i).getCountTotal();
+            if (digest != null && count > 0 && list.get(i) instanceof NumericalColumnAnalysis) {
+                NumericalColumnAnalysis nca = (NumericalColumnAnalysis) list.get(i);
+                double[] bins = new double[maxHistogramBuckets + 1];
+                long[] binCounts = new long[maxHistogramBuckets];
+                double step = (minsMaxes[i][1] - minsMaxes[i][0]) / maxHistogramBuckets;
+                long prevCumulative = 0;
+                for (int j = 0; j < bins.length; j++) {
+                    bins[j] = (j == bins.length - 1 ? minsMaxes[i][1] : minsMaxes[i][0] + j * step);
+                    if (j > 0) {
+                        //Round the cumulative counts, so the bin counts sum to the total count
+                        long cumulative = (j == bins.length - 1 ? count : Math.round(count * digest.cdf(bins[j])));
+                        binCounts[j - 1] = cumulative - prevCumulative;
+                        prevCumulative = cumulative;
+                    }
+                }
+                nca.setHistogramBuckets(bins);
+                nca.setHistogramBucketCounts(binCounts);
+            }
+        }
+
+        return new DataAnalysis(schema, list);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        int nCol = schema.numColumns();
+
+        int maxNameLength = 0;
+        for (String s : schema.getColumnNames()) {
+            maxNameLength = Math.max(maxNameLength, s.length());
+        }
+
+        //Header:
+        sb.append(String.format("%-6s", "idx")).append(String.format("%-" + (maxNameLength + 8) + "s", "name"))
+                        .append(String.format("%-15s", "type")).append("analysis").append("\n");
+
+        for (int i = 0; i < nCol; i++) {
+            String paddedName = String.format("%-" + (maxNameLength + 8) + "s", "\"" + schema.getName(i) + "\"");
+            sb.append(String.format("%-6d", i)).append(paddedName).append(String.format("%-15s", schema.getType(i)))
+                            .append(columnSketches.get(i)).append("\n");
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,247 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.api.records.reader.impl;
+
+import org.apache.commons.io.FileUtils;
+import org.datavec.api.records.Record;
+import org.datavec.api.records.metadata.RecordMetaData;
+import org.datavec.api.records.reader.RecordReader;
+import org.datavec.api.records.reader.impl.csv.CSVRecordReader;
+import org.datavec.api.records.reader.impl.csv.FastCSVRecordReader;
+import org.datavec.api.split.FileSplit;
+import org.datavec.api.split.StringSplit;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.writable.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nd4j.linalg.io.ClassPathResource;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FastCSVRecordReaderTest {
+
+    @Rule
+    public TemporaryFolder testDir = new TemporaryFolder();
+
+    @Test
+    public void testSameAsCSVRecordReader() throws Exception {
+        File iris = new ClassPathResource("datavec-api/iris.dat").getFile();
+        assertSameOutput(new CSVRecordReader(), new FastCSVRecordReader(), iris);
+
+        //Quotes, escapes, empty values, different line endings, no line ending on last line
+        String content = "a,b,c\r\n" +
+                "1,\"x,y\",3\r\n" +
+                "\n" +
+                "4,,\n" +
+                ",5.5,\"q\"\"q\"\r" +
+                "6,7\\8,9\n" +
+                "   10 ,  11,12";
+        File f = testDir.newFile();
+        FileUtils.writeStringToFile(f, content, StandardCharsets.UTF_8);
+        assertSameOutput(new CSVRecordReader(), new FastCSVRecordReader(), f);
+        assertSameOutput(new CSVRecordReader(1, ','), new FastCSVRecordReader(1, ','), f);
+        //Small buffer: lines span multiple reads, and the buffer needs to be expanded
+        assertSameOutput(new CSVRecordReader(), new FastCSVRecordReader(0, ',', '"', null, 4), f);
+
+        //Multiple files
+        File dir = testDir.newFolder();
+        for (int i = 0; i < 3; i++) {
+            FileUtils.writeStringToFile(new File(dir, i + ".csv"), "header\n" + i + ",1\n" + i + ",2\n",
+                    StandardCharsets.UTF_8);
+        }
+        assertSameOutput(new CSVRecordReader(1, ','), new FastCSVRecordReader(1, ','), dir);
+
+        //Both readers skip the header line of each file, not only of the first file
+        FastCSVRecordReader rr = new FastCSVRecordReader(1, ',');
+        rr.initialize(new FileSplit(dir));
+        int count = 0;
+        while (rr.hasNext()) {
+            List<Writable> next = rr.next();
+            assertEquals(2, next.size());
+            assertNotEquals("header", next.get(0).toString());
+            count++;
+        }
+        assertEquals(6, count);
+    }
+
+    private static void assertSameOutput(RecordReader expReader, RecordReader actReader, File f) throws Exception {
+        expReader.initialize(new FileSplit(f));
+        actReader.initialize(new FileSplit(f));
+        for (int epoch = 0; epoch < 2; epoch++) {
+            int count = 0;
+            while (expReader.hasNext()) {
+                assertTrue(actReader.hasNext());
+                assertEquals(expReader.next(), actReader.next());
+                count++;
+            }
+            assertFalse(actReader.hasNext());
+            assertTrue(count > 0);
+            expReader.reset();
+            actReader.reset();
+        }
+    }
+
+    @Test
+    public void testSchemaAndReuse() throws Exception {
+        Schema schema = new Schema.Builder()
+                .addColumnInteger("int")
+                .addColumnLong("long")
+                .addColumnDouble("double")
+                .addColumnFloat("float")
+                .addColumnString("str")
+                .build();
+
+        FastCSVRecordReader rr = new FastCSVRecordReader(0, ',', '"', schema);
+        rr.initialize(new StringSplit("1,2,3.5,4.25,a\n-5,123456789012,-1e-3,0.1,\"b,c\"\n,x,NaN,1,d"));
+
+        assertEquals(listOf(new IntWritable(1), new LongWritable(2), new DoubleWritable(3.5),
+                new FloatWritable(4.25f), new Text("a")), rr.next());
+        assertEquals(listOf(new IntWritable(-5), new LongWritable(123456789012L), new DoubleWritable(-1e-3),
+                new FloatWritable(0.1f), new Text("b,c")), rr.next());
+        //Missing/invalid values: returned as Text
+        List<Writable> l = rr.next();
+        assertEquals(listOf(new Text(""), new Text("x")), l.subList(0, 2));
+        assertTrue(l.get(2) instanceof DoubleWritable && Double.isNaN(l.get(2).toDouble()));
+        assertEquals(listOf(new FloatWritable(1.0f), new Text("d")), l.subList(3, 5));
+        assertFalse(rr.hasNext());
+
+        rr.reset();
+        rr.setReuseWritables(true);
+        List<Writable> first = rr.next();
+        Writable firstDouble = first.get(2);
+        assertEquals(new DoubleWritable(3.5), firstDouble);
+        List<Writable> second = rr.next();
+        assertSame(first, second);
+        assertSame(firstDouble, second.get(2));
+        assertEquals(new DoubleWritable(-1e-3), second.get(2));
+        assertEquals(new Text("b,c"), second.get(4));
+        List<Writable> third = rr.next();
+        assertEquals(new Text(""), third.get(0));
+
+        //Batches: writables must not be reused
+        rr.reset();
+        List<List<Writable>> batch = rr.next(10);
+        assertEquals(3, batch.size());
+        assertNotSame(batch.get(0), batch.get(1));
+        assertEquals(new DoubleWritable(3.5), batch.get(0).get(2));
+    }
+
+    private static List<Writable> listOf(Writable... writables) {
+        List<Writable> out = new ArrayList<>();
+        for (Writable w : writables) {
+            out.add(w);
+        }
+        return out;
+    }
+
+    @Test
+    public void testNextColumns() throws Exception {
+        File iris = new ClassPathResource("datavec-api/iris.dat").getFile();
+        CSVRecordReader expReader = new CSVRecordReader();
+        expReader.initialize(new FileSplit(iris));
+        List<List<Writable>> exp = new ArrayList<>();
+        while (expReader.hasNext()) {
+            exp.add(expReader.next());
+        }
+
+        FastCSVRecordReader rr = new FastCSVRecordReader();
+        rr.initialize(new FileSplit(iris));
+        //Skip column 2; only parse the first 4 columns
+        double[][] columns = new double[][]{new double[40], new double[40], null, new double[40]};
+        int row = 0;
+        int count;
+        while ((count = rr.nextColumns(columns)) > 0) {
+            for (int i = 0; i < count; i++) {
+                for (int c : new int[]{0, 1, 3}) {
+                    assertEquals(exp.get(row).get(c).toDouble(), columns[c][i], 0.0);
+                }
+                row++;
+            }
+        }
+        assertEquals(exp.size(), row);
+    }
+
+    @Test
+    public void testMetaData() throws Exception {
+        File iris = new ClassPathResource("datavec-api/iris.dat").getFile();
+        FastCSVRecordReader rr = new FastCSVRecordReader();
+        rr.initialize(new FileSplit(iris));
+
+        List<List<Writable>> records = new ArrayList<>();
+        List<RecordMetaData> meta = new ArrayList<>();
+        while (rr.hasNext()) {
+            Record r = rr.nextRecord();
+            records.add(r.getRecord());
+            meta.add(r.getMetaData());
+        }
+
+        List<Record> loaded = rr.loadFromMetaData(meta);
+        assertEquals(records.size(), loaded.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(records.get(i), loaded.get(i).getRecord());
+        }
+    }
+
+    @Test
+    public void testParseNumbers() {
+        Random r = new Random(12345);
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            values.add(String.valueOf(r.nextDouble()));
+            values.add(String.valueOf(r.nextGaussian() * Math.pow(10, r.nextInt(40) - 20)));
+            values.add(String.valueOf((float) r.nextGaussian()));
+            values.add((r.nextInt(2000000) - 1000000) + "." + r.nextInt(10000));
+            values.add(r.nextInt(1000) + "e" + (r.nextInt(50) - 25));
+        }
+        String[] special = {"0", "-0", "-0.0", "+1", ".5", "5.", "1E10", "1e-22", "1e23", "123456789012345678",
+                "9007199254740993", "0.30000000000000004", "NaN", "-Infinity", " 1.5", "1.5d", "0x1p3"};
+        for (String s : special) {
+            values.add(s);
+        }
+
+        for (String s : values) {
+            byte[] b = ("x" + s + "y").getBytes(StandardCharsets.UTF_8);
+            assertEquals(s, Double.doubleToLongBits(Double.parseDouble(s)),
+                    Double.doubleToLongBits(FastCSVRecordReader.parseDouble(b, 1, b.length - 1)));
+            assertEquals(s, Float.floatToIntBits(Float.parseFloat(s)),
+                    Float.floatToIntBits(FastCSVRecordReader.parseFloat(b, 1, b.length - 1)));
+        }
+
+        String[] longs = {"0", "-1", "+12", "123456789012345678", "-9223372036854775808", "9223372036854775807"};
+        for (String s : longs) {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            assertEquals(Long.parseLong(s), FastCSVRecordReader.parseLong(b, 0, b.length));
+        }
+        String[] invalid = {"", "-", "1.0", "9223372036854775808", "1e3", " 1"};
+        for (String s : invalid) {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            try {
+                FastCSVRecordReader.parseLong(b, 0, b.length);
+                fail("Expected exception for \"" + s + "\"");
+            } catch (NumberFormatException e) {
+                //Expected
+            }
+        }
+    }
+}
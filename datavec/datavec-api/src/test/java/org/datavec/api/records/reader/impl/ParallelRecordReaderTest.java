@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.api.records.reader.impl;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.datavec.api.records.reader.RecordReader;
+import org.datavec.api.records.reader.factory.RecordReaderFactory;
+import org.datavec.api.records.reader.impl.csv.CSVRecordReader;
+import org.datavec.api.split.FileSplit;
+import org.datavec.api.split.streams.LineRangeInputStream;
+import org.datavec.api.writable.Writable;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ParallelRecordReaderTest {
+
+    @Rule
+    public TemporaryFolder testDir = new TemporaryFolder();
+
+    @Test
+    public void testLineRangeInputStream() throws Exception {
+        Random r = new Random(12345);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            int len = r.nextInt(20);
+            for (int j = 0; j < len; j++) {
+                sb.append((char) ('a' + r.nextInt(26)));
+            }
+            sb.append(r.nextBoolean() ? "\n" : "\r\n");
+        }
+        sb.append("last line, no terminator");
+        byte[] content = sb.toString().getBytes(StandardCharsets.UTF_8);
+        File f = testDir.newFile();
+        FileUtils.writeByteArrayToFile(f, content);
+
+        for (int test = 0; test < 20; test++) {
+            //Random range boundaries
+            long[] bounds = new long[r.nextInt(10) + 2];
+            for (int i = 1; i < bounds.length - 1; i++) {
+                bounds[i] = r.nextInt(content.length);
+            }
+            bounds[bounds.length - 1] = content.length;
+            Arrays.sort(bounds);
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            for (int i = 0; i < bounds.length - 1; i++) {
+                try (InputStream is = new LineRangeInputStream(f, bounds[i], bounds[i + 1], 1 + r.nextInt(16))) {
+                    byte[] part = IOUtils.toByteArray(is);
+                    //Each part is a whole number of lines
+                    if (part.length > 0 && bounds[i + 1] < content.length) {
+                        assertEquals('\n', part[part.length - 1]);
+                    }
+                    baos.write(part);
+                }
+            }
+            assertArrayEquals(content, baos.toByteArray());
+        }
+    }
+
+    @Test
+    public void testParallelCSV() throws Exception {
+        File dir = testDir.newFolder();
+        Random r = new Random(12345);
+        for (int i = 0; i < 10; i++) {
+            StringBuilder sb = new StringBuilder("a,b,c\n");
+            int n = r.nextInt(200);
+            for (int j = 0; j < n; j++) {
+                sb.append(i).append(",").append(j).append(",").append(r.nextDouble()).append("\n");
+            }
+            FileUtils.writeStringToFile(new File(dir, "file_" + i + ".csv"), sb.toString(), StandardCharsets.UTF_8);
+        }
+
+        RecordReader exp = new CSVRecordReader(1, ',');
+        exp.initialize(new FileSplit(dir));
+        List<List<Writable>> expList = new ArrayList<>();
+        while (exp.hasNext()) {
+            expList.add(exp.next());
+        }
+
+        for (long splitSize : new long[]{1, 100, 1000000}) {
+            ParallelRecordReader rr = new ParallelRecordReader.Builder(new CSVReaderFactory())
+                    .numThreads(4)
+                    .splitSize(splitSize)
+                    .skipNumLines(1)
+                    .batchSize(7)
+                    .readAhead(2)
+                    .build();
+            rr.initialize(new FileSplit(dir));
+            for (int epoch = 0; epoch < 2; epoch++) {
+                List<List<Writable>> actList = new ArrayList<>();
+                while (rr.hasNext()) {
+                    actList.add(rr.next());
+                }
+                assertEquals("splitSize=" + splitSize, expList, actList);
+                rr.reset();
+            }
+            rr.close();
+        }
+    }
+
+    @Test
+    public void testParallelNoSplit() throws Exception {
+        File dir = testDir.newFolder();
+        for (int i = 0; i < 20; i++) {
+            FileUtils.writeStringToFile(new File(dir, "file_" + i + ".txt"), "first " + i + "\nsecond " + i + "\n",
+                    StandardCharsets.UTF_8);
+        }
+
+        RecordReader exp = new LineRecordReader();
+        exp.initialize(new FileSplit(dir));
+        List<List<Writable>> expList = new ArrayList<>();
+        while (exp.hasNext()) {
+            expList.add(exp.next());
+        }
+
+        ParallelRecordReader rr = new ParallelRecordReader.Builder(new RecordReaderFactory() {
+            @Override
+            public RecordReader create(URI uri) {
+                return new LineRecordReader();
+            }
+        }).numThreads(3).splitFiles(false).maxPartsInFlight(2).build();
+        rr.initialize(new FileSplit(dir));
+        assertEquals(expList, rr.next(1000));
+        assertFalse(rr.hasNext());
+        rr.close();
+    }
+
+    private static class CSVReaderFactory implements RecordReaderFactory {
+        @Override
+        public RecordReader create(URI uri) {
+            return new CSVRecordReader();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.api.transform.analysis.sketch;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestSketches {
+
+    @Test
+    public void testHyperLogLog() {
+        for (int n : new int[]{10, 1000, 100000}) {
+            HyperLogLog all = new HyperLogLog();
+            HyperLogLog h1 = new HyperLogLog();
+            HyperLogLog h2 = new HyperLogLog();
+            for (int i = 0; i < n; i++) {
+                //Each value added 3 times, split over the two sketches
+                long hash = HyperLogLog.hash("value_" + i);
+                all.offer(hash);
+                all.offer(hash);
+                all.offer(hash);
+                h1.offer(hash);
+                h2.offer(hash);
+                (i % 2 == 0 ? h1 : h2).offer(hash);
+            }
+            assertEquals(n, all.cardinality(), Math.max(1, 0.03 * n));
+            assertEquals(all.cardinality(), h1.merge(h2).cardinality());
+        }
+    }
+
+    @Test
+    public void testHeavyHitters() {
+        Random r = new Random(12345);
+        Map<String, Long> exact = new HashMap<>();
+        List<HeavyHitters> partials = new ArrayList<>();
+        for (int p = 0; p < 4; p++) {
+            HeavyHitters hh = new HeavyHitters(20);
+            for (int i = 0; i < 10000; i++) {
+                //Skewed distribution: small values are much more frequent
+                String s = String.valueOf((int) Math.floor(Math.pow(r.nextDouble(), 4) * 1000));
+                hh.offer(s);
+                Long c = exact.get(s);
+                exact.put(s, c == null ? 1L : c + 1);
+            }
+            partials.add(hh);
+        }
+        HeavyHitters merged = partials.get(0);
+        for (int p = 1; p < partials.size(); p++) {
+            merged.merge(partials.get(p));
+        }
+
+        assertEquals(40000, merged.getCountTotal());
+        assertTrue(merged.getMaxError() <= 40000 / 21);
+        assertFalse(merged.isExact());
+        for (Map.Entry<String, Long> e : exact.entrySet()) {
+            long est = merged.getCount(e.getKey());
+            assertTrue(est <= e.getValue());
+            assertTrue(est >= e.getValue() - merged.getMaxError());
+        }
+        //Most frequent value is "0"
+        assertEquals("0", merged.getTopK(1).keySet().iterator().next());
+
+        //Exact when the number of distinct values is less than the capacity
+        HeavyHitters small = new HeavyHitters(5);
+        for (String s : new String[]{"a", "b", "a", "c", "a", "b"}) {
+            small.offer(s);
+        }
+        assertTrue(small.isExact());
+        Map<String, Long> expTop = new LinkedHashMap<>();
+        expTop.put("a", 3L);
+        expTop.put("b", 2L);
+        assertEquals(expTop, small.getTopK(2));
+    }
+
+}
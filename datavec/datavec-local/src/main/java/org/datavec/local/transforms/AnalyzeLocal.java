@@ -27,17 +27,23 @@ import org.datavec.api.transform.analysis.histogram.HistogramCounter;
 import org.datavec.api.transform.analysis.quality.QualityAnalysisAddFunction;
 import org.datavec.api.transform.analysis.quality.QualityAnalysisCombineFunction;
 import org.datavec.api.transform.analysis.quality.QualityAnalysisState;
+import org.datavec.api.transform.analysis.sketch.ColumnSketch;
+import org.datavec.api.transform.analysis.sketch.SketchDataAnalysis;
 import org.datavec.api.transform.quality.DataQualityAnalysis;
 import org.datavec.api.transform.quality.columns.ColumnQuality;
 import org.datavec.api.transform.schema.Schema;
 import org.datavec.api.writable.Writable;
 import org.datavec.local.transforms.analysis.aggregate.AnalysisAddFunction;
 import org.datavec.local.transforms.analysis.histogram.HistogramAddFunction;
+import org.datavec.local.transforms.analysis.sketch.SketchAddFunction;
+import org.datavec.local.transforms.analysis.sketch.SketchCombineFunction;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 public class AnalyzeLocal {
     private static final int DEFAULT_MAX_HISTOGRAM_BUCKETS = 30;
+    private static final int APPROXIMATE_CHUNK_SIZE = 1024;
 
     /**
      * Analyse the specified data - returns a DataAnalysis object with summary information about each column
@@ -85,6 +91,121 @@ public class AnalyzeLocal {
         return new DataAnalysis(schema, list);
     }
 
+    /**
+     * Approximate analysis of the specified data, in a single pass with fixed memory per column, using all available
+     * processors. See {@link #analyzeApproximate(Schema, RecordReader, int, SketchAddFunction)} for details.
+     *
+     * @param schema Schema for data
+     * @param rr     Data to analyze
+     * @return SketchDataAnalysis for data
+     */
+    public static SketchDataAnalysis analyzeApproximate(Schema schema, RecordReader rr) {
+        return analyzeApproximate(schema, rr, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Approximate analysis of the specified data, in a single pass with fixed memory per column.
+     * See {@link #analyzeApproximate(Schema, RecordReader, int, SketchAddFunction)} for details.
+     *
+     * @param schema     Schema for data
+     * @param rr         Data to analyze
+     * @param numThreads Number of threads to use for the analysis
+     * @return SketchDataAnalysis for data
+     */
+    public static SketchDataAnalysis analyzeApproximate(Schema schema, RecordReader rr, int numThreads) {
+        return analyzeApproximate(schema, rr, numThreads, new SketchAddFunction(schema));
+    }
+
+    /**
+     * Approximate analysis of the specified data. Unlike {@link #analyze(Schema, RecordReader)}, the data is read only
+     * once, and the memory required is fixed per column (independent of the number of distinct values): distinct
+     * values are estimated with HyperLogLog sketches, the most frequent String and Categorical values with heavy
+     * hitters sketches, and quantiles and histograms of numerical columns from t-digests. See
+     * {@link ColumnSketch} for details.<br>
+     * Records are read by the calling thread and analyzed in chunks by the worker threads, each of which calculates
+     * partial sketches that are merged at the end (using {@link SketchCombineFunction}).
+     *
+     * @param schema     Schema for data
+     * @param rr         Data to analyze
+     * @param numThreads Number of threads to use for the analysis
+     * @param addFn      Add function, configured with the required sketch accuracy
+     * @return SketchDataAnalysis for data
+     */
+    public static SketchDataAnalysis analyzeApproximate(Schema schema, RecordReader rr, int numThreads,
+                                                        final SketchAddFunction addFn) {
+        if (numThreads < 1)
+            throw new IllegalArgumentException("Number of threads must be positive, got " + numThreads);
+
+        List<ColumnSketch> sketches = null;
+        if (numThreads == 1) {
+            while (rr.hasNext()) {
+                sketches = addFn.apply(sketches, rr.next());
+            }
+        } else {
+            final BlockingQueue<List<List<Writable>>> queue = new ArrayBlockingQueue<>(2 * numThreads);
+            ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+            try {
+                List<Future<List<ColumnSketch>>> futures = new ArrayList<>();
+                for (int i = 0; i < numThreads; i++) {
+                    futures.add(executor.submit(() -> {
+                        List<ColumnSketch> partial = null;
+                        while (true) {
+                            List<List<Writable>> chunk = queue.take();
+                            if (chunk.isEmpty())    //End of data
+                                return partial;
+                            for (List<Writable> l : chunk) {
+                                partial = addFn.apply(partial, l);
+                            }
+                        }
+                    }));
+                }
+
+                List<List<Writable>> chunk = new ArrayList<>(APPROXIMATE_CHUNK_SIZE);
+                while (rr.hasNext()) {
+                    chunk.add(rr.next());
+                    if (chunk.size() == APPROXIMATE_CHUNK_SIZE) {
+                        putChunk(queue, chunk, futures);
+                        chunk = new ArrayList<>(APPROXIMATE_CHUNK_SIZE);
+                    }
+                }
+                if (!chunk.isEmpty())
+                    putChunk(queue, chunk, futures);
+                for (int i = 0; i < numThreads; i++) {
+                    putChunk(queue, Collections.<List<Writable>>emptyList(), futures);
+                }
+
+                SketchCombineFunction combineFn = new SketchCombineFunction();
+                for (Future<List<ColumnSketch>> f : futures) {
+                    sketches = combineFn.apply(sketches, f.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted during analysis", e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Error during analysis", e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        if (sketches == null) {
+            //No data
+            sketches = addFn.createSketches();
+        }
+        return new SketchDataAnalysis(schema, sketches);
+    }
+
+    private static void putChunk(BlockingQueue<List<List<Writable>>> queue, List<List<Writable>> chunk,
+                                 List<Future<List<ColumnSketch>>> futures) throws InterruptedException, ExecutionException {
+        //Check for failed workers while waiting, otherwise a failure could block the reader thread indefinitely
+        while (!queue.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+            for (Future<List<ColumnSketch>> f : futures) {
+                if (f.isDone())
+                    f.get();
+            }
+        }
+    }
+
 
     /**
      * Analyze the data quality of sequence data - provides a report on missing values, values that don't comply with schema, etc
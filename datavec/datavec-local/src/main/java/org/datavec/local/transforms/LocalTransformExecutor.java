@@ -23,6 +23,8 @@ import lombok.val;
 import org.apache.arrow.memory.BufferAllocator;
 import org.apache.arrow.memory.RootAllocator;
 import org.apache.arrow.vector.FieldVector;
+import org.datavec.api.records.reader.RecordReader;
+import org.datavec.api.records.writer.RecordWriter;
 import org.datavec.api.transform.DataAction;
 import org.datavec.api.transform.Transform;
 import org.datavec.api.transform.TransformProcess;
@@ -37,6 +39,10 @@ import org.datavec.api.transform.sequence.ConvertToSequence;
 import org.datavec.api.transform.sequence.SequenceSplit;
 import org.datavec.api.writable.*;
 import org.datavec.arrow.ArrowConverter;
+import org.datavec.local.transforms.columnar.ColumnarBatch;
+import org.datavec.local.transforms.columnar.ColumnarConditions;
+import org.datavec.local.transforms.columnar.ColumnarExecutor;
+import org.datavec.local.transforms.columnar.ColumnarTransforms;
 import org.datavec.local.transforms.functions.EmptyRecordFunction;
 import org.datavec.local.transforms.join.ExecuteJoinFromCoGroupFlatMapFunction;
 import org.datavec.local.transforms.join.ExtractKeysFunction;
@@ -51,6 +57,7 @@ import org.nd4j.linalg.function.Function;
 import org.nd4j.linalg.function.FunctionalUtils;
 import org.nd4j.linalg.primitives.Pair;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.function.BiPredicate;
 import java.util.stream.Collectors;
@@ -93,6 +100,74 @@ public class LocalTransformExecutor {
         return execute(filteredSequence, null, transformProcess).getFirst();
     }
 
+    /**
+     * Execute the specified TransformProcess with the given input data, using columnar execution for the transform
+     * and filter steps.<br>
+     * The input data is converted to a {@link ColumnarBatch} with primitive arrays for numerical columns, and the
+     * transform and filter steps at the start of the TransformProcess are executed over whole columns at once (see
+     * {@link ColumnarTransforms} and {@link ColumnarConditions} for details). This avoids creating Writable objects
+     * for each value after each step, and can be substantially faster than {@link #execute(List, TransformProcess)}
+     * for long TransformProcesses. Any remaining steps (after the first step that is not a transform or filter, such as
+     * a reduction) are executed as per {@link #execute(List, TransformProcess)}.<br>
+     * As with {@link #execute(List, TransformProcess)}, output values are of the type of their column in the final
+     * schema, even for columns that are not modified by the TransformProcess: for example, numerical values that are
+     * provided as {@link org.datavec.api.writable.Text} (as from a CSVRecordReader) are returned as IntWritable,
+     * LongWritable or DoubleWritable values.<br>
+     * Note: this method can only be used if the TransformProcess returns non-sequence data. If the executor is in
+     * try/catch mode (see {@link #isTryCatch()}), the TransformProcess is executed record by record instead.
+     *
+     * @param inputWritables   Input data to process
+     * @param transformProcess TransformProcess to execute
+     * @return Processed data
+     */
+    public static List<List<Writable>> executeColumnar(List<List<Writable>> inputWritables,
+                                                       TransformProcess transformProcess) {
+        if (transformProcess.getFinalSchema() instanceof SequenceSchema) {
+            throw new IllegalStateException("Cannot return sequence data with this method");
+        }
+        if (isTryCatch()) {
+            //Errors are handled per record
+            return execute(inputWritables, transformProcess);
+        }
+
+        List<List<Writable>> filteredSequence = inputWritables.stream()
+                .filter(input -> input.size() == transformProcess.getInitialSchema().numColumns()).collect(toList());
+        if(filteredSequence.size() != inputWritables.size()) {
+            log.warn("Filtered out " + (inputWritables.size() - filteredSequence.size()) + " values");
+        }
+
+        List<DataAction> dataActions = transformProcess.getActionList();
+        int numColumnar = ColumnarExecutor.numColumnarSteps(transformProcess);
+        ColumnarBatch batch = ColumnarBatch.fromRecords(transformProcess.getInitialSchema(), filteredSequence);
+        batch = ColumnarExecutor.execute(batch, dataActions.subList(0, numColumnar));
+        List<List<Writable>> out = batch.toRecords();
+        if (numColumnar == dataActions.size() || out.isEmpty()) {
+            return out;
+        }
+
+        TransformProcess remaining = new TransformProcess(batch.getSchema(),
+                new ArrayList<>(dataActions.subList(numColumnar, dataActions.size())));
+        return execute(out, null, remaining).getFirst();
+    }
+
+    /**
+     * Execute the specified TransformProcess on all records from the record reader, writing the output to the record
+     * writer. Records are processed in chunks on multiple threads, and are written in the same order as they are read.
+     * Memory use is independent of the number of records. See {@link StreamingTransformExecutor} for details, and for
+     * configuration of the chunk size, number of threads and ordering.<br>
+     * Note: this method can only be used if the TransformProcess has non-sequence input, and consists only of
+     * transforms and filters.
+     *
+     * @param recordReader     Source of the records to process
+     * @param recordWriter     Record writer for the processed records. Must be initialized; is not closed
+     * @param transformProcess TransformProcess to execute
+     * @return Number of records written
+     */
+    public static long execute(RecordReader recordReader, RecordWriter recordWriter,
+                               TransformProcess transformProcess) throws IOException {
+        return new StreamingTransformExecutor.Builder(transformProcess).build().execute(recordReader, recordWriter);
+    }
+
     /**
      * Execute the specified TransformProcess with the given input data<br>
      * Note: this method can only be used if the TransformProcess
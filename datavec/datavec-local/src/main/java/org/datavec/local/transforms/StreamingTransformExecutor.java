@@ -0,0 +1,290 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.local.transforms;
+
+import lombok.Getter;
+import org.datavec.api.records.reader.RecordReader;
+import org.datavec.api.records.writer.RecordWriter;
+import org.datavec.api.transform.TransformProcess;
+import org.datavec.api.writable.Writable;
+import org.datavec.local.transforms.columnar.ColumnarExecutor;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+
+/**
+ * A streaming, multi-threaded executor for TransformProcesses.<br>
+ * Unlike {@link LocalTransformExecutor#execute(List, TransformProcess)}, the data is not loaded into memory all at
+ * once: records are read from a {@link RecordReader} in chunks of {@link Builder#chunkSize(int)} records, each chunk
+ * is processed on a thread pool (using {@link LocalTransformExecutor#executeColumnar(List, TransformProcess)}), and the
+ * processed records are written to a {@link RecordWriter}. At most {@link Builder#maxChunksInFlight(int)} chunks are
+ * read but not yet written at any time, hence memory use is independent of the size of the input.<br>
+ * Reading from the record reader and writing to the record writer is done only by the thread calling
+ * {@link #execute(RecordReader, RecordWriter)}, hence neither needs to be thread safe.<br>
+ * If {@link Builder#preserveOrder(boolean)} is true (the default), the output records are written in the same order
+ * as the input records. Otherwise chunks are written as soon as they have been processed, which can reduce waiting
+ * when the processing time varies between chunks.<br>
+ * Note: Only TransformProcesses that process each record independently - i.e., that consist of transforms and filters
+ * only, on non-sequence data - can be executed in streaming form. Steps such as reductions, joins, sorting and conversion
+ * to sequences require the full data set and should be executed using {@link LocalTransformExecutor} instead.
+ */
+public class StreamingTransformExecutor {
+
+    @Getter
+    private final TransformProcess transformProcess;
+    @Getter
+    private final int chunkSize;
+    @Getter
+    private final int numThreads;
+    @Getter
+    private final int maxChunksInFlight;
+    @Getter
+    private final boolean preserveOrder;
+
+    protected StreamingTransformExecutor(Builder builder) {
+        this.transformProcess = builder.transformProcess;
+        this.chunkSize = builder.chunkSize;
+        this.numThreads = builder.numThreads;
+        this.maxChunksInFlight = (builder.maxChunksInFlight > 0 ? builder.maxChunksInFlight : 2 * builder.numThreads);
+        this.preserveOrder = builder.preserveOrder;
+
+        if (ColumnarExecutor.numColumnarSteps(transformProcess) != transformProcess.getActionList().size()) {
+            throw new IllegalArgumentException("Cannot execute TransformProcess in streaming form: only " +
+                    "TransformProcesses with non-sequence input and only transform and filter steps are supported");
+        }
+    }
+
+    /**
+     * Execute the TransformProcess on all (remaining) records from the record reader, and write the output to the
+     * record writer. The record writer must already be initialized, and is not closed by this method.
+     *
+     * @param recordReader Source of the records to process
+     * @param recordWriter Record writer to write the processed records to
+     * @return Number of records written
+     * @throws IOException If an error occurs when writing the records
+     */
+    public long execute(RecordReader recordReader, RecordWriter recordWriter) throws IOException {
+        ExecutorService executorService = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+            private final ThreadFactory factory = Executors.defaultThreadFactory();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = factory.newThread(r);
+                t.setName("StreamingTransformExecutor-" + t.getName());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        try {
+            if (preserveOrder) {
+                return executeOrdered(recordReader, recordWriter, executorService);
+            } else {
+                return executeUnordered(recordReader, recordWriter, executorService);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    protected long executeOrdered(RecordReader recordReader, RecordWriter recordWriter,
+                                  ExecutorService executorService) throws IOException {
+        //Chunks in the order they were read
+        Queue<Future<List<List<Writable>>>> inFlight = new ArrayDeque<>();
+        long count = 0;
+        while (recordReader.hasNext()) {
+            inFlight.add(executorService.submit(new ChunkCallable(nextChunk(recordReader))));
+
+            //Write all chunks that are done (in order), and wait for the oldest chunk if too many are in flight
+            while (!inFlight.isEmpty() && (inFlight.size() >= maxChunksInFlight || inFlight.peek().isDone())) {
+                count += write(recordWriter, getResult(inFlight.remove()));
+            }
+        }
+
+        while (!inFlight.isEmpty()) {
+            count += write(recordWriter, getResult(inFlight.remove()));
+        }
+        return count;
+    }
+
+    protected long executeUnordered(RecordReader recordReader, RecordWriter recordWriter,
+                                    ExecutorService executorService) throws IOException {
+        CompletionService<List<List<Writable>>> completionService = new ExecutorCompletionService<>(executorService);
+        int inFlight = 0;
+        long count = 0;
+        while (recordReader.hasNext()) {
+            completionService.submit(new ChunkCallable(nextChunk(recordReader)));
+            inFlight++;
+
+            //Write all chunks that are done, and wait for any chunk if too many are in flight
+            while (inFlight > 0) {
+                Future<List<List<Writable>>> f = (inFlight >= maxChunksInFlight ? take(completionService)
+                        : completionService.poll());
+                if (f == null) {
+                    break;
+                }
+                inFlight--;
+                count += write(recordWriter, getResult(f));
+            }
+        }
+
+        while (inFlight > 0) {
+            inFlight--;
+            count += write(recordWriter, getResult(take(completionService)));
+        }
+        return count;
+    }
+
+    protected List<List<Writable>> nextChunk(RecordReader recordReader) {
+        if (recordReader.batchesSupported()) {
+            return recordReader.next(chunkSize);
+        }
+
+        List<List<Writable>> chunk = new ArrayList<>(chunkSize);
+        while (chunk.size() < chunkSize && recordReader.hasNext()) {
+            chunk.add(recordReader.next());
+        }
+        return chunk;
+    }
+
+    protected static long write(RecordWriter recordWriter, List<List<Writable>> records) throws IOException {
+        if (records.isEmpty()) {
+            return 0;
+        }
+        if (recordWriter.supportsBatch()) {
+            recordWriter.writeBatch(records);
+        } else {
+            for (List<Writable> l : records) {
+                recordWriter.write(l);
+            }
+        }
+        return records.size();
+    }
+
+    protected static Future<List<List<Writable>>> take(CompletionService<List<List<Writable>>> completionService) {
+        try {
+            return completionService.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for chunk to be processed", e);
+        }
+    }
+
+    protected static List<List<Writable>> getResult(Future<List<List<Writable>>> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for chunk to be processed", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException("Error processing chunk", cause);
+        }
+    }
+
+    protected class ChunkCallable implements Callable<List<List<Writable>>> {
+        private final List<List<Writable>> chunk;
+
+        protected ChunkCallable(List<List<Writable>> chunk) {
+            this.chunk = chunk;
+        }
+
+        @Override
+        public List<List<Writable>> call() {
+            return LocalTransformExecutor.executeColumnar(chunk, transformProcess);
+        }
+    }
+
+    public static class Builder {
+
+        private final TransformProcess transformProcess;
+        private int chunkSize = 1024;
+        private int numThreads = Runtime.getRuntime().availableProcessors();
+        private int maxChunksInFlight = -1;
+        private boolean preserveOrder = true;
+
+        /**
+         * @param transformProcess TransformProcess to execute. Must consist of transforms and filters only
+         */
+        public Builder(TransformProcess transformProcess) {
+            this.transformProcess = transformProcess;
+        }
+
+        /**
+         * Number of records to process in each chunk. Default: 1024
+         *
+         * @param chunkSize Number of records per chunk
+         */
+        public Builder chunkSize(int chunkSize) {
+            if (chunkSize <= 0) {
+                throw new IllegalArgumentException("Chunk size must be positive: got " + chunkSize);
+            }
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * Number of threads to use to process the chunks. Default: the number of available processors
+         *
+         * @param numThreads Number of processing threads
+         */
+        public Builder numThreads(int numThreads) {
+            if (numThreads <= 0) {
+                throw new IllegalArgumentException("Number of threads must be positive: got " + numThreads);
+            }
+            this.numThreads = numThreads;
+            return this;
+        }
+
+        /**
+         * Maximum number of chunks that have been read but not yet written. This (together with the chunk size)
+         * bounds the memory use of the executor. Default: 2 * numThreads
+         *
+         * @param maxChunksInFlight Maximum number of chunks in flight
+         */
+        public Builder maxChunksInFlight(int maxChunksInFlight) {
+            if (maxChunksInFlight <= 0) {
+                throw new IllegalArgumentException("Maximum number of chunks in flight must be positive: got "
+                        + maxChunksInFlight);
+            }
+            this.maxChunksInFlight = maxChunksInFlight;
+            return this;
+        }
+
+        /**
+         * If true: write the output records in the same order as the input records. If false: chunks of records may
+         * be written out of order. Default: true
+         *
+         * @param preserveOrder Whether to preserve the order of the records
+         */
+        public Builder preserveOrder(boolean preserveOrder) {
+            this.preserveOrder = preserveOrder;
+            return this;
+        }
+
+        public StreamingTransformExecutor build() {
+            return new StreamingTransformExecutor(this);
+        }
+    }
+}
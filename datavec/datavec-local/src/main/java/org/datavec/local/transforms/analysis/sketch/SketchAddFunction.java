@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.local.transforms.analysis.sketch;
+
+import org.datavec.api.transform.ColumnType;
+import org.datavec.api.transform.analysis.sketch.ColumnSketch;
+import org.datavec.api.transform.analysis.sketch.HeavyHitters;
+import org.datavec.api.transform.analysis.sketch.HyperLogLog;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.writable.Writable;
+import org.nd4j.linalg.function.BiFunction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Add function used for undertaking approximate (single pass, fixed memory) analysis of a data set
+ */
+public class SketchAddFunction implements BiFunction<List<ColumnSketch>, List<Writable>, List<ColumnSketch>> {
+    private final Schema schema;
+    private final int hllPrecision;
+    private final int heavyHitterCapacity;
+
+    public SketchAddFunction(Schema schema) {
+        this(schema, HyperLogLog.DEFAULT_PRECISION, HeavyHitters.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param schema              Schema for the data
+     * @param hllPrecision        Precision for the {@link HyperLogLog} distinct values sketches
+     * @param heavyHitterCapacity Maximum number of values to track for the {@link HeavyHitters} sketches
+     */
+    public SketchAddFunction(Schema schema, int hllPrecision, int heavyHitterCapacity) {
+        this.schema = schema;
+        this.hllPrecision = hllPrecision;
+        this.heavyHitterCapacity = heavyHitterCapacity;
+    }
+
+    /**
+     * @return New, empty sketches for each column of the schema
+     */
+    public List<ColumnSketch> createSketches() {
+        List<ColumnSketch> sketches = new ArrayList<>();
+        for (ColumnType ct : schema.getColumnTypes()) {
+            sketches.add(new ColumnSketch(ct, hllPrecision, heavyHitterCapacity));
+        }
+        return sketches;
+    }
+
+    @Override
+    public List<ColumnSketch> apply(List<ColumnSketch> sketches, List<Writable> writables) {
+        if (sketches == null) {
+            sketches = createSketches();
+        }
+
+        int size = sketches.size();
+        if (size != writables.size())
+            throw new IllegalStateException("Writables list and number of sketches does not match (" + writables.size()
+                            + " vs " + size + ")");
+        for (int i = 0; i < size; i++) {
+            sketches.get(i).add(writables.get(i));
+        }
+
+        return sketches;
+    }
+}
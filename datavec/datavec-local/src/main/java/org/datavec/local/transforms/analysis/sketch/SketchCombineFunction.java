@@ -0,0 +1,47 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.local.transforms.analysis.sketch;
+
+import org.datavec.api.transform.analysis.sketch.ColumnSketch;
+import org.nd4j.linalg.function.BiFunction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Combine function used for undertaking approximate analysis of a data set: merges partial (for example, per-thread)
+ * column sketches
+ */
+public class SketchCombineFunction implements BiFunction<List<ColumnSketch>, List<ColumnSketch>, List<ColumnSketch>> {
+    @Override
+    public List<ColumnSketch> apply(List<ColumnSketch> l1, List<ColumnSketch> l2) {
+        if (l1 == null)
+            return l2;
+        if (l2 == null)
+            return l1;
+
+        int size = l1.size();
+        if (size != l2.size())
+            throw new IllegalStateException("List lengths differ");
+
+        List<ColumnSketch> out = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            out.add(l1.get(i).merge(l2.get(i)));
+        }
+        return out;
+    }
+}
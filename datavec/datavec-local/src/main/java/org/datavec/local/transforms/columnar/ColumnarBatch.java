@@ -0,0 +1,333 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.local.transforms.columnar;
+
+import lombok.Getter;
+import org.datavec.api.transform.ColumnType;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.writable.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A batch of (non-sequence) records, stored column by column.<br>
+ * Columns are stored as primitive arrays where possible: double[] for {@link ColumnType#Double} columns, float[] for
+ * {@link ColumnType#Float}, int[] for {@link ColumnType#Integer} and long[] for {@link ColumnType#Long} and
+ * {@link ColumnType#Time} columns. All other columns - and numerical columns with values that cannot be converted to
+ * the column type, such as {@link NullWritable} or invalid values - are stored as a Writable[] array.<br>
+ * Batches are used by {@link ColumnarExecutor} to execute transforms and filters over whole columns at once, without
+ * creating a Writable object for each value.<br>
+ * Note that values in primitive columns are normalized to the column type, whether or not they are modified: for
+ * example, a {@link Text} value "5" in an Integer column is returned as an {@link IntWritable} by
+ * {@link #getWritable(int, int)} and {@link #toRecords()}. This matches the output of the (Arrow based)
+ * LocalTransformExecutor.execute methods, which also return values of the column type.
+ */
+public class ColumnarBatch {
+
+    @Getter
+    private final Schema schema;
+    private final int numRows;
+    private final Object[] columns;
+
+    /**
+     * @param schema  Schema for the batch
+     * @param numRows Number of rows (records) in the batch
+     * @param columns Column arrays: one of double[], float[], int[], long[] or Writable[] for each column, each
+     *                with length numRows
+     */
+    public ColumnarBatch(Schema schema, int numRows, Object[] columns) {
+        if (columns.length != schema.numColumns()) {
+            throw new IllegalArgumentException("Number of columns (" + columns.length + ") does not match the number "
+                    + "of columns in the schema (" + schema.numColumns() + ")");
+        }
+        for (int i = 0; i < columns.length; i++) {
+            if (length(columns[i]) != numRows) {
+                throw new IllegalArgumentException("Column " + i + " (\"" + schema.getName(i) + "\") has length "
+                        + length(columns[i]) + ", expected " + numRows);
+            }
+        }
+        this.schema = schema;
+        this.numRows = numRows;
+        this.columns = columns;
+    }
+
+    /**
+     * Create a columnar batch from a list of records
+     *
+     * @param schema  Schema of the records
+     * @param records Records to convert. Each record must have the same number of values as the schema has columns
+     * @return Columnar batch
+     */
+    public static ColumnarBatch fromRecords(Schema schema, List<List<Writable>> records) {
+        int numRows = records.size();
+        int numColumns = schema.numColumns();
+        Object[] columns = new Object[numColumns];
+        Writable[][] values = new Writable[numColumns][numRows];
+        for (int i = 0; i < numRows; i++) {
+            List<Writable> record = records.get(i);
+            if (record.size() != numColumns) {
+                throw new IllegalStateException("Record " + i + " has " + record.size() + " values, but schema has "
+                        + numColumns + " columns");
+            }
+            int j = 0;
+            for (Writable w : record) {
+                values[j++][i] = w;
+            }
+        }
+        for (int j = 0; j < numColumns; j++) {
+            columns[j] = toColumn(schema.getType(j), values[j]);
+        }
+        return new ColumnarBatch(schema, numRows, columns);
+    }
+
+    /**
+     * Convert the values for one column to the column representation for the given type: a primitive array if
+     * the type is numerical and all values can be converted, or the original Writable[] array otherwise
+     *
+     * @param type   Type of the column
+     * @param values Values of the column
+     * @return Column array
+     */
+    public static Object toColumn(ColumnType type, Writable[] values) {
+        int n = values.length;
+        try {
+            switch (type) {
+                case Double:
+                    double[] d = new double[n];
+                    for (int i = 0; i < n; i++)
+                        d[i] = values[i].toDouble();
+                    return d;
+                case Float:
+                    float[] f = new float[n];
+                    for (int i = 0; i < n; i++)
+                        f[i] = values[i].toFloat();
+                    return f;
+                case Integer:
+                    int[] in = new int[n];
+                    for (int i = 0; i < n; i++)
+                        in[i] = values[i].toInt();
+                    return in;
+                case Long:
+                case Time:
+                    long[] l = new long[n];
+                    for (int i = 0; i < n; i++)
+                        l[i] = values[i].toLong();
+                    return l;
+                default:
+                    return values;
+            }
+        } catch (UnsupportedOperationException | NumberFormatException e) {
+            //NullWritable, invalid values etc: keep the original values
+            return values;
+        }
+    }
+
+    /**
+     * @return Number of rows (records) in the batch
+     */
+    public int numRows() {
+        return numRows;
+    }
+
+    /**
+     * @return Number of columns in the batch
+     */
+    public int numColumns() {
+        return columns.length;
+    }
+
+    /**
+     * Get the array for the specified column: one of double[], float[], int[], long[] or Writable[]. Note that the
+     * returned array is not a copy
+     *
+     * @param column Index of the column
+     * @return Column array
+     */
+    public Object getColumn(int column) {
+        return columns[column];
+    }
+
+    /**
+     * @return True if the specified column is stored as a primitive array (i.e., not as a Writable[])
+     */
+    public boolean isPrimitive(int column) {
+        return !(columns[column] instanceof Writable[]);
+    }
+
+    /**
+     * Get the value for the specified column and row as a Writable. For primitive columns, a new Writable is created.
+     *
+     * @param column Index of the column
+     * @param row    Index of the row
+     * @return Value as a Writable
+     */
+    public Writable getWritable(int column, int row) {
+        Object c = columns[column];
+        if (c instanceof double[]) {
+            return new DoubleWritable(((double[]) c)[row]);
+        } else if (c instanceof float[]) {
+            return new FloatWritable(((float[]) c)[row]);
+        } else if (c instanceof int[]) {
+            return new IntWritable(((int[]) c)[row]);
+        } else if (c instanceof long[]) {
+            return new LongWritable(((long[]) c)[row]);
+        } else {
+            return ((Writable[]) c)[row];
+        }
+    }
+
+    /**
+     * Get the values for the specified column as Writables. For primitive columns, new Writables are created.
+     *
+     * @param column Index of the column
+     * @return Values of the column
+     */
+    public Writable[] getWritables(int column) {
+        Object c = columns[column];
+        if (c instanceof Writable[]) {
+            return (Writable[]) c;
+        }
+        Writable[] out = new Writable[numRows];
+        for (int i = 0; i < numRows; i++) {
+            out[i] = getWritable(column, i);
+        }
+        return out;
+    }
+
+    /**
+     * @param row Index of the row
+     * @return The specified row, as a list of Writables
+     */
+    public List<Writable> getRow(int row) {
+        List<Writable> out = new ArrayList<>(columns.length);
+        for (int j = 0; j < columns.length; j++) {
+            out.add(getWritable(j, row));
+        }
+        return out;
+    }
+
+    /**
+     * @return All rows of the batch, as lists of Writables. Values in primitive columns are of the column type (see
+     * the class javadoc)
+     */
+    public List<List<Writable>> toRecords() {
+        List<List<Writable>> out = new ArrayList<>(numRows);
+        for (int i = 0; i < numRows; i++) {
+            out.add(getRow(i));
+        }
+        return out;
+    }
+
+    /**
+     * Return a new batch with the same schema, without the specified rows
+     *
+     * @param remove If remove[i] is true, row i is not included in the returned batch
+     * @return Batch without the removed rows
+     */
+    public ColumnarBatch removeRows(boolean[] remove) {
+        int count = 0;
+        for (boolean b : remove) {
+            if (!b)
+                count++;
+        }
+        if (count == numRows) {
+            return this;
+        }
+
+        int[] keep = new int[count];
+        int k = 0;
+        for (int i = 0; i < numRows; i++) {
+            if (!remove[i])
+                keep[k++] = i;
+        }
+
+        Object[] out = new Object[columns.length];
+        for (int j = 0; j < columns.length; j++) {
+            out[j] = gather(columns[j], keep);
+        }
+        return new ColumnarBatch(schema, count, out);
+    }
+
+    protected static Object gather(Object column, int[] rows) {
+        int n = rows.length;
+        if (column instanceof double[]) {
+            double[] c = (double[]) column;
+            double[] o = new double[n];
+            for (int i = 0; i < n; i++)
+                o[i] = c[rows[i]];
+            return o;
+        } else if (column instanceof float[]) {
+            float[] c = (float[]) column;
+            float[] o = new float[n];
+            for (int i = 0; i < n; i++)
+                o[i] = c[rows[i]];
+            return o;
+        } else if (column instanceof int[]) {
+            int[] c = (int[]) column;
+            int[] o = new int[n];
+            for (int i = 0; i < n; i++)
+                o[i] = c[rows[i]];
+            return o;
+        } else if (column instanceof long[]) {
+            long[] c = (long[]) column;
+            long[] o = new long[n];
+            for (int i = 0; i < n; i++)
+                o[i] = c[rows[i]];
+            return o;
+        } else {
+            Writable[] c = (Writable[]) column;
+            Writable[] o = new Writable[n];
+            for (int i = 0; i < n; i++)
+                o[i] = c[rows[i]];
+            return o;
+        }
+    }
+
+    /**
+     * @return A copy of the specified column array
+     */
+    protected static Object copy(Object column) {
+        if (column instanceof double[]) {
+            return ((double[]) column).clone();
+        } else if (column instanceof float[]) {
+            return ((float[]) column).clone();
+        } else if (column instanceof int[]) {
+            return ((int[]) column).clone();
+        } else if (column instanceof long[]) {
+            return ((long[]) column).clone();
+        } else {
+            return Arrays.copyOf((Writable[]) column, ((Writable[]) column).length);
+        }
+    }
+
+    protected static int length(Object column) {
+        if (column instanceof double[]) {
+            return ((double[]) column).length;
+        } else if (column instanceof float[]) {
+            return ((float[]) column).length;
+        } else if (column instanceof int[]) {
+            return ((int[]) column).length;
+        } else if (column instanceof long[]) {
+            return ((long[]) column).length;
+        } else if (column instanceof Writable[]) {
+            return ((Writable[]) column).length;
+        }
+        throw new IllegalArgumentException("Invalid column array type: " + (column == null ? null : column.getClass()));
+    }
+}
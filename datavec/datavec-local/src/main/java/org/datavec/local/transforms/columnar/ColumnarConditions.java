@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.local.transforms.columnar;
+
+import org.datavec.api.transform.condition.BooleanCondition;
+import org.datavec.api.transform.condition.Condition;
+import org.datavec.api.transform.condition.ConditionOp;
+import org.datavec.api.transform.condition.column.BaseColumnCondition;
+import org.datavec.api.transform.condition.column.DoubleColumnCondition;
+import org.datavec.api.transform.condition.column.IntegerColumnCondition;
+import org.datavec.api.transform.condition.column.LongColumnCondition;
+import org.datavec.api.transform.filter.ConditionFilter;
+import org.datavec.api.transform.filter.Filter;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Execution of {@link Filter}s and {@link Condition}s on {@link ColumnarBatch}es.<br>
+ * {@link DoubleColumnCondition}, {@link IntegerColumnCondition} and {@link LongColumnCondition} are evaluated
+ * directly on the primitive column arrays, {@link BooleanCondition}s are evaluated by combining the results of their
+ * conditions, and other single column conditions are evaluated on the values of their column only. All other
+ * conditions and filters fall back to per-record execution.<br>
+ * As with per-record execution, AND and OR conditions are short-circuiting: later conditions are not evaluated for
+ * records where the result is already known.
+ */
+public class ColumnarConditions {
+
+    private ColumnarConditions() {
+    }
+
+    /**
+     * Apply the filter to the batch
+     *
+     * @param batch  Batch to filter
+     * @param filter Filter to apply
+     * @return Batch without the removed records
+     */
+    public static ColumnarBatch filter(ColumnarBatch batch, Filter filter) {
+        boolean[] remove;
+        if (filter instanceof ConditionFilter) {
+            //Condition true -> remove
+            remove = condition(batch, ((ConditionFilter) filter).getCondition());
+        } else {
+            remove = new boolean[batch.numRows()];
+            for (int i = 0; i < remove.length; i++) {
+                remove[i] = filter.removeExample(batch.getRow(i));
+            }
+        }
+        return batch.removeRows(remove);
+    }
+
+    /**
+     * Evaluate the condition for all records in the batch
+     *
+     * @param batch     Batch to evaluate the condition on
+     * @param condition Condition to evaluate
+     * @return Condition result for each record
+     */
+    public static boolean[] condition(ColumnarBatch batch, Condition condition) {
+        boolean[] active = new boolean[batch.numRows()];
+        Arrays.fill(active, true);
+        return condition(batch, condition, active);
+    }
+
+    /**
+     * Evaluate the condition for the active records only. The result is false for all inactive records
+     */
+    protected static boolean[] condition(ColumnarBatch batch, Condition condition, boolean[] active) {
+        int n = batch.numRows();
+        boolean[] out = new boolean[n];
+
+        if (condition instanceof BooleanCondition) {
+            BooleanCondition bc = (BooleanCondition) condition;
+            Condition[] conditions = bc.getConditions();
+            switch (bc.getType()) {
+                case AND:
+                case OR:
+                    boolean isAnd = bc.getType() == BooleanCondition.Type.AND;
+                    //Records still to be decided: AND -> all true so far, OR -> all false so far
+                    boolean[] undecided = active.clone();
+                    for (int i = 0; i < n; i++)
+                        out[i] = isAnd && active[i];
+                    for (Condition c : conditions) {
+                        boolean[] r = condition(batch, c, undecided);
+                        for (int i = 0; i < n; i++) {
+                            if (undecided[i] && r[i] != isAnd) {
+                                out[i] = !isAnd;
+                                undecided[i] = false;
+                            }
+                        }
+                    }
+                    return out;
+                case NOT:
+                    boolean[] r = condition(batch, conditions[0], active);
+                    for (int i = 0; i < n; i++)
+                        out[i] = active[i] && !r[i];
+                    return out;
+                case XOR:
+                    boolean[] r0 = condition(batch, conditions[0], active);
+                    boolean[] r1 = condition(batch, conditions[1], active);
+                    for (int i = 0; i < n; i++)
+                        out[i] = active[i] && (r0[i] ^ r1[i]);
+                    return out;
+                default:
+                    throw new RuntimeException("Unknown condition type: " + bc.getType());
+            }
+        }
+
+        if (isSingleColumnCondition(condition)) {
+            int idx = batch.getSchema().getIndexOfColumn(condition.columnName());
+            Object column = batch.getColumn(idx);
+            if (condition instanceof DoubleColumnCondition && column instanceof double[]) {
+                DoubleColumnCondition c = (DoubleColumnCondition) condition;
+                double[] d = (double[]) column;
+                ConditionOp op = c.getOp();
+                double value = (c.getValue() == null ? Double.NaN : c.getValue());
+                Set<Double> set = c.getSet();
+                for (int i = 0; i < n; i++)
+                    out[i] = active[i] && op.apply(d[i], value, set);
+            } else if (condition instanceof IntegerColumnCondition && column instanceof int[]) {
+                IntegerColumnCondition c = (IntegerColumnCondition) condition;
+                int[] d = (int[]) column;
+                ConditionOp op = c.getOp();
+                int value = (c.getValue() == null ? 0 : c.getValue());
+                Set<Integer> set = c.getSet();
+                for (int i = 0; i < n; i++)
+                    out[i] = active[i] && op.apply(d[i], value, set);
+            } else if (condition instanceof LongColumnCondition && column instanceof long[]) {
+                LongColumnCondition c = (LongColumnCondition) condition;
+                long[] d = (long[]) column;
+                ConditionOp op = c.getOp();
+                long value = (c.getValue() == null ? 0 : c.getValue());
+                Set<Long> set = c.getSet();
+                for (int i = 0; i < n; i++)
+                    out[i] = active[i] && op.apply(d[i], value, set);
+            } else {
+                BaseColumnCondition c = (BaseColumnCondition) condition;
+                for (int i = 0; i < n; i++)
+                    out[i] = active[i] && c.columnCondition(batch.getWritable(idx, i));
+            }
+            return out;
+        }
+
+        //Fall back to per-record execution
+        for (int i = 0; i < n; i++) {
+            out[i] = active[i] && condition.condition(batch.getRow(i));
+        }
+        return out;
+    }
+
+    protected static boolean isSingleColumnCondition(Condition condition) {
+        if (!(condition instanceof BaseColumnCondition)) {
+            return false;
+        }
+        //Subclasses that override condition(List<Writable>) may use more than the value of the one column
+        try {
+            return condition.getClass().getMethod("condition", List.class).getDeclaringClass() == BaseColumnCondition.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.local.transforms.columnar;
+
+import org.datavec.api.transform.DataAction;
+import org.datavec.api.transform.TransformProcess;
+import org.datavec.api.transform.schema.SequenceSchema;
+
+import java.util.List;
+
+/**
+ * Columnar execution of the transform and filter steps of a {@link TransformProcess}, on {@link ColumnarBatch}es.
+ * See {@link ColumnarTransforms} and {@link ColumnarConditions} for details on how the individual steps are executed.<br>
+ * Only (non-sequence) transform and filter steps can be executed in columnar form. Execution of other steps (such as
+ * conversion to sequences, reductions and sorting) is up to the caller: see
+ * {@link org.datavec.local.transforms.LocalTransformExecutor#executeColumnar(List, TransformProcess)}
+ */
+public class ColumnarExecutor {
+
+    private ColumnarExecutor() {
+    }
+
+    /**
+     * @return True if the action can be executed in columnar form: i.e., is a transform or a filter
+     */
+    public static boolean isColumnar(DataAction action) {
+        return action.getTransform() != null || action.getFilter() != null;
+    }
+
+    /**
+     * Get the number of steps at the start of the TransformProcess that can be executed in columnar form. These steps
+     * can be executed with {@link #execute(ColumnarBatch, List)}
+     *
+     * @param transformProcess Transform process
+     * @return Number of steps that can be executed in columnar form, before the first step that cannot be
+     */
+    public static int numColumnarSteps(TransformProcess transformProcess) {
+        if (transformProcess.getInitialSchema() instanceof SequenceSchema) {
+            return 0;
+        }
+        int count = 0;
+        for (DataAction d : transformProcess.getActionList()) {
+            if (!isColumnar(d)) {
+                break;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Execute the specified actions on the batch. All actions must be transforms or filters.
+     * Note that the input batch should not be used after calling this method: transforms may modify the column arrays
+     * of the input batch in place
+     *
+     * @param batch   Batch to execute the actions on
+     * @param actions Actions to execute
+     * @return Output batch
+     */
+    public static ColumnarBatch execute(ColumnarBatch batch, List<DataAction> actions) {
+        for (DataAction d : actions) {
+            if (d.getTransform() != null) {
+                batch = ColumnarTransforms.transform(batch, d.getTransform());
+            } else if (d.getFilter() != null) {
+                batch = ColumnarConditions.filter(batch, d.getFilter());
+            } else {
+                throw new IllegalArgumentException("Cannot execute action in columnar form: only transforms and "
+                        + "filters are supported. Got: " + d);
+            }
+        }
+        return batch;
+    }
+}
@@ -0,0 +1,521 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.local.transforms.columnar;
+
+import org.datavec.api.transform.MathFunction;
+import org.datavec.api.transform.MathOp;
+import org.datavec.api.transform.Transform;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.transform.transform.BaseColumnTransform;
+import org.datavec.api.transform.transform.column.*;
+import org.datavec.api.transform.transform.doubletransform.*;
+import org.datavec.api.transform.transform.integer.IntegerMathOpTransform;
+import org.datavec.api.transform.transform.longtransform.LongMathOpTransform;
+import org.datavec.api.writable.Writable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Execution of {@link Transform}s on {@link ColumnarBatch}es.<br>
+ * Transforms are executed in one of three ways:<br>
+ * (a) Batch implementations operating directly on the primitive column arrays, for the built-in mathematical and
+ * normalization transforms on double, integer and long columns ({@link DoubleMathOpTransform},
+ * {@link DoubleMathFunctionTransform}, {@link DoubleColumnsMathOpTransform}, {@link MinMaxNormalizer},
+ * {@link StandardizeNormalizer}, {@link SubtractMeanNormalizer}, {@link Log2Normalizer},
+ * {@link IntegerMathOpTransform}, {@link LongMathOpTransform}) and for the column removal, renaming, reordering and
+ * duplication transforms<br>
+ * (b) Single column transforms ({@link BaseColumnTransform} subclasses) without a batch implementation are applied
+ * value by value to the one column they modify, leaving all other columns unchanged<br>
+ * (c) All other transforms fall back to per-record execution via {@link Transform#map(List)}<br>
+ * Note that batch implementations modify the column arrays of the input batch where possible: the input batch should
+ * not be used after the transform has been applied.
+ */
+public class ColumnarTransforms {
+
+    private ColumnarTransforms() {
+    }
+
+    /**
+     * Apply the transform to the batch
+     *
+     * @param batch     Batch to transform. Must have the transform's input schema
+     * @param transform Transform to apply
+     * @return Transformed batch
+     */
+    public static ColumnarBatch transform(ColumnarBatch batch, Transform transform) {
+        Schema outputSchema = transform.transform(batch.getSchema());
+        ColumnarBatch out = batchTransform(batch, transform, outputSchema);
+        if (out != null) {
+            return out;
+        }
+        if (isSingleColumnTransform(transform, batch.getSchema(), outputSchema)) {
+            return mapColumn(batch, (BaseColumnTransform) transform, outputSchema);
+        }
+        return mapRows(batch, transform, outputSchema);
+    }
+
+    /**
+     * @return True if the transform has a batch implementation for the given batch - i.e., is executed without
+     * per-value or per-record execution
+     */
+    public static boolean hasBatchImplementation(Transform transform, ColumnarBatch batch) {
+        //Exact class matches only: subclasses may override the per-value behaviour
+        Class<?> c = transform.getClass();
+        if (c == RemoveColumnsTransform.class || c == RemoveAllColumnsExceptForTransform.class
+                || c == ReorderColumnsTransform.class || c == RenameColumnsTransform.class
+                || c == DuplicateColumnsTransform.class) {
+            return true;
+        }
+        if (c == DoubleColumnsMathOpTransform.class) {
+            for (String s : ((DoubleColumnsMathOpTransform) transform).getColumns()) {
+                if (!isNumeric(batch.getColumn(batch.getSchema().getIndexOfColumn(s))))
+                    return false;
+            }
+            return true;
+        }
+        if (transform instanceof BaseColumnTransform) {
+            Object column = batch.getColumn(batch.getSchema().getIndexOfColumn(((BaseColumnTransform) transform).getColumnName()));
+            if (c == IntegerMathOpTransform.class) {
+                return column instanceof int[];
+            } else if (c == LongMathOpTransform.class) {
+                return column instanceof long[];
+            }
+            return column instanceof double[] && (c == DoubleMathOpTransform.class
+                    || c == DoubleMathFunctionTransform.class || c == MinMaxNormalizer.class
+                    || c == StandardizeNormalizer.class || c == SubtractMeanNormalizer.class
+                    || c == Log2Normalizer.class);
+        }
+        return false;
+    }
+
+    protected static ColumnarBatch batchTransform(ColumnarBatch batch, Transform transform, Schema outputSchema) {
+        if (!hasBatchImplementation(transform, batch)) {
+            return null;
+        }
+
+        if (transform instanceof RemoveColumnsTransform || transform instanceof RemoveAllColumnsExceptForTransform
+                || transform instanceof ReorderColumnsTransform) {
+            return selectColumns(batch, outputSchema);
+        } else if (transform instanceof RenameColumnsTransform) {
+            return new ColumnarBatch(outputSchema, batch.numRows(), columns(batch));
+        } else if (transform instanceof DuplicateColumnsTransform) {
+            return duplicateColumns(batch, ((DuplicateColumnsTransform) transform).getColumnsToDuplicate(), outputSchema);
+        } else if (transform instanceof DoubleColumnsMathOpTransform) {
+            return doubleColumnsMathOp(batch, (DoubleColumnsMathOpTransform) transform, outputSchema);
+        }
+
+        BaseColumnTransform t = (BaseColumnTransform) transform;
+        int idx = batch.getSchema().getIndexOfColumn(t.getColumnName());
+        Object column = batch.getColumn(idx);
+        if (t instanceof IntegerMathOpTransform) {
+            IntegerMathOpTransform op = (IntegerMathOpTransform) t;
+            intMathOp((int[]) column, op.getMathOp(), op.getScalar());
+        } else if (t instanceof LongMathOpTransform) {
+            LongMathOpTransform op = (LongMathOpTransform) t;
+            longMathOp((long[]) column, op.getMathOp(), op.getScalar());
+        } else if (t instanceof DoubleMathOpTransform) {
+            DoubleMathOpTransform op = (DoubleMathOpTransform) t;
+            doubleMathOp((double[]) column, op.getMathOp(), op.getScalar());
+        } else if (t instanceof DoubleMathFunctionTransform) {
+            doubleMathFunction((double[]) column, ((DoubleMathFunctionTransform) t).getMathFunction());
+        } else {
+            double[] d = (double[]) column;
+            if (t instanceof MinMaxNormalizer) {
+                MinMaxNormalizer n = (MinMaxNormalizer) t;
+                double ratio = n.getRatio();
+                double min = n.getMin();
+                double newMin = n.getNewMin();
+                for (int i = 0; i < d.length; i++) {
+                    d[i] = Double.isNaN(d[i]) ? 0.0 : ratio * (d[i] - min) + newMin;
+                }
+            } else if (t instanceof StandardizeNormalizer) {
+                StandardizeNormalizer n = (StandardizeNormalizer) t;
+                double mean = n.getMean();
+                double stdev = n.getStdev();
+                for (int i = 0; i < d.length; i++) {
+                    d[i] = (d[i] - mean) / stdev;
+                }
+            } else if (t instanceof SubtractMeanNormalizer) {
+                double mean = ((SubtractMeanNormalizer) t).getMean();
+                for (int i = 0; i < d.length; i++) {
+                    d[i] -= mean;
+                }
+            } else {
+                Log2Normalizer n = (Log2Normalizer) t;
+                double log2 = Math.log(2);
+                double min = n.getColumnMin();
+                double range = n.getColumnMean() - min;
+                double scalingFactor = n.getScalingFactor();
+                for (int i = 0; i < d.length; i++) {
+                    d[i] = Double.isNaN(d[i]) ? 0.0 : scalingFactor * (Math.log((d[i] - min) / range + 1) / log2);
+                }
+            }
+        }
+        return new ColumnarBatch(outputSchema, batch.numRows(), columns(batch));
+    }
+
+    protected static boolean isSingleColumnTransform(Transform transform, Schema inputSchema, Schema outputSchema) {
+        if (!(transform instanceof BaseColumnTransform) || inputSchema.numColumns() != outputSchema.numColumns()) {
+            return false;
+        }
+        //Subclasses that override map(List<Writable>) may modify more than the one column
+        try {
+            return transform.getClass().getMethod("map", List.class).getDeclaringClass() == BaseColumnTransform.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    protected static ColumnarBatch mapColumn(ColumnarBatch batch, BaseColumnTransform transform, Schema outputSchema) {
+        int idx = batch.getSchema().getIndexOfColumn(transform.getColumnName());
+        Writable[] in = batch.getWritables(idx);
+        Writable[] out = new Writable[in.length];
+        for (int i = 0; i < in.length; i++) {
+            out[i] = transform.map(in[i]);
+        }
+        Object[] columns = columns(batch);
+        columns[idx] = ColumnarBatch.toColumn(outputSchema.getType(idx), out);
+        return new ColumnarBatch(outputSchema, batch.numRows(), columns);
+    }
+
+    protected static ColumnarBatch mapRows(ColumnarBatch batch, Transform transform, Schema outputSchema) {
+        List<List<Writable>> out = new ArrayList<>(batch.numRows());
+        for (int i = 0; i < batch.numRows(); i++) {
+            out.add(transform.map(batch.getRow(i)));
+        }
+        return ColumnarBatch.fromRecords(outputSchema, out);
+    }
+
+    protected static ColumnarBatch selectColumns(ColumnarBatch batch, Schema outputSchema) {
+        Object[] columns = new Object[outputSchema.numColumns()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = batch.getColumn(batch.getSchema().getIndexOfColumn(outputSchema.getName(i)));
+        }
+        return new ColumnarBatch(outputSchema, batch.numRows(), columns);
+    }
+
+    protected static ColumnarBatch duplicateColumns(ColumnarBatch batch, List<String> toDuplicate, Schema outputSchema) {
+        //Duplicated columns are inserted directly after the original column
+        Object[] columns = new Object[outputSchema.numColumns()];
+        int j = 0;
+        for (int i = 0; i < batch.numColumns(); i++) {
+            columns[j++] = batch.getColumn(i);
+            if (toDuplicate.contains(batch.getSchema().getName(i))) {
+                columns[j++] = ColumnarBatch.copy(batch.getColumn(i));
+            }
+        }
+        return new ColumnarBatch(outputSchema, batch.numRows(), columns);
+    }
+
+    protected static ColumnarBatch doubleColumnsMathOp(ColumnarBatch batch, DoubleColumnsMathOpTransform transform,
+                                                       Schema outputSchema) {
+        String[] names = transform.getColumns();
+        double[][] in = new double[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            in[i] = toDouble(batch.getColumn(batch.getSchema().getIndexOfColumn(names[i])));
+        }
+
+        int n = batch.numRows();
+        double[] out;
+        switch (transform.getMathOp()) {
+            case Add:
+                out = new double[n];
+                for (double[] d : in) {
+                    for (int i = 0; i < n; i++)
+                        out[i] += d[i];
+                }
+                break;
+            case Multiply:
+                out = new double[n];
+                Arrays.fill(out, 1.0);
+                for (double[] d : in) {
+                    for (int i = 0; i < n; i++)
+                        out[i] *= d[i];
+                }
+                break;
+            case Subtract:
+            case Divide:
+            case Modulus:
+                out = in[0].clone();
+                doubleMathOp(out, transform.getMathOp(), in[1]);
+                break;
+            default:
+                throw new RuntimeException("Invalid mathOp: " + transform.getMathOp()); //Should never happen
+        }
+
+        Object[] columns = new Object[batch.numColumns() + 1];
+        for (int i = 0; i < batch.numColumns(); i++) {
+            columns[i] = batch.getColumn(i);
+        }
+        columns[batch.numColumns()] = out;
+        return new ColumnarBatch(outputSchema, n, columns);
+    }
+
+    protected static void doubleMathOp(double[] x, MathOp op, double[] y) {
+        for (int i = 0; i < x.length; i++) {
+            switch (op) {
+                case Subtract:
+                    x[i] -= y[i];
+                    break;
+                case Divide:
+                    x[i] /= y[i];
+                    break;
+                case Modulus:
+                    x[i] %= y[i];
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown or not implemented math op: " + op);
+            }
+        }
+    }
+
+    protected static void doubleMathOp(double[] x, MathOp op, double scalar) {
+        int n = x.length;
+        switch (op) {
+            case Add:
+                for (int i = 0; i < n; i++)
+                    x[i] += scalar;
+                break;
+            case Subtract:
+                for (int i = 0; i < n; i++)
+                    x[i] -= scalar;
+                break;
+            case Multiply:
+                for (int i = 0; i < n; i++)
+                    x[i] *= scalar;
+                break;
+            case Divide:
+                for (int i = 0; i < n; i++)
+                    x[i] /= scalar;
+                break;
+            case Modulus:
+                for (int i = 0; i < n; i++)
+                    x[i] %= scalar;
+                break;
+            case ReverseSubtract:
+                for (int i = 0; i < n; i++)
+                    x[i] = scalar - x[i];
+                break;
+            case ReverseDivide:
+                for (int i = 0; i < n; i++)
+                    x[i] = scalar / x[i];
+                break;
+            case ScalarMin:
+                for (int i = 0; i < n; i++)
+                    x[i] = Math.min(x[i], scalar);
+                break;
+            case ScalarMax:
+                for (int i = 0; i < n; i++)
+                    x[i] = Math.max(x[i], scalar);
+                break;
+            default:
+                throw new IllegalStateException("Unknown or not implemented math op: " + op);
+        }
+    }
+
+    protected static void intMathOp(int[] x, MathOp op, int scalar) {
+        int n = x.length;
+        switch (op) {
+            case Add:
+                for (int i = 0; i < n; i++)
+                    x[i] += scalar;
+                break;
+            case Subtract:
+                for (int i = 0; i < n; i++)
+                    x[i] -= scalar;
+                break;
+            case Multiply:
+                for (int i = 0; i < n; i++)
+                    x[i] *= scalar;
+                break;
+            case Divide:
+                for (int i = 0; i < n; i++)
+                    x[i] /= scalar;
+                break;
+            case Modulus:
+                for (int i = 0; i < n; i++)
+                    x[i] %= scalar;
+                break;
+            case ReverseSubtract:
+                for (int i = 0; i < n; i++)
+                    x[i] = scalar - x[i];
+                break;
+            case ReverseDivide:
+                for (int i = 0; i < n; i++)
+                    x[i] = scalar / x[i];
+                break;
+            case ScalarMin:
+                for (int i = 0; i < n; i++)
+                    x[i] = Math.min(x[i], scalar);
+                break;
+            case ScalarMax:
+                for (int i = 0; i < n; i++)
+                    x[i] = Math.max(x[i], scalar);
+                break;
+            default:
+                throw new IllegalStateException("Unknown or not implemented math op: " + op);
+        }
+    }
+
+    protected static void longMathOp(long[] x, MathOp op, long scalar) {
+        int n = x.length;
+        switch (op) {
+            case Add:
+                for (int i = 0; i < n; i++)
+                    x[i] += scalar;
+                break;
+            case Subtract:
+                for (int i = 0; i < n; i++)
+                    x[i] -= scalar;
+                break;
+            case Multiply:
+                for (int i = 0; i < n; i++)
+                    x[i] *= scalar;
+                break;
+            case Divide:
+                for (int i = 0; i < n; i++)
+                    x[i] /= scalar;
+                break;
+            case Modulus:
+                for (int i = 0; i < n; i++)
+                    x[i] %= scalar;
+                break;
+            case ReverseSubtract:
+                for (int i = 0; i < n; i++)
+                    x[i] = scalar - x[i];
+                break;
+            case ReverseDivide:
+                for (int i = 0; i < n; i++)
+                    x[i] = scalar / x[i];
+                break;
+            case ScalarMin:
+                for (int i = 0; i < n; i++)
+                    x[i] = Math.min(x[i], scalar);
+                break;
+            case ScalarMax:
+                for (int i = 0; i < n; i++)
+                    x[i] = Math.max(x[i], scalar);
+                break;
+            default:
+                throw new IllegalStateException("Unknown or not implemented math op: " + op);
+        }
+    }
+
+    protected static void doubleMathFunction(double[] x, MathFunction f) {
+        int n = x.length;
+        for (int i = 0; i < n; i++) {
+            double d = x[i];
+            switch (f) {
+                case ABS:
+                    d = Math.abs(d);
+                    break;
+                case ACOS:
+                    d = Math.acos(d);
+                    break;
+                case ASIN:
+                    d = Math.asin(d);
+                    break;
+                case ATAN:
+                    d = Math.atan(d);
+                    break;
+                case CEIL:
+                    d = Math.ceil(d);
+                    break;
+                case COS:
+                    d = Math.cos(d);
+                    break;
+                case COSH:
+                    d = Math.cosh(d);
+                    break;
+                case EXP:
+                    d = Math.exp(d);
+                    break;
+                case FLOOR:
+                    d = Math.floor(d);
+                    break;
+                case LOG:
+                    d = Math.log(d);
+                    break;
+                case LOG10:
+                    d = Math.log10(d);
+                    break;
+                case SIGNUM:
+                    d = Math.signum(d);
+                    break;
+                case SIN:
+                    d = Math.sin(d);
+                    break;
+                case SINH:
+                    d = Math.sinh(d);
+                    break;
+                case SQRT:
+                    d = Math.sqrt(d);
+                    break;
+                case TAN:
+                    d = Math.tan(d);
+                    break;
+                case TANH:
+                    d = Math.tanh(d);
+                    break;
+                default:
+                    throw new RuntimeException("Unknown function: " + f);
+            }
+            x[i] = d;
+        }
+    }
+
+    protected static boolean isNumeric(Object column) {
+        return column instanceof double[] || column instanceof float[] || column instanceof int[]
+                || column instanceof long[];
+    }
+
+    /**
+     * Get the values of a numeric primitive column as doubles. Note that double[] columns are returned directly,
+     * not copied
+     */
+    protected static double[] toDouble(Object column) {
+        if (column instanceof double[]) {
+            return (double[]) column;
+        }
+        int n = ColumnarBatch.length(column);
+        double[] out = new double[n];
+        if (column instanceof float[]) {
+            float[] f = (float[]) column;
+            for (int i = 0; i < n; i++)
+                out[i] = f[i];
+        } else if (column instanceof int[]) {
+            int[] in = (int[]) column;
+            for (int i = 0; i < n; i++)
+                out[i] = in[i];
+        } else {
+            long[] l = (long[]) column;
+            for (int i = 0; i < n; i++)
+                out[i] = l[i];
+        }
+        return out;
+    }
+
+    private static Object[] columns(ColumnarBatch batch) {
+        Object[] out = new Object[batch.numColumns()];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = batch.getColumn(i);
+        }
+        return out;
+    }
+}
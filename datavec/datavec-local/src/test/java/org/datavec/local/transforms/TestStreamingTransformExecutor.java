@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.local.transforms;
+
+import org.datavec.api.records.reader.impl.collection.CollectionRecordReader;
+import org.datavec.api.records.reader.impl.csv.CSVRecordReader;
+import org.datavec.api.records.writer.impl.csv.CSVRecordWriter;
+import org.datavec.api.split.FileSplit;
+import org.datavec.api.split.partition.NumberOfRecordsPartitioner;
+import org.datavec.api.transform.MathOp;
+import org.datavec.api.transform.ReduceOp;
+import org.datavec.api.transform.TransformProcess;
+import org.datavec.api.transform.condition.ConditionOp;
+import org.datavec.api.transform.condition.column.DoubleColumnCondition;
+import org.datavec.api.transform.reduce.Reducer;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.writable.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class TestStreamingTransformExecutor {
+
+    @Rule
+    public TemporaryFolder testDir = new TemporaryFolder();
+
+    private static Schema getSchema() {
+        return new Schema.Builder()
+                .addColumnInteger("intCol")
+                .addColumnCategorical("catCol", "s0", "s1", "s2")
+                .addColumnDouble("doubleCol")
+                .build();
+    }
+
+    private static List<List<Writable>> getData(int n) {
+        Random r = new Random(12345);
+        List<List<Writable>> out = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            out.add(Arrays.<Writable>asList(new IntWritable(i), new Text("s" + (i % 3)),
+                    new DoubleWritable(r.nextDouble())));
+        }
+        return out;
+    }
+
+    private static TransformProcess getTransformProcess() {
+        return new TransformProcess.Builder(getSchema())
+                .filter(new DoubleColumnCondition("doubleCol", ConditionOp.LessThan, 0.3))
+                .integerMathOp("intCol", MathOp.Multiply, 2)
+                .categoricalToInteger("catCol")
+                .doubleMathOp("doubleCol", MathOp.Subtract, 0.5)
+                .build();
+    }
+
+    @Test
+    public void testStreamingExecution() throws Exception {
+        TransformProcess tp = getTransformProcess();
+        List<List<Writable>> exp = LocalTransformExecutor.execute(getData(1000), tp);
+
+        for (boolean preserveOrder : new boolean[]{true, false}) {
+            for (int chunkSize : new int[]{1, 7, 2000}) {
+                File f = testDir.newFile();
+                CSVRecordWriter writer = new CSVRecordWriter();
+                writer.initialize(new FileSplit(f), new NumberOfRecordsPartitioner());
+
+                StreamingTransformExecutor executor = new StreamingTransformExecutor.Builder(tp)
+                        .chunkSize(chunkSize)
+                        .numThreads(4)
+                        .maxChunksInFlight(3)
+                        .preserveOrder(preserveOrder)
+                        .build();
+                long count = executor.execute(new CollectionRecordReader(getData(1000)), writer);
+                writer.close();
+                assertEquals(exp.size(), count);
+
+                List<String> expLines = toStrings(exp);
+                List<String> actLines = readCsv(f);
+                if (!preserveOrder) {
+                    Collections.sort(expLines);
+                    Collections.sort(actLines);
+                }
+                assertEquals("preserveOrder=" + preserveOrder + ", chunkSize=" + chunkSize, expLines, actLines);
+            }
+        }
+    }
+
+    @Test
+    public void testStreamingExecutionStatic() throws Exception {
+        TransformProcess tp = getTransformProcess();
+        List<List<Writable>> exp = LocalTransformExecutor.execute(getData(100), tp);
+
+        File f = testDir.newFile();
+        CSVRecordWriter writer = new CSVRecordWriter();
+        writer.initialize(new FileSplit(f), new NumberOfRecordsPartitioner());
+        LocalTransformExecutor.execute(new CollectionRecordReader(getData(100)), writer, tp);
+        writer.close();
+
+        assertEquals(toStrings(exp), readCsv(f));
+    }
+
+    @Test
+    public void testStreamingExecutionUnsupported() {
+        TransformProcess tp = new TransformProcess.Builder(getSchema())
+                .reduce(new Reducer.Builder(ReduceOp.Sum).keyColumns("catCol").build())
+                .build();
+        try {
+            new StreamingTransformExecutor.Builder(tp).build();
+            fail("Expected exception");
+        } catch (IllegalArgumentException e) {
+            //Expected: reductions require the full data set
+        }
+    }
+
+    private static List<String> toStrings(List<List<Writable>> records) {
+        List<String> out = new ArrayList<>();
+        for (List<Writable> l : records) {
+            out.add(l.toString());
+        }
+        return out;
+    }
+
+    private static List<String> readCsv(File f) throws Exception {
+        CSVRecordReader rr = new CSVRecordReader();
+        rr.initialize(new FileSplit(f));
+        List<List<Writable>> out = new ArrayList<>();
+        while (rr.hasNext()) {
+            out.add(rr.next());
+        }
+        rr.close();
+        return toStrings(out);
+    }
+}
@@ -17,12 +17,20 @@
 package org.datavec.local.transforms.analysis;
 
 import org.datavec.api.records.reader.RecordReader;
+import org.datavec.api.records.reader.impl.collection.CollectionRecordReader;
 import org.datavec.api.records.reader.impl.csv.CSVRecordReader;
 import org.datavec.api.split.FileSplit;
 import org.datavec.api.transform.analysis.DataAnalysis;
+import org.datavec.api.transform.analysis.columns.CategoricalAnalysis;
+import org.datavec.api.transform.analysis.columns.DoubleAnalysis;
 import org.datavec.api.transform.analysis.columns.NumericalColumnAnalysis;
+import org.datavec.api.transform.analysis.sketch.ColumnSketch;
+import org.datavec.api.transform.analysis.sketch.SketchDataAnalysis;
 import org.datavec.api.transform.schema.Schema;
 import org.datavec.api.util.ndarray.RecordConverter;
+import org.datavec.api.writable.DoubleWritable;
+import org.datavec.api.writable.IntWritable;
+import org.datavec.api.writable.Text;
 import org.datavec.api.writable.Writable;
 import org.datavec.local.transforms.AnalyzeLocal;
 import org.junit.Rule;
@@ -32,8 +40,12 @@ import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.io.ClassPathResource;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 public class TestAnalyzeLocal {
@@ -76,4 +88,59 @@ public class TestAnalyzeLocal {
 
     }
 
+    @Test
+    public void testAnalyzeApproximate() throws Exception {
+        Schema s = new Schema.Builder()
+                .addColumnInteger("int")
+                .addColumnDouble("double")
+                .addColumnString("str")
+                .addColumnCategorical("cat", "a", "b", "c")
+                .build();
+
+        Random r = new Random(12345);
+        List<List<Writable>> data = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            data.add(Arrays.<Writable>asList(new IntWritable(r.nextInt(500)), new DoubleWritable(r.nextGaussian()),
+                    new Text("s" + i), new Text(i % 10 == 0 ? "c" : (i % 3 == 0 ? "b" : "a"))));
+        }
+
+        DataAnalysis exact = AnalyzeLocal.analyze(s, new CollectionRecordReader(data));
+        SketchDataAnalysis single = AnalyzeLocal.analyzeApproximate(s, new CollectionRecordReader(data), 1);
+        SketchDataAnalysis parallel = AnalyzeLocal.analyzeApproximate(s, new CollectionRecordReader(data), 4);
+
+        System.out.println(parallel);
+
+        for (SketchDataAnalysis sda : new SketchDataAnalysis[]{single, parallel}) {
+            for (ColumnSketch cs : sda.getColumnSketches()) {
+                assertEquals(20000, cs.getCountTotal());
+            }
+            assertEquals(500, sda.getColumnSketch("int").getDistinctCount(), 10);
+            assertEquals(20000, sda.getColumnSketch("double").getDistinctCount(), 600);
+            assertEquals(20000, sda.getColumnSketch("str").getDistinctCount(), 600);
+            assertEquals(3, sda.getColumnSketch("cat").getDistinctCount());
+            assertEquals(0.0, sda.getColumnSketch("double").getQuantile(0.5), 0.05);
+
+            //Categorical counts are exact (fewer categories than the heavy hitters capacity)
+            assertEquals(exact.getColumnAnalysis("cat"), sda.toDataAnalysis().getColumnAnalysis("cat"));
+            Map<String, Long> catCounts = ((CategoricalAnalysis) exact.getColumnAnalysis("cat")).getMapOfCounts();
+            assertEquals(catCounts, sda.getColumnSketch("cat").getTopK(3));
+
+            //Numerical statistics are exact; histograms are approximate
+            DataAnalysis da = sda.toDataAnalysis();
+            DoubleAnalysis expD = (DoubleAnalysis) exact.getColumnAnalysis("double");
+            DoubleAnalysis actD = (DoubleAnalysis) da.getColumnAnalysis("double");
+            assertEquals(expD.getMin(), actD.getMin(), 0.0);
+            assertEquals(expD.getMax(), actD.getMax(), 0.0);
+            assertEquals(expD.getMean(), actD.getMean(), 1e-9);
+            assertEquals(expD.getSampleStdev(), actD.getSampleStdev(), 1e-9);
+            assertArrayEquals(expD.getHistogramBuckets(), actD.getHistogramBuckets(), 1e-9);
+            long sum = 0;
+            for (int i = 0; i < actD.getHistogramBucketCounts().length; i++) {
+                assertEquals(expD.getHistogramBucketCounts()[i], actD.getHistogramBucketCounts()[i], 100);
+                sum += actD.getHistogramBucketCounts()[i];
+            }
+            assertEquals(20000, sum);
+        }
+    }
+
 }
@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.local.transforms.columnar;
+
+import org.datavec.api.transform.MathFunction;
+import org.datavec.api.transform.MathOp;
+import org.datavec.api.transform.ReduceOp;
+import org.datavec.api.transform.TransformProcess;
+import org.datavec.api.transform.condition.BooleanCondition;
+import org.datavec.api.transform.condition.ConditionOp;
+import org.datavec.api.transform.condition.column.CategoricalColumnCondition;
+import org.datavec.api.transform.condition.column.DoubleColumnCondition;
+import org.datavec.api.transform.condition.column.IntegerColumnCondition;
+import org.datavec.api.transform.condition.column.NullWritableColumnCondition;
+import org.datavec.api.transform.reduce.Reducer;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.transform.transform.doubletransform.MinMaxNormalizer;
+import org.datavec.api.transform.transform.doubletransform.StandardizeNormalizer;
+import org.datavec.api.writable.*;
+import org.datavec.local.transforms.LocalTransformExecutor;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TestColumnarExecution {
+
+    private static Schema getSchema() {
+        return new Schema.Builder()
+                .addColumnInteger("intCol")
+                .addColumnCategorical("catCol", "s0", "s1", "s2")
+                .addColumnDouble("doubleCol")
+                .addColumnDouble("doubleCol2")
+                .addColumnLong("longCol")
+                .addColumnString("strCol")
+                .build();
+    }
+
+    private static List<List<Writable>> getData(int n) {
+        Random r = new Random(12345);
+        List<List<Writable>> out = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            out.add(Arrays.<Writable>asList(new IntWritable(i), new Text("s" + (i % 3)),
+                    new DoubleWritable(r.nextDouble()), new DoubleWritable(10 * r.nextGaussian()),
+                    new LongWritable(r.nextInt(1000)), new Text("str" + i)));
+        }
+        return out;
+    }
+
+    private static TransformProcess getTransformProcess() {
+        return new TransformProcess.Builder(getSchema())
+                .integerMathOp("intCol", MathOp.Add, 1)
+                .doubleMathOp("doubleCol", MathOp.Multiply, 2.0)
+                .filter(new BooleanCondition(BooleanCondition.Type.OR,
+                        new DoubleColumnCondition("doubleCol", ConditionOp.LessThan, 0.2),
+                        new CategoricalColumnCondition("catCol", ConditionOp.Equal, "s2")))
+                .doubleColumnsMathOp("sum", MathOp.Add, "doubleCol", "doubleCol2")
+                .doubleColumnsMathOp("ratio", MathOp.Divide, "doubleCol2", "doubleCol")
+                .doubleMathFunction("doubleCol2", MathFunction.ABS)
+                .transform(new MinMaxNormalizer("doubleCol", 0, 2))
+                .transform(new StandardizeNormalizer("sum", 1.0, 2.0))
+                .longMathOp("longCol", MathOp.Modulus, 7)
+                .appendStringColumnTransform("strCol", "_x")
+                .categoricalToInteger("catCol")
+                .duplicateColumn("intCol", "intColCopy")
+                .integerMathOp("intColCopy", MathOp.Multiply, 3)
+                .conditionalReplaceValueTransform("doubleCol2", new DoubleWritable(0.0),
+                        new IntegerColumnCondition("intCol", ConditionOp.GreaterThan, 50))
+                .renameColumn("doubleCol2", "abs")
+                .removeColumns("strCol")
+                .reorderColumns("sum", "intCol")
+                .filter(new IntegerColumnCondition("intColCopy", ConditionOp.InSet,
+                        new java.util.HashSet<>(Arrays.asList(3, 6, 9, 12))))
+                .build();
+    }
+
+    @Test
+    public void testColumnarExecution() {
+        TransformProcess tp = getTransformProcess();
+        List<List<Writable>> in = getData(100);
+
+        List<List<Writable>> exp = LocalTransformExecutor.execute(in, tp);
+        List<List<Writable>> out = LocalTransformExecutor.executeColumnar(getData(100), tp);
+        assertEquals(exp.size(), out.size());
+        assertEquals(exp, out);
+        assertEquals(tp.getFinalSchema().numColumns(), out.get(0).size());
+    }
+
+    @Test
+    public void testColumnarExecutionWithReduction() {
+        TransformProcess tp = new TransformProcess.Builder(getSchema())
+                .doubleMathOp("doubleCol", MathOp.Add, 1.0)
+                .filter(new DoubleColumnCondition("doubleCol2", ConditionOp.LessThan, 0.0))
+                .removeColumns("strCol", "intCol", "longCol")
+                .reduce(new Reducer.Builder(ReduceOp.Sum)
+                        .keyColumns("catCol")
+                        .meanColumns("doubleCol").build())
+                .doubleMathOp("sum(doubleCol2)", MathOp.Multiply, 2.0)
+                .build();
+        assertEquals(3, ColumnarExecutor.numColumnarSteps(tp));
+
+        List<List<Writable>> exp = LocalTransformExecutor.execute(getData(50), tp);
+        List<List<Writable>> out = LocalTransformExecutor.executeColumnar(getData(50), tp);
+        assertEquals(3, out.size());
+        assertEquals(exp, out);
+    }
+
+    @Test
+    public void testTextInputNormalized() {
+        //Numerical values as Text, as produced by CSVRecordReader for example
+        List<List<Writable>> in = new ArrayList<>();
+        for (List<Writable> l : getData(50)) {
+            List<Writable> text = new ArrayList<>();
+            for (Writable w : l) {
+                text.add(new Text(w.toString()));
+            }
+            in.add(text);
+        }
+
+        TransformProcess tp = new TransformProcess.Builder(getSchema())
+                .filter(new IntegerColumnCondition("intCol", ConditionOp.GreaterThan, 40))
+                .doubleMathOp("doubleCol", MathOp.Multiply, 2.0)
+                .duplicateColumn("intCol", "intColCopy")
+                .integerMathOp("intColCopy", MathOp.Add, 1)
+                .renameColumn("longCol", "renamed")
+                .build();
+
+        List<List<Writable>> exp = LocalTransformExecutor.execute(in, tp);
+        List<List<Writable>> out = LocalTransformExecutor.executeColumnar(in, tp);
+        assertEquals(41, out.size());
+        assertEquals(exp, out);
+
+        //Values in numerical columns are of the column type, whether or not the column was modified
+        Schema outSchema = tp.getFinalSchema();
+        for (int i = 0; i < out.size(); i++) {
+            List<Writable> l = out.get(i);
+            List<Writable> orig = in.get(i);
+            assertEquals(new IntWritable(orig.get(0).toInt()), l.get(outSchema.getIndexOfColumn("intCol")));
+            assertEquals(new DoubleWritable(orig.get(3).toDouble()), l.get(outSchema.getIndexOfColumn("doubleCol2")));
+            assertEquals(new LongWritable(orig.get(4).toLong()), l.get(outSchema.getIndexOfColumn("renamed")));
+            assertEquals(new DoubleWritable(2.0 * orig.get(2).toDouble()), l.get(outSchema.getIndexOfColumn("doubleCol")));
+            assertEquals(new IntWritable(orig.get(0).toInt() + 1), l.get(outSchema.getIndexOfColumn("intColCopy")));
+            //Non-numerical columns: unchanged
+            assertEquals(orig.get(1), l.get(outSchema.getIndexOfColumn("catCol")));
+            assertEquals(orig.get(5), l.get(outSchema.getIndexOfColumn("strCol")));
+        }
+    }
+
+    @Test
+    public void testColumnarBatch() {
+        Schema schema = getSchema();
+        List<List<Writable>> data = getData(10);
+        //Invalid value in a numerical column: column should be stored as Writables
+        data.get(3).set(3, NullWritable.INSTANCE);
+
+        ColumnarBatch batch = ColumnarBatch.fromRecords(schema, data);
+        assertEquals(10, batch.numRows());
+        assertEquals(6, batch.numColumns());
+        assertTrue(batch.getColumn(0) instanceof int[]);
+        assertTrue(batch.getColumn(1) instanceof Writable[]);
+        assertTrue(batch.getColumn(2) instanceof double[]);
+        assertFalse(batch.isPrimitive(3));
+        assertTrue(batch.getColumn(4) instanceof long[]);
+        assertEquals(data, batch.toRecords());
+
+        boolean[] remove = new boolean[10];
+        remove[0] = true;
+        remove[3] = true;
+        ColumnarBatch filtered = batch.removeRows(remove);
+        assertEquals(8, filtered.numRows());
+        List<List<Writable>> exp = new ArrayList<>(data);
+        exp.remove(3);
+        exp.remove(0);
+        assertEquals(exp, filtered.toRecords());
+
+        //Filters on the Writable column
+        TransformProcess tp = new TransformProcess.Builder(schema)
+                .filter(new NullWritableColumnCondition("doubleCol2"))
+                .doubleMathOp("doubleCol2", MathOp.Subtract, 1.0)
+                .build();
+        ColumnarBatch out = ColumnarExecutor.execute(ColumnarBatch.fromRecords(schema, data), tp.getActionList());
+        assertEquals(9, out.numRows());
+        //Output of the per-value transform is stored as a primitive column again
+        assertTrue(out.getColumn(3) instanceof double[]);
+        for (int i = 0; i < 9; i++) {
+            List<Writable> orig = data.get(i < 3 ? i : i + 1);
+            assertEquals(orig.get(3).toDouble() - 1.0, out.getWritable(3, i).toDouble(), 1e-12);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.datavec.timing;
+
+import org.datavec.api.records.reader.RecordReader;
+import org.datavec.api.records.reader.impl.csv.CSVRecordReader;
+import org.datavec.api.records.reader.impl.csv.FastCSVRecordReader;
+import org.datavec.api.split.FileSplit;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.writable.Writable;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the time taken to read a wide numerical CSV file (and convert all values to doubles) with
+ * {@link CSVRecordReader} and the different modes of {@link FastCSVRecordReader}
+ */
+public class CSVTimingTest {
+
+    private static final int NUM_ROWS = 20000;
+    private static final int NUM_COLUMNS = 50;
+    private static final int NUM_RUNS = 3;
+
+    @Rule
+    public TemporaryFolder testDir = new TemporaryFolder();
+
+    @Test
+    public void testCSVReaderTiming() throws Exception {
+        File f = testDir.newFile("timing.csv");
+        Random r = new Random(12345);
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(f))) {
+            for (int i = 0; i < NUM_ROWS; i++) {
+                for (int j = 0; j < NUM_COLUMNS; j++) {
+                    if (j > 0)
+                        bw.write(",");
+                    //Values with 6 decimal places, as is typical for real data
+                    bw.write(String.valueOf(Math.round(r.nextGaussian() * 1e6) / 1e6));
+                }
+                bw.write("\n");
+            }
+        }
+
+        Schema.Builder sb = new Schema.Builder();
+        for (int j = 0; j < NUM_COLUMNS; j++) {
+            sb.addColumnDouble("col" + j);
+        }
+        Schema schema = sb.build();
+
+        //Warm up, then time each
+        double expSum = 0;
+        long csvRecordReader = 0;
+        long fastText = 0;
+        long fastSchemaReuse = 0;
+        long fastColumns = 0;
+        for (int run = 0; run <= NUM_RUNS; run++) {
+            long start = System.nanoTime();
+            expSum = sumAll(new CSVRecordReader(), f);
+            long t1 = System.nanoTime();
+            assertEquals(expSum, sumAll(new FastCSVRecordReader(), f), 0.0);
+            long t2 = System.nanoTime();
+            FastCSVRecordReader reuse = new FastCSVRecordReader(0, ',', '"', schema);
+            reuse.setReuseWritables(true);
+            assertEquals(expSum, sumAll(reuse, f), 0.0);
+            long t3 = System.nanoTime();
+            assertEquals(expSum, sumColumns(f), 0.0);
+            long t4 = System.nanoTime();
+
+            if (run > 0) {
+                csvRecordReader += t1 - start;
+                fastText += t2 - t1;
+                fastSchemaReuse += t3 - t2;
+                fastColumns += t4 - t3;
+            }
+        }
+
+        System.out.println("Reading " + NUM_ROWS + " rows x " + NUM_COLUMNS + " columns, average of " + NUM_RUNS
+                + " runs:");
+        System.out.println("CSVRecordReader:                         " + csvRecordReader / NUM_RUNS / 1000000 + " ms");
+        System.out.println("FastCSVRecordReader (Text):              " + fastText / NUM_RUNS / 1000000 + " ms");
+        System.out.println("FastCSVRecordReader (schema, reuse):     " + fastSchemaReuse / NUM_RUNS / 1000000 + " ms");
+        System.out.println("FastCSVRecordReader (primitive columns): " + fastColumns / NUM_RUNS / 1000000 + " ms");
+    }
+
+    private static double sumAll(RecordReader rr, File f) throws Exception {
+        rr.initialize(new FileSplit(f));
+        double sum = 0;
+        while (rr.hasNext()) {
+            List<Writable> l = rr.next();
+            for (Writable w : l) {
+                sum += w.toDouble();
+            }
+        }
+        rr.close();
+        return sum;
+    }
+
+    private static double sumColumns(File f) throws Exception {
+        FastCSVRecordReader rr = new FastCSVRecordReader();
+        rr.initialize(new FileSplit(f));
+        double[][] columns = new double[NUM_COLUMNS][1024];
+        double sum = 0;
+        int count;
+        while ((count = rr.nextColumns(columns)) > 0) {
+            //Sum in row order, for the same result as the other approaches
+            for (int i = 0; i < count; i++) {
+                for (int j = 0; j < NUM_COLUMNS; j++) {
+                    sum += columns[j][i];
+                }
+            }
+        }
+        rr.close();
+        return sum;
+    }
+}
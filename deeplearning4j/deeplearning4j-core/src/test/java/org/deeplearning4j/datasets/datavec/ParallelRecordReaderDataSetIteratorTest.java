@@ -0,0 +1,247 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.datasets.datavec;
+
+import org.apache.commons.io.FileUtils;
+import org.datavec.api.records.reader.RecordReader;
+import org.datavec.api.records.reader.impl.csv.CSVRecordReader;
+import org.datavec.api.split.FileSplit;
+import org.deeplearning4j.BaseDL4JTest;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.File;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ParallelRecordReaderDataSetIteratorTest extends BaseDL4JTest {
+
+    @Rule
+    public TemporaryFolder testDir = new TemporaryFolder();
+
+    @Override
+    public DataType getDataType(){
+        return DataType.FLOAT;
+    }
+
+    /**
+     * Create numFiles CSV files with numLines lines each: "fileIdx,lineIdx,label"
+     */
+    private File createCsvFiles(int numFiles, int numLines) throws Exception {
+        File dir = testDir.newFolder();
+        for (int i = 0; i < numFiles; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0; j < numLines; j++) {
+                sb.append(i).append(",").append(j).append(",").append((i + j) % 3).append("\n");
+            }
+            FileUtils.writeStringToFile(new File(dir, String.format("file_%03d.csv", i)), sb.toString(), StandardCharsets.UTF_8);
+        }
+        return dir;
+    }
+
+    private static List<String> allExamples(DataSetIterator iter) {
+        List<String> out = new ArrayList<>();
+        while (iter.hasNext()) {
+            INDArray f = iter.next().getFeatures();
+            for (int i = 0; i < f.size(0); i++) {
+                out.add(f.getInt(i, 0) + "," + f.getInt(i, 1));
+            }
+        }
+        return out;
+    }
+
+    @Test
+    public void testSameDataAsSingleThreaded() throws Exception {
+        File dir = createCsvFiles(8, 25);
+
+        RecordReader rr = new CSVRecordReader();
+        rr.initialize(new FileSplit(dir));
+        DataSetIterator expIter = new RecordReaderDataSetIterator.Builder(rr, 10)
+                .classification(2, 3)
+                .build();
+        List<String> exp = allExamples(expIter);
+        assertEquals(8 * 25, exp.size());
+
+        for (boolean ordered : new boolean[]{true, false}) {
+            for (int numWorkers : new int[]{1, 3, 8, 12}) {
+                ParallelRecordReaderDataSetIterator iter = new ParallelRecordReaderDataSetIterator.Builder(
+                        new CSVRecordReader(), new FileSplit(dir), numWorkers, 10)
+                        .classification(2, 3)
+                        .ordered(ordered)
+                        .build();
+                assertEquals(Math.min(8, numWorkers), iter.numWorkers());
+
+                for (int epoch = 0; epoch < 2; epoch++) {
+                    List<String> act = allExamples(iter);
+
+                    //Same examples, though not necessarily in the same order
+                    List<String> actSorted = new ArrayList<>(act);
+                    List<String> expSorted = new ArrayList<>(exp);
+                    Collections.sort(actSorted);
+                    Collections.sort(expSorted);
+                    assertEquals(expSorted, actSorted);
+
+                    if (numWorkers == 1 && ordered) {
+                        assertEquals(exp, act);
+                    }
+
+                    iter.reset();
+                }
+                iter.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void testOrderedIsDeterministic() throws Exception {
+        File dir = createCsvFiles(6, 13);
+
+        List<String> first = null;
+        for (int i = 0; i < 3; i++) {
+            ParallelRecordReaderDataSetIterator iter = new ParallelRecordReaderDataSetIterator.Builder(
+                    new CSVRecordReader(), new FileSplit(dir), 3, 4)
+                    .classification(2, 3)
+                    .build();
+            List<String> act = allExamples(iter);
+            iter.shutdown();
+
+            if (first == null) {
+                first = act;
+                assertEquals(6 * 13, first.size());
+            } else {
+                assertEquals(first, act);
+            }
+        }
+
+        //Round robin: first minibatch from worker 0 (locations 0 and 1), second from worker 1 (locations 2 and 3), etc
+        URI[] locations = new FileSplit(dir).locations();
+        String f0 = fileIdx(locations[0]);
+        String f2 = fileIdx(locations[2]);
+        assertEquals(Arrays.asList(f0 + ",0", f0 + ",1", f0 + ",2", f0 + ",3", f2 + ",0", f2 + ",1", f2 + ",2", f2 + ",3"),
+                first.subList(0, 8));
+    }
+
+    private static String fileIdx(URI uri) {
+        String name = new File(uri).getName();      //file_xxx.csv
+        return String.valueOf(Integer.parseInt(name.substring(5, 8)));
+    }
+
+    @Test
+    public void testPartialMinibatchesMerged() throws Exception {
+        //4 workers, 7 examples each, batch size 5: each worker has a partial minibatch of 2 examples. These should be
+        //merged, giving minibatches of size 5,5,5,5 then 5,3
+        File dir = createCsvFiles(4, 7);
+
+        for (boolean ordered : new boolean[]{true, false}) {
+            ParallelRecordReaderDataSetIterator iter = new ParallelRecordReaderDataSetIterator.Builder(
+                    new CSVRecordReader(), new FileSplit(dir), 4, 5)
+                    .classification(2, 3)
+                    .ordered(ordered)
+                    .collectMetaData(true)
+                    .build();
+
+            for (int epoch = 0; epoch < 2; epoch++) {
+                List<Integer> sizes = new ArrayList<>();
+                List<String> act = new ArrayList<>();
+                while (iter.hasNext()) {
+                    DataSet ds = iter.next();
+                    sizes.add(ds.numExamples());
+                    assertEquals(ds.numExamples(), ds.getExampleMetaData().size());
+                    for (int i = 0; i < ds.numExamples(); i++) {
+                        act.add(ds.getFeatures().getInt(i, 0) + "," + ds.getFeatures().getInt(i, 1));
+                    }
+                }
+                assertEquals(Arrays.asList(5, 5, 5, 5, 5, 3), sizes);
+
+                List<String> exp = new ArrayList<>();
+                for (int i = 0; i < 4; i++) {
+                    for (int j = 0; j < 7; j++) {
+                        exp.add(i + "," + j);
+                    }
+                }
+                Collections.sort(act);
+                Collections.sort(exp);
+                assertEquals(exp, act);
+
+                iter.reset();
+            }
+            iter.shutdown();
+        }
+    }
+
+    @Test
+    public void testPreProcessorAndMaxBatches() throws Exception {
+        File dir = createCsvFiles(4, 10);
+
+        ParallelRecordReaderDataSetIterator iter = new ParallelRecordReaderDataSetIterator.Builder(
+                new CSVRecordReader(), new FileSplit(dir), 2, 5)
+                .classification(2, 3)
+                .maxNumBatches(3)
+                .preProcessor(new DataSetPreProcessor() {
+                    @Override
+                    public void preProcess(org.nd4j.linalg.dataset.api.DataSet ds) {
+                        ds.getFeatures().addi(100);
+                    }
+                })
+                .build();
+
+        assertEquals(2, iter.inputColumns());
+        assertEquals(3, iter.totalOutcomes());
+
+        int count = 0;
+        while (iter.hasNext()) {
+            DataSet ds = iter.next();
+            assertEquals(5, ds.numExamples());
+            assertTrue(ds.getFeatures().minNumber().doubleValue() >= 100);
+            assertEquals(Nd4j.ones(DataType.FLOAT, 5), ds.getLabels().sum(1));
+            count++;
+        }
+        assertEquals(3, count);
+        iter.shutdown();
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testWorkerExceptionPropagated() throws Exception {
+        File dir = createCsvFiles(2, 10);
+        FileUtils.writeStringToFile(new File(dir, "file_001.csv"), "0,0,0\nnot,a,number\n", StandardCharsets.UTF_8);
+
+        ParallelRecordReaderDataSetIterator iter = new ParallelRecordReaderDataSetIterator.Builder(
+                new CSVRecordReader(), new FileSplit(dir), 2, 5)
+                .classification(2, 3)
+                .build();
+        try {
+            while (iter.hasNext()) {
+                iter.next();
+            }
+        } finally {
+            iter.shutdown();
+        }
+    }
+}
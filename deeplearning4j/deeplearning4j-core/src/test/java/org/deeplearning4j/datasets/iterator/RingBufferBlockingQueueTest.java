@@ -0,0 +1,283 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.datasets.iterator;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.BaseDL4JTest;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+@Slf4j
+public class RingBufferBlockingQueueTest extends BaseDL4JTest {
+
+    @Test
+    public void testBasicOperations() throws Exception {
+        RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<>(3);
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+        assertNull(queue.peek());
+
+        // capacity is exact, not rounded up
+        assertTrue(queue.offer(1));
+        assertTrue(queue.offer(2));
+        assertTrue(queue.offer(3));
+        assertFalse(queue.offer(4));
+        assertFalse(queue.offer(4, 10, TimeUnit.MILLISECONDS));
+        assertEquals(3, queue.size());
+        assertEquals(0, queue.remainingCapacity());
+        assertEquals(Arrays.asList(1, 2, 3), new ArrayList<>(queue));
+
+        assertEquals(1, (int) queue.peek());
+        assertEquals(1, (int) queue.take());
+        queue.put(4);
+
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(3, queue.drainTo(drained));
+        assertEquals(Arrays.asList(2, 3, 4), drained);
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+
+        // wrap around a few times
+        for (int i = 0; i < 10; i++) {
+            queue.put(i);
+            queue.put(i + 100);
+            assertEquals(i, (int) queue.take());
+            assertEquals(i + 100, (int) queue.take());
+        }
+
+        queue.put(1);
+        queue.put(2);
+        queue.clear();
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test(timeout = 30000L)
+    public void testSingleProducerSingleConsumer() throws Exception {
+        for (RingBufferBlockingQueue.WaitStrategy ws : RingBufferBlockingQueue.WaitStrategy.values()) {
+            final RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<>(4, ws);
+            final int n = 1000;
+
+            Thread producer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < n; i++)
+                            queue.put(i);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            producer.start();
+
+            for (int i = 0; i < n; i++) {
+                assertEquals(ws.toString(), i, (int) queue.take());
+                assertTrue(queue.size() <= 4);
+            }
+            producer.join();
+
+            assertEquals(n, queue.numTaken());
+            assertTrue(queue.averageDepth() >= 1.0 && queue.averageDepth() <= 4.0);
+            log.info("{}: {}", ws, queue.statsString());
+        }
+    }
+
+    @Test(timeout = 30000L)
+    public void testMultipleProducers() throws Exception {
+        final RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<>(8);
+        final int numProducers = 4;
+        final int perProducer = 25000;
+
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < numProducers; p++) {
+            final int offset = p * perProducer;
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < perProducer; i++)
+                            queue.put(offset + i);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            t.start();
+            threads.add(t);
+        }
+
+        List<Integer> received = new ArrayList<>();
+        int[] lastPerProducer = new int[numProducers];
+        Arrays.fill(lastPerProducer, -1);
+        for (int i = 0; i < numProducers * perProducer; i++) {
+            int v = queue.take();
+            received.add(v);
+
+            // elements from any single producer arrive in order
+            int p = v / perProducer;
+            assertTrue(v % perProducer > lastPerProducer[p]);
+            lastPerProducer[p] = v % perProducer;
+        }
+
+        for (Thread t : threads)
+            t.join();
+
+        assertNull(queue.poll());
+        Collections.sort(received);
+        for (int i = 0; i < received.size(); i++)
+            assertEquals(i, (int) received.get(i));
+    }
+
+    @Test(timeout = 30000L)
+    public void testStats() throws Exception {
+        // slow consumer: producer should be waiting on a full queue
+        final RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<>(2);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < 20; i++)
+                        queue.put(i);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        producer.start();
+        for (int i = 0; i < 20; i++) {
+            Thread.sleep(5);
+            queue.take();
+        }
+        producer.join();
+
+        assertTrue(queue.producerWaits() > 0);
+        assertTrue(queue.producerWaitNanos() > 0);
+        assertTrue(queue.averageDepth() > 1.0);
+
+        queue.resetStats();
+        assertEquals(0, queue.producerWaits());
+        assertEquals(0, queue.numTaken());
+        assertEquals(0.0, queue.averageDepth(), 0.0);
+
+        // slow producer: consumer should be waiting on an empty queue
+        Thread slowProducer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < 10; i++) {
+                        Thread.sleep(5);
+                        queue.put(i);
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        slowProducer.start();
+        for (int i = 0; i < 10; i++)
+            queue.take();
+        slowProducer.join();
+
+        assertTrue(queue.consumerWaits() > 0);
+        assertTrue(queue.consumerWaitNanos() > 0);
+        assertEquals(0, queue.producerWaits());
+    }
+
+    @Test(timeout = 30000L)
+    public void testParkBlocksUntilSignalled() throws Exception {
+        final RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<>(1);
+        final AtomicReference<Integer> taken = new AtomicReference<>();
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    taken.set(queue.take());
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        consumer.start();
+
+        // idle consumer should block on the condition (WAITING), not repeatedly park with a timeout (TIMED_WAITING)
+        while (consumer.getState() != Thread.State.WAITING) {
+            assertNotEquals(Thread.State.TERMINATED, consumer.getState());
+            Thread.sleep(1);
+        }
+        Thread.sleep(50);
+        assertEquals(Thread.State.WAITING, consumer.getState());
+
+        queue.put(1);
+        consumer.join();
+        assertEquals(1, (int) taken.get());
+
+        // same for a producer blocked on a full queue
+        queue.put(2);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    queue.put(3);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        producer.start();
+        while (producer.getState() != Thread.State.WAITING) {
+            assertNotEquals(Thread.State.TERMINATED, producer.getState());
+            Thread.sleep(1);
+        }
+        assertEquals(2, (int) queue.take());
+        producer.join();
+        assertEquals(3, (int) queue.take());
+
+        // timed waits still time out
+        assertNull(queue.poll(20, TimeUnit.MILLISECONDS));
+        queue.put(4);
+        assertFalse(queue.offer(5, 20, TimeUnit.MILLISECONDS));
+    }
+
+    @Test(timeout = 30000L)
+    public void testInterruptBlockedTake() throws Exception {
+        final RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<>(2);
+        final AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    queue.take();
+                } catch (Throwable t) {
+                    thrown.set(t);
+                }
+            }
+        });
+        consumer.start();
+        Thread.sleep(50);
+        consumer.interrupt();
+        consumer.join();
+
+        assertTrue(thrown.get() instanceof InterruptedException);
+    }
+}
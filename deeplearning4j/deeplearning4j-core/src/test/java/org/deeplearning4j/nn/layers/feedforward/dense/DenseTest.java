@@ -17,8 +17,10 @@
 package org.deeplearning4j.nn.layers.feedforward.dense;
 
 import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.TestUtils;
 import org.deeplearning4j.datasets.iterator.impl.IrisDataSetIterator;
 import org.deeplearning4j.eval.Evaluation;
+import org.deeplearning4j.gradientcheck.GradientCheckUtil;
 import org.deeplearning4j.nn.api.Layer;
 import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
@@ -28,14 +30,18 @@ import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.deeplearning4j.nn.weights.WeightInit;
 import org.junit.Test;
 import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.DataSet;
 import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
 import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.NoOp;
 import org.nd4j.linalg.learning.config.Sgd;
 import org.nd4j.linalg.lossfunctions.LossFunctions;
+import org.nd4j.linalg.ops.transforms.Transforms;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Created by nyghtowl on 8/31/15.
@@ -115,6 +121,33 @@ public class DenseTest extends BaseDL4JTest {
 
     }
 
+    @Test
+    public void testDenseOpContextReuse() {
+        //x*W+b is calculated via a native op whose context is reused by the layer: outputs and gradients should be
+        // correct for repeated calls with different inputs and minibatch sizes
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345)
+                        .dataType(DataType.DOUBLE)
+                        .updater(new NoOp()).list()
+                        .layer(new DenseLayer.Builder().nIn(4).nOut(5).activation(Activation.TANH).build())
+                        .layer(new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nIn(5).nOut(3)
+                                        .activation(Activation.SOFTMAX).build())
+                        .build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        INDArray w = net.getParam("0_W");
+        INDArray b = net.getParam("0_b");
+
+        for (int mb : new int[] {3, 3, 7, 1}) {
+            INDArray in = Nd4j.rand(DataType.DOUBLE, mb, 4);
+            INDArray exp = Transforms.tanh(in.mmul(w).addiRowVector(b));
+            assertEquals(exp, net.feedForward(in, false).get(1));
+
+            INDArray labels = TestUtils.randomOneHot(mb, 3);
+            boolean gradOK = GradientCheckUtil.checkGradients(net, 1e-6, 1e-3, 1e-8, false, false, in, labels);
+            assertTrue(gradOK);
+        }
+    }
 
     //////////////////////////////////////////////////////////////////////////////////
 
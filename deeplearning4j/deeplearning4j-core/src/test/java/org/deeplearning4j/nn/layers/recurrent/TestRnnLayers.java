@@ -18,6 +18,7 @@ package org.deeplearning4j.nn.layers.recurrent;
 
 import org.deeplearning4j.BaseDL4JTest;
 import org.deeplearning4j.TestUtils;
+import org.deeplearning4j.gradientcheck.GradientCheckUtil;
 import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
 import org.deeplearning4j.nn.conf.dropout.TestDropout;
@@ -36,6 +37,7 @@ import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.learning.config.NoOp;
 import org.nd4j.linalg.lossfunctions.LossFunctions;
+import org.nd4j.linalg.ops.transforms.Transforms;
 import org.nd4j.linalg.primitives.Pair;
 
 import java.util.Arrays;
@@ -44,6 +46,9 @@ import java.util.List;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
+import static org.nd4j.linalg.indexing.NDArrayIndex.all;
+import static org.nd4j.linalg.indexing.NDArrayIndex.interval;
+import static org.nd4j.linalg.indexing.NDArrayIndex.point;
 
 public class TestRnnLayers extends BaseDL4JTest {
 
@@ -196,4 +201,52 @@ public class TestRnnLayers extends BaseDL4JTest {
         }
     }
 
+    @Test
+    public void testLSTMOpContextReuse() {
+        //Input weights and bias are applied via a native op whose context is reused by the layer, across time steps
+        // and calls: outputs and gradients should be correct for repeated calls with different inputs and minibatch sizes
+        int nIn = 3;
+        int nOut = 4;
+        int tsLength = 5;
+
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .updater(new NoOp())
+                .seed(12345)
+                .list()
+                .layer(new LSTM.Builder().nIn(nIn).nOut(nOut).activation(Activation.TANH).gateActivationFunction(Activation.SIGMOID).build())
+                .layer(new RnnOutputLayer.Builder().nIn(nOut).nOut(2).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        INDArray w = net.getParam("0_W");
+        INDArray rw = net.getParam("0_RW");
+        INDArray b = net.getParam("0_b");
+
+        for (int mb : new int[]{3, 3, 6, 1}) {
+            INDArray in = Nd4j.rand(DataType.DOUBLE, mb, nIn, tsLength);
+
+            //Reference implementation. Gate order: input, forget, output, input modulation
+            INDArray exp = Nd4j.create(DataType.DOUBLE, mb, nOut, tsLength);
+            INDArray h = Nd4j.zeros(DataType.DOUBLE, mb, nOut);
+            INDArray c = Nd4j.zeros(DataType.DOUBLE, mb, nOut);
+            for (int t = 0; t < tsLength; t++) {
+                INDArray ifog = in.get(all(), all(), point(t)).mmul(w).addi(h.mmul(rw)).addiRowVector(b);
+                INDArray i = Transforms.tanh(ifog.get(all(), interval(0, nOut)), true);
+                INDArray f = Transforms.sigmoid(ifog.get(all(), interval(nOut, 2 * nOut)), true);
+                INDArray o = Transforms.sigmoid(ifog.get(all(), interval(2 * nOut, 3 * nOut)), true);
+                INDArray g = Transforms.sigmoid(ifog.get(all(), interval(3 * nOut, 4 * nOut)), true);
+                c = f.mul(c).addi(g.mul(i));
+                h = o.mul(Transforms.tanh(c, true));
+                exp.get(all(), all(), point(t)).assign(h);
+            }
+            assertEquals(exp, net.feedForward(in, false).get(1));
+
+            INDArray labels = TestUtils.randomOneHotTimeSeries(mb, 2, tsLength);
+            boolean gradOK = GradientCheckUtil.checkGradients(net, 1e-6, 1e-3, 1e-8, false, false, in, labels);
+            assertTrue(gradOK);
+        }
+    }
 }
@@ -0,0 +1,319 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.misc;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.nn.conf.CacheMode;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.WorkspaceMode;
+import org.deeplearning4j.nn.conf.graph.ElementWiseVertex;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.*;
+import org.deeplearning4j.nn.conf.memory.MemoryReport;
+import org.deeplearning4j.nn.conf.memory.MemoryType;
+import org.deeplearning4j.nn.conf.memory.MemoryUseMode;
+import org.deeplearning4j.nn.conf.memory.NetworkMemoryReport;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.MultiDataSet;
+import org.nd4j.linalg.learning.config.Sgd;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.deeplearning4j.nn.misc.TrainingTestUtils.*;
+import static org.junit.Assert.*;
+
+public class TestActivationCheckpointing extends BaseDL4JTest {
+
+    private static MultiLayerConfiguration getConf(WorkspaceMode wsm, int... checkpoints) {
+        return getConf(wsm, null, checkpoints);
+    }
+
+    private static MultiLayerConfiguration getConf(WorkspaceMode wsm, Double dropout, int... checkpoints) {
+        DenseLayer.Builder lastDense = new DenseLayer.Builder().nOut(16);
+        if (dropout != null) {
+            lastDense.dropOut(dropout);
+        }
+        return baseConf(DataType.DOUBLE, new Sgd(0.1))
+                .trainingWorkspaceMode(wsm)
+                .activation(Activation.TANH)
+                .list()
+                .layer(new ConvolutionLayer.Builder().kernelSize(3, 3).nOut(4).build())
+                .layer(new BatchNormalization.Builder().build())
+                .layer(new SubsamplingLayer.Builder().kernelSize(2, 2).stride(2, 2).build())
+                .layer(new DenseLayer.Builder().nOut(16).build())
+                .layer(new DenseLayer.Builder().nOut(16).build())
+                .layer(lastDense.build())
+                .layer(new OutputLayer.Builder().nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .setInputType(InputType.convolutional(10, 10, 2))
+                .activationCheckpoints(checkpoints)
+                .build();
+    }
+
+    private static DataSet getData() {
+        return classificationData(DataType.DOUBLE, 8, 2, 10, 10);
+    }
+
+    @Test
+    public void testActivationCheckpointingMLN() {
+        DataSet ds = getData();
+        for (WorkspaceMode wsm : WorkspaceMode.values()) {
+            for (int[] checkpoints : new int[][]{{0}, {1, 3}, {0, 1, 2, 3, 4}, {4}}) {
+                String msg = wsm + " - " + Arrays.toString(checkpoints);
+                MultiLayerNetwork net = new MultiLayerNetwork(getConf(wsm));
+                net.init();
+                MultiLayerNetwork net2 = new MultiLayerNetwork(getConf(wsm, checkpoints));
+                net2.init();
+                net2.setParams(net.params().dup());
+
+                for (MultiLayerNetwork n : new MultiLayerNetwork[]{net, net2}) {
+                    n.setInput(ds.getFeatures());
+                    n.setLabels(ds.getLabels());
+                    n.computeGradientAndScore();
+                }
+                assertEquals(msg, net.score(), net2.score(), 1e-10);
+                assertEquals(msg, net.gradient().gradient(), net2.gradient().gradient());
+                assertEquals(msg, net.gradient().gradientForVariable().keySet(), net2.gradient().gradientForVariable().keySet());
+
+                for (int i = 0; i < 3; i++) {
+                    net.fit(ds);
+                    net2.fit(ds);
+                    assertEquals(msg, net.params(), net2.params());
+                }
+            }
+        }
+    }
+
+    private static MultiLayerConfiguration getDeepConf(int... checkpoints) {
+        NeuralNetConfiguration.ListBuilder b = new NeuralNetConfiguration.Builder()
+                .activation(Activation.TANH)
+                .list();
+        for (int i = 0; i < 9; i++) {
+            b.layer(new DenseLayer.Builder().nIn(64).nOut(64).build());
+        }
+        return b.layer(new OutputLayer.Builder().nIn(64).nOut(10).activation(Activation.SOFTMAX).build())
+                .activationCheckpoints(checkpoints)
+                .build();
+    }
+
+    @Test
+    public void testActivationCheckpointingMemoryReport() {
+        MultiLayerConfiguration conf = getDeepConf();
+        MultiLayerConfiguration conf2 = getDeepConf(2, 5);
+        InputType it = InputType.feedForward(64);
+
+        NetworkMemoryReport r = conf.getMemoryReport(it);
+        NetworkMemoryReport r2 = conf2.getMemoryReport(it);
+        assertNull(r.getActivationCheckpoints());
+        assertEquals(2, r2.getActivationCheckpoints().size());
+
+        for (int mb : new int[]{1, 32}) {
+            long act = r.getMemoryBytes(MemoryType.ACTIVATIONS, mb, MemoryUseMode.TRAINING, CacheMode.NONE, DataType.FLOAT);
+            long act2 = r2.getMemoryBytes(MemoryType.ACTIVATIONS, mb, MemoryUseMode.TRAINING, CacheMode.NONE, DataType.FLOAT);
+            assertTrue(act2 < act);
+
+            //Checkpointed activations: layers 2 and 5 kept, plus the largest segment (layers 6 to 9)
+            long exp = 0;
+            for (String s : new String[]{"layer2", "layer5", "layer6", "layer7", "layer8", "layer9"}) {
+                exp += r.getLayerAndVertexReports().get(s).getMemoryBytes(MemoryType.ACTIVATIONS, mb,
+                        MemoryUseMode.TRAINING, CacheMode.NONE, DataType.FLOAT);
+            }
+            assertEquals(exp, act2);
+
+            long total = r.getTotalMemoryBytes(mb, MemoryUseMode.TRAINING, CacheMode.NONE, DataType.FLOAT);
+            long total2 = r2.getTotalMemoryBytes(mb, MemoryUseMode.TRAINING, CacheMode.NONE, DataType.FLOAT);
+            assertEquals(act - act2, total - total2);
+
+            //Inference memory is unchanged
+            assertEquals(r.getTotalMemoryBytes(mb, MemoryUseMode.INFERENCE, CacheMode.NONE, DataType.FLOAT),
+                    r2.getTotalMemoryBytes(mb, MemoryUseMode.INFERENCE, CacheMode.NONE, DataType.FLOAT));
+        }
+
+        assertEquals(r2, MemoryReport.fromJson(r2.toJson()));
+        assertTrue(r2.toString().contains("Activation Checkpoints"));
+    }
+
+    @Test
+    public void testActivationCheckpointingConfig() {
+        MultiLayerConfiguration conf = getConf(WorkspaceMode.ENABLED, 3, 1, 3);
+        assertArrayEquals(new int[]{1, 3}, conf.getActivationCheckpoints());
+        assertEquals(conf, MultiLayerConfiguration.fromJson(conf.toJson()));
+        assertArrayEquals(new int[]{1, 3}, conf.clone().getActivationCheckpoints());
+
+        //Dropout after the last checkpoint is OK: these activations are only calculated once
+        assertArrayEquals(new int[]{4}, getConf(WorkspaceMode.ENABLED, 0.5, 4).getActivationCheckpoints());
+
+        //Dropout before the last checkpoint: activations would differ when recomputed
+        try {
+            getConf(WorkspaceMode.ENABLED, 0.5, 5);
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("dropout"));
+        }
+
+        //Output layer can't be a checkpoint
+        try {
+            getConf(WorkspaceMode.ENABLED, 6);
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("checkpoint"));
+        }
+    }
+
+    private static ComputationGraphConfiguration getGraphConf(WorkspaceMode wsm, String... checkpoints) {
+        //Two residual blocks, with an output after each block
+        return baseConf(DataType.DOUBLE, new Sgd(0.1))
+                .l2(1e-3)
+                .trainingWorkspaceMode(wsm)
+                .activation(Activation.TANH)
+                .graphBuilder()
+                .addInputs("in")
+                .addLayer("d0", new DenseLayer.Builder().nIn(6).nOut(8).build(), "in")
+                .addLayer("b1a", new DenseLayer.Builder().nIn(8).nOut(8).build(), "d0")
+                .addLayer("b1b", new DenseLayer.Builder().nIn(8).nOut(8).build(), "b1a")
+                .addVertex("add1", new ElementWiseVertex(ElementWiseVertex.Op.Add), "d0", "b1b")
+                .addLayer("b2a", new DenseLayer.Builder().nIn(8).nOut(8).build(), "add1")
+                .addLayer("b2b", new DenseLayer.Builder().nIn(8).nOut(8).build(), "b2a")
+                .addVertex("add2", new ElementWiseVertex(ElementWiseVertex.Op.Add), "add1", "b2b")
+                .addLayer("out1", new OutputLayer.Builder().nIn(8).nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "add1")
+                .addLayer("out2", new OutputLayer.Builder().nIn(8).nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "add2")
+                .setOutputs("out1", "out2")
+                .activationCheckpoints(checkpoints)
+                .build();
+    }
+
+    @Test
+    public void testActivationCheckpointingCG() {
+        DataSet ds = classificationData(DataType.DOUBLE, 8, 6);
+        INDArray l2 = classLabels(DataType.DOUBLE, 8, 1);
+        MultiDataSet mds = new MultiDataSet(new INDArray[]{ds.getFeatures()}, new INDArray[]{ds.getLabels(), l2});
+
+        for (WorkspaceMode wsm : WorkspaceMode.values()) {
+            for (String[] checkpoints : new String[][]{{"add1"}, {"b1a"}, {"d0", "add1", "add2"}, {"b1b", "b2a"}}) {
+                String msg = wsm + " - " + Arrays.toString(checkpoints);
+                ComputationGraph net = new ComputationGraph(getGraphConf(wsm));
+                net.init();
+                ComputationGraph net2 = new ComputationGraph(getGraphConf(wsm, checkpoints));
+                net2.init();
+                net2.setParams(net.params().dup());
+
+                for (ComputationGraph n : new ComputationGraph[]{net, net2}) {
+                    n.setInputs(mds.getFeatures());
+                    n.setLabels(mds.getLabels());
+                    n.computeGradientAndScore();
+                }
+                assertEquals(msg, net.score(), net2.score(), 1e-10);
+                assertEquals(msg, net.gradient().gradient(), net2.gradient().gradient());
+                assertEquals(msg, net.gradient().gradientForVariable().keySet(), net2.gradient().gradientForVariable().keySet());
+
+                for (int i = 0; i < 3; i++) {
+                    net.fit(mds);
+                    net2.fit(mds);
+                    assertEquals(msg, net.params(), net2.params());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testActivationCheckpointingMemoryReportCG() {
+        ComputationGraphConfiguration.GraphBuilder b = new NeuralNetConfiguration.Builder()
+                .activation(Activation.TANH)
+                .graphBuilder()
+                .addInputs("in");
+        String last = "in";
+        for (int i = 0; i < 8; i++) {
+            b.addLayer("d" + i, new DenseLayer.Builder().nIn(64).nOut(64).build(), last);
+            last = "d" + i;
+        }
+        b.addLayer("out", new OutputLayer.Builder().nIn(64).nOut(10).activation(Activation.SOFTMAX).build(), last)
+                .setOutputs("out");
+        ComputationGraphConfiguration conf = b.build();
+        ComputationGraphConfiguration conf2 = b.activationCheckpoints("d2", "d5").build();
+
+        Map<String, Integer> segments = conf2.activationCheckpointSegments();
+        assertNull(conf.activationCheckpointSegments());
+        assertEquals(0, (int) segments.get("d2"));
+        assertEquals(1, (int) segments.get("d3"));
+        assertEquals(2, (int) segments.get("out"));
+
+        InputType it = InputType.feedForward(64);
+        NetworkMemoryReport r = conf.getMemoryReport(it);
+        NetworkMemoryReport r2 = conf2.getMemoryReport(it);
+        assertEquals(new HashSet<>(Arrays.asList("d2", "d5")), r2.getActivationCheckpoints());
+
+        for (int mb : new int[]{1, 32}) {
+            long act = r.getMemoryBytes(MemoryType.ACTIVATIONS, mb, MemoryUseMode.TRAINING, CacheMode.NONE, DataType.FLOAT);
+            long act2 = r2.getMemoryBytes(MemoryType.ACTIVATIONS, mb, MemoryUseMode.TRAINING, CacheMode.NONE, DataType.FLOAT);
+
+            //Checkpointed activations: d2 and d5 kept, plus the largest segment (d0 to d2, or d3 to d5)
+            long exp = 0;
+            for (String s : new String[]{"d2", "d5", "d0", "d1", "d2"}) {
+                exp += r.getLayerAndVertexReports().get(s).getMemoryBytes(MemoryType.ACTIVATIONS, mb,
+                        MemoryUseMode.TRAINING, CacheMode.NONE, DataType.FLOAT);
+            }
+            assertEquals(exp, act2);
+            assertTrue(act2 < act);
+        }
+    }
+
+    @Test
+    public void testActivationCheckpointingConfigCG() {
+        ComputationGraphConfiguration conf = getGraphConf(WorkspaceMode.ENABLED, "add2", "add1", "add2");
+        assertEquals(Arrays.asList("add2", "add1"), conf.getActivationCheckpoints());
+        assertEquals(conf, ComputationGraphConfiguration.fromJson(conf.toJson()));
+        assertEquals(conf.getActivationCheckpoints(), conf.clone().getActivationCheckpoints());
+
+        for (String invalid : new String[]{"in", "out2", "nonExistent"}) {
+            try {
+                getGraphConf(WorkspaceMode.ENABLED, invalid);
+                fail("Expected exception");
+            } catch (IllegalStateException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("checkpoint"));
+            }
+        }
+
+        //Dropout is OK in the last segment only
+        ComputationGraphConfiguration.GraphBuilder b = new NeuralNetConfiguration.Builder()
+                .graphBuilder()
+                .addInputs("in")
+                .addLayer("d0", new DenseLayer.Builder().nIn(4).nOut(4).build(), "in")
+                .addLayer("d1", new DenseLayer.Builder().nIn(4).nOut(4).dropOut(0.5).build(), "d0")
+                .addLayer("out", new OutputLayer.Builder().nIn(4).nOut(3).activation(Activation.SOFTMAX).build(), "d1")
+                .setOutputs("out");
+        b.activationCheckpoints("d0").build();
+        try {
+            b.activationCheckpoints("d1").build();
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("dropout"));
+        }
+    }
+}
@@ -0,0 +1,289 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.misc;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.nn.conf.BackpropType;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.graph.MergeVertex;
+import org.deeplearning4j.nn.conf.layers.BatchNormalization;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.LSTM;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.conf.layers.RnnOutputLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.params.BatchNormalizationParamInitializer;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.MultiDataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.deeplearning4j.nn.misc.TrainingTestUtils.*;
+import static org.junit.Assert.*;
+
+public class TestGradientAccumulation extends BaseDL4JTest {
+
+    private static MultiLayerConfiguration getConf(int accumulationSteps, boolean rnn) {
+        NeuralNetConfiguration.Builder b = baseConf(DataType.DOUBLE, new Adam(0.01)).l2(1e-3);
+        NeuralNetConfiguration.ListBuilder lb;
+        if (rnn) {
+            lb = b.list()
+                    .layer(new LSTM.Builder().nIn(4).nOut(8).activation(Activation.TANH).build())
+                    .layer(new RnnOutputLayer.Builder().nIn(8).nOut(3).activation(Activation.SOFTMAX)
+                            .lossFunction(LossFunctions.LossFunction.MCXENT).build());
+        } else {
+            lb = denseClassifier(b);
+        }
+        return lb.gradientAccumulationSteps(accumulationSteps).build();
+    }
+
+    private static DataSet getData(boolean rnn) {
+        Nd4j.getRandom().setSeed(12345);
+        int mb = 10;
+        if (rnn) {
+            int tsLength = 6;
+            INDArray f = Nd4j.rand(new int[]{mb, 4, tsLength}).castTo(DataType.DOUBLE);
+            INDArray l = Nd4j.zeros(DataType.DOUBLE, mb, 3, tsLength);
+            INDArray fMask = Nd4j.ones(DataType.DOUBLE, mb, tsLength);
+            for (int i = 0; i < mb; i++) {
+                for (int j = 0; j < tsLength; j++) {
+                    l.putScalar(i, (i + j) % 3, j, 1.0);
+                }
+                //Variable length time series
+                int length = 1 + i % tsLength;
+                if (length < tsLength) {
+                    fMask.get(NDArrayIndex.point(i), NDArrayIndex.interval(length, tsLength)).assign(0);
+                }
+            }
+            return new DataSet(f, l, fMask, fMask.dup());
+        }
+        return classificationData(DataType.DOUBLE, mb, 4);
+    }
+
+    @Test
+    public void testGradientAccumulationMLN() {
+        for (boolean rnn : new boolean[]{false, true}) {
+            DataSet ds = getData(rnn);
+
+            MultiLayerNetwork net = new MultiLayerNetwork(getConf(1, rnn));
+            net.init();
+
+            for (int steps : new int[]{2, 3, 10, 20}) {
+                String msg = "rnn=" + rnn + ", steps=" + steps;
+                MultiLayerNetwork net2 = new MultiLayerNetwork(getConf(steps, rnn));
+                net2.init();
+                net2.setParams(net.params().dup());
+
+                for (MultiLayerNetwork n : new MultiLayerNetwork[]{net, net2}) {
+                    n.setInput(ds.getFeatures());
+                    n.setLabels(ds.getLabels());
+                    n.setLayerMaskArrays(ds.getFeaturesMaskArray(), ds.getLabelsMaskArray());
+                    n.computeGradientAndScore();
+                }
+
+                assertEquals(msg, net.score(), net2.score(), 1e-10);
+                assertEquals(msg, net.gradient().gradient(), net2.gradient().gradient());
+
+                //Full minibatch input should be restored after accumulation
+                assertSame(msg, ds.getFeatures(), net2.getInput());
+                assertSame(msg, ds.getLabels(), net2.getLabels());
+                assertEquals(ds.getFeatures().size(0), net2.batchSize());
+            }
+
+            //Fitting should give the same parameters
+            MultiLayerNetwork net2 = new MultiLayerNetwork(getConf(3, rnn));
+            net2.init();
+            net2.setParams(net.params().dup());
+            for (int i = 0; i < 3; i++) {
+                net.fit(ds);
+                net2.fit(ds);
+                assertEquals(net.params(), net2.params());
+            }
+        }
+    }
+
+    @Test
+    public void testGradientAccumulationCG() {
+        DataSet ds = getData(false);
+        INDArray f = ds.getFeatures();
+        MultiDataSet mds = new MultiDataSet(new INDArray[]{f, f.mul(2)}, new INDArray[]{ds.getLabels()});
+
+        ComputationGraph net = new ComputationGraph(getGraphConf(1));
+        net.init();
+
+        for (int steps : new int[]{2, 3, 10, 20}) {
+            ComputationGraph net2 = new ComputationGraph(getGraphConf(steps));
+            net2.init();
+            net2.setParams(net.params().dup());
+
+            for (ComputationGraph n : new ComputationGraph[]{net, net2}) {
+                n.setInputs(mds.getFeatures());
+                n.setLabels(mds.getLabels());
+                n.computeGradientAndScore();
+            }
+
+            assertEquals(net.score(), net2.score(), 1e-10);
+            assertEquals(net.gradient().gradient(), net2.gradient().gradient());
+            assertArrayEquals(mds.getFeatures(), net2.getInputs());
+        }
+
+        ComputationGraph net2 = new ComputationGraph(getGraphConf(4));
+        net2.init();
+        net2.setParams(net.params().dup());
+        for (int i = 0; i < 3; i++) {
+            net.fit(mds);
+            net2.fit(mds);
+            assertEquals(net.params(), net2.params());
+        }
+    }
+
+    private static ComputationGraphConfiguration getGraphConf(int accumulationSteps) {
+        return baseConf(DataType.DOUBLE, new Adam(0.01))
+                .graphBuilder()
+                .addInputs("in1", "in2")
+                .addLayer("d1", new DenseLayer.Builder().nIn(4).nOut(8).activation(Activation.TANH).build(), "in1")
+                .addLayer("d2", new DenseLayer.Builder().nIn(4).nOut(8).activation(Activation.TANH).build(), "in2")
+                .addVertex("merge", new MergeVertex(), "d1", "d2")
+                .addLayer("out", new OutputLayer.Builder().nIn(16).nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "merge")
+                .setOutputs("out")
+                .gradientAccumulationSteps(accumulationSteps)
+                .build();
+    }
+
+    private static MultiLayerConfiguration getBatchNormConf(int accumulationSteps, boolean useLogStd) {
+        //Decay 0.5 with 5 micro-batches: summing the global mean/variance updates would overshoot the batch statistics
+        return baseConf(DataType.DOUBLE, new Adam(0.01))
+                .list()
+                .layer(new DenseLayer.Builder().nIn(4).nOut(8).activation(Activation.TANH).build())
+                .layer(new BatchNormalization.Builder().nOut(8).decay(0.5).useLogStd(useLogStd).build())
+                .layer(new OutputLayer.Builder().nIn(8).nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .gradientAccumulationSteps(accumulationSteps)
+                .build();
+    }
+
+    private static ComputationGraphConfiguration getBatchNormGraphConf(int accumulationSteps, boolean useLogStd) {
+        return baseConf(DataType.DOUBLE, new Adam(0.01))
+                .graphBuilder()
+                .addInputs("in")
+                .addLayer("d", new DenseLayer.Builder().nIn(4).nOut(8).activation(Activation.TANH).build(), "in")
+                .addLayer("bn", new BatchNormalization.Builder().nOut(8).decay(0.5).useLogStd(useLogStd).build(), "d")
+                .addLayer("out", new OutputLayer.Builder().nIn(8).nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "bn")
+                .setOutputs("out")
+                .gradientAccumulationSteps(accumulationSteps)
+                .build();
+    }
+
+    @Test
+    public void testGradientAccumulationBatchNorm() {
+        //BatchNormalization global mean/variance "gradients" are updates, not divided by the minibatch size: these
+        // should be averaged over the micro-batches, and hence equal the average of the single step updates for each
+        // micro-batch - not their sum
+        DataSet ds = getData(false);
+        int steps = 5;
+        for (boolean useLogStd : new boolean[]{false, true}) {
+            String[] globalParams = {BatchNormalizationParamInitializer.GLOBAL_MEAN,
+                    useLogStd ? BatchNormalizationParamInitializer.GLOBAL_LOG_STD : BatchNormalizationParamInitializer.GLOBAL_VAR};
+
+            MultiLayerNetwork net = new MultiLayerNetwork(getBatchNormConf(steps, useLogStd));
+            net.init();
+            INDArray initialParams = net.params().dup();
+            ComputationGraph cg = new ComputationGraph(getBatchNormGraphConf(steps, useLogStd));
+            cg.init();
+            cg.setParams(initialParams);
+
+            Map<String, INDArray> expected = new HashMap<>();
+            for (int i = 0; i < steps; i++) {
+                long start = ds.numExamples() * i / steps;
+                long end = ds.numExamples() * (i + 1) / steps;
+                DataSet microBatch = new DataSet(ds.getFeatures().get(NDArrayIndex.interval(start, end), NDArrayIndex.all()),
+                        ds.getLabels().get(NDArrayIndex.interval(start, end), NDArrayIndex.all()));
+                MultiLayerNetwork single = new MultiLayerNetwork(getBatchNormConf(1, useLogStd));
+                single.init();
+                single.setParams(initialParams);
+                single.fit(microBatch);
+                for (String p : globalParams) {
+                    INDArray arr = single.getParam("1_" + p).div(steps);
+                    if (expected.containsKey(p)) {
+                        expected.get(p).addi(arr);
+                    } else {
+                        expected.put(p, arr);
+                    }
+                }
+            }
+
+            Map<String, INDArray> before = new HashMap<>();
+            for (String p : globalParams) {
+                before.put(p, net.getParam("1_" + p).dup());
+            }
+            net.fit(ds);
+            cg.fit(ds);
+            for (String p : globalParams) {
+                String msg = "useLogStd=" + useLogStd + ", " + p;
+                assertNotEquals(msg, before.get(p), net.getParam("1_" + p));
+                assertTrue(msg, expected.get(p).equalsWithEps(net.getParam("1_" + p), 1e-8));
+                assertTrue(msg, expected.get(p).equalsWithEps(cg.getParam("bn_" + p), 1e-8));
+            }
+        }
+    }
+
+    @Test
+    public void testGradientAccumulationConfig() {
+        MultiLayerConfiguration conf = getConf(4, false);
+        assertEquals(4, conf.getGradientAccumulationSteps());
+        assertEquals(conf, MultiLayerConfiguration.fromJson(conf.toJson()));
+        assertEquals(4, conf.clone().getGradientAccumulationSteps());
+
+        ComputationGraphConfiguration graphConf = getGraphConf(4);
+        assertEquals(4, graphConf.getGradientAccumulationSteps());
+        assertEquals(graphConf, ComputationGraphConfiguration.fromJson(graphConf.toJson()));
+        assertEquals(4, graphConf.clone().getGradientAccumulationSteps());
+
+        try {
+            new NeuralNetConfiguration.Builder().list().gradientAccumulationSteps(0);
+            fail("Expected exception");
+        } catch (IllegalArgumentException e) {
+            //OK
+        }
+
+        try {
+            new NeuralNetConfiguration.Builder().list()
+                    .layer(new LSTM.Builder().nIn(4).nOut(8).build())
+                    .layer(new RnnOutputLayer.Builder().nIn(8).nOut(3).activation(Activation.SOFTMAX).build())
+                    .backpropType(BackpropType.TruncatedBPTT)
+                    .gradientAccumulationSteps(2)
+                    .build();
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("gradient accumulation"));
+        }
+    }
+}
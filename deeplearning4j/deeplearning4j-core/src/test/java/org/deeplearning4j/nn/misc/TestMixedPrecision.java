@@ -0,0 +1,304 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.misc;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.MixedPrecision;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.gradient.Gradient;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.updater.BaseMultiLayerUpdater;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.activations.IActivation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.lossfunctions.impl.LossMSE;
+import org.nd4j.linalg.primitives.Pair;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.deeplearning4j.nn.misc.TrainingTestUtils.*;
+import static org.junit.Assert.*;
+
+public class TestMixedPrecision extends BaseDL4JTest {
+
+    private static MultiLayerConfiguration getConf(DataType dataType, MixedPrecision mixedPrecision) {
+        return denseClassifier(baseConf(dataType, new Adam(0.01)))
+                .mixedPrecision(mixedPrecision)
+                .build();
+    }
+
+    private static ComputationGraphConfiguration getGraphConf(DataType dataType, MixedPrecision mixedPrecision) {
+        return denseClassifierGraph(baseConf(dataType, new Adam(0.01)))
+                .mixedPrecision(mixedPrecision)
+                .build();
+    }
+
+    private static DataSet getData(DataType dataType) {
+        return classificationData(dataType, 10, 4);
+    }
+
+    private static MixedPrecision noOverflow() {
+        //Default initial loss scale overflows the half precision gradients of this small net in the first iteration
+        return new MixedPrecision.Builder().initialLossScale(1024).build();
+    }
+
+    @Test
+    public void testMixedPrecisionMLN() {
+        DataSet ds = getData(DataType.HALF);
+        MultiLayerNetwork net = new MultiLayerNetwork(getConf(DataType.HALF, noOverflow()));
+        net.init();
+
+        //Full precision reference net, with the same (rounded) initial parameters
+        MultiLayerNetwork netFloat = new MultiLayerNetwork(getConf(DataType.FLOAT, null));
+        netFloat.init();
+        netFloat.setParams(net.params().castTo(DataType.FLOAT));
+
+        double scoreBefore = net.score(ds);
+        for (int i = 0; i < 20; i++) {
+            net.fit(ds);
+            netFloat.fit(getData(DataType.FLOAT));
+        }
+        double scoreAfter = net.score(ds);
+        assertTrue(scoreBefore + " vs. " + scoreAfter, scoreAfter < scoreBefore);
+
+        assertEquals(DataType.HALF, net.params().dataType());
+        BaseMultiLayerUpdater u = (BaseMultiLayerUpdater) net.getUpdater();
+        assertEquals(DataType.FLOAT, u.getStateViewArray().dataType());
+
+        //Parameters should match the full precision net to within half precision rounding
+        INDArray p = net.params().castTo(DataType.FLOAT);
+        INDArray pFloat = netFloat.params();
+        double maxError = p.sub(pFloat).amaxNumber().doubleValue();
+        assertTrue("Max error: " + maxError, maxError < 5e-2);
+
+        MixedPrecision mp = net.getLayerWiseConfigurations().getMixedPrecision();
+        assertEquals(0, mp.getSkippedIterations());
+        assertEquals(20, mp.getIterationsSinceOverflow());
+
+        //Setting parameters should also update the master weights
+        INDArray newParams = Nd4j.rand(DataType.HALF, 1, net.numParams());
+        net.setParams(newParams);
+        net.fit(ds);
+        INDArray diff = net.params().castTo(DataType.FLOAT).sub(newParams.castTo(DataType.FLOAT));
+        assertTrue(diff.amaxNumber().doubleValue() < 0.1);
+    }
+
+    @Test
+    public void testLossScaleOverflow() {
+        //Loss scale large enough to overflow half precision gradients: iterations should be skipped, and the loss
+        // scale reduced until the gradients no longer overflow
+        DataSet ds = getData(DataType.HALF);
+        MixedPrecision mixedPrecision = new MixedPrecision.Builder()
+                .initialLossScale(1e12)
+                .lossScaleFactor(4.0)
+                .lossScaleGrowthInterval(5)
+                .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(getConf(DataType.HALF, mixedPrecision));
+        net.init();
+
+        INDArray paramsBefore = net.params().dup();
+        net.fit(ds);
+        MixedPrecision mp = net.getLayerWiseConfigurations().getMixedPrecision();
+        assertEquals(1, mp.getSkippedIterations());
+        assertEquals(1e12 / 4.0, mp.getLossScale(), 1e-3);
+        assertEquals(paramsBefore, net.params());
+
+        for (int i = 0; i < 30; i++) {
+            net.fit(ds);
+        }
+        assertTrue(mp.getSkippedIterations() > 1);
+        assertTrue(mp.getLossScale() < 1e12);
+        assertNotEquals(paramsBefore, net.params());
+        assertFalse(net.params().isNaN().any());
+        assertFalse(net.params().isInfinite().any());
+    }
+
+    @Test
+    public void testMixedPrecisionCG() {
+        DataSet ds = getData(DataType.HALF);
+        ComputationGraph net = new ComputationGraph(getGraphConf(DataType.HALF, noOverflow()));
+        net.init();
+
+        double scoreBefore = net.score(ds);
+        for (int i = 0; i < 20; i++) {
+            net.fit(ds);
+        }
+        double scoreAfter = net.score(ds);
+        assertTrue(scoreBefore + " vs. " + scoreAfter, scoreAfter < scoreBefore);
+        assertEquals(DataType.HALF, net.params().dataType());
+        assertEquals(DataType.FLOAT, net.getUpdater().getStateViewArray().dataType());
+        assertEquals(0, net.getConfiguration().getMixedPrecision().getSkippedIterations());
+    }
+
+    @Test
+    public void testGradientsNotLossScaled() {
+        //Loss scale is only applied to the gradients passed to the updater, not to those returned to the user
+        DataSet ds = getData(DataType.HALF);
+        MultiLayerNetwork net = new MultiLayerNetwork(getConf(DataType.HALF, noOverflow()));
+        net.init();
+        MultiLayerNetwork netNoMp = new MultiLayerNetwork(getConf(DataType.HALF, null));
+        netNoMp.init();
+        netNoMp.setParams(net.params().dup());
+
+        Pair<Gradient, INDArray> p = net.calculateGradients(ds.getFeatures(), ds.getLabels(), null, null);
+        Pair<Gradient, INDArray> pNoMp = netNoMp.calculateGradients(ds.getFeatures(), ds.getLabels(), null, null);
+        assertEquals(pNoMp.getFirst().gradient(), p.getFirst().gradient());
+        assertEquals(pNoMp.getSecond(), p.getSecond());
+
+        //External errors: graph with a non-output layer as the output
+        ComputationGraphConfiguration.GraphBuilder b = baseConf(DataType.HALF, new Adam(0.01))
+                .graphBuilder()
+                .addInputs("in")
+                .addLayer("d", new DenseLayer.Builder().nIn(4).nOut(3).activation(Activation.TANH).build(), "in")
+                .setOutputs("d");
+        ComputationGraph cg = new ComputationGraph(b.mixedPrecision(noOverflow()).build());
+        cg.init();
+        ComputationGraph cgNoMp = new ComputationGraph(b.mixedPrecision(null).build());
+        cgNoMp.init();
+        cgNoMp.setParams(cg.params().dup());
+
+        INDArray error = ds.getLabels().sub(0.5);
+        cg.feedForward(new INDArray[]{ds.getFeatures()}, true, false);
+        INDArray g = cg.backpropGradient(error).gradient().dup();
+        cgNoMp.feedForward(new INDArray[]{ds.getFeatures()}, true, false);
+        INDArray gNoMp = cgNoMp.backpropGradient(error).gradient();
+        assertEquals(gNoMp, g);
+    }
+
+    @Test
+    public void testLossScalingPreventsUnderflow() {
+        //Loss gradients below the smallest half precision value: these underflow to zero without loss scaling, but are
+        // representable once scaled (in full precision) by the loss scale
+        DataSet ds = getData(DataType.HALF);
+        for (boolean scaling : new boolean[]{false, true}) {
+            MixedPrecision mixedPrecision = new MixedPrecision.Builder()
+                    .initialLossScale(scaling ? 16777216 : 1.0)
+                    .dynamicLossScaling(false)
+                    .build();
+            MultiLayerConfiguration conf = baseConf(DataType.HALF, new Adam(0.01, 0.9, 0.999, 1e-20))
+                    .list()
+                    .layer(new DenseLayer.Builder().nIn(4).nOut(8).activation(Activation.TANH).build())
+                    .layer(new OutputLayer.Builder().nIn(8).nOut(3).activation(Activation.IDENTITY)
+                            .lossFunction(new TinyGradientLoss()).build())
+                    .mixedPrecision(mixedPrecision)
+                    .build();
+            MultiLayerNetwork net = new MultiLayerNetwork(conf);
+            net.init();
+
+            Map<String, INDArray> paramsBefore = new LinkedHashMap<>();
+            for (Map.Entry<String, INDArray> e : net.paramTable().entrySet()) {
+                paramsBefore.put(e.getKey(), e.getValue().dup());
+            }
+            for (int i = 0; i < 3; i++) {
+                net.fit(ds);
+            }
+            assertEquals(0, net.getLayerWiseConfigurations().getMixedPrecision().getSkippedIterations());
+            for (Map.Entry<String, INDArray> e : paramsBefore.entrySet()) {
+                INDArray after = net.getParam(e.getKey());
+                if (scaling) {
+                    //All parameters - including those of the first layer - should be updated
+                    assertNotEquals(e.getKey(), e.getValue(), after);
+                    assertFalse(e.getKey(), after.isNaN().any());
+                    assertFalse(e.getKey(), after.isInfinite().any());
+                } else {
+                    assertEquals(e.getKey(), e.getValue(), after);
+                }
+            }
+
+            //Scaling is only applied during backprop: the loss function of the output layer should be restored
+            OutputLayer outConf = (OutputLayer) net.getLayerWiseConfigurations().getConf(1).getLayer();
+            assertTrue(outConf.getLossFn() instanceof TinyGradientLoss);
+        }
+    }
+
+    @Test
+    public void testGradientsNotLossScaledCG() {
+        DataSet ds = getData(DataType.HALF);
+        ComputationGraph net = new ComputationGraph(getGraphConf(DataType.HALF, noOverflow()));
+        net.init();
+        ComputationGraph netNoMp = new ComputationGraph(getGraphConf(DataType.HALF, null));
+        netNoMp.init();
+        netNoMp.setParams(net.params().dup());
+
+        for (ComputationGraph cg : new ComputationGraph[]{net, netNoMp}) {
+            cg.setInputs(ds.getFeatures());
+            cg.setLabels(ds.getLabels());
+            cg.computeGradientAndScore();
+        }
+        assertEquals(netNoMp.score(), net.score(), 1e-3);
+        assertEquals(netNoMp.gradient().gradient(), net.gradient().gradient());
+    }
+
+    @Test
+    public void testMixedPrecisionConfig() {
+        MixedPrecision mixedPrecision = new MixedPrecision.Builder().initialLossScale(1024).dynamicLossScaling(false).build();
+        MultiLayerConfiguration conf = getConf(DataType.HALF, mixedPrecision);
+        assertEquals(mixedPrecision, conf.getMixedPrecision());
+        assertNotSame(mixedPrecision, conf.getMixedPrecision());
+        assertEquals(conf, MultiLayerConfiguration.fromJson(conf.toJson()));
+        assertEquals(conf.getMixedPrecision(), conf.clone().getMixedPrecision());
+        assertNotSame(conf.getMixedPrecision(), conf.clone().getMixedPrecision());
+        assertNull(getConf(DataType.HALF, null).getMixedPrecision());
+
+        ComputationGraphConfiguration graphConf = getGraphConf(DataType.HALF, mixedPrecision);
+        assertEquals(mixedPrecision, graphConf.getMixedPrecision());
+        assertEquals(graphConf, ComputationGraphConfiguration.fromJson(graphConf.toJson()));
+        assertEquals(graphConf.getMixedPrecision(), graphConf.clone().getMixedPrecision());
+
+        //Network data type must have lower precision than the master weights
+        try {
+            getConf(DataType.FLOAT, new MixedPrecision());
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("mixed precision"));
+        }
+
+        try {
+            getGraphConf(DataType.FLOAT, new MixedPrecision());
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("mixed precision"));
+        }
+
+        try {
+            new MixedPrecision.Builder().lossScaleFactor(1.0).build();
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            //OK
+        }
+    }
+
+    /**
+     * MSE loss with gradients scaled down below the smallest (subnormal) half precision value
+     */
+    public static class TinyGradientLoss extends LossMSE {
+        @Override
+        public INDArray computeGradient(INDArray labels, INDArray preOutput, IActivation activationFn, INDArray mask) {
+            return super.computeGradient(labels, preOutput, activationFn, mask).muli(1e-8);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.misc;
+
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.IUpdater;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+/**
+ * Networks and data shared by the training feature tests (gradient accumulation, activation checkpointing, mixed
+ * precision) in this package: these compare a network with the feature enabled against the same network without it
+ */
+public class TrainingTestUtils {
+
+    private TrainingTestUtils() {
+    }
+
+    /**
+     * Configuration builder with the given data type and updater, and a fixed seed
+     */
+    public static NeuralNetConfiguration.Builder baseConf(DataType dataType, IUpdater updater) {
+        return new NeuralNetConfiguration.Builder()
+                .dataType(dataType)
+                .seed(12345)
+                .updater(updater);
+    }
+
+    /**
+     * Dense (4 in, 8 out) and output (3 classes) layers, for {@link #classificationData(DataType, int...)} with
+     * feature shape [minibatch, 4]
+     */
+    public static NeuralNetConfiguration.ListBuilder denseClassifier(NeuralNetConfiguration.Builder builder) {
+        return builder.list()
+                .layer(new DenseLayer.Builder().nIn(4).nOut(8).activation(Activation.TANH).build())
+                .layer(new OutputLayer.Builder().nIn(8).nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build());
+    }
+
+    /**
+     * ComputationGraph equivalent of {@link #denseClassifier(NeuralNetConfiguration.Builder)}: input "in", dense
+     * layer "d" and output layer "out"
+     */
+    public static ComputationGraphConfiguration.GraphBuilder denseClassifierGraph(NeuralNetConfiguration.Builder builder) {
+        return builder.graphBuilder()
+                .addInputs("in")
+                .addLayer("d", new DenseLayer.Builder().nIn(4).nOut(8).activation(Activation.TANH).build(), "in")
+                .addLayer("out", new OutputLayer.Builder().nIn(8).nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "d")
+                .setOutputs("out");
+    }
+
+    /**
+     * Random features of the given shape (size 0: minibatch), with one-hot labels for 3 classes: example i has class
+     * i % 3. The RNG is seeded, so repeated calls return the same data
+     */
+    public static DataSet classificationData(DataType dataType, int... featureShape) {
+        Nd4j.getRandom().setSeed(12345);
+        INDArray f = Nd4j.rand(featureShape).castTo(dataType);
+        return new DataSet(f, classLabels(dataType, featureShape[0], 0));
+    }
+
+    /**
+     * One-hot labels for 3 classes: example i has class (i + offset) % 3
+     */
+    public static INDArray classLabels(DataType dataType, int minibatch, int offset) {
+        INDArray l = Nd4j.zeros(dataType, minibatch, 3);
+        for (int i = 0; i < minibatch; i++) {
+            l.putScalar(i, (i + offset) % 3, 1.0);
+        }
+        return l;
+    }
+}
@@ -18,6 +18,7 @@ package org.deeplearning4j.nn.misc;
 
 import lombok.extern.slf4j.Slf4j;
 import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.datasets.iterator.ExistingDataSetIterator;
 import org.deeplearning4j.nn.api.MaskState;
 import org.deeplearning4j.nn.conf.*;
 import org.deeplearning4j.nn.conf.graph.rnn.LastTimeStepVertex;
@@ -48,6 +49,9 @@ import org.nd4j.linalg.lossfunctions.LossFunctions;
 import org.nd4j.linalg.primitives.Pair;
 import org.deeplearning4j.nn.workspace.ArrayType;
 import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
+import org.deeplearning4j.nn.workspace.OutputBufferCache;
+
+import java.util.Arrays;
 
 import static org.junit.Assert.*;
 
@@ -587,6 +591,80 @@ public class WorkspaceTests extends BaseDL4JTest {
         }
     }
 
+    @Test
+    public void testOutputBufferCacheMLN() {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .list()
+                .layer(new DenseLayer.Builder().nIn(10).nOut(20).activation(Activation.TANH).build())
+                .layer(new DenseLayer.Builder().nIn(20).nOut(20).activation(Activation.TANH).build())
+                .layer(new OutputLayer.Builder().nIn(20).nOut(3).activation(Activation.SOFTMAX).lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        INDArray in1 = Nd4j.rand(4, 10);
+        INDArray in2 = Nd4j.rand(5, 10);
+        INDArray in3 = Nd4j.rand(6, 10);
+        INDArray exp1 = net.output(in1);
+        INDArray exp2 = net.output(in2);
+        INDArray exp3 = net.output(in3);
+
+        OutputBufferCache cache = new OutputBufferCache(2);
+        net.setOutputBufferCache(cache);
+
+        INDArray out1 = net.output(in1);
+        assertEquals(exp1, out1);
+        assertFalse(out1.isAttached());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0, cache.getHits());
+
+        for( int i=0; i<5; i++ ) {
+            INDArray out = net.output(in1);
+            assertSame(out1, out);
+            assertEquals(exp1, out);
+        }
+        assertEquals(1, cache.getMisses());
+        assertEquals(5, cache.getHits());
+
+        assertEquals(exp2, net.output(in2));
+        assertEquals(exp1, net.output(in1));
+        assertEquals(2, cache.getMisses());
+        assertEquals(6, cache.getHits());
+
+        //Third shape: least recently used (in2) should be evicted
+        assertEquals(exp3, net.output(in3));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(exp1, net.output(in1));
+        assertEquals(exp2, net.output(in2));
+        assertEquals(4, cache.getMisses());
+        assertEquals(7, cache.getHits());
+
+        //Training mode and user-provided workspaces: cache should not be used
+        net.output(in1, true);
+        assertEquals(4, cache.getMisses());
+        assertEquals(7, cache.getHits());
+
+        //Other inference overloads should all use the cache
+        assertSame(out1, net.output(in1, false));
+        assertSame(out1, net.output(in1, false, null, null));
+        assertSame(out1, net.output(in1, false, (MemoryWorkspace) null));
+        net.predict(in1);
+        assertEquals(4, cache.getMisses());
+        assertEquals(11, cache.getHits());
+
+        //Outputs from the iterator method must not share the buffer
+        INDArray outIter = net.output(new ExistingDataSetIterator(Arrays.asList(new DataSet(in1, null), new DataSet(in1, null))));
+        assertEquals(Nd4j.concat(0, exp1, exp1), outIter);
+
+        cache.clear();
+        for(String s : Nd4j.getWorkspaceManager().getAllWorkspacesIdsForCurrentThread()){
+            assertFalse(s, s.contains("_OBC"));
+        }
+        net.setOutputBufferCache(null);
+        assertEquals(exp1, net.output(in1));
+    }
+
     @Test
     public void checkScoreScopeOutMLN() {
 
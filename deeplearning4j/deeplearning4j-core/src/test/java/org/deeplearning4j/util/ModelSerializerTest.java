@@ -19,6 +19,7 @@ package org.deeplearning4j.util;
 import lombok.val;
 import org.apache.commons.lang3.SerializationUtils;
 import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.TestUtils;
 import org.deeplearning4j.datasets.iterator.impl.IrisDataSetIterator;
 import org.deeplearning4j.nn.api.OptimizationAlgorithm;
 import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
@@ -33,13 +34,17 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.executioner.OpExecutioner;
 import org.nd4j.linalg.dataset.DataSet;
 import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
 import org.nd4j.linalg.dataset.api.preprocessor.Normalizer;
 import org.nd4j.linalg.dataset.api.preprocessor.NormalizerMinMaxScaler;
 import org.nd4j.linalg.dataset.api.preprocessor.NormalizerStandardize;
 import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.learning.config.Adam;
 import org.nd4j.linalg.learning.config.Sgd;
 import org.nd4j.linalg.lossfunctions.LossFunctions;
 import org.nd4j.linalg.primitives.Pair;
@@ -499,4 +504,135 @@ public class ModelSerializerTest extends BaseDL4JTest {
         ComputationGraph restoredNet = ModelSerializer.restoreComputationGraph(tempFile);
         assertEquals(net.params(), restoredNet.params());
     }
+
+    @Test
+    public void testWriteMappedMLNModel() throws Exception {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345)
+                        .updater(new Adam(0.01)).activation(Activation.TANH).weightInit(WeightInit.XAVIER).list()
+                        .layer(0, new DenseLayer.Builder().nIn(4).nOut(20).build())
+                        .layer(1, new OutputLayer.Builder().lossFunction(LossFunctions.LossFunction.MCXENT)
+                                        .activation(Activation.SOFTMAX).nIn(20).nOut(3).build())
+                        .build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        INDArray labels = Nd4j.zeros(DataType.FLOAT, 10, 3);
+        for( int i=0; i<10; i++ ){
+            labels.putScalar(i, i % 3, 1.0);
+        }
+        DataSet ds = new DataSet(Nd4j.rand(DataType.FLOAT, 10, 4), labels);
+        net.fit(ds);
+
+        NormalizerStandardize norm = new NormalizerStandardize();
+        norm.fit(ds);
+
+        File tempFile = tempDir.newFile();
+        ModelSerializer.writeModelMapped(net, tempFile, true, norm);
+        assertTrue(MappedModelFile.isMappedModelFile(tempFile));
+
+        MultiLayerNetwork network = ModelSerializer.restoreMultiLayerNetwork(tempFile);
+        assertEquals(net.getLayerWiseConfigurations().toJson(), network.getLayerWiseConfigurations().toJson());
+        assertEquals(net.params(), network.params());
+        assertEquals(net.getUpdater().getStateViewArray(), network.getUpdater().getStateViewArray());
+        assertEquals(net.output(ds.getFeatures()), network.output(ds.getFeatures()));
+
+        NormalizerStandardize restoredNorm = ModelSerializer.restoreNormalizerFromFile(tempFile);
+        assertEquals(norm.getMean(), restoredNorm.getMean());
+        assertEquals(norm.getStd(), restoredNorm.getStd());
+
+        //Parameters are mapped copy-on-write: fitting the restored network must not modify the file
+        network.fit(ds);
+        assertNotEquals(net.params(), network.params());
+        MultiLayerNetwork network2 = ModelSerializer.restoreMultiLayerNetworkMapped(tempFile, false);
+        assertEquals(net.params(), network2.params());
+    }
+
+    @Test
+    public void testWriteMappedCGModel() throws Exception {
+        ComputationGraph cg = simpleComputationGraph();
+        cg.init();
+
+        File tempFile = tempDir.newFile();
+        ModelSerializer.writeModelMapped(cg, tempFile, true);
+
+        ComputationGraph network = ModelSerializer.restoreComputationGraph(tempFile);
+        assertEquals(cg.getConfiguration().toJson(), network.getConfiguration().toJson());
+        assertEquals(cg.params(), network.params());
+        assertEquals(cg.getUpdater().getStateViewArray(), network.getUpdater().getStateViewArray());
+        assertNull(ModelSerializer.restoreNormalizerFromFile(tempFile));
+
+        try {
+            ModelSerializer.restoreMultiLayerNetwork(tempFile);
+            fail("Expected exception");
+        } catch (Exception e){
+            String msg = e.getMessage();
+            assertTrue(msg, msg.contains("ComputationGraph") && msg.contains("restoreComputationGraph"));
+        }
+    }
+
+    @Test
+    public void testMappedModelFileArrays() throws Exception {
+        Map<String,INDArray> arrays = new LinkedHashMap<>();
+        arrays.put("double", Nd4j.rand(DataType.DOUBLE, 3, 4));
+        arrays.put("fOrder", Nd4j.rand(DataType.FLOAT, 'f', 5, 6));
+        arrays.put("view", Nd4j.linspace(1, 100, 100, DataType.INT).reshape(10, 10).get(NDArrayIndex.interval(2, 5), NDArrayIndex.all()));
+        Map<String,byte[]> bytes = Collections.singletonMap("bytes", new byte[]{1, 2, 3});
+
+        File tempFile = tempDir.newFile();
+        MappedModelFile.write(tempFile, bytes, arrays);
+
+        MappedModelFile mmf = MappedModelFile.open(tempFile);
+        assertEquals(new HashSet<>(Arrays.asList("bytes", "double", "fOrder", "view")), mmf.getEntryNames());
+        assertArrayEquals(new byte[]{1, 2, 3}, mmf.getBytes("bytes"));
+        for(Map.Entry<String,INDArray> e : arrays.entrySet()){
+            INDArray restored = mmf.getArray(e.getKey());
+            assertEquals(e.getKey(), e.getValue(), restored);
+            assertEquals(e.getKey(), e.getValue().ordering(), restored.ordering());
+        }
+        assertNull(mmf.getArray("notAnEntry"));
+    }
+
+    @Test
+    public void testMappedModelFileReadOnly() throws Exception {
+        Map<String,INDArray> arrays = new LinkedHashMap<>();
+        arrays.put("float", Nd4j.rand(DataType.FLOAT, 30, 40));
+        arrays.put("long", Nd4j.linspace(1, 100, 100, DataType.LONG).reshape(10, 10));
+
+        //Small alignment: entries don't start on a page boundary
+        File tempFile = tempDir.newFile();
+        MappedModelFile.write(tempFile, Collections.<String,byte[]>emptyMap(), arrays, 64);
+        assertTrue(tempFile.setWritable(false));
+
+        MappedModelFile mmf = MappedModelFile.open(tempFile);
+        boolean cpu = Nd4j.getExecutioner().type() == OpExecutioner.ExecutionerType.NATIVE_CPU;
+        for(Map.Entry<String,INDArray> e : arrays.entrySet()){
+            //Read only files can be mapped read-only, but not copy on write (which requires a writable file)
+            assertEquals(e.getKey(), cpu, mmf.isMapped(e.getKey()));
+            assertFalse(e.getKey(), mmf.isMapped(e.getKey(), true));
+            assertEquals(e.getKey(), e.getValue(), mmf.getArray(e.getKey()));
+
+            //Not mapped: read into memory, hence modifications are not visible to later reads of the file
+            INDArray restored = mmf.getArray(e.getKey(), true);
+            assertEquals(e.getKey(), e.getValue(), restored);
+            restored.addi(1);
+            assertEquals(e.getKey(), e.getValue(), mmf.getArray(e.getKey()));
+        }
+
+        //Restored networks can be trained, even when the file is read only
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .updater(new Sgd(0.1))
+                .list()
+                .layer(new OutputLayer.Builder().nIn(4).nOut(3).activation(Activation.SOFTMAX).build())
+                .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        File netFile = tempDir.newFile();
+        ModelSerializer.writeModelMapped(net, netFile, true);
+        assertTrue(netFile.setWritable(false));
+        MultiLayerNetwork restoredNet = ModelSerializer.restoreMultiLayerNetwork(netFile);
+        assertEquals(net.params(), restoredNet.params());
+        restoredNet.fit(new DataSet(Nd4j.rand(5, 4), TestUtils.randomOneHot(5, 3)));
+        assertNotEquals(net.params(), restoredNet.params());
+        assertEquals(net.params(), ModelSerializer.restoreMultiLayerNetwork(netFile).params());
+    }
 }
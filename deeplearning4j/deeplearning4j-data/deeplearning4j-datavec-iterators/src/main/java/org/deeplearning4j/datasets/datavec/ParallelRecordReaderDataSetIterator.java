@@ -0,0 +1,698 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.datasets.datavec;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.SerializationUtils;
+import org.datavec.api.io.WritableConverter;
+import org.datavec.api.records.reader.RecordReader;
+import org.datavec.api.split.CollectionInputSplit;
+import org.datavec.api.split.InputSplit;
+import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
+import org.nd4j.linalg.api.memory.enums.AllocationPolicy;
+import org.nd4j.linalg.api.memory.enums.LearningPolicy;
+import org.nd4j.linalg.api.memory.enums.ResetPolicy;
+import org.nd4j.linalg.api.memory.enums.SpillPolicy;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.Serializable;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A parallel version of {@link RecordReaderDataSetIterator}: N worker threads each read from their own
+ * {@link RecordReader} (each reading a disjoint subset of the data), and each worker does the parsing, conversion to
+ * INDArrays and minibatch creation for its own reader. This is useful when ETL (for example CSV parsing, TransformProcess
+ * execution, image loading) is the bottleneck, as the single prefetch thread of {@link org.deeplearning4j.datasets.iterator.AsyncDataSetIterator}
+ * can only utilize one CPU core for this.<br>
+ * <br>
+ * Two modes are available:<br>
+ * - Ordered (default): the output is deterministic. Minibatches are returned from each worker in turn (round robin), so
+ * the output order depends only on the contents of each worker's reader - not on thread timing.<br>
+ * - Unordered: minibatches are returned in whatever order the workers finish creating them. This avoids one slow worker
+ * holding up the others, but means the order of minibatches may differ between runs<br>
+ * <br>
+ * Minibatch sizes: each worker's reader will usually not contain an exact multiple of the minibatch size. Instead of
+ * each worker returning its own partial minibatch, the final (smaller) minibatch of each worker is held back until all
+ * workers are done, and these are then merged and returned at the end of the epoch. Hence all minibatches except for
+ * the last one have exactly {@code batchSize} examples (as per {@link RecordReaderDataSetIterator}). Note that merged
+ * minibatches are detached (i.e., not in a workspace), and any preprocessor is applied before merging.<br>
+ * <br>
+ * Each worker creates its minibatches in its own cyclic workspace (as per AsyncDataSetIterator), hence the returned
+ * DataSets should not be used after another {@code prefetchSize + 1} calls of next() without first being detached.<br>
+ * <br>
+ * Note that the preprocessor (if any) is applied by the worker threads, hence must be safe to use from multiple threads.
+ * Also note that this iterator is already asynchronous, hence {@link #asyncSupported()} returns false.<br>
+ * <br>
+ * Example: CSV classification, 4 workers, batch size 32<br>
+ * <pre>
+ * {@code DataSetIterator iter = new ParallelRecordReaderDataSetIterator.Builder(new CSVRecordReader(), new FileSplit(dir), 4, 32)
+ *       .classification(labelIdx, numClasses)
+ *       .build();
+ * }
+ * </pre>
+ */
+@Slf4j
+public class ParallelRecordReaderDataSetIterator implements DataSetIterator {
+
+    protected final List<RecordReader> readers;
+    protected final List<RecordReaderDataSetIterator> iterators;
+    protected final int batchSize;
+    protected final int maxNumBatches;
+    @Getter
+    protected final boolean ordered;
+    protected final int prefetchSize;
+    protected final boolean useWorkspace;
+    @Getter
+    protected volatile DataSetPreProcessor preProcessor;
+
+    protected final DataSet terminator = new DataSet();
+    protected final List<BlockingQueue<DataSet>> queues;
+    protected final Integer deviceId;
+    protected final String workspaceId;
+
+    protected List<WorkerThread> workers;
+    protected boolean[] depleted;
+    protected int nextWorker;
+    protected int batchNum;
+    protected DataSet nextElement;
+    protected volatile RuntimeException throwable;
+    //Final partial minibatch for each worker (if any), and the minibatches created by merging these
+    protected DataSet[] remainders;
+    protected List<DataSet> mergedRemainders;
+
+    protected ParallelRecordReaderDataSetIterator(Builder b) {
+        this.readers = b.readers;
+        this.batchSize = b.batchSize;
+        this.maxNumBatches = b.maxNumBatches;
+        this.ordered = b.ordered;
+        this.prefetchSize = Math.max(2, b.prefetchSize);
+        this.useWorkspace = b.useWorkspace;
+        this.preProcessor = b.preProcessor;
+        this.deviceId = Nd4j.getAffinityManager().getDeviceForCurrentThread();
+        this.workspaceId = "PRRDSI_ITER-" + java.util.UUID.randomUUID().toString();
+
+        this.iterators = new ArrayList<>(readers.size());
+        for (RecordReader rr : readers) {
+            RecordReaderDataSetIterator iter = new RecordReaderDataSetIterator(rr, b.converter, b.batchSize,
+                    b.labelIndex, b.labelIndexTo, b.numPossibleLabels, -1, b.regression);
+            iter.setCollectMetaData(b.collectMetaData);
+            iterators.add(iter);
+        }
+
+        //Ordered: one queue per worker, so we can take from each worker in turn
+        //Unordered: single queue shared by all workers
+        this.queues = new ArrayList<>();
+        if (ordered) {
+            for (int i = 0; i < readers.size(); i++) {
+                queues.add(new LinkedBlockingQueue<DataSet>(prefetchSize));
+            }
+        } else {
+            queues.add(new LinkedBlockingQueue<DataSet>(prefetchSize));
+        }
+
+        startWorkers();
+    }
+
+    /**
+     * @return Number of worker threads used by this iterator
+     */
+    public int numWorkers() {
+        return readers.size();
+    }
+
+    protected void startWorkers() {
+        depleted = new boolean[readers.size()];
+        nextWorker = 0;
+        batchNum = 0;
+        nextElement = null;
+        throwable = null;
+        remainders = new DataSet[readers.size()];
+        mergedRemainders = null;
+
+        workers = new ArrayList<>(readers.size());
+        for (int i = 0; i < readers.size(); i++) {
+            BlockingQueue<DataSet> queue = ordered ? queues.get(i) : queues.get(0);
+            WorkerThread t = new WorkerThread(i, iterators.get(i), queue);
+
+            //Ensure the worker threads have the same thread->device affinity as the master thread
+            Nd4j.getAffinityManager().attachThreadToDevice(t, deviceId);
+            t.setDaemon(true);
+            workers.add(t);
+        }
+
+        for (WorkerThread t : workers) {
+            t.start();
+        }
+    }
+
+    protected void stopWorkers() {
+        if (workers == null)
+            return;
+
+        for (WorkerThread t : workers) {
+            t.interrupt();
+        }
+
+        for (BlockingQueue<DataSet> q : queues) {
+            q.clear();
+        }
+
+        for (WorkerThread t : workers) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            t.shutdown();
+        }
+
+        for (BlockingQueue<DataSet> q : queues) {
+            q.clear();
+        }
+        workers = null;
+    }
+
+    /**
+     * This method will terminate the worker threads AND will destroy their workspaces (if any)<br>
+     * PLEASE NOTE: After shutdown() call, this instance can't be used anymore
+     */
+    public void shutdown() {
+        stopWorkers();
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (throwable != null)
+            throw throwable;
+
+        if (nextElement != null)
+            return true;
+
+        if (maxNumBatches >= 0 && batchNum >= maxNumBatches)
+            return false;
+
+        try {
+            if (ordered) {
+                //Take from each worker in turn, skipping any that have no more data
+                for (int i = 0; i < depleted.length; i++) {
+                    int w = nextWorker;
+                    nextWorker = (nextWorker + 1) % depleted.length;
+                    if (depleted[w])
+                        continue;
+
+                    DataSet ds = queues.get(w).take();
+                    if (ds == terminator) {
+                        if (throwable != null)
+                            throw throwable;
+                        depleted[w] = true;
+                        //Check remaining workers (including those before this one in the rotation)
+                        i = -1;
+                        if (allDepleted())
+                            break;
+                        continue;
+                    }
+
+                    nextElement = ds;
+                    return true;
+                }
+            } else {
+                while (!allDepleted()) {
+                    DataSet ds = queues.get(0).take();
+                    if (ds == terminator) {
+                        if (throwable != null)
+                            throw throwable;
+                        //Unordered: terminators are not associated with a particular worker, only the count matters
+                        for (int i = 0; i < depleted.length; i++) {
+                            if (!depleted[i]) {
+                                depleted[i] = true;
+                                break;
+                            }
+                        }
+                        continue;
+                    }
+
+                    nextElement = ds;
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+
+        //Worker may have failed after putting the terminator - check again
+        if (throwable != null)
+            throw throwable;
+
+        //All workers are done: return the merged partial minibatches (if any). Terminator was put after the remainder
+        //was set, hence remainders are visible here
+        if (mergedRemainders == null)
+            mergedRemainders = mergeRemainders();
+        if (!mergedRemainders.isEmpty()) {
+            nextElement = mergedRemainders.remove(0);
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Merge the final partial minibatches of each worker, then split them into minibatches of (at most) batchSize
+     * examples. At most one of the returned minibatches has fewer than batchSize examples
+     */
+    protected List<DataSet> mergeRemainders() {
+        List<DataSet> toMerge = new ArrayList<>();
+        for (int i = 0; i < remainders.length; i++) {
+            if (remainders[i] != null)
+                toMerge.add(remainders[i]);
+            remainders[i] = null;
+        }
+
+        List<DataSet> out = new ArrayList<>();
+        if (toMerge.isEmpty())
+            return out;
+
+        DataSet merged = (toMerge.size() == 1 ? toMerge.get(0) : DataSet.merge(toMerge));
+        int n = merged.numExamples();
+        if (n <= batchSize) {
+            out.add(merged);
+            return out;
+        }
+
+        List<Serializable> meta = merged.getExampleMetaData();
+        for (int from = 0; from < n; from += batchSize) {
+            int to = Math.min(n, from + batchSize);
+            DataSet ds = (DataSet) merged.getRange(from, to);
+            if (meta != null && meta.size() == n)
+                ds.setExampleMetaData(new ArrayList<>(meta.subList(from, to)));
+            out.add(ds);
+        }
+        return out;
+    }
+
+    protected boolean allDepleted() {
+        for (boolean b : depleted) {
+            if (!b)
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public DataSet next() {
+        if (!hasNext())
+            throw new NoSuchElementException("No next element");
+
+        DataSet ds = nextElement;
+        nextElement = null;
+        batchNum++;
+        return ds;
+    }
+
+    @Override
+    public DataSet next(int num) {
+        throw new UnsupportedOperationException("Not supported for " + getClass().getSimpleName()
+                + ": use next() instead. Minibatch size is set at construction time");
+    }
+
+    @Override
+    public int inputColumns() {
+        if (!hasNext())
+            throw new IllegalStateException("Cannot determine number of input columns: no data available");
+        return nextElement.numInputs();
+    }
+
+    @Override
+    public int totalOutcomes() {
+        if (!hasNext())
+            throw new IllegalStateException("Cannot determine number of outcomes: no data available");
+        return nextElement.numOutcomes();
+    }
+
+    @Override
+    public boolean resetSupported() {
+        for (RecordReader rr : readers) {
+            if (!rr.resetSupported())
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean asyncSupported() {
+        return false;
+    }
+
+    @Override
+    public void reset() {
+        stopWorkers();
+        for (RecordReaderDataSetIterator iter : iterators) {
+            iter.reset();
+        }
+        startWorkers();
+    }
+
+    @Override
+    public int batch() {
+        return batchSize;
+    }
+
+    /**
+     * Set the preprocessor. Note that the preprocessor is applied by the worker threads, and hence only applies to
+     * minibatches created after (not those already prefetched before) this method is called.
+     */
+    @Override
+    public void setPreProcessor(DataSetPreProcessor preProcessor) {
+        this.preProcessor = preProcessor;
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return readers.get(0).getLabels();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    protected class WorkerThread extends Thread implements Runnable {
+        private final int workerIdx;
+        private final DataSetIterator iterator;
+        private final BlockingQueue<DataSet> queue;
+        private boolean isShutdown = false; // locked around `this`
+        private final WorkspaceConfiguration configuration = WorkspaceConfiguration.builder().minSize(10 * 1024L * 1024L)
+                .overallocationLimit(prefetchSize + 2).policyReset(ResetPolicy.ENDOFBUFFER_REACHED)
+                .policyLearning(LearningPolicy.FIRST_LOOP).policyAllocation(AllocationPolicy.OVERALLOCATE)
+                .policySpill(SpillPolicy.REALLOCATE).build();
+
+        private MemoryWorkspace workspace;
+
+        protected WorkerThread(int workerIdx, DataSetIterator iterator, BlockingQueue<DataSet> queue) {
+            this.workerIdx = workerIdx;
+            this.iterator = iterator;
+            this.queue = queue;
+            this.setName("PRRDSI worker thread " + workerIdx);
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (useWorkspace)
+                    workspace = Nd4j.getWorkspaceManager().getWorkspaceForCurrentThread(configuration, workspaceId);
+
+                while (iterator.hasNext() && !isInterrupted()) {
+                    DataSet ds;
+                    if (useWorkspace) {
+                        try (MemoryWorkspace ws = workspace.notifyScopeEntered()) {
+                            ds = nextPreProcessed();
+                        }
+                    } else {
+                        ds = nextPreProcessed();
+                    }
+
+                    // we want to ensure dataset creation has finished before handing it over
+                    Nd4j.getExecutioner().commit();
+
+                    if (ds == null)
+                        continue;
+
+                    if (ds.numExamples() < batchSize && !iterator.hasNext()) {
+                        //Final partial minibatch: hold it back, to be merged with those of the other workers. Detach
+                        //it, as the workspace may be reused or destroyed before it is returned
+                        ds.detach();
+                        remainders[workerIdx] = ds;
+                    } else {
+                        queue.put(ds);
+                    }
+                }
+                queue.put(terminator);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable t) {
+                throwable = (t instanceof RuntimeException ? (RuntimeException) t : new RuntimeException(t));
+                log.error("Error in worker thread {}", getName(), t);
+                //Put the terminator so the consumer doesn't block forever; exception is rethrown by the consumer
+                try {
+                    queue.put(terminator);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            } finally {
+                synchronized (this) {
+                    isShutdown = true;
+                    this.notifyAll();
+                }
+            }
+        }
+
+        private DataSet nextPreProcessed() {
+            DataSet ds = iterator.next();
+            DataSetPreProcessor pp = preProcessor;
+            if (pp != null)
+                pp.preProcess(ds);
+            return ds;
+        }
+
+        public void shutdown() {
+            synchronized (this) {
+                while (!isShutdown) {
+                    try {
+                        this.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RuntimeException(e);
+                    }
+                }
+            }
+
+            if (workspace != null) {
+                log.debug("Manually destroying PRRDSI workspace");
+                workspace.destroyWorkspace(true);
+                workspace = null;
+            }
+        }
+    }
+
+    /**
+     * Builder class for ParallelRecordReaderDataSetIterator
+     */
+    public static class Builder {
+
+        protected List<RecordReader> readers;
+        protected int batchSize;
+        protected WritableConverter converter;
+        protected int maxNumBatches = -1;
+        protected int labelIndex = -1;
+        protected int labelIndexTo = -1;
+        protected int numPossibleLabels = -1;
+        protected boolean regression = false;
+        protected DataSetPreProcessor preProcessor;
+        protected boolean collectMetaData = false;
+        protected boolean ordered = true;
+        protected int prefetchSize = 4;
+        protected boolean useWorkspace = true;
+
+        /**
+         * Use the provided (initialized) record readers - one worker thread per reader. The readers should each read a
+         * disjoint subset of the data (for example, each initialized on a different set of files)
+         *
+         * @param readers   Record readers - one per worker
+         * @param batchSize Minibatch size. The final partial minibatches of each reader are merged and returned
+         *                  last, hence only the last minibatch may have fewer than batchSize examples
+         */
+        public Builder(@NonNull List<RecordReader> readers, int batchSize) {
+            Preconditions.checkArgument(!readers.isEmpty(), "At least one record reader must be provided");
+            this.readers = readers;
+            this.batchSize = batchSize;
+        }
+
+        /**
+         * Split the locations of the provided InputSplit into (up to) {@code numWorkers} disjoint sets of locations, and
+         * read each one using a copy of the provided record reader. The record reader should not have been initialized
+         * yet: it is copied (via Java serialization) once for each worker.<br>
+         * Note that each location (i.e., file) is read by only one worker: if there are fewer locations than workers,
+         * fewer workers will be used.
+         *
+         * @param recordReader Record reader to copy for each worker. Should not be initialized
+         * @param split        Input split, whose locations will be divided between the workers
+         * @param numWorkers   Number of worker threads
+         * @param batchSize    Minibatch size. The final partial minibatches of each worker are merged and returned
+         *                     last, hence only the last minibatch may have fewer than batchSize examples
+         */
+        public Builder(@NonNull RecordReader recordReader, @NonNull InputSplit split, int numWorkers, int batchSize) {
+            Preconditions.checkArgument(numWorkers > 0, "Number of workers must be positive, got %s", numWorkers);
+            this.readers = splitReaders(recordReader, split, numWorkers);
+            this.batchSize = batchSize;
+        }
+
+        public Builder writableConverter(WritableConverter converter) {
+            this.converter = converter;
+            return this;
+        }
+
+        /**
+         * Optional argument, usually not used. If set, can be used to limit the maximum number of minibatches that
+         * will be returned (between resets). If not set, will always return as many minibatches as there is data
+         * available.
+         *
+         * @param maxNumBatches Maximum number of minibatches per epoch / reset
+         */
+        public Builder maxNumBatches(int maxNumBatches) {
+            this.maxNumBatches = maxNumBatches;
+            return this;
+        }
+
+        /**
+         * Use this for single output regression (i.e., 1 output/regression target)
+         *
+         * @param labelIndex Column index that contains the regression target (indexes start at 0)
+         */
+        public Builder regression(int labelIndex) {
+            return regression(labelIndex, labelIndex);
+        }
+
+        /**
+         * Use this for multiple output regression (1 or more output/regression targets). Note that all regression
+         * targets must be contiguous (i.e., positions x to y, without gaps)
+         *
+         * @param labelIndexFrom Column index of the first regression target (indexes start at 0)
+         * @param labelIndexTo   Column index of the last regression target (inclusive)
+         */
+        public Builder regression(int labelIndexFrom, int labelIndexTo) {
+            this.labelIndex = labelIndexFrom;
+            this.labelIndexTo = labelIndexTo;
+            this.regression = true;
+            return this;
+        }
+
+        /**
+         * Use this for classification
+         *
+         * @param labelIndex Index that contains the label index. Column (indexes start from 0) be an integer value,
+         *                   and contain values 0 to numClasses-1
+         * @param numClasses Number of label classes (i.e., number of categories/classes in the dataset)
+         */
+        public Builder classification(int labelIndex, int numClasses) {
+            this.labelIndex = labelIndex;
+            this.labelIndexTo = labelIndex;
+            this.numPossibleLabels = numClasses;
+            this.regression = false;
+            return this;
+        }
+
+        /**
+         * Optional arg. Allows the preprocessor to be set. Note that the preprocessor is applied by the worker threads,
+         * and hence must be thread safe
+         *
+         * @param preProcessor Preprocessor to use
+         */
+        public Builder preProcessor(DataSetPreProcessor preProcessor) {
+            this.preProcessor = preProcessor;
+            return this;
+        }
+
+        /**
+         * When set to true: metadata for  the current examples will be present in the returned DataSet.
+         * Disabled by default.
+         *
+         * @param collectMetaData Whether metadata should be collected or not
+         */
+        public Builder collectMetaData(boolean collectMetaData) {
+            this.collectMetaData = collectMetaData;
+            return this;
+        }
+
+        /**
+         * If true (default): minibatches are returned from each worker in turn (round robin), giving a deterministic
+         * order of minibatches that doesn't depend on thread timing.<br>
+         * If false: minibatches are returned in the order the workers produce them. This may be faster if the
+         * workers' ETL cost per minibatch varies, but the minibatch order may differ between runs.
+         *
+         * @param ordered Whether the output order should be deterministic
+         */
+        public Builder ordered(boolean ordered) {
+            this.ordered = ordered;
+            return this;
+        }
+
+        /**
+         * Number of minibatches to prefetch. When ordered, this is per worker; otherwise it is the total for all
+         * workers. Default: 4
+         *
+         * @param prefetchSize Number of minibatches to prefetch
+         */
+        public Builder prefetchSize(int prefetchSize) {
+            this.prefetchSize = prefetchSize;
+            return this;
+        }
+
+        /**
+         * Whether each worker should create the minibatches in its own cyclic workspace. Default: true.
+         * If true, returned DataSets should be detached if they need to be retained for longer than
+         * {@code prefetchSize + 1} further calls of next()
+         *
+         * @param useWorkspace Whether workspaces should be used
+         */
+        public Builder useWorkspace(boolean useWorkspace) {
+            this.useWorkspace = useWorkspace;
+            return this;
+        }
+
+        public ParallelRecordReaderDataSetIterator build() {
+            return new ParallelRecordReaderDataSetIterator(this);
+        }
+
+        protected static List<RecordReader> splitReaders(RecordReader recordReader, InputSplit split, int numWorkers) {
+            URI[] locations = split.locations();
+            Preconditions.checkState(locations != null && locations.length > 0, "Input split has no locations");
+
+            //Contiguous ranges of locations, so each worker reads its files in the original order
+            int n = Math.min(numWorkers, locations.length);
+            List<RecordReader> out = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                int from = (int) ((long) locations.length * i / n);
+                int to = (int) ((long) locations.length * (i + 1) / n);
+                RecordReader rr = SerializationUtils.clone(recordReader);
+                try {
+                    rr.initialize(new CollectionInputSplit(Arrays.asList(locations).subList(from, to)));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                } catch (Exception e) {
+                    throw new RuntimeException("Error initializing record reader for worker " + i, e);
+                }
+                out.add(rr);
+            }
+            return out;
+        }
+    }
+}
@@ -33,7 +33,6 @@ import org.nd4j.linalg.factory.Nd4j;
 
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -45,6 +44,10 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * Note that appropriate DL4J fit methods automatically utilize this iterator, so users don't need to manually wrap
  * their iterators when fitting a network
  *
+ * By default a {@link RingBufferBlockingQueue} is used to pass minibatches from the prefetch thread to the consumer.
+ * Pass one explicitly to choose its wait strategy, or to inspect its statistics to find out whether ETL or training is
+ * the bottleneck
+ *
  * @author raver119@gmail.com
  */
 @Slf4j
@@ -87,21 +90,21 @@ public class AsyncDataSetIterator implements DataSetIterator {
     }
 
     public AsyncDataSetIterator(DataSetIterator baseIterator, int queueSize) {
-        this(baseIterator, queueSize, new LinkedBlockingQueue<DataSet>(queueSize));
+        this(baseIterator, queueSize, new RingBufferBlockingQueue<DataSet>(queueSize));
     }
 
     public AsyncDataSetIterator(DataSetIterator baseIterator, int queueSize, boolean useWorkspace) {
-        this(baseIterator, queueSize, new LinkedBlockingQueue<DataSet>(queueSize), useWorkspace);
+        this(baseIterator, queueSize, new RingBufferBlockingQueue<DataSet>(queueSize), useWorkspace);
     }
 
     public AsyncDataSetIterator(DataSetIterator baseIterator, int queueSize, boolean useWorkspace, Integer deviceId) {
-        this(baseIterator, queueSize, new LinkedBlockingQueue<DataSet>(queueSize), useWorkspace, new DefaultCallback(),
+        this(baseIterator, queueSize, new RingBufferBlockingQueue<DataSet>(queueSize), useWorkspace, new DefaultCallback(),
                         deviceId);
     }
 
     public AsyncDataSetIterator(DataSetIterator baseIterator, int queueSize, boolean useWorkspace,
                     DataSetCallback callback) {
-        this(baseIterator, queueSize, new LinkedBlockingQueue<DataSet>(queueSize), useWorkspace, callback);
+        this(baseIterator, queueSize, new RingBufferBlockingQueue<DataSet>(queueSize), useWorkspace, callback);
     }
 
     public AsyncDataSetIterator(DataSetIterator iterator, int queueSize, BlockingQueue<DataSet> queue,
@@ -32,7 +32,6 @@ import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
 import org.nd4j.linalg.factory.Nd4j;
 
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -44,6 +43,10 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * Note that appropriate DL4J fit methods automatically utilize this iterator, so users don't need to manually wrap
  * their iterators when fitting a network
  *
+ * By default a {@link RingBufferBlockingQueue} is used to pass minibatches from the prefetch thread to the consumer.
+ * Pass one explicitly to choose its wait strategy, or to inspect its statistics to find out whether ETL or training is
+ * the bottleneck
+ *
  * @author raver119@gmail.com
  */
 @Slf4j
@@ -77,16 +80,16 @@ public class AsyncMultiDataSetIterator implements MultiDataSetIterator {
     }
 
     public AsyncMultiDataSetIterator(MultiDataSetIterator baseIterator, int queueSize) {
-        this(baseIterator, queueSize, new LinkedBlockingQueue<MultiDataSet>(queueSize));
+        this(baseIterator, queueSize, new RingBufferBlockingQueue<MultiDataSet>(queueSize));
     }
 
     public AsyncMultiDataSetIterator(MultiDataSetIterator baseIterator, int queueSize, boolean useWorkspace) {
-        this(baseIterator, queueSize, new LinkedBlockingQueue<MultiDataSet>(queueSize), useWorkspace);
+        this(baseIterator, queueSize, new RingBufferBlockingQueue<MultiDataSet>(queueSize), useWorkspace);
     }
 
     public AsyncMultiDataSetIterator(MultiDataSetIterator baseIterator, int queueSize, boolean useWorkspace,
                     Integer deviceId) {
-        this(baseIterator, queueSize, new LinkedBlockingQueue<MultiDataSet>(queueSize), useWorkspace, null, deviceId);
+        this(baseIterator, queueSize, new RingBufferBlockingQueue<MultiDataSet>(queueSize), useWorkspace, null, deviceId);
     }
 
     public AsyncMultiDataSetIterator(MultiDataSetIterator iterator, int queueSize, BlockingQueue<MultiDataSet> queue,
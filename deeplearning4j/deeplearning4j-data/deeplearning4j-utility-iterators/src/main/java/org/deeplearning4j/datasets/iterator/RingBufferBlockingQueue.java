@@ -0,0 +1,524 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.datasets.iterator;
+
+import lombok.NonNull;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded, preallocated, array-backed lock-free BlockingQueue, used as the default handoff between the prefetch
+ * thread and the consumer in {@link AsyncDataSetIterator} and {@link AsyncMultiDataSetIterator}.<br>
+ * Every slot carries its own sequence number, so producers and consumers only ever CAS their own position counter:
+ * there are no locks on the fast path, and no node objects are allocated per element. Any number of producers and
+ * consumers is supported, though the common case is single producer/single consumer.<br>
+ * <br>
+ * A put()/take() that can't complete immediately waits according to the configured {@link WaitStrategy}. With the
+ * default (PARK) strategy, it spins and yields briefly, then blocks on a condition until signalled by a take()/put():
+ * an idle thread doesn't wake up periodically. The lock for that condition is only acquired by waiting threads, and by
+ * put()/take() calls when a thread is actually waiting. Blocking methods respond to thread interruption.<br>
+ * <br>
+ * Queue statistics (number of elements transferred, number of times and total time producers waited on a full queue
+ * and consumers waited on an empty queue, average depth seen by consumers) are tracked, and can be used to tell a
+ * starved consumer (ETL is the bottleneck: consumer waits, depth close to 0) from a starved producer (training is the
+ * bottleneck: producer waits, depth close to capacity).
+ */
+public class RingBufferBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+    /**
+     * How a blocked put()/take() waits for a free slot/an element.<br>
+     * SPIN: busy spin. Lowest latency, but burns a full core while waiting: only use it when producer and consumer
+     * threads have dedicated cores.<br>
+     * YIELD: spin briefly, then Thread.yield() between retries.<br>
+     * PARK: spin briefly, yield briefly, then block until signalled by another put()/take(). Doesn't use any CPU
+     * while idle.
+     */
+    public enum WaitStrategy {
+        SPIN, YIELD, PARK
+    }
+
+    protected static final int SPIN_TRIES = 100;
+    protected static final int YIELD_TRIES = 100;
+
+    protected final int capacity;
+    protected final WaitStrategy waitStrategy;
+    protected final AtomicReferenceArray<E> buffer;
+    // per slot: 2 * position while free for the element at that position, 2 * position + 1 once it is published.
+    // Distinct values for both states are required for capacity 1, where the next lap starts at position + 1
+    protected final AtomicLongArray sequences;
+    protected final AtomicLong enqueuePosition = new AtomicLong(0);
+    protected final AtomicLong dequeuePosition = new AtomicLong(0);
+
+    // blocking (PARK) slow path: only used when a thread actually has to wait
+    protected final ReentrantLock lock = new ReentrantLock();
+    protected final Condition notEmpty = lock.newCondition();
+    protected final Condition notFull = lock.newCondition();
+    protected final AtomicInteger waitingConsumers = new AtomicInteger(0);
+    protected final AtomicInteger waitingProducers = new AtomicInteger(0);
+
+    // stats
+    protected final AtomicLong producerWaits = new AtomicLong(0);
+    protected final AtomicLong producerWaitNanos = new AtomicLong(0);
+    protected final AtomicLong consumerWaits = new AtomicLong(0);
+    protected final AtomicLong consumerWaitNanos = new AtomicLong(0);
+    protected final AtomicLong numTaken = new AtomicLong(0);
+    protected final AtomicLong depthSum = new AtomicLong(0);
+
+    public RingBufferBlockingQueue(int capacity) {
+        this(capacity, WaitStrategy.PARK);
+    }
+
+    /**
+     * @param capacity     Maximum number of elements in the queue. Exactly this many elements may be stored, which
+     *                     matters for callers that size cyclic workspaces based on the queue size
+     * @param waitStrategy Wait strategy for blocking put()/take() calls
+     */
+    public RingBufferBlockingQueue(int capacity, @NonNull WaitStrategy waitStrategy) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Capacity must be positive, got " + capacity);
+
+        this.capacity = capacity;
+        this.waitStrategy = waitStrategy;
+        this.buffer = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++)
+            sequences.set(i, 2L * i);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    @Override
+    public boolean offer(@NonNull E e) {
+        while (true) {
+            long position = enqueuePosition.get();
+            int index = (int) (position % capacity);
+            long diff = sequences.get(index) - 2 * position;
+            if (diff == 0) {
+                if (enqueuePosition.compareAndSet(position, position + 1)) {
+                    buffer.lazySet(index, e);
+                    // publishes the element. Volatile store: must not be reordered with the waitingConsumers read below,
+                    // otherwise a consumer about to block could miss both the element and the signal
+                    sequences.set(index, 2 * position + 1);
+                    signalIfWaiting(waitingConsumers, notEmpty);
+                    return true;
+                }
+            } else if (diff < 0) {
+                // slot still holds an element from the previous lap: queue is full
+                return false;
+            }
+            // otherwise another producer claimed this position, retry with the fresh one
+        }
+    }
+
+    @Override
+    public E poll() {
+        while (true) {
+            long position = dequeuePosition.get();
+            int index = (int) (position % capacity);
+            long diff = sequences.get(index) - (2 * position + 1);
+            if (diff == 0) {
+                if (dequeuePosition.compareAndSet(position, position + 1)) {
+                    E e = buffer.get(index);
+                    buffer.lazySet(index, null);
+                    // releases the slot for the producer one lap ahead (volatile store: see offer)
+                    sequences.set(index, 2 * (position + capacity));
+                    signalIfWaiting(waitingProducers, notFull);
+
+                    numTaken.incrementAndGet();
+                    depthSum.addAndGet(Math.max(0, enqueuePosition.get() - position));
+                    return e;
+                }
+            } else if (diff < 0) {
+                // element for this position wasn't published yet: queue is empty
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public E peek() {
+        long position = dequeuePosition.get();
+        int index = (int) (position % capacity);
+        if (sequences.get(index) != 2 * position + 1)
+            return null;
+
+        return buffer.get(index);
+    }
+
+    @Override
+    public void put(@NonNull E e) throws InterruptedException {
+        if (offer(e))
+            return;
+
+        producerWaits.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            int counter = 0;
+            while (!offer(e)) {
+                if (shouldBlock(counter)) {
+                    awaitOffer(e, false, 0);
+                    return;
+                }
+                counter = idle(counter);
+            }
+        } finally {
+            producerWaitNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public boolean offer(@NonNull E e, long timeout, TimeUnit unit) throws InterruptedException {
+        if (offer(e))
+            return true;
+
+        producerWaits.incrementAndGet();
+        long start = System.nanoTime();
+        long deadline = start + unit.toNanos(timeout);
+        try {
+            int counter = 0;
+            while (!offer(e)) {
+                if (System.nanoTime() - deadline >= 0)
+                    return false;
+                if (shouldBlock(counter))
+                    return awaitOffer(e, true, deadline);
+                counter = idle(counter);
+            }
+            return true;
+        } finally {
+            producerWaitNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        E e = poll();
+        if (e != null)
+            return e;
+
+        consumerWaits.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            int counter = 0;
+            while ((e = poll()) == null) {
+                if (shouldBlock(counter))
+                    return awaitPoll(false, 0);
+                counter = idle(counter);
+            }
+            return e;
+        } finally {
+            consumerWaitNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        E e = poll();
+        if (e != null)
+            return e;
+
+        consumerWaits.incrementAndGet();
+        long start = System.nanoTime();
+        long deadline = start + unit.toNanos(timeout);
+        try {
+            int counter = 0;
+            while ((e = poll()) == null) {
+                if (System.nanoTime() - deadline >= 0)
+                    return null;
+                if (shouldBlock(counter))
+                    return awaitPoll(true, deadline);
+                counter = idle(counter);
+            }
+            return e;
+        } finally {
+            consumerWaitNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @param counter number of previous retries for the current call
+     * @return True if the caller should stop retrying and block until signalled (PARK strategy only)
+     */
+    protected boolean shouldBlock(int counter) {
+        return waitStrategy == WaitStrategy.PARK && counter >= SPIN_TRIES + YIELD_TRIES;
+    }
+
+    /**
+     * Blocks until the element was added, or the deadline (if timed) has passed
+     *
+     * @return True if the element was added, false on timeout
+     */
+    protected boolean awaitOffer(E e, boolean timed, long deadline) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            // register before retrying, so a take() after the retry sees us waiting and signals
+            waitingProducers.incrementAndGet();
+            try {
+                while (!offer(e)) {
+                    if (!await(notFull, timed, deadline))
+                        return false;
+                }
+                return true;
+            } finally {
+                waitingProducers.decrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until an element is available, or the deadline (if timed) has passed
+     *
+     * @return The element, or null on timeout
+     */
+    protected E awaitPoll(boolean timed, long deadline) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            // register before retrying, so a put() after the retry sees us waiting and signals
+            waitingConsumers.incrementAndGet();
+            try {
+                E e;
+                while ((e = poll()) == null) {
+                    if (!await(notEmpty, timed, deadline))
+                        return null;
+                }
+                return e;
+            } finally {
+                waitingConsumers.decrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits on the condition (lock must be held)
+     *
+     * @return False if the deadline has passed, true otherwise
+     */
+    protected boolean await(Condition condition, boolean timed, long deadline) throws InterruptedException {
+        if (!timed) {
+            condition.await();
+            return true;
+        }
+
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0)
+            return false;
+        condition.awaitNanos(remaining);
+        return true;
+    }
+
+    /**
+     * Wakes up one waiting thread, if any thread is registered as waiting on the condition
+     */
+    protected void signalIfWaiting(AtomicInteger waiting, Condition condition) {
+        if (waiting.get() == 0)
+            return;
+
+        lock.lock();
+        try {
+            condition.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits once according to the wait strategy, before retrying. For the PARK strategy, this is only used until
+     * {@link #shouldBlock(int)} returns true
+     *
+     * @param counter number of previous retries for the current call
+     * @return updated retry counter
+     */
+    protected int idle(int counter) throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+
+        switch (waitStrategy) {
+            case SPIN:
+                return counter;
+            case YIELD:
+                if (counter < SPIN_TRIES)
+                    return counter + 1;
+
+                Thread.yield();
+                return counter;
+            case PARK:
+            default:
+                if (counter >= SPIN_TRIES)
+                    Thread.yield();
+                return counter + 1;
+        }
+    }
+
+    @Override
+    public int size() {
+        // read the consumer position first, so a concurrent take() can't produce a negative size
+        long head = dequeuePosition.get();
+        long tail = enqueuePosition.get();
+        return (int) Math.max(0, Math.min(capacity, tail - head));
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return capacity - size();
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(@NonNull Collection<? super E> c, int maxElements) {
+        if (c == this)
+            throw new IllegalArgumentException("Can't drain queue into itself");
+
+        int cnt = 0;
+        E e;
+        while (cnt < maxElements && (e = poll()) != null) {
+            c.add(e);
+            cnt++;
+        }
+        return cnt;
+    }
+
+    /**
+     * Weakly consistent iterator over a snapshot of the elements currently in the queue.
+     * Doesn't support remove()
+     */
+    @Override
+    public Iterator<E> iterator() {
+        List<E> snapshot = new ArrayList<>(size());
+        long tail = enqueuePosition.get();
+        for (long position = dequeuePosition.get(); position < tail; position++) {
+            int index = (int) (position % capacity);
+            if (sequences.get(index) != 2 * position + 1)
+                continue;
+
+            E e = buffer.get(index);
+            if (e != null)
+                snapshot.add(e);
+        }
+
+        final Iterator<E> iterator = snapshot.iterator();
+        return new Iterator<E>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public E next() {
+                return iterator.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * @return Total number of elements taken from this queue
+     */
+    public long numTaken() {
+        return numTaken.get();
+    }
+
+    /**
+     * @return Number of put()/offer() calls that found the queue full and had to wait. A high value means the consumer
+     * is the bottleneck
+     */
+    public long producerWaits() {
+        return producerWaits.get();
+    }
+
+    /**
+     * @return Total time, in nanoseconds, producers spent waiting on a full queue
+     */
+    public long producerWaitNanos() {
+        return producerWaitNanos.get();
+    }
+
+    /**
+     * @return Number of take()/poll() calls that found the queue empty and had to wait. A high value means the
+     * producer is the bottleneck
+     */
+    public long consumerWaits() {
+        return consumerWaits.get();
+    }
+
+    /**
+     * @return Total time, in nanoseconds, consumers spent waiting on an empty queue
+     */
+    public long consumerWaitNanos() {
+        return consumerWaitNanos.get();
+    }
+
+    /**
+     * @return Average number of elements in the queue (including the one being taken) observed by consumers, or 0 if
+     * nothing was taken yet. Close to capacity: consumer is the bottleneck; close to 1: producer is the bottleneck
+     */
+    public double averageDepth() {
+        long taken = numTaken.get();
+        return taken == 0 ? 0.0 : depthSum.get() / (double) taken;
+    }
+
+    /**
+     * Reset all queue statistics. Doesn't affect queue contents
+     */
+    public void resetStats() {
+        producerWaits.set(0);
+        producerWaitNanos.set(0);
+        consumerWaits.set(0);
+        consumerWaitNanos.set(0);
+        numTaken.set(0);
+        depthSum.set(0);
+    }
+
+    /**
+     * @return Human readable summary of the queue statistics
+     */
+    public String statsString() {
+        return String.format("RingBufferBlockingQueue(capacity=%d, size=%d, taken=%d, averageDepth=%.2f, "
+                                        + "producerWaits=%d, producerWaitMs=%d, consumerWaits=%d, consumerWaitMs=%d)",
+                        capacity, size(), numTaken(), averageDepth(), producerWaits(),
+                        TimeUnit.NANOSECONDS.toMillis(producerWaitNanos()), consumerWaits(),
+                        TimeUnit.NANOSECONDS.toMillis(consumerWaitNanos()));
+    }
+}
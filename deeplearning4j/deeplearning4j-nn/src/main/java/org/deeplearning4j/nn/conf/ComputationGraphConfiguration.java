@@ -100,6 +100,9 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
     protected BackpropType backpropType = BackpropType.Standard;
     protected int tbpttFwdLength = 20;
     protected int tbpttBackLength = 20;
+    protected int gradientAccumulationSteps = 1;    //Default to no accumulation for deserialization of older nets
+    protected List<String> activationCheckpoints;   //Null: no activation checkpointing
+    protected MixedPrecision mixedPrecision;        //Null: no mixed precision training
 
     protected NeuralNetConfiguration defaultConfiguration;
 
@@ -314,6 +317,9 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
         conf.backpropType = backpropType;
         conf.tbpttFwdLength = tbpttFwdLength;
         conf.tbpttBackLength = tbpttBackLength;
+        conf.gradientAccumulationSteps = gradientAccumulationSteps;
+        conf.activationCheckpoints = (activationCheckpoints == null ? null : new ArrayList<>(activationCheckpoints));
+        conf.mixedPrecision = (mixedPrecision == null ? null : mixedPrecision.clone());
         conf.defaultConfiguration = defaultConfiguration.clone();
         conf.trainingWorkspaceMode = trainingWorkspaceMode;
         conf.inferenceWorkspaceMode = inferenceWorkspaceMode;
@@ -637,8 +643,92 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
             memoryReportMap.put(s, mr);
         }
 
+        Map<String, Integer> activationSegments = null;
+        Set<String> keptActivations = null;
+        Map<String, Integer> segments = activationCheckpointSegments();
+        if (segments != null) {
+            activationSegments = new HashMap<>();
+            keptActivations = new LinkedHashSet<>();
+            Map<String, List<String>> verticesOutputTo = verticesOutputTo();
+            for (String s : topologicalOrdering) {
+                if (networkInputs.contains(s))
+                    continue;
+                activationSegments.put(s, segments.get(s));
+                List<String> outputsTo = verticesOutputTo.get(s);
+                if (outputsTo != null) {
+                    for (String out : outputsTo) {
+                        if (segments.get(out) > segments.get(s)) {
+                            keptActivations.add(s);
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+
         return new NetworkMemoryReport(memoryReportMap, ComputationGraphConfiguration.class, "ComputationGraph",
-                        inputTypes);
+                        activationSegments, keptActivations, inputTypes);
+    }
+
+    /**
+     * Split the graph into activation checkpointing segments, as configured via
+     * {@link GraphBuilder#activationCheckpoints(String...)}. The segment of a vertex is the maximum, over all of its
+     * inputs, of the input's segment - plus one if that input is a checkpoint. Network inputs are in segment 0.<br>
+     * Activations of vertices that are used as input by a vertex in a later segment are kept for the backward pass;
+     * all other activations are recomputed one segment at a time during backpropagation.
+     *
+     * @return Map of vertex name (including network inputs) to segment index, or null if activation checkpointing
+     * is not used
+     */
+    public Map<String, Integer> activationCheckpointSegments() {
+        if (activationCheckpoints == null || activationCheckpoints.isEmpty())
+            return null;
+
+        Map<String, Integer> segments = new HashMap<>();
+        for (String s : topologicalOrdering()) {
+            int segment = 0;
+            List<String> inputs = vertexInputs.get(s);
+            if (inputs != null && !networkInputs.contains(s)) {
+                for (String in : inputs) {
+                    segment = Math.max(segment, segments.get(in) + (activationCheckpoints.contains(in) ? 1 : 0));
+                }
+            }
+            segments.put(s, segment);
+        }
+        return segments;
+    }
+
+    private void validateActivationCheckpoints() {
+        if (activationCheckpoints == null)
+            return;
+        if (backpropType == BackpropType.TruncatedBPTT) {
+            throw new IllegalStateException("Invalid network configuration: activation checkpointing cannot be used " +
+                    "with truncated backpropagation through time (TBPTT)");
+        }
+        for (String s : activationCheckpoints) {
+            if (!vertices.containsKey(s)) {
+                throw new IllegalStateException("Invalid activation checkpoint: no layer or vertex with name \"" + s +
+                        "\" exists (network inputs cannot be used as checkpoints)");
+            }
+            if (networkOutputs.contains(s)) {
+                throw new IllegalStateException("Invalid activation checkpoint: \"" + s + "\" is a network output");
+            }
+        }
+
+        //Activations are recomputed for all vertices before the last segment: these must be deterministic
+        Map<String, Integer> segments = activationCheckpointSegments();
+        int lastSegment = Collections.max(segments.values());
+        for (Map.Entry<String, GraphVertex> e : vertices.entrySet()) {
+            if (segments.get(e.getKey()) < lastSegment && e.getValue() instanceof LayerVertex) {
+                Layer l = ((LayerVertex) e.getValue()).getLayerConf().getLayer();
+                if (l.getIDropout() != null || (l instanceof BaseLayer && ((BaseLayer) l).getWeightNoise() != null)) {
+                    throw new IllegalStateException("Invalid network configuration: activation checkpointing cannot be " +
+                            "used with dropout or weight noise for layers that are recomputed during backpropagation " +
+                            "(i.e., layers before the last checkpoint): layer \"" + e.getKey() + "\" has dropout or " +
+                            "weight noise enabled");
+                }
+            }
+        }
     }
 
     @Data
@@ -667,6 +757,9 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
         protected boolean allowNoOutput = false;
         protected boolean validateOutputConfig = true;
         protected boolean validateTbpttConfig = true;
+        protected int gradientAccumulationSteps = 1;
+        protected List<String> activationCheckpoints;
+        protected MixedPrecision mixedPrecision;
 
         protected String lastAdded = null;
 
@@ -686,6 +779,9 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
             this.backpropType = clonedConf.getBackpropType();
             this.tbpttFwdLength = clonedConf.getTbpttFwdLength();
             this.tbpttBackLength = clonedConf.getTbpttBackLength();
+            this.gradientAccumulationSteps = clonedConf.getGradientAccumulationSteps();
+            this.activationCheckpoints = clonedConf.getActivationCheckpoints();
+            this.mixedPrecision = clonedConf.getMixedPrecision();
             this.globalConfiguration = globalConfiguration;
             //this.getGlobalConfiguration().setSeed(clonedConf.getDefaultConfiguration().getSeed());
         }
@@ -757,6 +853,53 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
             return tBPTTBackwardLength(tbpttLength);
         }
 
+        /**
+         * Gradient accumulation (micro-batching): split each minibatch into the specified number of micro-batches along
+         * the example dimension, and sum the gradients of all micro-batches before applying a single updater step.<br>
+         * See {@link MultiLayerConfiguration.Builder#gradientAccumulationSteps(int)} for details.<br>
+         * Default: 1 (no gradient accumulation)
+         *
+         * @param steps Number of micro-batches to split each minibatch into. Must be >= 1
+         */
+        public GraphBuilder gradientAccumulationSteps(int steps){
+            if (steps < 1)
+                throw new IllegalArgumentException("Number of gradient accumulation steps must be >= 1, got " + steps);
+            this.gradientAccumulationSteps = steps;
+            return this;
+        }
+
+        /**
+         * Activation checkpointing (rematerialization): during training, keep only the activations of the specified
+         * layers/vertices (and of vertices whose outputs are used across a checkpoint) for the backward pass. All other
+         * activations are discarded after the forward pass, and recomputed one segment at a time during
+         * backpropagation - for example, with residual blocks, checkpoints are usually placed at the block outputs.<br>
+         * See {@link MultiLayerConfiguration.Builder#activationCheckpoints(int...)} for details and restrictions, and
+         * {@link ComputationGraphConfiguration#activationCheckpointSegments()} for how the graph is split into segments.<br>
+         * Default: no checkpointing (all activations are kept)
+         *
+         * @param vertexNames Names of the layers/vertices whose activations should be kept. Network inputs and outputs
+         *                    cannot be used as checkpoints
+         */
+        public GraphBuilder activationCheckpoints(String... vertexNames) {
+            this.activationCheckpoints = (vertexNames == null || vertexNames.length == 0 ? null
+                    : new ArrayList<>(new LinkedHashSet<>(Arrays.asList(vertexNames))));
+            return this;
+        }
+
+        /**
+         * Mixed precision training: run the forward and backward passes in the (reduced precision) network data type,
+         * while keeping full precision master weights and updater state, with loss scaling to avoid gradient underflow.
+         * See {@link MultiLayerConfiguration.Builder#mixedPrecision(MixedPrecision)} and {@link MixedPrecision} for
+         * details.<br>
+         * Default: null (no mixed precision training)
+         *
+         * @param mixedPrecision Mixed precision configuration, or null to disable mixed precision training
+         */
+        public GraphBuilder mixedPrecision(MixedPrecision mixedPrecision) {
+            this.mixedPrecision = mixedPrecision;
+            return this;
+        }
+
         /**
          * Add a layer, with no {@link InputPreProcessor}, with the specified name and specified inputs.
          *
@@ -1112,10 +1255,21 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
                         " settings will only take effect if backprop type is set to BackpropType.TruncatedBPTT");
             }
 
+            if (gradientAccumulationSteps > 1 && backpropType == BackpropType.TruncatedBPTT) {
+                throw new IllegalStateException("Invalid network configuration: gradient accumulation (gradientAccumulationSteps = "
+                        + gradientAccumulationSteps + ") cannot be used with truncated backpropagation through time (TBPTT)");
+            }
+
             ComputationGraphConfiguration conf = new ComputationGraphConfiguration();
             conf.backpropType = backpropType;
             conf.tbpttBackLength = tbpttBackLength;
             conf.tbpttFwdLength = tbpttFwdLength;
+            conf.gradientAccumulationSteps = gradientAccumulationSteps;
+            conf.activationCheckpoints = activationCheckpoints;
+            if (mixedPrecision != null) {
+                mixedPrecision.validateNetworkDataType(globalConfiguration.dataType);
+                conf.mixedPrecision = mixedPrecision.clone();
+            }
 
             conf.networkInputs = networkInputs;
             conf.networkOutputs = networkOutputs;
@@ -1165,6 +1319,7 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
 
             ComputationGraphConfiguration conf = buildConfig();
             conf.validate(allowDisconnected, allowNoOutput); //throws exception for invalid configuration
+            conf.validateActivationCheckpoints();
 
             //Automatically add preprocessors, set nIns for CNN->dense transitions, etc
             if (!networkInputTypes.isEmpty()) {
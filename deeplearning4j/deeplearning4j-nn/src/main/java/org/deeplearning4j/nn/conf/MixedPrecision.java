@@ -0,0 +1,333 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.conf;
+
+import lombok.Data;
+import org.deeplearning4j.nn.conf.layers.*;
+import org.deeplearning4j.nn.gradient.Gradient;
+import org.nd4j.linalg.activations.IActivation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.lossfunctions.ILossFunction;
+import org.nd4j.linalg.primitives.Pair;
+
+import java.io.Serializable;
+
+/**
+ * Mixed precision training configuration, for use with {@link MultiLayerConfiguration.Builder#mixedPrecision(MixedPrecision)}
+ * and {@link ComputationGraphConfiguration.GraphBuilder#mixedPrecision(MixedPrecision)}.<br>
+ * With mixed precision, the network parameters, activations and gradients use the (reduced precision) network data
+ * type - usually {@link DataType#HALF} - for the forward and backward passes, while the updater keeps a full precision
+ * ({@link #getMasterDataType()}) copy of the parameters ("master weights") and of the updater state. Gradients are
+ * converted to full precision before the updater is applied, and the updated master weights are converted back to the
+ * network data type after each iteration.<br>
+ * <br>
+ * To avoid small gradients underflowing to zero in reduced precision, loss scaling is used: the gradient of the loss
+ * with respect to the output layer(s) output (dL/dOut) is calculated in full precision and multiplied by the loss
+ * scale before it is converted to the network data type and used for backprop - hence all gradients are scaled - and
+ * the gradients are divided by the loss scale again (in full precision) before the updater is applied. With dynamic
+ * loss scaling (the default) the loss scale is divided by {@link #getLossScaleFactor()} and the parameter update is
+ * skipped whenever the gradients overflow (contain NaN or infinite values); after {@link #getLossScaleGrowthInterval()}
+ * consecutive iterations without overflow, the loss scale is multiplied by the same factor.<br>
+ * Loss scaling is only applied when training (i.e. fit): gradients returned by methods such as computeGradientAndScore,
+ * MultiLayerNetwork.calculateGradients or backpropGradient (external errors) are not scaled.<br>
+ * <br>
+ * The current loss scale is part of the training state, and is stored in the configuration (in the same way as the
+ * iteration and epoch counts). Master weights are not serialized: they are recreated from the network parameters
+ * when the updater is created.
+ */
+@Data
+public class MixedPrecision implements Serializable, Cloneable {
+
+    public static final double DEFAULT_INITIAL_LOSS_SCALE = 32768.0;
+    public static final double DEFAULT_LOSS_SCALE_FACTOR = 2.0;
+    public static final int DEFAULT_LOSS_SCALE_GROWTH_INTERVAL = 2000;
+
+    private DataType masterDataType = DataType.FLOAT;
+    private double initialLossScale = DEFAULT_INITIAL_LOSS_SCALE;
+    private boolean dynamicLossScaling = true;
+    private double lossScaleFactor = DEFAULT_LOSS_SCALE_FACTOR;
+    private int lossScaleGrowthInterval = DEFAULT_LOSS_SCALE_GROWTH_INTERVAL;
+
+    //Training state: current loss scale, iterations since the last overflow, and total number of skipped iterations
+    private double lossScale = DEFAULT_INITIAL_LOSS_SCALE;
+    private int iterationsSinceOverflow;
+    private long skippedIterations;
+
+    /**
+     * Mixed precision with the default configuration: {@link DataType#FLOAT} master weights, and dynamic loss scaling
+     */
+    public MixedPrecision() {
+        //No-arg constructor for default values and JSON deserialization
+    }
+
+    private MixedPrecision(Builder builder) {
+        this.masterDataType = builder.masterDataType;
+        this.initialLossScale = builder.initialLossScale;
+        this.dynamicLossScaling = builder.dynamicLossScaling;
+        this.lossScaleFactor = builder.lossScaleFactor;
+        this.lossScaleGrowthInterval = builder.lossScaleGrowthInterval;
+        this.lossScale = builder.initialLossScale;
+    }
+
+    /**
+     * Start loss scaling for backprop through an output layer: the loss function of the output layer configuration is
+     * (temporarily) replaced by one that calculates the loss gradient in full precision, multiplies it by the current
+     * loss scale and only then converts it to the network data type. Must be followed by
+     * {@link #endLossScaling(Layer, ILossFunction)} once backprop for the output layer is done.<br>
+     * Output layer configurations without a single replaceable loss function are not supported: for these, the
+     * loss scale should be applied after backprop via {@link #applyLossScale(Gradient, INDArray...)} instead.
+     *
+     * @param outputLayer Output layer configuration
+     * @return The original loss function of the output layer, or null if loss scaling isn't supported for the layer
+     */
+    public ILossFunction beginLossScaling(Layer outputLayer) {
+        ILossFunction original = lossFunction(outputLayer);
+        if (original == null || lossScale == 1.0)
+            return null;
+        setLossFunction(outputLayer, new ScaledLossFunction(original, lossScale, masterDataType));
+        return original;
+    }
+
+    /**
+     * Restore the original loss function of an output layer, after {@link #beginLossScaling(Layer)}
+     *
+     * @param outputLayer Output layer configuration
+     * @param original    Original loss function, as returned by {@link #beginLossScaling(Layer)}
+     */
+    public void endLossScaling(Layer outputLayer, ILossFunction original) {
+        setLossFunction(outputLayer, original);
+    }
+
+    /**
+     * Apply the current loss scale to the gradients of an output layer that was already backpropagated in reduced
+     * precision: both the parameter gradients and the activation gradients (epsilons) that are passed back to the
+     * previous layers are multiplied by the loss scale. Only for output layers not supported by
+     * {@link #beginLossScaling(Layer)}: unlike scaling the loss gradient, this can't prevent underflow in the output
+     * layer itself. No-op if the loss scale is 1.0
+     *
+     * @param gradient  Output layer parameter gradients. May be null
+     * @param epsilons  Output layer activation gradients. May contain null entries
+     */
+    public void applyLossScale(Gradient gradient, INDArray... epsilons) {
+        if (lossScale == 1.0)
+            return;
+        if (gradient != null) {
+            for (INDArray g : gradient.gradientForVariable().values()) {
+                g.muli(lossScale);
+            }
+        }
+        if (epsilons != null) {
+            for (INDArray e : epsilons) {
+                if (e != null)
+                    e.muli(lossScale);
+            }
+        }
+    }
+
+    /**
+     * Update the loss scaling state after an iteration: decrease the loss scale after an overflow, or increase it
+     * after {@link #getLossScaleGrowthInterval()} iterations without overflow (dynamic loss scaling only)
+     *
+     * @param overflow True if the gradients for the iteration contained NaN or infinite values
+     */
+    public void lossScaleIterationDone(boolean overflow) {
+        if (overflow) {
+            skippedIterations++;
+            iterationsSinceOverflow = 0;
+            if (dynamicLossScaling)
+                lossScale /= lossScaleFactor;
+        } else if (dynamicLossScaling && ++iterationsSinceOverflow >= lossScaleGrowthInterval) {
+            lossScale *= lossScaleFactor;
+            iterationsSinceOverflow = 0;
+        }
+    }
+
+    /**
+     * Validate that the network data type has a lower precision than the master data type
+     *
+     * @param networkDataType Network data type
+     */
+    public void validateNetworkDataType(DataType networkDataType) {
+        if (networkDataType == null || precision(networkDataType) >= precision(masterDataType)) {
+            throw new IllegalStateException("Invalid network configuration: mixed precision training requires a network " +
+                    "data type with lower precision than the master data type (" + masterDataType + "), got network " +
+                    "data type " + networkDataType + ". Set the network data type via NeuralNetConfiguration.Builder" +
+                    ".dataType(DataType.HALF)");
+        }
+    }
+
+    private static ILossFunction lossFunction(Layer layer) {
+        if (layer instanceof BaseOutputLayer)
+            return ((BaseOutputLayer) layer).getLossFn();
+        if (layer instanceof LossLayer)
+            return ((LossLayer) layer).getLossFn();
+        if (layer instanceof RnnLossLayer)
+            return ((RnnLossLayer) layer).getLossFn();
+        if (layer instanceof CnnLossLayer)
+            return ((CnnLossLayer) layer).getLossFn();
+        if (layer instanceof Cnn3DLossLayer)
+            return ((Cnn3DLossLayer) layer).getLossFn();
+        return null;
+    }
+
+    private static void setLossFunction(Layer layer, ILossFunction lossFunction) {
+        if (layer instanceof BaseOutputLayer)
+            ((BaseOutputLayer) layer).setLossFn(lossFunction);
+        else if (layer instanceof LossLayer)
+            ((LossLayer) layer).setLossFn(lossFunction);
+        else if (layer instanceof RnnLossLayer)
+            ((RnnLossLayer) layer).setLossFn(lossFunction);
+        else if (layer instanceof CnnLossLayer)
+            ((CnnLossLayer) layer).setLossFn(lossFunction);
+        else if (layer instanceof Cnn3DLossLayer)
+            ((Cnn3DLossLayer) layer).setLossFn(lossFunction);
+        else
+            throw new IllegalStateException("Cannot set loss function for layer of type " + layer.getClass().getName());
+    }
+
+    private static int precision(DataType dataType) {
+        switch (dataType) {
+            case HALF:
+                return 16;
+            case FLOAT:
+                return 32;
+            case DOUBLE:
+                return 64;
+            default:
+                return 0;
+        }
+    }
+
+    @Override
+    public MixedPrecision clone() {
+        try {
+            return (MixedPrecision) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Loss function wrapper used during backprop with loss scaling: the gradient is calculated in full precision and
+     * multiplied by the loss scale before it is converted back to the (reduced precision) data type of the network
+     */
+    private static class ScaledLossFunction implements ILossFunction {
+        private final ILossFunction underlying;
+        private final double lossScale;
+        private final DataType masterDataType;
+
+        private ScaledLossFunction(ILossFunction underlying, double lossScale, DataType masterDataType) {
+            this.underlying = underlying;
+            this.lossScale = lossScale;
+            this.masterDataType = masterDataType;
+        }
+
+        @Override
+        public double computeScore(INDArray labels, INDArray preOutput, IActivation activationFn, INDArray mask, boolean average) {
+            return underlying.computeScore(labels, preOutput, activationFn, mask, average);
+        }
+
+        @Override
+        public INDArray computeScoreArray(INDArray labels, INDArray preOutput, IActivation activationFn, INDArray mask) {
+            return underlying.computeScoreArray(labels, preOutput, activationFn, mask);
+        }
+
+        @Override
+        public INDArray computeGradient(INDArray labels, INDArray preOutput, IActivation activationFn, INDArray mask) {
+            INDArray grad = underlying.computeGradient(labels.castTo(masterDataType), preOutput.castTo(masterDataType),
+                    activationFn, mask == null ? null : mask.castTo(masterDataType));
+            return grad.muli(lossScale).castTo(preOutput.dataType());
+        }
+
+        @Override
+        public Pair<Double, INDArray> computeGradientAndScore(INDArray labels, INDArray preOutput, IActivation activationFn,
+                                                              INDArray mask, boolean average) {
+            return new Pair<>(computeScore(labels, preOutput, activationFn, mask, average),
+                    computeGradient(labels, preOutput, activationFn, mask));
+        }
+
+        @Override
+        public String name() {
+            return underlying.name();
+        }
+    }
+
+    public static class Builder {
+        private DataType masterDataType = DataType.FLOAT;
+        private double initialLossScale = DEFAULT_INITIAL_LOSS_SCALE;
+        private boolean dynamicLossScaling = true;
+        private double lossScaleFactor = DEFAULT_LOSS_SCALE_FACTOR;
+        private int lossScaleGrowthInterval = DEFAULT_LOSS_SCALE_GROWTH_INTERVAL;
+
+        /**
+         * Data type for the master weights and updater state. Must be a floating point type with higher precision than
+         * the network data type. Default: {@link DataType#FLOAT}
+         */
+        public Builder masterDataType(DataType masterDataType) {
+            this.masterDataType = masterDataType;
+            return this;
+        }
+
+        /**
+         * Initial loss scale. Set to 1.0 (and disable dynamic loss scaling) to disable loss scaling.
+         * Default: {@link #DEFAULT_INITIAL_LOSS_SCALE}
+         */
+        public Builder initialLossScale(double initialLossScale) {
+            this.initialLossScale = initialLossScale;
+            return this;
+        }
+
+        /**
+         * Whether to adjust the loss scale during training, as described in the {@link MixedPrecision} javadoc. If
+         * false, the initial loss scale is always used (iterations with overflow are still skipped). Default: true
+         */
+        public Builder dynamicLossScaling(boolean dynamicLossScaling) {
+            this.dynamicLossScaling = dynamicLossScaling;
+            return this;
+        }
+
+        /**
+         * Factor to divide the loss scale by after an overflow, and to multiply it by after
+         * {@link #lossScaleGrowthInterval(int)} iterations without overflow. Default: 2.0
+         */
+        public Builder lossScaleFactor(double lossScaleFactor) {
+            this.lossScaleFactor = lossScaleFactor;
+            return this;
+        }
+
+        /**
+         * Number of consecutive iterations without overflow after which the loss scale is increased. Default: 2000
+         */
+        public Builder lossScaleGrowthInterval(int lossScaleGrowthInterval) {
+            this.lossScaleGrowthInterval = lossScaleGrowthInterval;
+            return this;
+        }
+
+        public MixedPrecision build() {
+            if (masterDataType == null || !masterDataType.isFPType())
+                throw new IllegalStateException("Master data type must be a floating point type, got " + masterDataType);
+            if (initialLossScale <= 0.0)
+                throw new IllegalStateException("Initial loss scale must be positive, got " + initialLossScale);
+            if (lossScaleFactor <= 1.0)
+                throw new IllegalStateException("Loss scale factor must be > 1.0, got " + lossScaleFactor);
+            if (lossScaleGrowthInterval < 1)
+                throw new IllegalStateException("Loss scale growth interval must be >= 1, got " + lossScaleGrowthInterval);
+            return new MixedPrecision(this);
+        }
+    }
+}
@@ -19,6 +19,7 @@ package org.deeplearning4j.nn.conf;
 
 import lombok.*;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.ArrayUtils;
 import org.deeplearning4j.nn.conf.distribution.Distribution;
 import org.deeplearning4j.nn.conf.inputs.InputType;
 import org.deeplearning4j.nn.conf.layers.*;
@@ -64,6 +65,9 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
     protected int tbpttFwdLength = 20;
     protected int tbpttBackLength = 20;
     protected boolean validateOutputLayerConfig = true; //Default to legacy for pre 1.0.0-beta3 networks on deserialization
+    protected int gradientAccumulationSteps = 1;        //Default to no accumulation for deserialization of older nets
+    protected int[] activationCheckpoints;              //Null: no activation checkpointing
+    protected MixedPrecision mixedPrecision;            //Null: no mixed precision training
 
     @Getter
     @Setter
@@ -374,6 +378,9 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
             clone.trainingWorkspaceMode = this.trainingWorkspaceMode;
             clone.cacheMode = this.cacheMode;
             clone.validateOutputLayerConfig = this.validateOutputLayerConfig;
+            clone.gradientAccumulationSteps = this.gradientAccumulationSteps;
+            clone.activationCheckpoints = (this.activationCheckpoints == null ? null : this.activationCheckpoints.clone());
+            clone.mixedPrecision = (this.mixedPrecision == null ? null : this.mixedPrecision.clone());
             clone.dataType = this.dataType;
 
             return clone;
@@ -397,13 +404,24 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
     public NetworkMemoryReport getMemoryReport(InputType inputType) {
 
         Map<String, MemoryReport> memoryReportMap = new LinkedHashMap<>();
+        Map<String, Integer> activationSegments = (activationCheckpoints == null ? null : new HashMap<String, Integer>());
+        Set<String> checkpointNames = (activationCheckpoints == null ? null : new LinkedHashSet<String>());
         int nLayers = confs.size();
+        int segment = 0;
         for (int i = 0; i < nLayers; i++) {
             String layerName = confs.get(i).getLayer().getLayerName();
             if (layerName == null) {
                 layerName = String.valueOf(i);
             }
 
+            if (activationCheckpoints != null) {
+                activationSegments.put(layerName, segment);
+                if (ArrayUtils.contains(activationCheckpoints, i)) {
+                    checkpointNames.add(layerName);
+                    segment++;
+                }
+            }
+
             //Pass input type through preprocessor, if necessary
             InputPreProcessor preproc = getInputPreProcess(i);
             //TODO memory requirements for preprocessor
@@ -417,7 +435,8 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
             inputType = confs.get(i).getLayer().getOutputType(i, inputType);
         }
 
-        return new NetworkMemoryReport(memoryReportMap, MultiLayerConfiguration.class, "MultiLayerNetwork", inputType);
+        return new NetworkMemoryReport(memoryReportMap, MultiLayerConfiguration.class, "MultiLayerNetwork",
+                activationSegments, checkpointNames, inputType);
     }
 
     /**
@@ -461,6 +480,9 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
         protected boolean validateOutputConfig = true;
         protected boolean validateTbpttConfig = true;
         protected DataType dataType;
+        protected int gradientAccumulationSteps = 1;
+        protected int[] activationCheckpoints;
+        protected MixedPrecision mixedPrecision;
 
         /**
          * Specify the processors.
@@ -612,8 +634,106 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
         }
 
 
+        /**
+         * Gradient accumulation (micro-batching): split each minibatch into the specified number of micro-batches along
+         * the example dimension, run forward and backward passes for each micro-batch sequentially, and sum the
+         * gradients before applying a single updater step for the full minibatch.<br>
+         * The resulting parameter update is the same as without accumulation (up to floating point precision), but the
+         * peak activation memory during training is reduced to that of a single micro-batch. This allows training with
+         * minibatch sizes that would otherwise not fit in memory.<br>
+         * Note that layers that compute statistics over the minibatch (such as batch normalization) will use
+         * micro-batch statistics. Gradient accumulation cannot be used with truncated BPTT.<br>
+         * Default: 1 (no gradient accumulation)
+         *
+         * @param steps Number of micro-batches to split each minibatch into. Must be >= 1
+         */
+        public Builder gradientAccumulationSteps(int steps) {
+            if (steps < 1)
+                throw new IllegalArgumentException("Number of gradient accumulation steps must be >= 1, got " + steps);
+            this.gradientAccumulationSteps = steps;
+            return this;
+        }
+
+        /**
+         * Activation checkpointing (rematerialization): during training, keep only the activations (outputs) of the
+         * specified layers for the backward pass. The network is split into segments at these layers; activations
+         * inside a segment are discarded after the forward pass, and recomputed (segment by segment, from the last
+         * segment to the first) during backpropagation.<br>
+         * This trades one additional forward pass (for all but the last segment) for lower activation memory: instead
+         * of all layer activations, only the checkpoint activations plus the activations of one segment are kept at
+         * any time. For a network with N layers, checkpoints every sqrt(N) layers is a good default.
+         * See {@link #getMemoryReport(InputType)} for the memory requirements of a given configuration.<br>
+         * Note that layers before (and including) the last checkpoint must be deterministic in training mode, hence
+         * cannot use dropout or weight noise. Activation checkpointing cannot be used with truncated BPTT, and the
+         * onForwardPass method of {@link org.deeplearning4j.optimize.api.TrainingListener}s is not called when activation
+         * checkpointing is used.<br>
+         * Default: no checkpointing (all activations are kept)
+         *
+         * @param layerIndices Indices of the layers whose activations should be kept. Must be between 0 and
+         *                     numLayers-2 inclusive (i.e., not the output layer)
+         */
+        public Builder activationCheckpoints(int... layerIndices) {
+            this.activationCheckpoints = (layerIndices == null || layerIndices.length == 0 ? null : layerIndices);
+            return this;
+        }
+
+        /**
+         * Mixed precision training: run the forward and backward passes in the (reduced precision) network data type,
+         * usually {@link DataType#HALF}, while keeping full precision master weights and updater state, with loss
+         * scaling to avoid gradient underflow. See {@link MixedPrecision} for details.<br>
+         * The network data type (set via {@link NeuralNetConfiguration.Builder#dataType(DataType)}) must have a lower
+         * precision than the master data type. Mixed precision cannot be used with gradient sharing
+         * (i.e., parameter updates applied by other workers), as the master weights would not be updated.<br>
+         * Default: null (no mixed precision training)
+         *
+         * @param mixedPrecision Mixed precision configuration, or null to disable mixed precision training
+         */
+        public Builder mixedPrecision(MixedPrecision mixedPrecision) {
+            this.mixedPrecision = mixedPrecision;
+            return this;
+        }
+
+        private int[] validateActivationCheckpoints() {
+            if (activationCheckpoints == null)
+                return null;
+            if (backpropType == BackpropType.TruncatedBPTT) {
+                throw new IllegalStateException("Invalid network configuration: activation checkpointing cannot be used " +
+                        "with truncated backpropagation through time (TBPTT)");
+            }
+
+            int[] sorted = activationCheckpoints.clone();
+            Arrays.sort(sorted);
+            int count = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (sorted[i] < 0 || sorted[i] > confs.size() - 2) {
+                    throw new IllegalStateException("Invalid activation checkpoint: layer index must be between 0 and " +
+                            (confs.size() - 2) + " inclusive (network has " + confs.size() + " layers), got " + sorted[i]);
+                }
+                if (count == 0 || sorted[count - 1] != sorted[i]) {
+                    sorted[count++] = sorted[i];
+                }
+            }
+
+            //Activations are recomputed for all layers up to and including the last checkpoint: these must be deterministic
+            for (int i = 0; i <= sorted[count - 1]; i++) {
+                Layer l = confs.get(i).getLayer();
+                if (l.getIDropout() != null || (l instanceof BaseLayer && ((BaseLayer) l).getWeightNoise() != null)) {
+                    throw new IllegalStateException("Invalid network configuration: activation checkpointing cannot be " +
+                            "used with dropout or weight noise for layers before the last checkpoint: layer " + i +
+                            " (\"" + l.getLayerName() + "\") has dropout or weight noise enabled. Last checkpoint: layer " +
+                            sorted[count - 1]);
+                }
+            }
+
+            return Arrays.copyOf(sorted, count);
+        }
+
         public MultiLayerConfiguration build() {
             //Validate BackpropType setting
+            if (gradientAccumulationSteps > 1 && backpropType == BackpropType.TruncatedBPTT) {
+                throw new IllegalStateException("Invalid network configuration: gradient accumulation (gradientAccumulationSteps = "
+                        + gradientAccumulationSteps + ") cannot be used with truncated backpropagation through time (TBPTT)");
+            }
             if ((tbpttBackLength != DEFAULT_TBPTT_LENGTH || tbpttFwdLength != DEFAULT_TBPTT_LENGTH) && backpropType != BackpropType.TruncatedBPTT) {
                 log.warn("Truncated backpropagation through time lengths have been configured with values " + tbpttFwdLength
                         + " and " + tbpttBackLength + " but backprop type is set to " + backpropType + ". TBPTT configuration" +
@@ -697,6 +817,12 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
             conf.inferenceWorkspaceMode = inferenceWorkspaceMode;
             conf.cacheMode = cacheMode;
             conf.dataType = dataType;
+            conf.gradientAccumulationSteps = gradientAccumulationSteps;
+            conf.activationCheckpoints = validateActivationCheckpoints();
+            if (mixedPrecision != null) {
+                mixedPrecision.validateNetworkDataType(dataType);
+                conf.mixedPrecision = mixedPrecision.clone();
+            }
 
             Nd4j.getRandom().setSeed(conf.getConf(0).getSeed());
 
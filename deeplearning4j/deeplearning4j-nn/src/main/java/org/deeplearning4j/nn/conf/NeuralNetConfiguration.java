@@ -265,6 +265,9 @@ public class NeuralNetConfiguration implements Serializable, Cloneable {
                             .trainingWorkspaceMode(wsmTrain).cacheMode(globalConfig.cacheMode)
                             .inferenceWorkspaceMode(wsmTest).confs(list).validateOutputLayerConfig(validateOutputConfig)
                             .dataType(globalConfig.dataType)
+                            .gradientAccumulationSteps(gradientAccumulationSteps)
+                            .activationCheckpoints(activationCheckpoints)
+                            .mixedPrecision(mixedPrecision)
                             .build();
         }
 
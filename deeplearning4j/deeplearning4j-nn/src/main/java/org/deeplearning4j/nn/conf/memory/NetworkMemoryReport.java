@@ -26,15 +26,16 @@ import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.shade.jackson.annotation.JsonProperty;
 
 import java.text.DecimalFormat;
-import java.util.Arrays;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.*;
 
 /**
  *
  * Network memory reports is a class that is used to store/represent the memory requirements of a
  * {@link org.deeplearning4j.nn.multilayer.MultiLayerNetwork} or {@link org.deeplearning4j.nn.graph.ComputationGraph},
- * composed of multiple layers and/or vertices.
+ * composed of multiple layers and/or vertices.<br>
+ * If activation checkpointing is used, the training activation memory is calculated as the sum of the activations
+ * at the checkpoints, plus the maximum over all segments of the activations within the segment - as only one segment's
+ * activations are kept (and recomputed) at any time during backprop.
  *
  * @author Alex Black
  */
@@ -48,16 +49,33 @@ public class NetworkMemoryReport extends MemoryReport {
     private final Class<?> modelClass;
     private final String modelName;
     private final InputType[] networkInputTypes;
+    private final Map<String, Integer> activationSegments;
+    private final Set<String> activationCheckpoints;
 
+    public NetworkMemoryReport(@NonNull Map<String, MemoryReport> layerAndVertexReports, @NonNull Class<?> modelClass,
+                    String modelName, @NonNull InputType... networkInputTypes) {
+        this(layerAndVertexReports, modelClass, modelName, null, null, networkInputTypes);
+    }
+
+    /**
+     * @param activationSegments    Only used for activation checkpointing (null otherwise): the segment index for each
+     *                              layer/vertex
+     * @param activationCheckpoints Only used for activation checkpointing (null otherwise): the names of the layers or
+     *                              vertices whose activations are kept for the entire backward pass
+     */
     public NetworkMemoryReport(
                     @NonNull @JsonProperty("layerAndVertexReports") Map<String, MemoryReport> layerAndVertexReports,
                     @NonNull @JsonProperty("modelClass") Class<?> modelClass,
                     @JsonProperty("modelName") String modelName,
+                    @JsonProperty("activationSegments") Map<String, Integer> activationSegments,
+                    @JsonProperty("activationCheckpoints") Set<String> activationCheckpoints,
                     @NonNull @JsonProperty("networkInputTypes") InputType... networkInputTypes) {
         this.layerAndVertexReports = layerAndVertexReports;
         this.modelClass = modelClass;
         this.modelName = modelName;
         this.networkInputTypes = networkInputTypes;
+        this.activationSegments = activationSegments;
+        this.activationCheckpoints = activationCheckpoints;
     }
 
 
@@ -79,6 +97,7 @@ public class NetworkMemoryReport extends MemoryReport {
         // sum_layers (StdFixed + minibatch * StdVariable) + sum_layers (CacheFixed + minibatch * CacheVariable)
         // + max_layers ( WorkingMemoryFixed + minibatch * WorkingMemoryVariable)
 
+        boolean checkpointed = isCheckpointedActivations(MemoryType.ACTIVATIONS, memoryUseMode);
         long totalBytes = 0;
         long maxWorking = 0;
         long maxWorkingFixed = 0;
@@ -86,7 +105,8 @@ public class NetworkMemoryReport extends MemoryReport {
         for (MemoryReport lmr : layerAndVertexReports.values()) {
 
             for (MemoryType mt : MemoryType.values()) {
-                if (mt == MemoryType.WORKING_MEMORY_FIXED || mt == MemoryType.WORKING_MEMORY_VARIABLE) {
+                if (mt == MemoryType.WORKING_MEMORY_FIXED || mt == MemoryType.WORKING_MEMORY_VARIABLE
+                                || (checkpointed && mt == MemoryType.ACTIVATIONS)) {
                     continue;
                 }
                 totalBytes += lmr.getMemoryBytes(mt, minibatchSize, memoryUseMode, cacheMode, dataType);
@@ -105,12 +125,20 @@ public class NetworkMemoryReport extends MemoryReport {
             }
         }
 
+        if (checkpointed) {
+            totalBytes += getCheckpointedActivationBytes(minibatchSize, cacheMode, dataType);
+        }
+
         return totalBytes + maxWorkingFixed + maxWorkingVariable;
     }
 
     @Override
     public long getMemoryBytes(MemoryType memoryType, int minibatchSize, MemoryUseMode memoryUseMode,
                     CacheMode cacheMode, DataType dataType) {
+        if (isCheckpointedActivations(memoryType, memoryUseMode)) {
+            return getCheckpointedActivationBytes(minibatchSize, cacheMode, dataType);
+        }
+
         long totalBytes = 0;
         for (MemoryReport lmr : layerAndVertexReports.values()) {
 
@@ -126,6 +154,39 @@ public class NetworkMemoryReport extends MemoryReport {
         return totalBytes;
     }
 
+    private boolean isCheckpointedActivations(MemoryType memoryType, MemoryUseMode memoryUseMode) {
+        return memoryType == MemoryType.ACTIVATIONS && memoryUseMode == MemoryUseMode.TRAINING
+                        && activationSegments != null && activationCheckpoints != null;
+    }
+
+    private long getCheckpointedActivationBytes(int minibatchSize, CacheMode cacheMode, DataType dataType) {
+        //Activations at the checkpoints are kept for the entire backward pass; activations for the remaining
+        // layers/vertices are only kept for one segment at a time
+        long checkpointBytes = 0;
+        Map<Integer, Long> segmentBytes = new HashMap<>();
+        for (Map.Entry<String, MemoryReport> e : layerAndVertexReports.entrySet()) {
+            long bytes = e.getValue().getMemoryBytes(MemoryType.ACTIVATIONS, minibatchSize, MemoryUseMode.TRAINING,
+                            cacheMode, dataType);
+            if (activationCheckpoints.contains(e.getKey())) {
+                checkpointBytes += bytes;
+            }
+
+            Integer segment = activationSegments.get(e.getKey());
+            if (segment == null) {
+                checkpointBytes += bytes;
+            } else {
+                Long current = segmentBytes.get(segment);
+                segmentBytes.put(segment, (current == null ? 0 : current) + bytes);
+            }
+        }
+
+        long maxSegmentBytes = 0;
+        for (Long l : segmentBytes.values()) {
+            maxSegmentBytes = Math.max(maxSegmentBytes, l);
+        }
+        return checkpointBytes + maxSegmentBytes;
+    }
+
     @Override
     public String toString() {
 
@@ -159,6 +220,9 @@ public class NetworkMemoryReport extends MemoryReport {
                         .append("  # Layers:                           ").append(layerAndVertexReports.size())
                         .append("\n").append("  Layer Types:                        ").append(sbLayerCounts)
                         .append("\n");
+        if (activationCheckpoints != null) {
+            sb.append("  Activation Checkpoints:             ").append(activationCheckpoints).append("\n");
+        }
 
         appendFixedPlusVariable(sb, "  Inference Memory (FP32)             ", fixedMemBytes, perEx);
         appendFixedPlusVariable(sb, "  Training Memory (FP32):             ", fixedMemBytesTrain, perExTrain);
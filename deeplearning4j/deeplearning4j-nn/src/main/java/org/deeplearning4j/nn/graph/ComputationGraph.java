@@ -48,6 +48,7 @@ import org.deeplearning4j.nn.layers.FrozenLayer;
 import org.deeplearning4j.nn.layers.FrozenLayerWithBackprop;
 import org.deeplearning4j.nn.layers.recurrent.BidirectionalLayer;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.updater.UpdaterUtils;
 import org.deeplearning4j.nn.updater.graph.ComputationGraphUpdater;
 import org.deeplearning4j.nn.workspace.ArrayType;
 import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
@@ -85,11 +86,17 @@ import org.nd4j.linalg.heartbeat.reports.Event;
 import org.nd4j.linalg.heartbeat.reports.Task;
 import org.nd4j.linalg.heartbeat.utils.EnvironmentUtils;
 import org.nd4j.linalg.heartbeat.utils.TaskUtils;
+import org.nd4j.linalg.indexing.INDArrayIndex;
 import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.lossfunctions.ILossFunction;
 import org.nd4j.linalg.memory.abstracts.DummyWorkspace;
 import org.nd4j.linalg.primitives.Pair;
 import org.nd4j.linalg.primitives.Triple;
+import org.nd4j.linalg.profiler.OpProfiler;
+import org.nd4j.linalg.profiler.OpTracer;
+import org.nd4j.linalg.profiler.ProfilerConfig;
 import org.nd4j.linalg.schedule.ISchedule;
+import org.nd4j.linalg.util.ArrayUtil;
 import org.nd4j.linalg.workspace.ND4JWorkspaceException;
 import org.nd4j.linalg.workspace.WorkspaceUtils;
 import org.nd4j.util.OneTimeLogger;
@@ -205,6 +212,13 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
     private transient INDArray[] labels;
     private transient INDArray[] inputMaskArrays;
     private transient INDArray[] labelMaskArrays;
+    //Gradient accumulation buffer (detached), reused between iterations
+    private transient INDArray accumulatedGradients;
+    //Mixed precision: true only while the solver runs during fit, as only those gradients are passed to the updater
+    // (which removes the loss scale again)
+    private transient boolean lossScaling;
+    //Activation checkpointing segment for each vertex (by vertex index), lazily initialized
+    private transient int[] activationSegments;
 
     private transient int[] outputLayerIdxs;
 
@@ -1159,7 +1173,7 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
             }
 
             //TODO: cache workspace
-            solver.optimize(workspaceMgr);
+            optimizeWithLossScaling(workspaceMgr);
 
         }
 
@@ -1333,12 +1347,100 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         return graphIndices;
     }
 
+    /**
+     * Run the solver for the current inputs and labels. With mixed precision, the loss scale is applied to the
+     * gradients calculated by the solver - and only to these, as they are the only gradients passed to the updater
+     */
+    private void optimizeWithLossScaling(LayerWorkspaceMgr workspaceMgr) {
+        lossScaling = true;
+        try {
+            solver.optimize(workspaceMgr);
+        } finally {
+            lossScaling = false;
+        }
+    }
+
     @Override
     public void computeGradientAndScore(LayerWorkspaceMgr workspaceMgr){
         computeGradientAndScore();
     }
 
     public void computeGradientAndScore() {
+        int accumulationSteps = configuration.getGradientAccumulationSteps();
+        if (accumulationSteps > 1 && configuration.getBackpropType() != BackpropType.TruncatedBPTT
+                && inputs != null && inputs[0].size(0) > 1) {
+            computeGradientAndScoreAccumulated(accumulationSteps);
+        } else {
+            computeGradientAndScoreHelper(true);
+        }
+    }
+
+    /**
+     * Gradient accumulation: split the current inputs, labels and masks into (at most) the specified number of
+     * micro-batches, and accumulate the gradients of all micro-batches in the flattened gradients view (see
+     * {@link UpdaterUtils#accumulateMicroBatchGradients}). The inputs, labels and masks for the full minibatch are
+     * restored afterwards, so the updater normalizes by the full minibatch size.
+     * Score is the minibatch-size weighted average of the micro-batch scores.
+     */
+    private void computeGradientAndScoreAccumulated(int accumulationSteps) {
+        INDArray[] fullInputs = inputs;
+        INDArray[] fullLabels = labels;
+        INDArray[] fullInputMasks = inputMaskArrays;
+        INDArray[] fullLabelMasks = labelMaskArrays;
+
+        long minibatch = fullInputs[0].size(0);
+        int numMicroBatches = (int) Math.min(accumulationSteps, minibatch);
+        double scoreSum = 0.0;
+        try {
+            for (int i = 0; i < numMicroBatches; i++) {
+                long start = minibatch * i / numMicroBatches;
+                long end = minibatch * (i + 1) / numMicroBatches;
+
+                setInputs(microBatch(fullInputs, start, end));
+                setLabels(microBatch(fullLabels, start, end));
+                setLayerMaskArrays(microBatch(fullInputMasks, start, end), microBatch(fullLabelMasks, start, end));
+
+                computeGradientAndScoreHelper(false);
+                scoreSum += score * (end - start);
+
+                accumulatedGradients = UpdaterUtils.accumulateMicroBatchGradients(accumulatedGradients,
+                        flattenedGradients, i, numMicroBatches, getUpdater());
+            }
+        } finally {
+            setInputs(fullInputs);
+            setLabels(fullLabels);
+            setLayerMaskArrays(fullInputMasks, fullLabelMasks);
+        }
+
+        score = scoreSum / minibatch;
+
+        if (!trainingListeners.isEmpty()) {
+            try (MemoryWorkspace workspace = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                for (TrainingListener tl : trainingListeners) {
+                    tl.onBackwardPass(this);
+                }
+            }
+        }
+    }
+
+    private static INDArray[] microBatch(INDArray[] arrays, long start, long end) {
+        if (arrays == null)
+            return null;
+        INDArray[] out = new INDArray[arrays.length];
+        for (int i = 0; i < arrays.length; i++) {
+            if (arrays[i] == null)
+                continue;
+            INDArrayIndex[] indices = new INDArrayIndex[arrays[i].rank()];
+            indices[0] = NDArrayIndex.interval(start, end);
+            for (int j = 1; j < indices.length; j++) {
+                indices[j] = NDArrayIndex.all();
+            }
+            out[i] = arrays[i].get(indices);
+        }
+        return out;
+    }
+
+    private void computeGradientAndScoreHelper(boolean notifyBackwardPass) {
         synchronizeIterEpochCounts();
 
         LayerWorkspaceMgr workspaceMgr;
@@ -1361,6 +1463,10 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         workspaceMgr.setHelperWorkspacePointers(helperWorkspaces);
 
         boolean tbptt = configuration.getBackpropType() == BackpropType.TruncatedBPTT;
+        if (!tbptt && configuration.getActivationCheckpoints() != null) {
+            computeGradientAndScoreCheckpointed(workspaceMgr, notifyBackwardPass);
+            return;
+        }
         FwdPassType fwdType = (tbptt ? FwdPassType.RNN_ACTIVATE_WITH_STORED_STATE : FwdPassType.STANDARD);
         synchronizeIterEpochCounts();
 
@@ -1409,7 +1515,7 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
             }
 
             //Listeners
-            if (!trainingListeners.isEmpty()) {
+            if (notifyBackwardPass && !trainingListeners.isEmpty()) {
                 try (MemoryWorkspace workspace = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
                     for (TrainingListener tl : trainingListeners) {
                         tl.onBackwardPass(this);
@@ -1423,6 +1529,167 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         }
     }
 
+    /**
+     * Calculate the gradient and score using activation checkpointing: see
+     * {@link ComputationGraphConfiguration.GraphBuilder#activationCheckpoints(String...)}.<br>
+     * The forward pass is first done segment by segment, keeping (detached) only the activations that are used as
+     * input by later segments. Then, starting from the last segment, the activations of each segment are recomputed
+     * and backprop is done for that segment only, before the workspace for the segment's activations is closed.
+     */
+    private void computeGradientAndScoreCheckpointed(LayerWorkspaceMgr workspaceMgr, boolean notifyBackwardPass) {
+        if (activationSegments == null) {
+            Map<String, Integer> segmentsMap = configuration.activationCheckpointSegments();
+            int[] segments = new int[vertices.length];
+            for (GraphVertex gv : vertices) {
+                segments[gv.getVertexIndex()] = segmentsMap.get(gv.getVertexName());
+            }
+            activationSegments = segments;
+        }
+        int[] vertexSegments = activationSegments;
+        int numSegments = ArrayUtil.max(vertexSegments) + 1;
+
+        //Activations that are used as input in a later segment need to be kept for the backward pass
+        boolean[] keepActivations = new boolean[vertices.length];
+        INDArray[] keptActivations = new INDArray[vertices.length];
+        for (GraphVertex gv : vertices) {
+            int idx = gv.getVertexIndex();
+            if (gv.isInputVertex()) {
+                keptActivations[idx] = inputs[idx];
+                continue;
+            }
+            VertexIndices[] outputsTo = gv.getOutputVertices();
+            if (outputsTo != null) {
+                for (VertexIndices v : outputsTo) {
+                    keepActivations[idx] |= vertexSegments[v.getVertexIndex()] > vertexSegments[idx];
+                }
+            }
+        }
+
+        if (configuration.getTrainingWorkspaceMode() != WorkspaceMode.NONE) {
+            if (inputs[0].isAttached()) {
+                //Don't leverage out of async DataMultiSetIterator workspaces
+                workspaceMgr.setNoLeverageOverride(inputs[0].data().getParentWorkspace().getId());
+            }
+            if (configuration.getCacheMode() != CacheMode.NONE) {
+                //For now: store cache mode activations in activations workspace
+                workspaceMgr.setWorkspace(ArrayType.FF_CACHE, WS_ALL_LAYERS_ACT, WS_ALL_LAYERS_ACT_CONFIG);
+            }
+        }
+        setLayerMaskArrays(inputMaskArrays, labelMaskArrays);
+        int[] outputLayerIdxs = getOutputLayerIndices();
+
+        //First: forward pass, keeping only the activations needed by later segments
+        for (int s = 0; s < numSegments - 1; s++) {
+            try (MemoryWorkspace wsAllActivations = workspaceMgr.notifyScopeEntered(ArrayType.ACTIVATIONS)) {
+                ffSegmentInWS(s, vertexSegments, outputLayerIdxs, keepActivations, keptActivations, workspaceMgr);
+            }
+        }
+
+        //Then: recompute the activations for each segment and backprop through it, last segment first
+        if (flattenedGradients == null) {
+            initGradientsView();
+        }
+        LinkedList<Triple<String, INDArray, Character>> gradients = new LinkedList<>();
+        INDArray[] segmentEpsilons = new INDArray[vertices.length];
+        double r = calcRegularizationScore(true);
+        score = 0.0;
+        for (int s = numSegments - 1; s >= 0; s--) {
+            try (MemoryWorkspace wsAllActivations = workspaceMgr.notifyScopeEntered(ArrayType.ACTIVATIONS)) {
+                ffSegmentInWS(s, vertexSegments, outputLayerIdxs, null, keptActivations, workspaceMgr);
+                backpropVertices(s, vertexSegments, segmentEpsilons, false, null, gradients);
+
+                //Score: sum of the scores for the output layers in this segment
+                List<String> networkOutputs = configuration.getNetworkOutputs();
+                for (int outNum = 0; outNum < networkOutputs.size(); outNum++) {
+                    GraphVertex gv = verticesMap.get(networkOutputs.get(outNum));
+                    if (vertexSegments[gv.getVertexIndex()] != s) {
+                        continue;
+                    }
+                    if (gv instanceof LayerVertex && !((LayerVertex) gv).isSetLayerInput()) {
+                        ((LayerVertex) gv).applyPreprocessorAndSetInput(workspaceMgr);
+                    }
+                    Layer vertexLayer = gv.getLayer();
+                    if (vertexLayer instanceof FrozenLayerWithBackprop) {
+                        vertexLayer = ((FrozenLayerWithBackprop) vertexLayer).getInsideLayer();
+                    }
+                    vertexLayer.setMaskArray((labelMaskArrays == null) ? null : labelMaskArrays[outNum]);
+
+                    try (MemoryWorkspace ws = workspaceMgr.notifyScopeEntered(ArrayType.FF_WORKING_MEM)) {
+                        score += ((IOutputLayer) vertexLayer).computeScore(r, true, workspaceMgr);
+                    }
+
+                    //Only want to add l1/l2 component once...
+                    r = 0.0;
+                }
+            }
+        }
+
+        Gradient gradient = new DefaultGradient(flattenedGradients);
+        for (Triple<String, INDArray, Character> t : gradients) {
+            gradient.setGradientFor(t.getFirst(), t.getSecond(), t.getThird());
+        }
+        this.gradient = gradient;
+
+        //Listeners
+        if (notifyBackwardPass && !trainingListeners.isEmpty()) {
+            try (MemoryWorkspace workspace = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                for (TrainingListener tl : trainingListeners) {
+                    tl.onBackwardPass(this);
+                }
+            }
+        }
+
+        for (GraphVertex gv : vertices) {
+            gv.clear();
+        }
+    }
+
+    /**
+     * Forward pass (at training time) for the vertices in one activation checkpointing segment. Inputs from network
+     * inputs and earlier segments are set from the kept activations; output layers (excludeIdxs) only have their inputs
+     * set.
+     *
+     * @param keepActivations If non-null: activations of these vertices are detached and stored in keptActivations
+     */
+    private void ffSegmentInWS(int segment, int[] vertexSegments, int[] excludeIdxs, boolean[] keepActivations,
+                               INDArray[] keptActivations, LayerWorkspaceMgr workspaceMgr) {
+        for (int i = 0; i < topologicalOrder.length; i++) {
+            GraphVertex current = vertices[topologicalOrder[i]];
+            int vIdx = current.getVertexIndex();
+            if (current.isInputVertex() || vertexSegments[vIdx] != segment) {
+                continue;
+            }
+
+            try (MemoryWorkspace wsFFWorking = workspaceMgr.notifyScopeEntered(ArrayType.FF_WORKING_MEM)) {
+                for (VertexIndices v : current.getInputVertices()) {
+                    int inputIdx = v.getVertexIndex();
+                    if (vertices[inputIdx].isInputVertex() || vertexSegments[inputIdx] != segment) {
+                        current.setInput(v.getVertexEdgeNumber(), keptActivations[inputIdx], workspaceMgr);
+                    }
+                }
+
+                if (ArrayUtils.contains(excludeIdxs, vIdx)) {
+                    continue;
+                }
+
+                INDArray out = doForward(current, true, workspaceMgr);
+
+                VertexIndices[] inputsTo = current.getOutputVertices();
+                if (inputsTo != null) {
+                    for (VertexIndices v : inputsTo) {
+                        if (vertexSegments[v.getVertexIndex()] == segment) {
+                            vertices[v.getVertexIndex()].setInput(v.getVertexEdgeNumber(), out, workspaceMgr);
+                        }
+                    }
+                }
+
+                if (keepActivations != null && keepActivations[vIdx]) {
+                    keptActivations[vIdx] = out.detach();
+                }
+            }
+        }
+    }
+
 
     /**
      * Conduct forward pass using a single input array. Note that this method can only be used with ComputationGraphs
@@ -1963,7 +2230,7 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
 
                     if(fwdPassType == FwdPassType.STANDARD) {
                         //Standard feed-forward case
-                        out = current.doForward(train, workspaceMgr);
+                        out = doForward(current, train, workspaceMgr);
                     } else if(fwdPassType == FwdPassType.RNN_TIMESTEP){
                         if (current.hasLayer()) {
                             //Layer
@@ -1978,11 +2245,11 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                                 out = ((MultiLayerNetwork) l).rnnTimeStep(reshapeTimeStepInput(input));
                             } else {
                                 //non-recurrent layer
-                                out = current.doForward(train, workspaceMgr);
+                                out = doForward(current, train, workspaceMgr);
                             }
                         } else {
                             //GraphNode
-                            out = current.doForward(train, workspaceMgr);
+                            out = doForward(current, train, workspaceMgr);
                         }
                     } else if(fwdPassType == FwdPassType.RNN_ACTIVATE_WITH_STORED_STATE) {
                         if (current.hasLayer()) {
@@ -1998,10 +2265,10 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                                 out = temp.get(temp.size() - 1);
                             } else {
                                 //non-recurrent layer
-                                out = current.doForward(train, workspaceMgr);
+                                out = doForward(current, train, workspaceMgr);
                             }
                         } else {
-                            out = current.doForward(train, workspaceMgr);
+                            out = doForward(current, train, workspaceMgr);
                         }
                     } else {
                         throw new IllegalArgumentException("Unsupported forward pass type for this method: " + fwdPassType);
@@ -2029,6 +2296,44 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         return activations;
     }
 
+    /**
+     * Perform forward pass for the specified vertex. If op tracing is enabled (see {@link ProfilerConfig#isTrace()}),
+     * the ops executed by the vertex are recorded within a scope for the vertex
+     */
+    private INDArray doForward(GraphVertex current, boolean train, LayerWorkspaceMgr workspaceMgr) {
+        if (!OpProfiler.getInstance().isTracing())
+            return current.doForward(train, workspaceMgr);
+
+        OpTracer tracer = OpProfiler.getInstance().getTracer();
+        tracer.startScope(vertexTraceName(current), "layer");
+        try {
+            return current.doForward(train, workspaceMgr);
+        } finally {
+            tracer.endScope();
+        }
+    }
+
+    /**
+     * Perform backprop for the specified vertex, recording a scope for the vertex if op tracing is enabled
+     */
+    private Pair<Gradient, INDArray[]> doBackward(GraphVertex current, boolean tbptt, LayerWorkspaceMgr workspaceMgr) {
+        if (!OpProfiler.getInstance().isTracing())
+            return current.doBackward(tbptt, workspaceMgr);
+
+        OpTracer tracer = OpProfiler.getInstance().getTracer();
+        tracer.startScope(vertexTraceName(current) + "_backprop", "layer_backprop");
+        try {
+            return current.doBackward(tbptt, workspaceMgr);
+        } finally {
+            tracer.endScope();
+        }
+    }
+
+    private static String vertexTraceName(GraphVertex v) {
+        Object o = v.hasLayer() ? v.getLayer() : v;
+        return v.getVertexName() + "_" + o.getClass().getSimpleName();
+    }
+
     /**
      * Feed-forward through the network - if workspaces are used, all returned activations will be present in workspace
      * WS_ALL_LAYERS_ACT.<br>
@@ -2113,7 +2418,7 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                 } else {
 
                     if(fwdPassType == FwdPassType.STANDARD){
-                        out = current.doForward(train, workspaceMgr);
+                        out = doForward(current, train, workspaceMgr);
                     } else if(fwdPassType == FwdPassType.RNN_ACTIVATE_WITH_STORED_STATE) {
                         if (current.hasLayer()) {
                             Layer l = current.getLayer();
@@ -2129,10 +2434,10 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                                 out = temp.get(temp.size() - 1);
                             } else {
                                 //non-recurrent layer
-                                out = current.doForward(train, workspaceMgr);
+                                out = doForward(current, train, workspaceMgr);
                             }
                         } else {
-                            out = current.doForward(train, workspaceMgr);
+                            out = doForward(current, train, workspaceMgr);
                         }
                     } else {
                         throw new IllegalStateException("FwdPassType not supported for this method: " + fwdPassType);
@@ -2352,7 +2657,7 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
 
                         if(fwdPassType == FwdPassType.STANDARD){
                             //Standard feed-forward case
-                            out = current.doForward(train, workspaceMgr);
+                            out = doForward(current, train, workspaceMgr);
                         } else if(fwdPassType == FwdPassType.RNN_TIMESTEP){
                             if (current.hasLayer()) {
                                 //Layer
@@ -2367,11 +2672,11 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                                     out = ((MultiLayerNetwork) l).rnnTimeStep(reshapeTimeStepInput(input));
                                 } else {
                                     //non-recurrent layer
-                                    out = current.doForward(train, workspaceMgr);
+                                    out = doForward(current, train, workspaceMgr);
                                 }
                             } else {
                                 //GraphNode
-                                out = current.doForward(train, workspaceMgr);
+                                out = doForward(current, train, workspaceMgr);
                             }
                         } else {
                             throw new IllegalArgumentException("Unsupported forward pass type for this method: " + fwdPassType);
@@ -2513,6 +2818,46 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
 
         }
 
+        //Do backprop, in reverse topological order
+        LinkedList<Triple<String, INDArray, Character>> gradients = new LinkedList<>();
+        backpropVertices(-1, null, null, truncatedBPTT, externalEpsilons, gradients);
+
+        //Now, add the gradients in the order we need them in for flattening (same as params order)
+        Gradient gradient = new DefaultGradient(flattenedGradients);
+        for (Triple<String, INDArray, Character> t : gradients) {
+            gradient.setGradientFor(t.getFirst(), t.getSecond(), t.getThird());
+        }
+
+        this.gradient = gradient;
+
+        if(truncatedBPTT && clearTbpttState){
+            rnnClearPreviousState();
+        }
+
+        //Clear inputs and epsilons:
+        if(clearLayers) {
+            for (GraphVertex gv : vertices) {
+                gv.clear();
+            }
+        }
+    }
+
+    /**
+     * Execute backprop for the vertices of the network, in reverse topological order, adding the parameter gradients
+     * to the start of the specified list.<br>
+     * When activation checkpointing is used, backprop is done for one segment at a time: only vertices in the specified
+     * segment are considered, and the activation gradients for vertices in earlier segments are (added to and) stored
+     * in the segmentEpsilons array, outside of any workspace, until backprop is done for their segment.
+     *
+     * @param segment          Segment to do backprop for, or -1 for all vertices
+     * @param vertexSegments   Segment for each vertex (by vertex index), or null for all vertices
+     * @param segmentEpsilons  Activation gradients from later segments (by vertex index). Null if vertexSegments is null
+     * @param truncatedBPTT    false: normal backprop. true: calculate gradients using truncated BPTT for RNN layers
+     * @param externalEpsilons External errors, if any. See {@link #calcBackpropGradients(boolean, boolean, INDArray...)}
+     * @param gradients        List of gradients, to add the parameter gradients to (in params order)
+     */
+    private void backpropVertices(int segment, int[] vertexSegments, INDArray[] segmentEpsilons, boolean truncatedBPTT,
+                                  INDArray[] externalEpsilons, LinkedList<Triple<String, INDArray, Character>> gradients) {
         //Position in array: index of vertex. Value at position: the step (in topological order) that the activation
         // gradients of the specified vertex have been consumed by
         //Put another way: this is the step that it's safe to deallocate the layer's activation gradients by closing the
@@ -2526,6 +2871,10 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
             if(inputsFrom != null) {
                 //inputsFrom may be null for input vertex
                 for (VertexIndices vi : inputsFrom) {
+                    if(vertexSegments != null && vertexSegments[vi.getVertexIndex()] != vertexSegments[idx]){
+                        //Activation gradients for vertices in earlier segments are copied out of the workspace immediately
+                        continue;
+                    }
                     int posInTopoSort = ArrayUtils.indexOf(topologicalOrder, vi.getVertexIndex());
                     if (posInTopoSort == -1) {
                         throw new IllegalStateException("Did not find vertex " + vi.getVertexIndex() + " in topological sort array");
@@ -2535,8 +2884,10 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
             }
 
             if(minStepOfInputFrom == Integer.MAX_VALUE){
-                //Input vertex, etc
-                vertexActGradsFullyConsumedByStep[idx] = 0;
+                //Input vertex, etc - or only inputs from earlier segments (in which case the workspace can be closed
+                // at the end of the vertex's own step)
+                vertexActGradsFullyConsumedByStep[idx] = (vertexSegments == null || gv.isInputVertex() ? 0 :
+                        ArrayUtils.indexOf(topologicalOrder, idx));
             } else {
                 vertexActGradsFullyConsumedByStep[idx] = minStepOfInputFrom;
             }
@@ -2551,9 +2902,16 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         Map<MemoryWorkspace, LayerWorkspaceMgr> openActivationsWorkspaces = new IdentityHashMap<>();
         List<MemoryWorkspace>[] closeAtEndIteraton = (List<MemoryWorkspace>[])new List[topologicalOrder.length];
 
-        //Do backprop, in reverse topological order
-        LinkedList<Triple<String, INDArray, Character>> gradients = new LinkedList<>();
         boolean[] setVertexEpsilon = new boolean[topologicalOrder.length]; //If true: already set epsilon for this vertex; later epsilons should be *added* to the existing one, not set
+        if(segmentEpsilons != null){
+            for(int i=0; i<segmentEpsilons.length; i++ ){
+                if(segmentEpsilons[i] != null && vertexSegments[i] == segment){
+                    vertices[i].setEpsilon(segmentEpsilons[i]);
+                    setVertexEpsilon[i] = true;
+                    segmentEpsilons[i] = null;
+                }
+            }
+        }
         MemoryWorkspace initialWorkspace = Nd4j.getMemoryManager().getCurrentWorkspace();
         try{
             for(int i=topologicalOrder.length-1; i>= 0; i--){
@@ -2562,6 +2920,10 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                 int vIdx = current.getVertexIndex();
                 String vertexName = current.getVertexName();
 
+                if(vertexSegments != null && vertexSegments[vIdx] != segment){
+                    continue;
+                }
+
                 //FIXME: make the frozen vertex feature extraction more flexible
                 if (current.hasLayer() && current.getLayer() instanceof FrozenLayer || current instanceof FrozenVertex){
                     hitFrozen = true;
@@ -2660,9 +3022,27 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                 Pair<Gradient, INDArray[]> pair;
                 INDArray[] epsilons;
                 try(MemoryWorkspace wsWorkingMem = workspaceMgr.notifyScopeEntered(ArrayType.BP_WORKING_MEM)){
-                    pair = current.doBackward(truncatedBPTT, workspaceMgr);
+                    //Mixed precision training: scale the loss gradient (and hence all gradients) to avoid underflow.
+                    //Only when fitting: other gradients (including for external errors) are not passed to the updater
+                    MixedPrecision mixedPrecision = configuration.getMixedPrecision();
+                    boolean scaleLoss = lossScaling && current.isOutputVertex() && mixedPrecision != null
+                            && (externalEpsilons == null || externalEpsilons.length == 0);
+                    org.deeplearning4j.nn.conf.layers.Layer layerConf = (current.hasLayer() ? current.getLayer().conf().getLayer() : null);
+                    ILossFunction origLossFn = (scaleLoss && layerConf != null ? mixedPrecision.beginLossScaling(layerConf) : null);
+                    try {
+                        pair = doBackward(current, truncatedBPTT, workspaceMgr);
+                    } finally {
+                        if (origLossFn != null) {
+                            mixedPrecision.endLossScaling(layerConf, origLossFn);
+                        }
+                    }
                     epsilons = pair.getSecond();
 
+                    if (scaleLoss && origLossFn == null) {
+                        //Output layer without a replaceable loss function: scale its gradients after backprop instead
+                        mixedPrecision.applyLossScale(pair.getFirst(), epsilons);
+                    }
+
                     //Validate workspace location for the activation gradients:
                     //validateArrayWorkspaces(LayerWorkspaceMgr mgr, INDArray array, ArrayType arrayType, String vertexName, boolean isInputVertex, String op){
                     for (INDArray epsilon : epsilons) {
@@ -2681,6 +3061,22 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                     int j = 0;
                     for (VertexIndices v : inputVertices) {
                         GraphVertex gv = vertices[v.getVertexIndex()];
+                        if (vertexSegments != null && vertexSegments[gv.getVertexIndex()] != segment) {
+                            //Input from an earlier segment: backprop for that vertex is done after its activations have
+                            // been recomputed, so store a copy of the activation gradients outside of any workspace
+                            INDArray eps = epsilons[j++];
+                            if (eps != null && !gv.isInputVertex()) {
+                                int idx = gv.getVertexIndex();
+                                if (segmentEpsilons[idx] == null) {
+                                    try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                                        segmentEpsilons[idx] = eps.dup();
+                                    }
+                                } else {
+                                    segmentEpsilons[idx].addi(eps);
+                                }
+                            }
+                            continue;
+                        }
                         if (setVertexEpsilon[gv.getVertexIndex()]) {
                             //This vertex: must output to multiple vertices... we want to add the epsilons here
                             INDArray currentEps = gv.getEpsilon();
@@ -2726,25 +3122,6 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
             }
             Nd4j.getMemoryManager().setCurrentWorkspace(initialWorkspace);
         }
-
-        //Now, add the gradients in the order we need them in for flattening (same as params order)
-        Gradient gradient = new DefaultGradient(flattenedGradients);
-        for (Triple<String, INDArray, Character> t : gradients) {
-            gradient.setGradientFor(t.getFirst(), t.getSecond(), t.getThird());
-        }
-
-        this.gradient = gradient;
-
-        if(truncatedBPTT && clearTbpttState){
-            rnnClearPreviousState();
-        }
-
-        //Clear inputs and epsilons:
-        if(clearLayers) {
-            for (GraphVertex gv : vertices) {
-                gv.clear();
-            }
-        }
     }
 
     @Override
@@ -3210,6 +3587,9 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
 
         if (this.flattenedParams != null && this.flattenedParams.length() == params.length()) {
             this.flattenedParams.assign(params);
+            if (configuration.getMixedPrecision() != null && getUpdater(false) != null) {
+                getUpdater(false).synchronizeMasterParams();
+            }
             return;
         }
 
@@ -3609,7 +3989,7 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                             .build();
                 }
             }
-            solver.optimize(workspaceMgr);
+            optimizeWithLossScaling(workspaceMgr);
 
             //Finally, update the state of the RNN layers:
             rnnUpdateStateWithTBPTTState();
@@ -29,8 +29,12 @@ import org.deeplearning4j.optimize.api.ConvexOptimizer;
 import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.memory.MemoryWorkspace;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.BaseOpContext;
+import org.nd4j.linalg.api.ops.OpContext;
+import org.nd4j.linalg.api.ops.executioner.OpExecutioner;
 import org.nd4j.linalg.api.ops.impl.transforms.custom.LayerNorm;
 import org.nd4j.linalg.api.ops.impl.transforms.custom.LayerNormBp;
+import org.nd4j.linalg.api.ops.impl.transforms.custom.XwPlusB;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.indexing.NDArrayIndex;
 import org.nd4j.linalg.learning.regularization.Regularization;
@@ -57,6 +61,9 @@ public abstract class BaseLayer<LayerConfT extends org.deeplearning4j.nn.conf.la
 
     protected Map<String,INDArray> weightNoiseParams = new HashMap<>();
 
+    protected transient XwPlusB xwPlusBOp;
+    protected transient OpContext xwPlusBContext;
+
     public BaseLayer(NeuralNetConfiguration conf, DataType dataType) {
         super(conf, dataType);
     }
@@ -313,6 +320,15 @@ public abstract class BaseLayer<LayerConfT extends org.deeplearning4j.nn.conf.la
 
 
         INDArray ret = workspaceMgr.createUninitialized(ArrayType.ACTIVATIONS, W.dataType(), input.size(0), W.size(1));
+        if(hasBias() && !hasLayerNorm()){
+            //Bias can be fused with the matrix multiply only if we don't need to apply layer norm in between
+            xwPlusB(input.castTo(ret.dataType()), W, b, ret);
+            if (maskArray != null) {
+                applyMask(ret);
+            }
+            return new Pair<>(ret, ret);
+        }
+
         input.castTo(ret.dataType()).mmuli(W, ret);     //TODO Can we avoid this cast? (It sohuld be a no op if not required, however)
 
         INDArray preNorm = ret;
@@ -332,6 +348,47 @@ public abstract class BaseLayer<LayerConfT extends org.deeplearning4j.nn.conf.la
         return new Pair<>(ret, preNorm);
     }
 
+    /**
+     * Calculate out = x * W + b (with b being a row vector) as a single native op. The op and its {@link OpContext} are
+     * held by this layer and reused across calls, so only the arrays that actually changed since the last call (usually
+     * the input and output) need to be bound again - instead of creating the op and marshalling all arguments every time.<br>
+     * On backends without OpContext support (or when nOut is 1) this falls back to mmul + addiRowVector.<br>
+     * The output array is provided by the caller (usually from a workspace), so no arrays are allocated by this method.
+     *
+     * @param x   Input, shape [minibatch, nIn]
+     * @param W   Weights, shape [nIn, nOut]
+     * @param b   Bias, shape [1, nOut]
+     * @param out Output array, shape [minibatch, nOut]
+     * @return The output array
+     */
+    public INDArray xwPlusB(INDArray x, INDArray W, INDArray b, INDArray out) {
+        //Note that xw_plus_b doesn't accept a [1,1] bias (i.e., nOut=1) as a vector
+        if (Nd4j.getExecutioner().type() != OpExecutioner.ExecutionerType.NATIVE_CPU || b.length() == 1) {
+            x.mmuli(W, out);
+            return out.addiRowVector(b);
+        }
+
+        if (xwPlusBContext == null) {
+            xwPlusBOp = new XwPlusB();
+            xwPlusBContext = Nd4j.getExecutioner().buildContext();
+        }
+
+        xwPlusBContext.setInputArray(0, x);
+        xwPlusBContext.setInputArray(1, W);
+        xwPlusBContext.setInputArray(2, b);
+        xwPlusBContext.setOutputArray(0, out);
+        try {
+            Nd4j.exec(xwPlusBOp, xwPlusBContext);
+        } finally {
+            //Don't keep the input and output arrays alive (or in use) after this call: only W and b remain bound
+            if (xwPlusBContext instanceof BaseOpContext) {
+                ((BaseOpContext) xwPlusBContext).clearInputArray(0);
+                ((BaseOpContext) xwPlusBContext).clearOutputArray(0);
+            }
+        }
+        return out;
+    }
+
     @Override
     public INDArray activate(boolean training, LayerWorkspaceMgr workspaceMgr) {
         INDArray z = preOutput(training, workspaceMgr);
@@ -220,14 +220,14 @@ public class LSTMHelpers {
                 miniBatchData = Shape.toMmulCompatible(miniBatchData);
 
                 // if we're using cache here - let's create ifogActivations within cache workspace, so all views from this array will be valid in cache
-                cacheEnter(training, cacheMode, workspaceMgr);
+                ArrayType ifogArrayType = shouldCache(training, cacheMode, workspaceMgr) ? ArrayType.FF_CACHE : ArrayType.RNN_FF_LOOP_WORKING_MEM;
 
                 //Calculate activations for: network input + forget, output, input modulation gates. Next 3 lines are first part of those
-                INDArray ifogActivations = miniBatchData.mmul(inputWeights); //Shape: [miniBatch,4*layerSize]
-                cacheExit(training, cacheMode, workspaceMgr);
+                //Input weights and bias are applied as a single op (op and context are reused by the layer across time steps)
+                INDArray ifogActivations = workspaceMgr.createUninitialized(ifogArrayType, inputWeights.dataType(), new long[] {miniBatchSize, 4 * hiddenLayerSize}, 'f'); //Shape: [miniBatch,4*layerSize]
+                layer.xwPlusB(miniBatchData, inputWeights, biases, ifogActivations);
 
                 Nd4j.gemm(prevOutputActivations, recurrentWeightsIFOG, ifogActivations, false, false, 1.0, 1.0);
-                ifogActivations.addiRowVector(biases);
 
                 INDArray inputActivations =
                         ifogActivations.get(all(), interval(0, hiddenLayerSize));
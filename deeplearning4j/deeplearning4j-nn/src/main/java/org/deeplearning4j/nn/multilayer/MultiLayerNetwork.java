@@ -46,9 +46,12 @@ import org.deeplearning4j.nn.layers.FrozenLayerWithBackprop;
 import org.deeplearning4j.nn.layers.recurrent.BidirectionalLayer;
 import org.deeplearning4j.nn.layers.LayerHelper;
 import org.deeplearning4j.nn.layers.wrapper.BaseWrapperLayer;
+import org.deeplearning4j.nn.updater.BaseMultiLayerUpdater;
 import org.deeplearning4j.nn.updater.UpdaterCreator;
+import org.deeplearning4j.nn.updater.UpdaterUtils;
 import org.deeplearning4j.nn.workspace.ArrayType;
 import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
+import org.deeplearning4j.nn.workspace.OutputBufferCache;
 import org.deeplearning4j.optimize.Solver;
 import org.deeplearning4j.optimize.api.ConvexOptimizer;
 import org.deeplearning4j.optimize.api.TrainingListener;
@@ -81,10 +84,15 @@ import org.nd4j.linalg.heartbeat.reports.Event;
 import org.nd4j.linalg.heartbeat.reports.Task;
 import org.nd4j.linalg.heartbeat.utils.EnvironmentUtils;
 import org.nd4j.linalg.heartbeat.utils.TaskUtils;
+import org.nd4j.linalg.indexing.INDArrayIndex;
 import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.lossfunctions.ILossFunction;
 import org.nd4j.linalg.memory.abstracts.DummyWorkspace;
 import org.nd4j.linalg.primitives.Pair;
 import org.nd4j.linalg.primitives.Triple;
+import org.nd4j.linalg.profiler.OpProfiler;
+import org.nd4j.linalg.profiler.OpTracer;
+import org.nd4j.linalg.profiler.ProfilerConfig;
 import org.nd4j.linalg.schedule.ISchedule;
 import org.nd4j.linalg.util.FeatureUtil;
 import org.nd4j.linalg.workspace.ND4JWorkspaceException;
@@ -129,6 +137,14 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
     protected boolean clearTbpttState = true;  //Mainly for unit testing (should be enabled otherwise)
     protected transient ThreadLocal<Long> lastEtlTime = new ThreadLocal<>();
     protected INDArray mask;
+    //Mask arrays as last set via setLayerMaskArrays - used to split masks for gradient accumulation
+    protected transient INDArray featuresMaskArray;
+    protected transient INDArray labelsMaskArray;
+    //Gradient accumulation buffer (detached), reused between iterations
+    protected transient INDArray accumulatedGradients;
+    //Mixed precision: true only while the solver runs during fit, as only those gradients are passed to the updater
+    // (which removes the loss scale again)
+    protected transient boolean lossScaling;
 
     protected int layerIndex; //For Layer.get/setIndex()
 
@@ -137,6 +153,13 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
     @Getter
     protected transient Map<String,Pointer> helperWorkspaces = new HashMap<>();
 
+    /**
+     * Optional - if set, inference via the output methods keeps workspaces and output buffers between calls, per thread
+     * and per input shape. See {@link #setOutputBufferCache(OutputBufferCache)}
+     */
+    @Getter
+    protected transient OutputBufferCache outputBufferCache;
+
 
     /**
      * Workspace for working memory for a single layer: forward pass and backward pass
@@ -798,12 +821,50 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         }
     }
 
+    /**
+     * Activate the specified layer. If op tracing is enabled (see {@link ProfilerConfig#isTrace()}), the ops executed by
+     * the layer are recorded within a scope for the layer
+     */
+    private INDArray activateLayer(int layerIdx, INDArray input, boolean training, LayerWorkspaceMgr mgr) {
+        if (!OpProfiler.getInstance().isTracing())
+            return layers[layerIdx].activate(input, training, mgr);
+
+        OpTracer tracer = OpProfiler.getInstance().getTracer();
+        tracer.startScope(layerTraceName(layerIdx), "layer");
+        try {
+            return layers[layerIdx].activate(input, training, mgr);
+        } finally {
+            tracer.endScope();
+        }
+    }
+
+    /**
+     * Backprop through the specified layer, recording a scope for the layer if op tracing is enabled
+     */
+    private Pair<Gradient, INDArray> backpropLayer(int layerIdx, INDArray epsilon, LayerWorkspaceMgr mgr) {
+        if (!OpProfiler.getInstance().isTracing())
+            return layers[layerIdx].backpropGradient(epsilon, mgr);
+
+        OpTracer tracer = OpProfiler.getInstance().getTracer();
+        tracer.startScope(layerTraceName(layerIdx) + "_backprop", "layer_backprop");
+        try {
+            return layers[layerIdx].backpropGradient(epsilon, mgr);
+        } finally {
+            tracer.endScope();
+        }
+    }
+
+    private String layerTraceName(int layerIdx) {
+        String name = layers[layerIdx].conf().getLayer().getLayerName();
+        return (name != null ? name : "layer" + layerIdx) + "_" + layers[layerIdx].getClass().getSimpleName();
+    }
+
     protected INDArray activationFromPrevLayer(int curr, INDArray input, boolean training, LayerWorkspaceMgr mgr) {
         if (getLayerWiseConfigurations().getInputPreProcess(curr) != null) {
             input = getLayerWiseConfigurations().getInputPreProcess(curr).preProcess(input, getInputMiniBatchSize(), mgr);
         }
 
-        INDArray ret = layers[curr].activate(input, training, mgr);
+        INDArray ret = activateLayer(curr, input, training, mgr);
         return ret;
     }
 
@@ -1022,7 +1083,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                 }
 
                 if(fwdPassType == FwdPassType.STANDARD){
-                    input = layers[i].activate(input, train, workspaceMgr);
+                    input = activateLayer(i, input, train, workspaceMgr);
                 } else if (fwdPassType == FwdPassType.RNN_ACTIVATE_WITH_STORED_STATE) {
                     if (layers[i] instanceof RecurrentLayer) {
                         input = ((RecurrentLayer) layers[i]).rnnActivateUsingStoredState(input, train,
@@ -1034,7 +1095,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                         List<INDArray> temp = ((MultiLayerNetwork) layers[i]).rnnActivateUsingStoredState(input, train, storeLastForTBPTT);
                         input = temp.get(temp.size() - 1);
                     } else {
-                        input = layers[i].activate(input, train, workspaceMgr);
+                        input = activateLayer(i, input, train, workspaceMgr);
                     }
                 } else {
                     throw new IllegalStateException("Forward pass type not supported for this method: " + fwdPassType);
@@ -1113,7 +1174,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                 }
 
                 if(fwdPassType == FwdPassType.STANDARD){
-                    input = layers[i].activate(input, true, workspaceMgr);
+                    input = activateLayer(i, input, true, workspaceMgr);
                 } else if(fwdPassType == FwdPassType.RNN_ACTIVATE_WITH_STORED_STATE){
                     if (layers[i] instanceof RecurrentLayer) {
                         input = ((RecurrentLayer) layers[i]).rnnActivateUsingStoredState(input, true, storeLastForTBPTT, workspaceMgr);
@@ -1124,7 +1185,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                         List<INDArray> temp = ((MultiLayerNetwork) layers[i]).rnnActivateUsingStoredState(input, true, storeLastForTBPTT);
                         input = temp.get(temp.size() - 1);
                     } else {
-                        input = layers[i].activate(input, true, workspaceMgr);
+                        input = activateLayer(i, input, true, workspaceMgr);
                     }
                 } else {
                     throw new IllegalStateException("FwdPassType not supported for this method: " + fwdPassType);
@@ -1166,6 +1227,18 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
      */
     protected INDArray outputOfLayerDetached(boolean train, @NonNull FwdPassType fwdPassType, int layerIndex, @NonNull INDArray input,
                                              INDArray featureMask, INDArray labelsMask, MemoryWorkspace outputWorkspace){
+        return outputOfLayerDetached(train, fwdPassType, layerIndex, input, featureMask, labelsMask, outputWorkspace, null);
+    }
+
+    /**
+     * As per {@link #outputOfLayerDetached(boolean, FwdPassType, int, INDArray, INDArray, INDArray, MemoryWorkspace)},
+     * but with the specified suffix appended to the names of all workspaces used internally. This allows separate
+     * workspaces to be used (and hence sized) for different input shapes - see {@link OutputBufferCache}
+     *
+     * @param wsSuffix          Suffix for the workspace names. May be null
+     */
+    protected INDArray outputOfLayerDetached(boolean train, @NonNull FwdPassType fwdPassType, int layerIndex, @NonNull INDArray input,
+                                             INDArray featureMask, INDArray labelsMask, MemoryWorkspace outputWorkspace, String wsSuffix){
         setInput(input);
         setLayerMaskArrays(featureMask, labelsMask);
 
@@ -1192,6 +1265,11 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         LayerWorkspaceMgr mgrEven;
         LayerWorkspaceMgr mgrOdd;
 
+        String wsWorkingMem = wsSuffix == null ? WS_LAYER_WORKING_MEM : WS_LAYER_WORKING_MEM + wsSuffix;
+        String wsAct1 = wsSuffix == null ? WS_LAYER_ACT_1 : WS_LAYER_ACT_1 + wsSuffix;
+        String wsAct2 = wsSuffix == null ? WS_LAYER_ACT_2 : WS_LAYER_ACT_2 + wsSuffix;
+        String wsRnnLoop = wsSuffix == null ? WS_RNN_LOOP_WORKING_MEM : WS_RNN_LOOP_WORKING_MEM + wsSuffix;
+
         WorkspaceMode wsm = train ? layerWiseConfigurations.getTrainingWorkspaceMode() : layerWiseConfigurations.getInferenceWorkspaceMode();
         if(wsm == WorkspaceMode.NONE){
             mgrEven = LayerWorkspaceMgr.noWorkspaces();
@@ -1206,17 +1284,17 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
             }
         } else {
             mgrEven = LayerWorkspaceMgr.builder()
-                    .with(ArrayType.FF_WORKING_MEM, WS_LAYER_WORKING_MEM, WS_LAYER_WORKING_MEM_CONFIG)
-                    .with(ArrayType.ACTIVATIONS, WS_LAYER_ACT_1, WS_LAYER_ACT_X_CONFIG)
-                    .with(ArrayType.INPUT, WS_LAYER_ACT_2, WS_LAYER_ACT_X_CONFIG)            //Inputs should always be in the previous WS
-                    .with(ArrayType.RNN_FF_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM_CONFIG)
+                    .with(ArrayType.FF_WORKING_MEM, wsWorkingMem, WS_LAYER_WORKING_MEM_CONFIG)
+                    .with(ArrayType.ACTIVATIONS, wsAct1, WS_LAYER_ACT_X_CONFIG)
+                    .with(ArrayType.INPUT, wsAct2, WS_LAYER_ACT_X_CONFIG)            //Inputs should always be in the previous WS
+                    .with(ArrayType.RNN_FF_LOOP_WORKING_MEM, wsRnnLoop, WS_RNN_LOOP_WORKING_MEM_CONFIG)
                     .build();
 
             mgrOdd = LayerWorkspaceMgr.builder()
-                    .with(ArrayType.FF_WORKING_MEM, WS_LAYER_WORKING_MEM, WS_LAYER_WORKING_MEM_CONFIG)
-                    .with(ArrayType.ACTIVATIONS, WS_LAYER_ACT_2, WS_LAYER_ACT_X_CONFIG)
-                    .with(ArrayType.INPUT, WS_LAYER_ACT_1, WS_LAYER_ACT_X_CONFIG)            //Inputs should always be in the previous WS
-                    .with(ArrayType.RNN_FF_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM_CONFIG)
+                    .with(ArrayType.FF_WORKING_MEM, wsWorkingMem, WS_LAYER_WORKING_MEM_CONFIG)
+                    .with(ArrayType.ACTIVATIONS, wsAct2, WS_LAYER_ACT_X_CONFIG)
+                    .with(ArrayType.INPUT, wsAct1, WS_LAYER_ACT_X_CONFIG)            //Inputs should always be in the previous WS
+                    .with(ArrayType.RNN_FF_LOOP_WORKING_MEM, wsRnnLoop, WS_RNN_LOOP_WORKING_MEM_CONFIG)
                     .build();
         }
         mgrEven.setHelperWorkspacePointers(helperWorkspaces);
@@ -1232,7 +1310,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                 //Edge case: for first layer with dropout, inputs can't be in previous workspace (as it hasn't been opened yet)
                 //Hence: put inputs in working memory
                 if(i == 0 && wsm != WorkspaceMode.NONE){
-                    mgr.setWorkspace(ArrayType.INPUT, WS_LAYER_WORKING_MEM, WS_LAYER_WORKING_MEM_CONFIG);
+                    mgr.setWorkspace(ArrayType.INPUT, wsWorkingMem, WS_LAYER_WORKING_MEM_CONFIG);
                 }
 
                 try (MemoryWorkspace wsFFWorking = mgr.notifyScopeEntered(ArrayType.FF_WORKING_MEM)) { //Working memory: opened/closed once per layer
@@ -1270,7 +1348,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
 
                     if(fwdPassType == FwdPassType.STANDARD){
                         //Standard feed-forward case
-                        input = layers[i].activate(input, train, mgr);
+                        input = activateLayer(i, input, train, mgr);
                     } else if(fwdPassType == FwdPassType.RNN_TIMESTEP){
                         //rnnTimeStep case
                         if (layers[i] instanceof RecurrentLayer) {
@@ -1281,7 +1359,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                         } else if (layers[i] instanceof MultiLayerNetwork) {
                             input = ((MultiLayerNetwork) layers[i]).rnnTimeStep(reshapeTimeStepInput(input));
                         } else {
-                            input = layers[i].activate(input, false, mgr);
+                            input = activateLayer(i, input, false, mgr);
                         }
                     } else {
                         throw new IllegalArgumentException("Unsupported forward pass type for this method: " + fwdPassType);
@@ -1300,7 +1378,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                 //Edge case: for first layer with dropout, inputs can't be in previous workspace (as it hasn't been opened yet)
                 //Hence: put inputs in working memory -> set back to default for next use of workspace mgr
                 if(i == 0 && wsm != WorkspaceMode.NONE){
-                    mgr.setWorkspace(ArrayType.INPUT, WS_LAYER_ACT_2, WS_LAYER_ACT_X_CONFIG);            //Inputs should always be in the previous WS
+                    mgr.setWorkspace(ArrayType.INPUT, wsAct2, WS_LAYER_ACT_X_CONFIG);            //Inputs should always be in the previous WS
                 }
             }
 
@@ -1499,6 +1577,10 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                 idx += range;
             }
         }
+
+        if (layerWiseConfigurations.getMixedPrecision() != null && getUpdater(false) instanceof BaseMultiLayerUpdater) {
+            ((BaseMultiLayerUpdater) getUpdater(false)).synchronizeMasterParams();
+        }
     }
 
     @Override
@@ -1672,7 +1754,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                 }
 
                 //TODO CACHE
-                solver.optimize(workspaceMgr);
+                optimizeWithLossScaling(workspaceMgr);
             }
 
             if (hasMaskArrays)
@@ -1781,6 +1863,24 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
      */
     protected Pair<Gradient, INDArray> calcBackpropGradients(INDArray epsilon, boolean withOutputLayer, boolean tbptt,
                                                              boolean returnInputActGrad) {
+        return calcBackpropGradients(epsilon, withOutputLayer, tbptt, returnInputActGrad, 0, layers.length - 1, false);
+    }
+
+    /**
+     * As per {@link #calcBackpropGradients(INDArray, boolean, boolean, boolean)} but for a subset of the layers only:
+     * backprop is done for layers toLayer (inclusive) back to fromLayer (inclusive). Used for activation checkpointing.
+     *
+     * @param epsilon   Errors at the output of layer toLayer. Not used if withOutputLayer = true
+     * @param fromLayer First layer to calculate gradients for. If returnInputActGrad is true, the returned errors are
+     *                  with respect to the input of this layer
+     * @param toLayer   Last layer to calculate gradients for. Must be the output layer if withOutputLayer = true
+     * @param applyLossScale If true and mixed precision is configured, scale the loss gradient of the output layer
+     *                  before backprop. Only for gradients that are passed to the updater, which removes the loss scale
+     *                  again
+     */
+    protected Pair<Gradient, INDArray> calcBackpropGradients(INDArray epsilon, boolean withOutputLayer, boolean tbptt,
+                                                             boolean returnInputActGrad, int fromLayer, int toLayer,
+                                                             boolean applyLossScale) {
         if (flattenedGradients == null) {
             initGradientsView();
         }
@@ -1862,7 +1962,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         MemoryWorkspace wsActGradTemp = null;
         MemoryWorkspace initialWorkspace = Nd4j.getMemoryManager().getCurrentWorkspace();
         try {
-            for (int i = layers.length - 1; i >= 0; i--) {
+            for (int i = toLayer; i >= fromLayer; i--) {
                 if (layers[i] instanceof FrozenLayer) {
                     break;
                 }
@@ -1891,21 +1991,37 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                     wsActGradTemp.setPreviousWorkspace(initialWorkspace);
                     wsBPWorking.setPreviousWorkspace(initialWorkspace);
 
-                    INDArray eps = (i == layers.length - 1 ? epsilon : currPair.getRight());  //eps is null for OutputLayer
+                    INDArray eps = (i == toLayer ? epsilon : currPair.getRight());  //eps is null for OutputLayer
 
-                    if(!tbptt){
-                        //Standard case
-                        currPair = layers[i].backpropGradient(eps, workspaceMgr);
-                    } else {
-                        //TBPTT gradient
-                        if (layers[i] instanceof RecurrentLayer) {
-                            currPair = ((RecurrentLayer) layers[i]).tbpttBackpropGradient(currPair.getSecond(),
-                                    layerWiseConfigurations.getTbpttBackLength(), workspaceMgr);
+                    //Mixed precision training: scale the loss gradient (and hence all gradients) to avoid underflow
+                    MixedPrecision mixedPrecision = layerWiseConfigurations.getMixedPrecision();
+                    boolean scaleLoss = applyLossScale && withOutputLayer && i == layers.length - 1 && mixedPrecision != null;
+                    org.deeplearning4j.nn.conf.layers.Layer layerConf = layers[i].conf().getLayer();
+                    ILossFunction origLossFn = (scaleLoss ? mixedPrecision.beginLossScaling(layerConf) : null);
+                    try {
+                        if (!tbptt) {
+                            //Standard case
+                            currPair = backpropLayer(i, eps, workspaceMgr);
                         } else {
-                            currPair = layers[i].backpropGradient(currPair.getSecond(), workspaceMgr);
+                            //TBPTT gradient
+                            if (layers[i] instanceof RecurrentLayer) {
+                                currPair = ((RecurrentLayer) layers[i]).tbpttBackpropGradient(currPair.getSecond(),
+                                        layerWiseConfigurations.getTbpttBackLength(), workspaceMgr);
+                            } else {
+                                currPair = backpropLayer(i, currPair.getSecond(), workspaceMgr);
+                            }
+                        }
+                    } finally {
+                        if (origLossFn != null) {
+                            mixedPrecision.endLossScaling(layerConf, origLossFn);
                         }
                     }
 
+                    if (scaleLoss && origLossFn == null) {
+                        //Output layer without a replaceable loss function: scale its gradients after backprop instead
+                        mixedPrecision.applyLossScale(currPair.getFirst(), currPair.getSecond());
+                    }
+
                     if(currPair.getSecond() != null) {
                         //Edge case: may be null for Embedding layer, for example
                         validateArrayWorkspaces(workspaceMgr, currPair.getSecond(), ArrayType.ACTIVATION_GRAD, i,
@@ -1928,7 +2044,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                         }
                     }
 
-                    if(i == 0 ){
+                    if(i == fromLayer){
                         if(returnInputActGrad && currPair.getSecond() != null){
                             currPair.setSecond(currPair.getSecond().detach());
                         } else {
@@ -1970,7 +2086,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
             gradient.setGradientFor(triple.getFirst(), triple.getSecond(), triple.getThird());
         }
 
-        return new Pair<>(gradient, currPair.getSecond());
+        return new Pair<>(gradient, currPair == null ? null : currPair.getSecond());
     }
 
     protected void doTruncatedBPTT(INDArray input, INDArray labels, INDArray featuresMaskArray,
@@ -2016,7 +2132,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                             .build();
                 }
             }
-            solver.optimize(workspaceMgr);
+            optimizeWithLossScaling(workspaceMgr);
 
             //Finally, update the state of the RNN layers:
             updateRnnStateWithTBPTTState();
@@ -2228,7 +2344,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                 }
             }
             //TODO CACHE WORKSPACE, IF USED???
-            solver.optimize(workspaceMgr);
+            optimizeWithLossScaling(workspaceMgr);
         }
 
         clearLayerMaskArrays();
@@ -2337,6 +2453,10 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
      */
     public synchronized INDArray output(INDArray input, boolean train, INDArray featuresMask, INDArray labelsMask, MemoryWorkspace outputWorkspace) {
         try {
+            if(outputBufferCache != null && !train && (outputWorkspace == null || outputWorkspace instanceof DummyWorkspace)
+                    && layerWiseConfigurations.getInferenceWorkspaceMode() != WorkspaceMode.NONE){
+                return outputCached(input, featuresMask, labelsMask);
+            }
             return outputOfLayerDetached(train, FwdPassType.STANDARD, layers.length - 1, input, featuresMask, labelsMask, outputWorkspace);
         } catch (OutOfMemoryError e) {
             CrashReportingUtil.writeMemoryCrashDump(this, e);
@@ -2344,6 +2464,42 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         }
     }
 
+    protected INDArray outputCached(INDArray input, INDArray featuresMask, INDArray labelsMask){
+        OutputBufferCache.Entry e = outputBufferCache.getEntry(input, featuresMask, labelsMask);
+        String suffix = e.getWorkspaceSuffix();
+        try(MemoryWorkspace ws = Nd4j.getWorkspaceManager().getAndActivateWorkspace(WS_ALL_LAYERS_ACT_CONFIG, WS_OUTPUT_MEM + suffix)){
+            INDArray out = outputOfLayerDetached(false, FwdPassType.STANDARD, layers.length - 1, input, featuresMask, labelsMask, ws, suffix);
+            return e.store(out);
+        }
+    }
+
+    /**
+     * Set the output buffer cache to use for inference, or null to disable (the default).<br>
+     * When set, inference (i.e., the output methods with train=false, when no output workspace is provided) uses a
+     * separate set of workspaces for each input shape on each thread, and copies the network output to a buffer that is
+     * reused for subsequent calls with the same input shape. Hence steady-state inference with a small number of
+     * distinct input shapes does not allocate any new memory. See {@link OutputBufferCache} for hit/miss statistics.<br>
+     * NOTE: with a cache set, the array returned by the output methods is overwritten by the next call (on the same
+     * thread) with the same input shape - use {@link INDArray#dup()} if the output needs to be kept.<br>
+     * NOTE 2: The cache is only used if the inference workspace mode is not {@link WorkspaceMode#NONE}<br>
+     * NOTE 3: The cache applies to the output methods that return the final layer activations: {@link #output(INDArray)},
+     * {@link #output(INDArray, boolean)}, {@link #output(INDArray, TrainingMode)},
+     * {@link #output(INDArray, boolean, INDArray, INDArray)}, {@link #output(DataSetIterator)} and {@link #predict(INDArray)},
+     * plus {@link #output(INDArray, boolean, MemoryWorkspace)} and {@link #output(INDArray, boolean, INDArray, INDArray, MemoryWorkspace)}
+     * when no output workspace is provided. It is not used when an output workspace is provided (including
+     * {@link #output(INDArray, INDArray, INDArray, OutputAdapter)}, where the output workspace is managed internally), or for
+     * {@link #feedForward(INDArray)}, {@link #activate(INDArray, TrainingMode)}, {@link #rnnTimeStep(INDArray)} and other
+     * methods that return or store intermediate activations. ComputationGraph does not support output buffer caching.
+     *
+     * @param outputBufferCache Cache to use. May be null
+     */
+    public void setOutputBufferCache(OutputBufferCache outputBufferCache){
+        if(this.outputBufferCache != null && this.outputBufferCache != outputBufferCache){
+            this.outputBufferCache.clear();
+        }
+        this.outputBufferCache = outputBufferCache;
+    }
+
     /**
      * This method uses provided OutputAdapter to return custom object built from INDArray
      *
@@ -2403,6 +2559,10 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
             INDArray fMask = next.getFeaturesMaskArray();
             INDArray lMask = next.getLabelsMaskArray();
             INDArray output = this.output(features, train, fMask, lMask);
+            if(outputBufferCache != null){
+                //Output buffer is reused by the next call with the same shape
+                output = output.dup();
+            }
             outList.add(output);
             if(firstOutputShape == null){
                 firstOutputShape = output.shape();
@@ -2622,6 +2782,19 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         this.score = score;
     }
 
+    /**
+     * Run the solver for the current input and labels. With mixed precision, the loss scale is applied to the
+     * gradients calculated by the solver - and only to these, as they are the only gradients passed to the updater
+     */
+    private void optimizeWithLossScaling(LayerWorkspaceMgr workspaceMgr) {
+        lossScaling = true;
+        try {
+            solver.optimize(workspaceMgr);
+        } finally {
+            lossScaling = false;
+        }
+    }
+
     @Override
     public void computeGradientAndScore(LayerWorkspaceMgr layerWorkspaceMgr){
         computeGradientAndScore();
@@ -2636,6 +2809,199 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                             "using backpropagation, the final layer must be an output layer");
         }
 
+        int accumulationSteps = layerWiseConfigurations.getGradientAccumulationSteps();
+        if (accumulationSteps > 1 && layerWiseConfigurations.getBackpropType() != BackpropType.TruncatedBPTT
+                && input != null && input.size(0) > 1) {
+            computeGradientAndScoreAccumulated(accumulationSteps);
+        } else {
+            computeGradientAndScoreHelper(true);
+        }
+    }
+
+    /**
+     * Gradient accumulation: split the current input, labels and masks into (at most) the specified number of
+     * micro-batches, and accumulate the gradients of all micro-batches in the flattened gradients view (see
+     * {@link UpdaterUtils#accumulateMicroBatchGradients}). The input, labels and masks for the full minibatch are
+     * restored afterwards, so the updater normalizes by the full minibatch size.
+     * Score is the minibatch-size weighted average of the micro-batch scores.
+     */
+    private void computeGradientAndScoreAccumulated(int accumulationSteps) {
+        INDArray fullInput = input;
+        INDArray fullLabels = labels;
+        INDArray fullFeaturesMask = featuresMaskArray;
+        INDArray fullLabelsMask = labelsMaskArray;
+
+        long minibatch = fullInput.size(0);
+        int numMicroBatches = (int) Math.min(accumulationSteps, minibatch);
+        double scoreSum = 0.0;
+        try {
+            for (int i = 0; i < numMicroBatches; i++) {
+                long start = minibatch * i / numMicroBatches;
+                long end = minibatch * (i + 1) / numMicroBatches;
+
+                clearLayerMaskArrays();
+                setInput(microBatch(fullInput, start, end));
+                setLabels(microBatch(fullLabels, start, end));
+                setLayerMaskArrays(microBatch(fullFeaturesMask, start, end), microBatch(fullLabelsMask, start, end));
+
+                computeGradientAndScoreHelper(false);
+                scoreSum += score * (end - start);
+
+                accumulatedGradients = UpdaterUtils.accumulateMicroBatchGradients(accumulatedGradients,
+                        flattenedGradients, i, numMicroBatches, (BaseMultiLayerUpdater) getUpdater());
+            }
+        } finally {
+            clearLayerMaskArrays();
+            setInput(fullInput);
+            setLabels(fullLabels);
+            setLayerMaskArrays(fullFeaturesMask, fullLabelsMask);
+        }
+
+        score = scoreSum / minibatch;
+
+        if (!trainingListeners.isEmpty()) {
+            try (MemoryWorkspace workspace = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                for (TrainingListener tl : trainingListeners) {
+                    tl.onBackwardPass(this);
+                }
+            }
+        }
+    }
+
+    /**
+     * Activation checkpointing: the network is split into segments, ending at each of the checkpoint layers (and the
+     * output layer for the last segment). First, a forward pass is done one segment at a time, keeping only the (detached)
+     * activations at the checkpoints - the activations workspace is closed (and hence reused) after each segment.
+     * Then, for each segment from last to first: the segment's activations are recomputed from the stored input, and
+     * backprop is done for the segment's layers, starting from the (detached) errors of the next segment.
+     */
+    private void computeGradientAndScoreCheckpointed(int[] checkpoints, LayerWorkspaceMgr mgr, boolean notifyBackwardPass) {
+        int numSegments = checkpoints.length + 1;
+        int[] segmentStart = new int[numSegments];
+        int[] segmentEnd = new int[numSegments];
+        for (int s = 0; s < numSegments; s++) {
+            segmentStart[s] = (s == 0 ? 0 : checkpoints[s - 1] + 1);
+            segmentEnd[s] = (s == numSegments - 1 ? layers.length - 1 : checkpoints[s]);
+        }
+
+        mgr.setHelperWorkspacePointers(helperWorkspaces);
+        if (input.isAttached()) {
+            //Don't leverage out of async DataSetIterator workspaces
+            mgr.setNoLeverageOverride(input.data().getParentWorkspace().getId());
+        }
+
+        //First: forward pass, keeping only the activations at the checkpoints
+        INDArray[] segmentInputs = new INDArray[numSegments];
+        segmentInputs[0] = input;
+        for (int s = 0; s < numSegments - 1; s++) {
+            try (MemoryWorkspace ws = mgr.notifyScopeEntered(ArrayType.ACTIVATIONS)) {
+                segmentInputs[s + 1] = ffSegmentInWs(segmentStart[s], segmentEnd[s], segmentInputs[s], mgr).detach();
+            }
+        }
+
+        //Then: recompute the activations for each segment and backprop through it, last segment first
+        Gradient[] segmentGradients = new Gradient[numSegments];
+        INDArray epsilon = null;
+        for (int s = numSegments - 1; s >= 0; s--) {
+            boolean lastSegment = (s == numSegments - 1);
+            try (MemoryWorkspace ws = mgr.notifyScopeEntered(ArrayType.ACTIVATIONS)) {
+                if (lastSegment) {
+                    INDArray inputToOutputLayer = ffSegmentInWs(segmentStart[s], segmentEnd[s] - 1, segmentInputs[s], mgr);
+                    if (layerWiseConfigurations.getInputPreProcess(layers.length - 1) != null) {
+                        inputToOutputLayer = layerWiseConfigurations.getInputPreProcess(layers.length - 1)
+                                .preProcess(inputToOutputLayer, getInputMiniBatchSize(), mgr);
+                    }
+                    getOutputLayer().setInput(inputToOutputLayer, mgr);
+                } else {
+                    ffSegmentInWs(segmentStart[s], segmentEnd[s], segmentInputs[s], mgr);
+                }
+
+                Pair<Gradient, INDArray> pair = calcBackpropGradients(epsilon, lastSegment, false, s > 0,
+                        segmentStart[s], segmentEnd[s], lossScaling);
+                segmentGradients[s] = pair.getFirst();
+                epsilon = pair.getSecond();
+
+                if (lastSegment) {
+                    try (MemoryWorkspace wsFF = mgr.notifyScopeEntered(ArrayType.FF_WORKING_MEM)) {
+                        double r = calcRegularizationScore(true);
+                        score = ((IOutputLayer) getOutputLayer()).computeScore(r, true, mgr);
+                    }
+                }
+            }
+
+            boolean hitFrozen = false;
+            for (int i = segmentStart[s]; i <= segmentEnd[s]; i++) {
+                hitFrozen |= layers[i] instanceof FrozenLayer;
+            }
+            if (hitFrozen || epsilon == null) {
+                //No backprop required for earlier layers
+                break;
+            }
+        }
+
+        //Combine the gradients for each segment, in the same order as the parameters
+        Gradient gradient = new DefaultGradient(flattenedGradients);
+        for (Gradient g : segmentGradients) {
+            if (g == null)
+                continue;
+            for (Map.Entry<String, INDArray> entry : g.gradientForVariable().entrySet()) {
+                gradient.setGradientFor(entry.getKey(), entry.getValue(), g.flatteningOrderForVariable(entry.getKey()));
+            }
+        }
+        this.gradient = gradient;
+
+        if (notifyBackwardPass && !trainingListeners.isEmpty()) {
+            try (MemoryWorkspace workspace = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                for (TrainingListener tl : trainingListeners) {
+                    tl.onBackwardPass(this);
+                }
+            }
+        }
+
+        //Clear the post noise/dropconnect parameters on the output layer
+        getOutputLayer().clearNoiseWeightParams();
+    }
+
+    /**
+     * Feed-forward (training mode) through layers fromLayer to toLayer inclusive, with activations in the
+     * {@link ArrayType#ACTIVATIONS} workspace
+     *
+     * @return Activations of layer toLayer (or the input, if toLayer < fromLayer)
+     */
+    private INDArray ffSegmentInWs(int fromLayer, int toLayer, INDArray input, LayerWorkspaceMgr workspaceMgr) {
+        for (int i = fromLayer; i <= toLayer; i++) {
+            try (MemoryWorkspace wsFFWorking = workspaceMgr.notifyScopeEntered(ArrayType.FF_WORKING_MEM)) {
+                if (layerWiseConfigurations.getInputPreProcess(i) != null) {
+                    boolean storedInput = (i == fromLayer && !input.isAttached());
+                    input = layerWiseConfigurations.getInputPreProcess(i).preProcess(input, getInputMiniBatchSize(), workspaceMgr);
+                    if (!storedInput) {
+                        //Preprocessors may return a view of a (detached) checkpoint activation array at the segment start
+                        validateArrayWorkspaces(workspaceMgr, input, ArrayType.ACTIVATIONS, i, true, "Feed forward to layer (training)");
+                    }
+                }
+
+                input = activateLayer(i, input, true, workspaceMgr);
+                if (input == null) {
+                    throw new IllegalStateException("Layer " + i + " returned null activations");
+                }
+                validateArrayWorkspaces(workspaceMgr, input, ArrayType.ACTIVATIONS, i, false, "Feed forward to layer (training)");
+            }
+        }
+        return input;
+    }
+
+    private static INDArray microBatch(INDArray array, long start, long end) {
+        if (array == null)
+            return null;
+        INDArrayIndex[] indices = new INDArrayIndex[array.rank()];
+        indices[0] = NDArrayIndex.interval(start, end);
+        for (int i = 1; i < indices.length; i++) {
+            indices[i] = NDArrayIndex.all();
+        }
+        return array.get(indices);
+    }
+
+    private void computeGradientAndScoreHelper(boolean notifyBackwardPass) {
         //Note: Workspace manager is only ose here for score calculation... other workspace managers are used in the
         // various FF/backprop methds
         LayerWorkspaceMgr mgr;
@@ -2661,6 +3027,12 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         FwdPassType fwdType = (tbptt ? FwdPassType.RNN_ACTIVATE_WITH_STORED_STATE : FwdPassType.STANDARD);
         synchronizeIterEpochCounts();
 
+        int[] checkpoints = layerWiseConfigurations.getActivationCheckpoints();
+        if (checkpoints != null && checkpoints.length > 0 && !tbptt) {
+            computeGradientAndScoreCheckpointed(checkpoints, mgr, notifyBackwardPass);
+            return;
+        }
+
         //Calculate activations (which are stored in each layer, and used in backprop)
         try(MemoryWorkspace ws = mgr.notifyScopeEntered(ArrayType.ACTIVATIONS)) {
             //First: do a feed-forward through the network
@@ -2680,8 +3052,8 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                 //Validate activations location
             }
             getOutputLayer().setInput(inputToOutputLayer, mgr);
-            //Then: compute gradients
-            Pair<Gradient, INDArray> pair = calcBackpropGradients(null, true, false, false);
+            //Then: compute gradients. The loss scale (mixed precision) is only applied when called from fit
+            Pair<Gradient, INDArray> pair = calcBackpropGradients(null, true, false, false, 0, layers.length - 1, lossScaling);
             this.gradient = (pair == null ? null : pair.getFirst());
 
             //Calculate score
@@ -2691,7 +3063,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
             }
 
             //Listeners
-            if (!trainingListeners.isEmpty()) {
+            if (notifyBackwardPass && !trainingListeners.isEmpty()) {
                 try (MemoryWorkspace workspace = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
                     for (TrainingListener tl : trainingListeners) {
                         tl.onBackwardPass(this);
@@ -3183,6 +3555,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
      */
     public void setLayerMaskArrays(INDArray featuresMaskArray, INDArray labelsMaskArray) {
         if (featuresMaskArray != null) {
+            this.featuresMaskArray = featuresMaskArray;
 
             // FIXME: int cast
             //New approach: use feedForwardMaskArray method
@@ -3212,6 +3585,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         if (labelsMaskArray != null) {
             if (!(getOutputLayer() instanceof IOutputLayer))
                 return;
+            this.labelsMaskArray = labelsMaskArray;
             layers[layers.length - 1].setMaskArray(labelsMaskArray);
         }
     }
@@ -3223,6 +3597,8 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         for (Layer layer : layers) {
             layer.setMaskArray(null);
         }
+        featuresMaskArray = null;
+        labelsMaskArray = null;
     }
 
     /**
@@ -21,6 +21,7 @@ import org.deeplearning4j.nn.api.Model;
 import org.deeplearning4j.nn.api.Trainable;
 import org.deeplearning4j.nn.api.Updater;
 import org.deeplearning4j.nn.conf.GradientNormalization;
+import org.deeplearning4j.nn.conf.MixedPrecision;
 import org.deeplearning4j.nn.gradient.DefaultGradient;
 import org.deeplearning4j.nn.gradient.Gradient;
 import org.nd4j.base.Preconditions;
@@ -47,6 +48,10 @@ import java.util.*;
  *     however)<br>
  * are combined into a single {@link org.nd4j.linalg.learning.GradientUpdater} operation, instead of having a set of
  * smaller operations. A smaller number of larger operations improves performance, especially for GPUs.
+ * <p>
+ * For mixed precision training (see {@link MixedPrecision}), the updater blocks operate on full precision copies of the
+ * parameters and gradients (the "master" weights and gradients) instead of the network's view arrays, and the updater
+ * state uses the master data type.
  *
  * @author Alex Black
  */
@@ -59,6 +64,11 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
     protected INDArray updaterStateViewArray;
     protected boolean initializedMinibatchDivision;
     protected List<INDArray> gradientsForMinibatchDivision;
+    //Mixed precision training only: full precision parameters and gradients, and per-layer views of the gradients
+    protected INDArray masterParams;
+    protected INDArray masterGradients;
+    protected Map<Trainable, Gradient> masterLayerGradients;
+    protected Map<Trainable, INDArray> masterLayerGradientViews;
 
     public BaseMultiLayerUpdater(T network) {
         this(network, null);
@@ -85,10 +95,22 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
 
         INDArray paramsView = network.params();
         INDArray gradientView = getFlattenedGradientsView();
+        MixedPrecision mixedPrecision = getMixedPrecision();
+        if (mixedPrecision != null && paramsView != null) {
+            try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                masterParams = paramsView.castTo(mixedPrecision.getMasterDataType());
+                masterGradients = Nd4j.create(mixedPrecision.getMasterDataType(), paramsView.shape(), paramsView.ordering());
+            }
+            paramsView = masterParams;
+            gradientView = masterGradients;
+            masterLayerGradients = new IdentityHashMap<>();
+            masterLayerGradientViews = new IdentityHashMap<>();
+        }
         int paramsViewSoFar = 0;
         int currentUpdaterOffset = 0;
         for (int i = 0; i < layers.length; i++) {
             Map<String, INDArray> layerParamTable = layers[i].paramTable(false);
+            int layerParamsStart = paramsViewSoFar;
             if (layerParamTable != null) {
                 List<String> variables = new ArrayList<>(layerParamTable.keySet()); //Is from a set, but iteration order should be fixed per layer as it's a from a LinkedHashSet
                 for (int j = 0; j < variables.size(); j++) {
@@ -133,6 +155,15 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
                                                         gradientViewSubset));
                     }
 
+                    if (masterLayerGradients != null && gradientViewSubset != null) {
+                        Gradient g = masterLayerGradients.get(layers[i]);
+                        if (g == null) {
+                            g = new DefaultGradient();
+                            masterLayerGradients.put(layers[i], g);
+                        }
+                        g.setGradientFor(var, gradientViewSubset);
+                    }
+
                     lastLayer = layers[i];
                     lastVariable = variables.get(j);
                     updaterStateSize += updaterStateSizeThisVariable;
@@ -140,6 +171,11 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
                     currentUpdaterOffset += updaterStateSizeThisVariable;
                 }
             }
+
+            if (masterLayerGradientViews != null && paramsViewSoFar > layerParamsStart) {
+                masterLayerGradientViews.put(layers[i], masterGradients.get(NDArrayIndex.interval(0, 0, true),
+                        NDArrayIndex.interval(layerParamsStart, paramsViewSoFar)));
+            }
         }
 
         //Initialize the updater state, if required
@@ -149,7 +185,7 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
             updaterRequiresInit = false;
         } else if (updaterStateSize > 0) {
             //May be 0 if all SGD or NONE updaters, for example
-            updaterStateViewArray = Nd4j.createUninitialized(network.params().dataType(), new long[] {1, updaterStateSize}, Nd4j.order());
+            updaterStateViewArray = Nd4j.createUninitialized(paramsView.dataType(), new long[] {1, updaterStateSize}, Nd4j.order());
             updaterRequiresInit = true;
         }
 
@@ -204,6 +240,24 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
      */
     protected abstract boolean isMiniBatch();
 
+    /**
+     * @return The mixed precision configuration for the model, or null if mixed precision training is not used
+     */
+    protected MixedPrecision getMixedPrecision() {
+        return null;
+    }
+
+    /**
+     * Mixed precision training only: set the full precision master weights to the current network parameters. This
+     * is done automatically when the parameters are set via the network's setParams method; it should be called if
+     * the network parameters are otherwise modified directly. No-op if mixed precision training is not used.
+     */
+    public void synchronizeMasterParams() {
+        if (masterParams != null) {
+            masterParams.assign(getParams());
+        }
+    }
+
     /**
      * Set the view array. Note that this does an assign operation - the provided array is not stored internally.
      *
@@ -267,6 +321,14 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
         // hence should be the same object under normal circumstances
         boolean isExternal = gradient.gradient() != getFlattenedGradientsView();
 
+        if (masterParams != null) {
+            if (isExternal) {
+                throw new IllegalStateException("Cannot apply updater to external gradients with mixed precision training");
+            }
+            updateMixedPrecision(iteration, epoch, batchSize, workspaceMgr);
+            return;
+        }
+
         //Split up the gradients on a per-layer basis, for pre-apply
         Map<String, Gradient> layerGradients = new HashMap<>();
 
@@ -305,7 +367,59 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
             preApply(layer, layerGradients.get(layerName), iteration);
         }
 
-        //Apply the updaters in blocks. This also applies LR and momentum schedules, L1 and L2
+        applyUpdaterBlocks(isExternal, gradient, iteration, epoch, workspaceMgr);
+    }
+
+    /**
+     * Mixed precision version of {@link #update(Gradient, int, int, int, LayerWorkspaceMgr)}. This operates in the
+     * following steps:
+     * 1. Convert the gradients to full precision. If they overflowed, skip the update (i.e., set the network gradient
+     *    to zero) and reduce the loss scale
+     * 2. Undo the loss scaling, and divide by minibatch size
+     * 3. Pre-apply and execute the updater on the full precision gradients and master weights
+     * 4. Apply the update to the master weights, and set the network gradient to the difference between the current
+     *    network parameters and the updated master weights (converted to the network data type). Applying this
+     *    gradient (params -= gradient) hence results in the network parameters matching the master weights
+     */
+    protected void updateMixedPrecision(int iteration, int epoch, int batchSize, LayerWorkspaceMgr workspaceMgr) {
+        MixedPrecision mixedPrecision = getMixedPrecision();
+        INDArray gradientView = getFlattenedGradientsView();
+        masterGradients.assign(gradientView);
+
+        double lossScale = mixedPrecision.getLossScale();
+        double sum = masterGradients.sumNumber().doubleValue();
+        boolean overflow = Double.isNaN(sum) || Double.isInfinite(sum);
+        mixedPrecision.lossScaleIterationDone(overflow);
+        if (overflow) {
+            gradientView.assign(0);
+            return;
+        }
+
+        double divisor = lossScale * (isMiniBatch() ? batchSize : 1);
+        if (divisor != 1.0) {
+            for (INDArray arr : getGradientsForMinibatchDivision()) {
+                arr.divi(divisor);
+            }
+        }
+
+        for (Map.Entry<Trainable, Gradient> entry : masterLayerGradients.entrySet()) {
+            preApply(entry.getKey(), entry.getValue(), masterLayerGradientViews.get(entry.getKey()), iteration);
+        }
+
+        applyUpdaterBlocks(false, null, iteration, epoch, workspaceMgr);
+
+        masterParams.subi(masterGradients);
+        INDArray params = getParams();
+        try (MemoryWorkspace ws = workspaceMgr.notifyScopeEntered(ArrayType.UPDATER_WORKING_MEM)) {
+            gradientView.assign(params).subi(masterParams.castTo(params.dataType()));
+        }
+    }
+
+    /**
+     * Apply the updaters in blocks. This also applies LR and momentum schedules, L1 and L2
+     */
+    protected void applyUpdaterBlocks(boolean isExternal, Gradient gradient, int iteration, int epoch,
+                                      LayerWorkspaceMgr workspaceMgr) {
         if(getClass() != LayerUpdater.class){
             //OK for LayerUpdater as this is part of layerwise pretraining
             workspaceMgr.assertNotOpen(ArrayType.UPDATER_WORKING_MEM, "Updater working memory");
@@ -333,23 +447,43 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
         //However, some 'gradients' are actually updates - an example being BatchNorm mean/variance estimates... these
         // shouldn't be modified
 
-        if(!initializedMinibatchDivision){
-            gradientsForMinibatchDivision = getMinibatchDivisionSubsets(getFlattenedGradientsView());
-            initializedMinibatchDivision = true;
-        }
-
         List<INDArray> toDivide;
         if(isExternal){
             toDivide = getMinibatchDivisionSubsets(gradient.gradient());
         } else {
-            toDivide = gradientsForMinibatchDivision;
+            toDivide = getGradientsForMinibatchDivision();
         }
         for(INDArray arr : toDivide){
             arr.divi(batchSize);
         }
     }
 
+    protected List<INDArray> getGradientsForMinibatchDivision(){
+        if(!initializedMinibatchDivision){
+            gradientsForMinibatchDivision = getMinibatchDivisionSubsets(masterGradients != null ? masterGradients :
+                    getFlattenedGradientsView());
+            initializedMinibatchDivision = true;
+        }
+        return gradientsForMinibatchDivision;
+    }
+
     protected List<INDArray> getMinibatchDivisionSubsets(INDArray from){
+        return getSubsets(from, true);
+    }
+
+    /**
+     * Get the subsets of the given gradient view array that are <i>not</i> divided by the minibatch size - i.e., those
+     * for which {@link Trainable#updaterDivideByMinibatch(String)} returns false, such as the global mean/variance
+     * updates of BatchNormalization layers
+     *
+     * @param from Gradient view array, with the same layout as the flattened gradients of the network
+     * @return Views of the gradient subsets not divided by the minibatch size
+     */
+    public List<INDArray> getNonMinibatchDivisionSubsets(INDArray from){
+        return getSubsets(from, false);
+    }
+
+    private List<INDArray> getSubsets(INDArray from, boolean divideByMinibatch){
         List<INDArray> out = new ArrayList<>();
         long paramsSoFar = 0;
         long currentStart = 0;
@@ -358,7 +492,7 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
             Set<String> layerParams = t.paramTable(false).keySet();
             Map<String,INDArray> paramTable = t.paramTable(false);
             for(String s : layerParams) {
-                if(t.updaterDivideByMinibatch(s)){
+                if(t.updaterDivideByMinibatch(s) == divideByMinibatch){
                     long l = paramTable.get(s).length();
                     currentEnd += l;
                 } else {
@@ -394,6 +528,18 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
      * @param iteration The current iteration (i.e., number of parameter updates so far)
      */
     public void preApply(Trainable layer, Gradient gradient, int iteration) {
+        preApply(layer, gradient, layer.getGradientsViewArray(), iteration);
+    }
+
+    /**
+     * Pre-apply: Apply gradient normalization/clipping
+     *
+     * @param layer              Layer to apply gradient normalization/clipping for
+     * @param gradient           Gradient to update
+     * @param layerGradientView  Gradient view array for the whole layer
+     * @param iteration          The current iteration (i.e., number of parameter updates so far)
+     */
+    protected void preApply(Trainable layer, Gradient gradient, INDArray layerGradientView, int iteration) {
 
         if (layer.getConfig() == null || layer.numParams() == 0) {
             //Layer does not have parameters -> no gradient
@@ -405,7 +551,6 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
             return; //no op
 
         final double threshold = layer.getConfig().getGradientNormalizationThreshold();
-        INDArray layerGradientView = layer.getGradientsViewArray();
 
         switch (normalization) {
             case RenormalizeL2PerLayer:
@@ -18,8 +18,13 @@ package org.deeplearning4j.nn.updater;
 
 import org.deeplearning4j.nn.api.Trainable;
 import org.deeplearning4j.nn.api.TrainingConfig;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.learning.config.IUpdater;
 
+import java.util.Arrays;
+
 /**
  * Created by Alex on 14/04/2017.
  */
@@ -53,4 +58,44 @@ public class UpdaterUtils {
 
         return true;
     }
+
+    /**
+     * Gradient accumulation: add the gradients of one micro-batch (in the network's flattened gradients view) to the
+     * accumulated gradients of the previous micro-batches. After the last micro-batch, the total is stored in the
+     * flattened gradients view, for the updater.<br>
+     * Gradients are summed, as the updater divides them by the full minibatch size. The exception is gradients that
+     * are not divided by the minibatch size - i.e., updates such as the BatchNormalization global mean/variance
+     * updates: these are averaged over the micro-batches instead, so they are applied once per iteration.
+     *
+     * @param accumulated        Accumulated gradients of the previous micro-batches. May be null or unused for the
+     *                           first micro-batch
+     * @param flattenedGradients Flattened gradients view of the network, containing the current micro-batch gradients
+     * @param microBatch         Index of the current micro-batch
+     * @param numMicroBatches    Total number of micro-batches
+     * @param updater            Updater of the network, used to determine which gradients are divided by the minibatch size
+     * @return Accumulated gradients array (detached), to pass for the next micro-batch
+     */
+    public static INDArray accumulateMicroBatchGradients(INDArray accumulated, INDArray flattenedGradients,
+                                                         int microBatch, int numMicroBatches,
+                                                         BaseMultiLayerUpdater updater) {
+        if (microBatch == 0) {
+            if (accumulated == null || !Arrays.equals(accumulated.shape(), flattenedGradients.shape())
+                    || accumulated.dataType() != flattenedGradients.dataType()) {
+                try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                    accumulated = flattenedGradients.dup(flattenedGradients.ordering());
+                }
+            } else {
+                accumulated.assign(flattenedGradients);
+            }
+        } else if (microBatch < numMicroBatches - 1) {
+            accumulated.addi(flattenedGradients);
+        } else {
+            //Last micro-batch: sum directly into the gradient view used by the updater
+            flattenedGradients.addi(accumulated);
+            for (INDArray subset : updater.getNonMinibatchDivisionSubsets(flattenedGradients)) {
+                subset.divi(numMicroBatches);
+            }
+        }
+        return accumulated;
+    }
 }
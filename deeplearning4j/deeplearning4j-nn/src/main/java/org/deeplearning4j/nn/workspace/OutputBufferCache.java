@@ -0,0 +1,218 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.workspace;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * OutputBufferCache: used for inference, to keep workspaces and output buffers alive between calls for inputs with the
+ * same shape. Entries are kept per thread (as workspaces are thread-local), and keyed on the data type and shape of the
+ * input and mask arrays.<br>
+ * For each entry, the network uses a dedicated set of workspaces - hence once the workspaces for a given input shape
+ * have been sized (after the first few calls), steady-state inference with that shape does not allocate any off-heap
+ * memory.<br>
+ * <br>
+ * NOTE: when a cache is used, the array returned by the network's output method is owned by the cache, and will be
+ * overwritten by the next call (on the same thread) with the same input shape. Callers that need to keep the output
+ * beyond that should {@link INDArray#dup()} it.<br>
+ * Each thread keeps at most {@link #getMaxShapesPerThread()} entries; when that is exceeded, the least recently used
+ * entry is removed and its workspaces are destroyed.<br>
+ * The cache is used for inference (train=false) via the MultiLayerNetwork output methods when no output workspace is
+ * provided - see {@link org.deeplearning4j.nn.multilayer.MultiLayerNetwork#setOutputBufferCache(OutputBufferCache)}
+ * for the full list of methods. It is not currently supported for ComputationGraph.
+ */
+public class OutputBufferCache {
+    public static final int DEFAULT_MAX_SHAPES_PER_THREAD = 8;
+    private static final AtomicInteger INSTANCE_COUNTER = new AtomicInteger();
+
+    @Getter
+    private final int maxShapesPerThread;
+    private final String prefix;
+    private final AtomicInteger entryCounter = new AtomicInteger();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicInteger generation = new AtomicInteger();
+    private final ThreadLocal<ThreadEntries> threadEntries = new ThreadLocal<>();
+
+    public OutputBufferCache() {
+        this(DEFAULT_MAX_SHAPES_PER_THREAD);
+    }
+
+    /**
+     * @param maxShapesPerThread Maximum number of different input shapes to keep workspaces and buffers for, per thread
+     */
+    public OutputBufferCache(int maxShapesPerThread) {
+        Preconditions.checkArgument(maxShapesPerThread > 0, "Maximum number of shapes per thread must be > 0, got %s", maxShapesPerThread);
+        this.maxShapesPerThread = maxShapesPerThread;
+        this.prefix = "_OBC" + INSTANCE_COUNTER.getAndIncrement() + "_";
+    }
+
+    /**
+     * Cache entry for a single input shape, on a single thread
+     */
+    public static class Entry {
+        @Getter
+        private final String workspaceSuffix;
+        @Getter
+        private INDArray output;
+
+        private Entry(String workspaceSuffix) {
+            this.workspaceSuffix = workspaceSuffix;
+        }
+
+        /**
+         * Copy the specified output into the buffer for this entry, allocating the buffer (detached) only if required
+         *
+         * @param out Output of the network for this entry's input shape. Usually in a workspace
+         * @return The output buffer
+         */
+        public INDArray store(@NonNull INDArray out) {
+            if (output == null || output.dataType() != out.dataType() || !Arrays.equals(output.shape(), out.shape())) {
+                output = out.isAttached() ? out.detach() : out.dup();
+            } else {
+                output.assign(out);
+            }
+            return output;
+        }
+    }
+
+    private class ThreadEntries extends LinkedHashMap<String, Entry> {
+        private int generation;
+
+        private ThreadEntries(int generation) {
+            super(16, 0.75f, true);
+            this.generation = generation;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            if (size() > maxShapesPerThread) {
+                destroyWorkspaces(eldest.getValue());
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Get the cache entry for the specified input and masks for the current thread, creating it if necessary.
+     * Hit/miss statistics are updated.
+     *
+     * @param input       Network input
+     * @param featureMask Feature mask array. May be null
+     * @param labelMask   Label mask array. May be null
+     * @return The cache entry
+     */
+    public Entry getEntry(@NonNull INDArray input, INDArray featureMask, INDArray labelMask) {
+        ThreadEntries entries = threadEntries.get();
+        if (entries == null || entries.generation != generation.get()) {
+            if (entries != null) {
+                //Cache was cleared from another thread: workspaces can only be destroyed by the thread that owns them
+                for (Entry e : entries.values()) {
+                    destroyWorkspaces(e);
+                }
+            }
+            entries = new ThreadEntries(generation.get());
+            threadEntries.set(entries);
+        }
+
+        String key = key(input, featureMask, labelMask);
+        Entry e = entries.get(key);
+        if (e != null) {
+            hits.incrementAndGet();
+            return e;
+        }
+        misses.incrementAndGet();
+        e = new Entry(prefix + entryCounter.getAndIncrement());
+        entries.put(key, e);
+        return e;
+    }
+
+    /**
+     * @return Number of calls for which an entry (workspaces and output buffer) already existed
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return Number of calls for which a new entry had to be created
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return Number of entries removed because the maximum number of shapes per thread was exceeded
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Reset the hit, miss and eviction counters to 0
+     */
+    public void resetCounters() {
+        hits.set(0);
+        misses.set(0);
+        evictions.set(0);
+    }
+
+    /**
+     * Remove all entries. The workspaces of the current thread are destroyed immediately; the workspaces of other
+     * threads are destroyed the next time those threads use the cache
+     */
+    public void clear() {
+        generation.incrementAndGet();
+        ThreadEntries entries = threadEntries.get();
+        if (entries != null) {
+            for (Entry e : entries.values()) {
+                destroyWorkspaces(e);
+            }
+            threadEntries.remove();
+        }
+    }
+
+    protected static String key(INDArray input, INDArray featureMask, INDArray labelMask) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(input.dataType()).append(Arrays.toString(input.shape()));
+        if (featureMask != null)
+            sb.append(";fm").append(featureMask.dataType()).append(Arrays.toString(featureMask.shape()));
+        if (labelMask != null)
+            sb.append(";lm").append(labelMask.dataType()).append(Arrays.toString(labelMask.shape()));
+        return sb.toString();
+    }
+
+    protected static void destroyWorkspaces(Entry e) {
+        for (MemoryWorkspace ws : Nd4j.getWorkspaceManager().getAllWorkspacesForCurrentThread()) {
+            if (ws.getId() != null && ws.getId().endsWith(e.getWorkspaceSuffix()) && !ws.isScopeActive()) {
+                Nd4j.getWorkspaceManager().destroyWorkspace(ws);
+            }
+        }
+    }
+}
@@ -0,0 +1,449 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.util;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.javacpp.*;
+import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.buffer.util.MappedBufferUtil;
+import org.nd4j.linalg.api.concurrency.AffinityManager;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.executioner.OpExecutioner;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * An uncompressed, page-aligned container for model files, designed to be opened with {@link FileChannel#map}.<br>
+ * Unlike the zip format used by {@link ModelSerializer#writeModel(org.deeplearning4j.nn.api.Model, File, boolean)},
+ * arrays stored in this container are written as raw (native byte order) buffers, each starting on a page boundary.
+ * When read back with {@link #getArray(String)} the returned array's {@link DataBuffer} points directly at the mapped
+ * region of the file: nothing is copied up front, and pages are only read from disk when they are first touched.<br>
+ * Each array is mapped separately, with {@link FileChannel#map}: by default as a read-only mapping, which works for
+ * files that are only readable by the current user. Such arrays must not be modified - use {@link INDArray#dup()} to
+ * get a modifiable copy. Alternatively, arrays can be mapped as private (copy on write) mappings via
+ * {@link #getArray(String, boolean)}: these can be modified, but changes are never written back to the file.<br>
+ * <br>
+ * File layout:
+ * <pre>
+ * [header][padding to alignment][entry 0][padding to alignment][entry 1]...
+ * </pre>
+ * The header is written with {@link DataOutputStream} (big endian) and contains: magic bytes ({@link #MAGIC}), format
+ * version, alignment, array byte order, number of entries, and then for each entry: name, type (raw bytes or array),
+ * offset and length in bytes, and for arrays the data type, order and shape.<br>
+ * <br>
+ * Note 1: Zero-copy loading applies to the CPU backend only: with other backends, arrays are always read into a regular
+ * buffer. Arrays of data types that can't be mapped (see {@link MappedBufferUtil#isSupported(DataType)}) and arrays
+ * larger than 2GB (the limit for a single {@link MappedByteBuffer}) are also read into a regular buffer, as are arrays
+ * requested as copy on write from a file that is not writable by the current user (the JVM only allows private
+ * mappings via a channel open for writing). {@link #isMapped(String, boolean)} can be used to check whether an array
+ * will be mapped.<br>
+ * Note 2: On some platforms (notably Windows) a file cannot be deleted or overwritten while it is mapped, i.e., while
+ * arrays restored from it are still reachable.
+ */
+@Slf4j
+public class MappedModelFile {
+
+    public static final byte[] MAGIC = "DL4JMMAP".getBytes(StandardCharsets.US_ASCII);
+    public static final int FORMAT_VERSION = 1;
+    public static final int DEFAULT_ALIGNMENT = 4096;
+
+    private static final byte TYPE_BYTES = 0;
+    private static final byte TYPE_ARRAY = 1;
+    private static final int IO_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    @Data
+    @AllArgsConstructor
+    private static class Entry {
+        private String name;
+        private byte type;
+        private long offset;
+        private long lengthBytes;
+        private DataType dataType;
+        private char order;
+        private long[] shape;
+        private long lengthElements;
+    }
+
+    private final File file;
+    private final int alignment;
+    private final Map<String, Entry> entries;
+
+    private MappedModelFile(File file, int alignment, Map<String, Entry> entries) {
+        this.file = file;
+        this.alignment = alignment;
+        this.entries = entries;
+    }
+
+    /**
+     * Write a new container to the specified file, using the default (4096 byte) alignment.
+     *
+     * @param file   File to write to. Will be overwritten if it exists.
+     * @param bytes  Raw (byte[]) entries to write. May be empty.
+     * @param arrays Array entries to write. May be empty.
+     */
+    public static void write(@NonNull File file, @NonNull Map<String, byte[]> bytes,
+                             @NonNull Map<String, INDArray> arrays) throws IOException {
+        write(file, bytes, arrays, DEFAULT_ALIGNMENT);
+    }
+
+    /**
+     * Write a new container to the specified file.
+     *
+     * @param file      File to write to. Will be overwritten if it exists.
+     * @param bytes     Raw (byte[]) entries to write. May be empty.
+     * @param arrays    Array entries to write. May be empty.
+     * @param alignment Alignment (in bytes) of the start of each entry. Should be a multiple of the OS page size
+     */
+    public static void write(@NonNull File file, @NonNull Map<String, byte[]> bytes,
+                             @NonNull Map<String, INDArray> arrays, int alignment) throws IOException {
+        Preconditions.checkArgument(alignment > 0 && (alignment & (alignment - 1)) == 0,
+                "Alignment must be a positive power of 2, got %s", alignment);
+
+        List<Entry> list = new ArrayList<>();
+        List<byte[]> byteContent = new ArrayList<>();
+        List<INDArray> arrayContent = new ArrayList<>();
+        for (Map.Entry<String, byte[]> e : bytes.entrySet()) {
+            list.add(new Entry(e.getKey(), TYPE_BYTES, 0, e.getValue().length, null, 'c', null, 0));
+            byteContent.add(e.getValue());
+        }
+        for (Map.Entry<String, INDArray> e : arrays.entrySet()) {
+            INDArray arr = e.getValue();
+            Preconditions.checkState(!bytes.containsKey(e.getKey()), "Duplicate entry name: \"%s\"", e.getKey());
+            Preconditions.checkState(!arr.isEmpty() && arr.dataType() != DataType.UTF8 && arr.dataType() != DataType.COMPRESSED,
+                    "Cannot write array \"%s\": only non-empty numerical arrays are supported, got array with data type %s",
+                    e.getKey(), arr.dataType());
+            if (arr.isView() || arr.data().length() != arr.length()) {
+                //Need a contiguous buffer, starting at offset 0, to write directly
+                arr = arr.dup(arr.ordering());
+            }
+            long lengthBytes = arr.length() * arr.data().getElementSize();
+            list.add(new Entry(e.getKey(), TYPE_ARRAY, 0, lengthBytes, arr.dataType(), arr.ordering(), arr.shape(), arr.length()));
+            arrayContent.add(arr);
+        }
+
+        //Header size doesn't depend on the offset values, hence we can work out the offsets from a first pass
+        long pos = align(headerBytes(list, alignment).length, alignment);
+        for (Entry e : list) {
+            e.setOffset(pos);
+            pos = align(pos + e.getLengthBytes(), alignment);
+        }
+        byte[] header = headerBytes(list, alignment);
+
+        Nd4j.getExecutioner().commit();
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(ch, ByteBuffer.wrap(header), 0);
+            int i = 0;
+            for (byte[] b : byteContent) {
+                writeFully(ch, ByteBuffer.wrap(b), list.get(i++).getOffset());
+            }
+            for (INDArray arr : arrayContent) {
+                Entry e = list.get(i++);
+                writeArray(ch, arr, e.getOffset(), e.getLengthBytes());
+            }
+        }
+    }
+
+    /**
+     * Open a container previously written with {@link #write(File, Map, Map)}. Only the header is read by this method.
+     *
+     * @param file File to open
+     * @return The opened container
+     * @throws IOException If the file is not a valid container, or an error occurs while reading the header
+     */
+    public static MappedModelFile open(@NonNull File file) throws IOException {
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            byte[] magic = new byte[MAGIC.length];
+            dis.readFully(magic);
+            if (!Arrays.equals(MAGIC, magic)) {
+                throw new IOException("Not a valid memory mappable model file (invalid header): " + file);
+            }
+            int version = dis.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported memory mappable model file version: got " + version
+                        + ", this version of DL4J supports version " + FORMAT_VERSION);
+            }
+            int alignment = dis.readInt();
+            boolean littleEndian = dis.readBoolean();
+            if (littleEndian != (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN)) {
+                throw new IOException("Cannot open memory mappable model file " + file + ": file was written on a "
+                        + (littleEndian ? "little" : "big") + " endian platform, this platform is " + ByteOrder.nativeOrder());
+            }
+            int numEntries = dis.readInt();
+            Map<String, Entry> entries = new LinkedHashMap<>();
+            for (int i = 0; i < numEntries; i++) {
+                String name = dis.readUTF();
+                byte type = dis.readByte();
+                long offset = dis.readLong();
+                long lengthBytes = dis.readLong();
+                if (type == TYPE_ARRAY) {
+                    DataType dataType = DataType.valueOf(dis.readUTF());
+                    char order = dis.readChar();
+                    long[] shape = new long[dis.readInt()];
+                    for (int j = 0; j < shape.length; j++) {
+                        shape[j] = dis.readLong();
+                    }
+                    long lengthElements = dis.readLong();
+                    entries.put(name, new Entry(name, type, offset, lengthBytes, dataType, order, shape, lengthElements));
+                } else {
+                    entries.put(name, new Entry(name, type, offset, lengthBytes, null, 'c', null, 0));
+                }
+            }
+            return new MappedModelFile(file, alignment, entries);
+        }
+    }
+
+    /**
+     * @param file File to check
+     * @return True if the file exists and starts with the header for this container format
+     */
+    public static boolean isMappedModelFile(@NonNull File file) {
+        if (!file.isFile() || file.length() < MAGIC.length)
+            return false;
+        try (DataInputStream dis = new DataInputStream(new FileInputStream(file))) {
+            byte[] magic = new byte[MAGIC.length];
+            dis.readFully(magic);
+            return Arrays.equals(MAGIC, magic);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return The file this container was opened from
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return The names of all entries in this container, in the order they were written
+     */
+    public Set<String> getEntryNames() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    /**
+     * @param name Name of the entry
+     * @return True if an entry (array or raw bytes) with the specified name exists
+     */
+    public boolean hasEntry(String name) {
+        return entries.containsKey(name);
+    }
+
+    /**
+     * Read the content of a raw (byte[]) entry
+     *
+     * @param name Name of the entry
+     * @return The content, or null if no entry with that name exists
+     */
+    public byte[] getBytes(@NonNull String name) throws IOException {
+        Entry e = entries.get(name);
+        if (e == null)
+            return null;
+        Preconditions.checkState(e.getType() == TYPE_BYTES, "Entry \"%s\" is an array entry, not a byte[] entry", name);
+        byte[] out = new byte[(int) e.getLengthBytes()];
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            readFully(ch, ByteBuffer.wrap(out), e.getOffset());
+        }
+        return out;
+    }
+
+    /**
+     * Get an array entry. On the CPU backend, the returned array is backed by a read-only memory mapping of the file
+     * region for that array, if possible - see {@link #isMapped(String, boolean)}.<br>
+     * <b>Note</b>: mapped arrays returned by this method must not be modified, as their memory is read-only. Use
+     * {@link #getArray(String, boolean)} with copyOnWrite = true for arrays that may be modified.
+     *
+     * @param name Name of the entry
+     * @return The array, or null if no entry with that name exists
+     */
+    public INDArray getArray(@NonNull String name) throws IOException {
+        return getArray(name, false);
+    }
+
+    /**
+     * Get an array entry. On the CPU backend, the returned array is backed by a memory mapping of the file region for
+     * that array, if possible - see {@link #isMapped(String, boolean)}.
+     *
+     * @param name        Name of the entry
+     * @param copyOnWrite If true: map the array as a private (copy on write) mapping, so the returned array can be
+     *                    modified (changes are not written back to the file). If false: map the array as read-only,
+     *                    in which case the returned array must not be modified
+     * @return The array, or null if no entry with that name exists
+     */
+    public INDArray getArray(@NonNull String name, boolean copyOnWrite) throws IOException {
+        Entry e = entries.get(name);
+        if (e == null)
+            return null;
+        Preconditions.checkState(e.getType() == TYPE_ARRAY, "Entry \"%s\" is a byte[] entry, not an array entry", name);
+
+        String reason = notMappedReason(e, copyOnWrite);
+        if (reason != null && Nd4j.getExecutioner().type() == OpExecutioner.ExecutionerType.NATIVE_CPU) {
+            log.warn("Cannot memory map array \"{}\" in file {} ({}) - reading into memory instead", name, file, reason);
+        }
+
+        DataBuffer buffer;
+        if (reason == null) {
+            //Private (copy on write) mappings require a channel opened for both reading and writing, even though
+            // nothing is ever written back to the file
+            FileChannel.MapMode mode = copyOnWrite ? FileChannel.MapMode.PRIVATE : FileChannel.MapMode.READ_ONLY;
+            try (FileChannel ch = copyOnWrite
+                    ? FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)
+                    : FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                //The mapping remains valid after the channel is closed
+                MappedByteBuffer mapped = ch.map(mode, e.getOffset(), e.getLengthBytes());
+                mapped.order(ByteOrder.nativeOrder());
+                Pointer p = MappedBufferUtil.pointerFor(mapped, e.getDataType(), e.getLengthElements());
+                buffer = Nd4j.getDataBufferFactory().create(p, e.getDataType(), e.getLengthElements(),
+                        MappedBufferUtil.indexerFor(p, e.getDataType()));
+            }
+        } else {
+            try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                buffer = Nd4j.createBuffer(e.getDataType(), e.getLengthElements(), false);
+                readArray(ch, buffer, e.getOffset(), e.getLengthBytes());
+            }
+        }
+
+        long[] shape = e.getShape();
+        return Nd4j.create(buffer, shape, Nd4j.getStrides(shape, e.getOrder()), 0, e.getOrder());
+    }
+
+    /**
+     * @param name Name of the array entry
+     * @return True if {@link #getArray(String)} returns an array backed by a (read-only) memory mapping of the file for
+     * this entry, false if the array is read into a regular buffer instead
+     */
+    public boolean isMapped(@NonNull String name) {
+        return isMapped(name, false);
+    }
+
+    /**
+     * @param name        Name of the array entry
+     * @param copyOnWrite Whether the array would be requested as a private (copy on write) mapping, see
+     *                    {@link #getArray(String, boolean)}
+     * @return True if {@link #getArray(String, boolean)} returns an array backed by a memory mapping of the file for
+     * this entry, false if the array is read into a regular buffer instead
+     */
+    public boolean isMapped(@NonNull String name, boolean copyOnWrite) {
+        Entry e = entries.get(name);
+        Preconditions.checkState(e != null, "No entry with name \"%s\" exists", name);
+        Preconditions.checkState(e.getType() == TYPE_ARRAY, "Entry \"%s\" is a byte[] entry, not an array entry", name);
+        return notMappedReason(e, copyOnWrite) == null;
+    }
+
+    /**
+     * @return Null if the array entry can be memory mapped, otherwise the reason why it can't be
+     */
+    private String notMappedReason(Entry e, boolean copyOnWrite) {
+        //DataBufferFactory.create(Pointer, ...) for other backends doesn't support host memory of all data types, and
+        // the data has to be copied to the device anyway: always read into a regular buffer
+        if (Nd4j.getExecutioner().type() != OpExecutioner.ExecutionerType.NATIVE_CPU)
+            return "memory mapping is only supported on the CPU backend";
+        if (!MappedBufferUtil.isSupported(e.getDataType()))
+            return "data type " + e.getDataType() + " is not supported for memory mapping";
+        if (e.getLengthBytes() > Integer.MAX_VALUE)
+            return "array is too large to map: " + e.getLengthBytes() + " bytes";
+        if (copyOnWrite && !file.canWrite())
+            return "file is not writable, as required for copy on write mapping";
+        return null;
+    }
+
+    private static byte[] headerBytes(List<Entry> list, int alignment) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DataOutputStream dos = new DataOutputStream(baos)) {
+            dos.write(MAGIC);
+            dos.writeInt(FORMAT_VERSION);
+            dos.writeInt(alignment);
+            dos.writeBoolean(ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN);
+            dos.writeInt(list.size());
+            for (Entry e : list) {
+                dos.writeUTF(e.getName());
+                dos.writeByte(e.getType());
+                dos.writeLong(e.getOffset());
+                dos.writeLong(e.getLengthBytes());
+                if (e.getType() == TYPE_ARRAY) {
+                    dos.writeUTF(e.getDataType().name());
+                    dos.writeChar(e.getOrder());
+                    dos.writeInt(e.getShape().length);
+                    for (long l : e.getShape()) {
+                        dos.writeLong(l);
+                    }
+                    dos.writeLong(e.getLengthElements());
+                }
+            }
+        }
+        return baos.toByteArray();
+    }
+
+    private static long align(long position, int alignment) {
+        long rem = position % alignment;
+        return rem == 0 ? position : position + (alignment - rem);
+    }
+
+    private static void writeArray(FileChannel ch, INDArray arr, long offset, long lengthBytes) throws IOException {
+        Nd4j.getAffinityManager().ensureLocation(arr, AffinityManager.Location.HOST);
+        BytePointer bp = new BytePointer(arr.data().addressPointer());
+        long done = 0;
+        while (done < lengthBytes) {
+            long chunk = Math.min(lengthBytes - done, IO_CHUNK_SIZE);
+            bp.position(done).limit(done + chunk);
+            writeFully(ch, bp.asByteBuffer(), offset + done);
+            done += chunk;
+        }
+    }
+
+    private static void readArray(FileChannel ch, DataBuffer buffer, long offset, long lengthBytes) throws IOException {
+        BytePointer bp = new BytePointer(buffer.addressPointer());
+        long done = 0;
+        while (done < lengthBytes) {
+            long chunk = Math.min(lengthBytes - done, IO_CHUNK_SIZE);
+            bp.position(done).limit(done + chunk);
+            readFully(ch, bp.asByteBuffer(), offset + done);
+            done += chunk;
+        }
+        Nd4j.getAffinityManager().tagLocation(buffer, AffinityManager.Location.HOST);
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer bb, long position) throws IOException {
+        while (bb.hasRemaining()) {
+            position += ch.write(bb, position);
+        }
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer bb, long position) throws IOException {
+        while (bb.hasRemaining()) {
+            int read = ch.read(bb, position);
+            if (read < 0)
+                throw new EOFException("Unexpected end of file: model file may be truncated or corrupt");
+            position += read;
+        }
+    }
+}
@@ -41,9 +41,12 @@ import org.nd4j.linalg.heartbeat.reports.Task;
 import org.nd4j.linalg.primitives.Pair;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
@@ -194,6 +197,76 @@ public class ModelSerializer {
         zipfile.close();
     }
 
+    /**
+     * Write a model to a file using the memory mappable container format ({@link MappedModelFile}) instead of the
+     * default zip format. Models saved with this method can be restored using the standard restore methods (such as
+     * {@link #restoreMultiLayerNetwork(File)} and {@link #restoreComputationGraph(File)}) - the parameters of the
+     * restored model are then backed directly by a memory mapped region of the file, rather than being read and copied
+     * into memory.<br>
+     * Note that the resulting file is not compressed, and hence is usually larger than one written using
+     * {@link #writeModel(Model, File, boolean)}
+     *
+     * @param model       the model to write
+     * @param file        the file to write to
+     * @param saveUpdater whether to save the updater or not
+     * @throws IOException
+     */
+    public static void writeModelMapped(@NonNull Model model, @NonNull File file, boolean saveUpdater) throws IOException {
+        writeModelMapped(model, file, saveUpdater, null);
+    }
+
+    /**
+     * Write a model to a file using the memory mappable container format ({@link MappedModelFile}).
+     * See {@link #writeModelMapped(Model, File, boolean)} for details.
+     *
+     * @param model             the model to write
+     * @param file              the file to write to
+     * @param saveUpdater       whether to save the updater or not
+     * @param dataNormalization the normalizer to save (optional)
+     * @throws IOException
+     */
+    public static void writeModelMapped(@NonNull Model model, @NonNull File file, boolean saveUpdater,
+                                        DataNormalization dataNormalization) throws IOException {
+        String json = "";
+        if (model instanceof MultiLayerNetwork) {
+            json = ((MultiLayerNetwork) model).getLayerWiseConfigurations().toJson();
+        } else if (model instanceof ComputationGraph) {
+            json = ((ComputationGraph) model).getConfiguration().toJson();
+        }
+
+        Map<String, byte[]> bytes = new LinkedHashMap<>();
+        Map<String, INDArray> arrays = new LinkedHashMap<>();
+        bytes.put(CONFIGURATION_JSON, json.getBytes(StandardCharsets.UTF_8));
+
+        INDArray params = model.params();
+        if (params != null && params.length() > 0) {
+            arrays.put(COEFFICIENTS_BIN, params);
+        } else {
+            bytes.put(NO_PARAMS_MARKER, new byte[0]);
+        }
+
+        if (saveUpdater) {
+            INDArray updaterState = null;
+            if (model instanceof MultiLayerNetwork) {
+                updaterState = ((MultiLayerNetwork) model).getUpdater().getStateViewArray();
+            } else if (model instanceof ComputationGraph) {
+                updaterState = ((ComputationGraph) model).getUpdater().getStateViewArray();
+            }
+
+            if (updaterState != null && updaterState.length() > 0) {
+                arrays.put(UPDATER_BIN, updaterState);
+            }
+        }
+
+        if (dataNormalization != null) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            NormalizerSerializer.getDefault().write(dataNormalization, baos);
+            bytes.put(NORMALIZER_BIN, baos.toByteArray());
+        }
+
+        MappedModelFile.write(file, bytes, arrays);
+    }
+
     /**
      * Load a multi layer network from a file
      *
@@ -215,6 +288,10 @@ public class ModelSerializer {
      */
     public static MultiLayerNetwork restoreMultiLayerNetwork(@NonNull File file, boolean loadUpdater)
             throws IOException {
+        if (MappedModelFile.isMappedModelFile(file)) {
+            return restoreMultiLayerNetworkMapped(file, loadUpdater);
+        }
+
         ZipFile zipFile = new ZipFile(file);
 
         boolean gotConfig = false;
@@ -293,36 +370,7 @@ public class ModelSerializer {
         zipFile.close();
 
         if (gotConfig && gotCoefficients) {
-            MultiLayerConfiguration confFromJson;
-            try{
-               confFromJson = MultiLayerConfiguration.fromJson(json);
-            } catch (Exception e){
-                ComputationGraphConfiguration cg;
-                try{
-                    cg = ComputationGraphConfiguration.fromJson(json);
-                } catch (Exception e2){
-                    //Invalid, and not a compgraph
-                    throw new RuntimeException("Error deserializing JSON MultiLayerConfiguration. Saved model JSON is" +
-                            " not a valid MultiLayerConfiguration", e);
-                }
-                if(cg.getNetworkInputs() != null && cg.getVertices() != null) {
-                    throw new RuntimeException("Error deserializing JSON MultiLayerConfiguration. Saved model appears to be " +
-                            "a ComputationGraph - use ModelSerializer.restoreComputationGraph instead");
-                } else {
-                    throw e;
-                }
-            }
-
-            //Handle legacy config - no network DataType in config, in beta3 or earlier
-            if(params != null)
-                confFromJson.setDataType(params.dataType());
-            MultiLayerNetwork network = new MultiLayerNetwork(confFromJson);
-            network.init(params, false);
-
-            if (gotUpdaterState && updaterState != null) {
-                network.getUpdater().setStateViewArray(network, updaterState, false);
-            }
-            return network;
+            return buildMultiLayerNetwork(json, params, gotUpdaterState ? updaterState : null);
         } else
             throw new IllegalStateException("Model wasnt found within file: gotConfig: [" + gotConfig
                     + "], gotCoefficients: [" + gotCoefficients + "], gotUpdater: [" + gotUpdaterState + "]");
@@ -545,6 +593,10 @@ public class ModelSerializer {
      * @throws IOException
      */
     public static ComputationGraph restoreComputationGraph(@NonNull File file, boolean loadUpdater) throws IOException {
+        if (MappedModelFile.isMappedModelFile(file)) {
+            return restoreComputationGraphMapped(file, loadUpdater);
+        }
+
         ZipFile zipFile = new ZipFile(file);
 
         boolean gotConfig = false;
@@ -623,43 +675,60 @@ public class ModelSerializer {
         zipFile.close();
 
         if (gotConfig && gotCoefficients) {
-            ComputationGraphConfiguration confFromJson;
-            try{
-                confFromJson = ComputationGraphConfiguration.fromJson(json);
-                if(confFromJson.getNetworkInputs() == null && (confFromJson.getVertices() == null || confFromJson.getVertices().size() == 0)){
-                    //May be deserialized correctly, but mostly with null fields
-                    throw new RuntimeException("Invalid JSON - not a ComputationGraphConfiguration");
-                }
-            } catch (Exception e){
-                if(e.getMessage() != null && e.getMessage().contains("registerLegacyCustomClassesForJSON")){
-                    throw e;
-                }
-                try{
-                    MultiLayerConfiguration.fromJson(json);
-                } catch (Exception e2){
-                    //Invalid, and not a compgraph
-                    throw new RuntimeException("Error deserializing JSON ComputationGraphConfiguration. Saved model JSON is" +
-                            " not a valid ComputationGraphConfiguration", e);
-                }
-                throw new RuntimeException("Error deserializing JSON ComputationGraphConfiguration. Saved model appears to be " +
-                        "a MultiLayerNetwork - use ModelSerializer.restoreMultiLayerNetwork instead");
-            }
+            return buildComputationGraph(json, params, gotUpdaterState ? updaterState : null);
+        } else
+            throw new IllegalStateException("Model wasnt found within file: gotConfig: [" + gotConfig
+                    + "], gotCoefficients: [" + gotCoefficients + "], gotUpdater: [" + gotUpdaterState + "]");
+    }
 
-            //Handle legacy config - no network DataType in config, in beta3 or earlier
-            if(params != null)
-                confFromJson.setDataType(params.dataType());
+    /**
+     * Load a MultiLayerNetwork from a file previously written with {@link #writeModelMapped(Model, File, boolean)}.
+     * The parameters of the returned network are backed by a (private, copy on write) memory mapping of the file:
+     * they are paged in from disk when first accessed, and changes to them are not written back to the file. Parameters
+     * that can't be mapped this way (see {@link MappedModelFile#isMapped(String, boolean)}) are read into memory.
+     *
+     * @param file        the file to load from
+     * @param loadUpdater whether to load the updater state or not
+     * @return the loaded multi layer network
+     * @throws IOException
+     */
+    public static MultiLayerNetwork restoreMultiLayerNetworkMapped(@NonNull File file, boolean loadUpdater) throws IOException {
+        MappedModelFile mmf = MappedModelFile.open(file);
+        return buildMultiLayerNetwork(mappedConfig(mmf), mappedParams(mmf), loadUpdater ? mmf.getArray(UPDATER_BIN, true) : null);
+    }
 
-            ComputationGraph cg = new ComputationGraph(confFromJson);
-            cg.init(params, false);
+    /**
+     * Load a ComputationGraph from a file previously written with {@link #writeModelMapped(Model, File, boolean)}.
+     * The parameters of the returned network are backed by a (private, copy on write) memory mapping of the file:
+     * they are paged in from disk when first accessed, and changes to them are not written back to the file. Parameters
+     * that can't be mapped this way (see {@link MappedModelFile#isMapped(String, boolean)}) are read into memory.
+     *
+     * @param file        the file to load from
+     * @param loadUpdater whether to load the updater state or not
+     * @return the loaded computation graph
+     * @throws IOException
+     */
+    public static ComputationGraph restoreComputationGraphMapped(@NonNull File file, boolean loadUpdater) throws IOException {
+        MappedModelFile mmf = MappedModelFile.open(file);
+        return buildComputationGraph(mappedConfig(mmf), mappedParams(mmf), loadUpdater ? mmf.getArray(UPDATER_BIN, true) : null);
+    }
 
+    private static String mappedConfig(MappedModelFile mmf) throws IOException {
+        byte[] json = mmf.getBytes(CONFIGURATION_JSON);
+        if (json == null) {
+            throw new IllegalStateException("Model wasnt found within file: no configuration present in " + mmf.getFile());
+        }
+        return new String(json, StandardCharsets.UTF_8);
+    }
 
-            if (gotUpdaterState && updaterState != null) {
-                cg.getUpdater().setStateViewArray(updaterState);
-            }
-            return cg;
-        } else
-            throw new IllegalStateException("Model wasnt found within file: gotConfig: [" + gotConfig
-                    + "], gotCoefficients: [" + gotCoefficients + "], gotUpdater: [" + gotUpdaterState + "]");
+    private static INDArray mappedParams(MappedModelFile mmf) throws IOException {
+        if (mmf.hasEntry(COEFFICIENTS_BIN)) {
+            //Copy on write: parameters are modified in place when the restored network is trained
+            return mmf.getArray(COEFFICIENTS_BIN, true);
+        } else if (!mmf.hasEntry(NO_PARAMS_MARKER)) {
+            throw new IllegalStateException("Model wasnt found within file: no parameters present in " + mmf.getFile());
+        }
+        return null;
     }
 
     /**
@@ -905,6 +974,15 @@ public class ModelSerializer {
      * @return
      */
     public static <T extends Normalizer> T restoreNormalizerFromFile(File file) {
+        if (MappedModelFile.isMappedModelFile(file)) {
+            try {
+                byte[] bytes = MappedModelFile.open(file).getBytes(NORMALIZER_BIN);
+                return bytes == null ? null : NormalizerSerializer.getDefault().<T>restore(new ByteArrayInputStream(bytes));
+            } catch (Exception e) {
+                throw new RuntimeException("Error restoring normalizer from file " + file, e);
+            }
+        }
+
         try (ZipFile zipFile = new ZipFile(file)) {
             ZipEntry norm = zipFile.getEntry(NORMALIZER_BIN);
 
@@ -976,6 +1054,76 @@ public class ModelSerializer {
     }
 
 
+    private static MultiLayerNetwork buildMultiLayerNetwork(String json, INDArray params, INDArray updaterState) {
+        MultiLayerConfiguration confFromJson;
+        try{
+           confFromJson = MultiLayerConfiguration.fromJson(json);
+        } catch (Exception e){
+            ComputationGraphConfiguration cg;
+            try{
+                cg = ComputationGraphConfiguration.fromJson(json);
+            } catch (Exception e2){
+                //Invalid, and not a compgraph
+                throw new RuntimeException("Error deserializing JSON MultiLayerConfiguration. Saved model JSON is" +
+                        " not a valid MultiLayerConfiguration", e);
+            }
+            if(cg.getNetworkInputs() != null && cg.getVertices() != null) {
+                throw new RuntimeException("Error deserializing JSON MultiLayerConfiguration. Saved model appears to be " +
+                        "a ComputationGraph - use ModelSerializer.restoreComputationGraph instead");
+            } else {
+                throw e;
+            }
+        }
+
+        //Handle legacy config - no network DataType in config, in beta3 or earlier
+        if(params != null)
+            confFromJson.setDataType(params.dataType());
+        MultiLayerNetwork network = new MultiLayerNetwork(confFromJson);
+        network.init(params, false);
+
+        if (updaterState != null) {
+            network.getUpdater().setStateViewArray(network, updaterState, false);
+        }
+        return network;
+    }
+
+    private static ComputationGraph buildComputationGraph(String json, INDArray params, INDArray updaterState) {
+        ComputationGraphConfiguration confFromJson;
+        try{
+            confFromJson = ComputationGraphConfiguration.fromJson(json);
+            if(confFromJson.getNetworkInputs() == null && (confFromJson.getVertices() == null || confFromJson.getVertices().size() == 0)){
+                //May be deserialized correctly, but mostly with null fields
+                throw new RuntimeException("Invalid JSON - not a ComputationGraphConfiguration");
+            }
+        } catch (Exception e){
+            if(e.getMessage() != null && e.getMessage().contains("registerLegacyCustomClassesForJSON")){
+                throw e;
+            }
+            try{
+                MultiLayerConfiguration.fromJson(json);
+            } catch (Exception e2){
+                //Invalid, and not a compgraph
+                throw new RuntimeException("Error deserializing JSON ComputationGraphConfiguration. Saved model JSON is" +
+                        " not a valid ComputationGraphConfiguration", e);
+            }
+            throw new RuntimeException("Error deserializing JSON ComputationGraphConfiguration. Saved model appears to be " +
+                    "a MultiLayerNetwork - use ModelSerializer.restoreMultiLayerNetwork instead");
+        }
+
+        //Handle legacy config - no network DataType in config, in beta3 or earlier
+        if(params != null)
+            confFromJson.setDataType(params.dataType());
+
+        ComputationGraph cg = new ComputationGraph(confFromJson);
+        cg.init(params, false);
+
+
+        if (updaterState != null) {
+            cg.getUpdater().setStateViewArray(updaterState);
+        }
+        return cg;
+    }
+
     private static void checkInputStream(InputStream inputStream) throws IOException {
 
         /*
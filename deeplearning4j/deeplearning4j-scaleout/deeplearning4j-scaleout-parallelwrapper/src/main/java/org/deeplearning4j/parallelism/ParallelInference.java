@@ -27,12 +27,14 @@ import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
 import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
 import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.parallelism.inference.AdaptiveBatchScheduler;
 import org.deeplearning4j.parallelism.inference.InferenceMode;
 import org.deeplearning4j.parallelism.inference.InferenceObservable;
 import org.deeplearning4j.parallelism.inference.LoadBalanceMode;
 import org.deeplearning4j.parallelism.inference.observers.BasicInferenceObservable;
 import org.deeplearning4j.parallelism.inference.observers.BasicInferenceObserver;
 import org.deeplearning4j.parallelism.inference.observers.BatchedInferenceObservable;
+import org.deeplearning4j.parallelism.inference.observers.FutureInferenceObserver;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.DataSet;
 import org.nd4j.linalg.exception.ND4JIllegalStateException;
@@ -40,10 +42,14 @@ import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.primitives.Pair;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Observer;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -64,6 +70,9 @@ public class ParallelInference {
     protected InferenceMode inferenceMode;
     protected int queueLimit;
     protected LoadBalanceMode loadBalanceMode = LoadBalanceMode.FIFO;
+    protected long targetLatencyNanos;
+    protected int priorityLanes = 1;
+    protected boolean shareParameters;
 
     // this queue holds data for inference
     private BlockingQueue<InferenceObservable> observables;
@@ -72,6 +81,12 @@ public class ParallelInference {
 
     private InferenceWorker[] zoo;
     private ObservablesProvider provider;
+    private AdaptiveBatchScheduler scheduler;
+    private volatile boolean isShutdown = false;
+
+    // parameters shared by worker replicas, per device
+    private final Map<Integer, INDArray> sharedParams = new HashMap<>();
+    private Model sharedParamsSource;
 
 
 
@@ -101,6 +116,40 @@ public class ParallelInference {
         }
     }
 
+    /**
+     * This method returns parameters to be used by all replicas of the given model on the specified device: parameters
+     * of the model itself for its own device, or single copy per other device
+     *
+     * @param model    Model to replicate
+     * @param deviceId Target device
+     * @return Parameters view
+     */
+    protected INDArray getSharedParams(@NonNull Model model, int deviceId) {
+        synchronized (locker) {
+            if (sharedParamsSource != model) {
+                // model was updated, so previous copies are obsolete
+                sharedParams.clear();
+                sharedParamsSource = model;
+            }
+
+            INDArray params = sharedParams.get(deviceId);
+            if (params == null) {
+                Integer modelDevice = Nd4j.getAffinityManager().getDeviceForArray(model.params());
+                if (modelDevice == null || modelDevice == deviceId) {
+                    params = model.params();
+                } else {
+                    params = model.params().unsafeDuplication(true);
+                    Nd4j.getAffinityManager().replicateToDevice(deviceId, params);
+                }
+
+                Nd4j.getExecutioner().commit();
+                sharedParams.put(deviceId, params);
+            }
+
+            return params;
+        }
+    }
+
     /**
      * This method returns Models used in workers at this moment
      * PLEASE NOTE: This method is NOT thread safe, and should NOT be used anywhere but tests
@@ -133,7 +182,7 @@ public class ParallelInference {
             boolean cRoot = !assignedRoot.get() && cDevice == currentDevice;
             assignedRoot.compareAndSet(false, cRoot);
 
-            zoo[i] = new InferenceWorker(i, model, observables, cRoot);
+            zoo[i] = new InferenceWorker(i, model, observables, cRoot, cDevice);
 
             Nd4j.getAffinityManager().attachThreadToDevice(zoo[i], cDevice);
             zoo[i].setDaemon(true);
@@ -142,8 +191,14 @@ public class ParallelInference {
 
 
         if (inferenceMode == InferenceMode.BATCHED) {
-            log.info("Initializing ObservablesProvider...");
-            provider = new ObservablesProvider(nanos, batchLimit, observables);
+            if (targetLatencyNanos > 0) {
+                log.info("Initializing AdaptiveBatchScheduler...");
+                scheduler = new AdaptiveBatchScheduler(observables, targetLatencyNanos, TimeUnit.NANOSECONDS, batchLimit,
+                        workers, priorityLanes);
+            } else {
+                log.info("Initializing ObservablesProvider...");
+                provider = new ObservablesProvider(nanos, batchLimit, observables);
+            }
         }
     }
 
@@ -152,12 +207,29 @@ public class ParallelInference {
     }
 
     /**
-     * This method gracefully shuts down ParallelInference instance
+     * This method returns the adaptive batch scheduler, which provides latency histograms for requests.
+     * Only available in BATCHED mode with a target latency set, see {@link Builder#targetLatency(long, TimeUnit)}
+     *
+     * @return Adaptive batch scheduler, or null if adaptive batching isn't used
+     */
+    public AdaptiveBatchScheduler getBatchScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * This method gracefully shuts down ParallelInference instance.<br>
+     * Requests that were submitted but not yet processed by a worker fail with an IllegalStateException: blocking
+     * output methods throw it, and futures returned by the outputAsync methods are completed exceptionally with it.
+     * Output methods called after shutdown throw an IllegalStateException
      */
     public synchronized void shutdown() {
         if (zoo == null)
             return;
 
+        isShutdown = true;
+        if (scheduler != null)
+            scheduler.shutdown();
+
         for (int e = 0; e < zoo.length; e++) {
             if (zoo[e] == null)
                 continue;
@@ -168,9 +240,34 @@ public class ParallelInference {
         }
         zoo = null;
 
+        failQueued();
+
         System.gc();
     }
 
+    /**
+     * Fail all requests in the queue: used on shutdown, once the workers have stopped
+     */
+    protected void failQueued() {
+        if (provider != null) {
+            provider.failQueued();
+        } else {
+            failQueued(observables);
+        }
+    }
+
+    protected static void failQueued(BlockingQueue<InferenceObservable> queue) {
+        InferenceObservable o;
+        while ((o = queue.poll()) != null) {
+            o.setOutputException(new IllegalStateException("ParallelInference was shut down before the request was processed"));
+        }
+    }
+
+    private void checkNotShutdown() {
+        if (isShutdown)
+            throw new IllegalStateException("ParallelInference was shut down");
+    }
+
     /**
      *
      * @param input
@@ -232,8 +329,12 @@ public class ParallelInference {
      * @return Output from the network
      */
     public INDArray[] output(INDArray[] input, INDArray[] inputMasks){
+        checkNotShutdown();
         Nd4j.getExecutioner().commit(); //Commit before passing input to other thread
 
+        if (scheduler != null)
+            return scheduler.submit(input, inputMasks, 0).getOutput();
+
         // basically, depending on model type we either throw stuff to specific model, or wait for batch
         BasicInferenceObserver observer = new BasicInferenceObserver();
         InferenceObservable observable;
@@ -250,6 +351,10 @@ public class ParallelInference {
         } else {
             observable = provider.setInput(observer, input, inputMasks);
         }
+        if (isShutdown) {
+            // shutdown started concurrently: workers may have stopped already
+            failQueued();
+        }
 
         try {
             // submit query to processing
@@ -264,6 +369,98 @@ public class ParallelInference {
         return observable.getOutput();
     }
 
+    /**
+     * Generate predictions/outputs from the network, using the specified priority lane.
+     * Requests in higher priority lanes are always dispatched before requests in lower priority lanes.<br>
+     * PLEASE NOTE: Priority lanes are only used in BATCHED mode with a target latency set, see
+     * {@link Builder#priorityLanes(int)}. Priority is ignored otherwise.
+     *
+     * @param input      Input to the network
+     * @param inputMasks Input masks for the network. May be null.
+     * @param priority   Priority lane, 0 (lowest, default) to priorityLanes-1 (highest)
+     * @return Output from the network
+     */
+    public INDArray[] output(INDArray[] input, INDArray[] inputMasks, int priority) {
+        checkNotShutdown();
+        if (scheduler == null)
+            return output(input, inputMasks);
+
+        Nd4j.getExecutioner().commit(); //Commit before passing input to other thread
+        return scheduler.submit(input, inputMasks, priority).getOutput();
+    }
+
+    /**
+     * Generate predictions/output from the network, without blocking the calling thread
+     *
+     * @param input Input to the network
+     * @return Future for the output from the network
+     * @see #outputAsync(INDArray[], INDArray[])
+     */
+    public CompletableFuture<INDArray[]> outputAsync(INDArray... input) {
+        return outputAsync(input, null);
+    }
+
+    /**
+     * Generate predictions/outputs from the network, optionally using input masks for predictions, without blocking
+     * the calling thread: the returned future is completed by the inference worker as soon as the output is available,
+     * or completed exceptionally if inference fails.<br>
+     * PLEASE NOTE: Dependent stages added via non-async methods (thenApply etc) will be executed in the inference
+     * worker thread, delaying next requests. Use the *Async variants with your own executor for any heavy processing.
+     * This method may still block if the inference queue is full.
+     *
+     * @param input      Input to the network
+     * @param inputMasks Input masks for the network. May be null.
+     * @return Future for the output from the network
+     */
+    public CompletableFuture<INDArray[]> outputAsync(INDArray[] input, INDArray[] inputMasks) {
+        checkNotShutdown();
+        Nd4j.getExecutioner().commit(); //Commit before passing input to other thread
+
+        if (scheduler != null)
+            return scheduler.submitAsync(input, inputMasks, 0);
+
+        FutureInferenceObserver observer = new FutureInferenceObserver();
+        if (inferenceMode == InferenceMode.SEQUENTIAL) {
+            InferenceObservable observable = new BasicInferenceObservable(input, inputMasks);
+            observable.addObserver(observer);
+            try {
+                observables.put(observable);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        } else {
+            // position within the batch is only known after the input was added
+            BatchedInferenceObservable observable =
+                            (BatchedInferenceObservable) provider.setInput(observer, input, inputMasks);
+            observer.setPosition(observable.getPosition());
+        }
+        if (isShutdown) {
+            // shutdown started concurrently: workers may have stopped already
+            failQueued();
+        }
+
+        return observer.getFuture();
+    }
+
+    /**
+     * Generate predictions/outputs from the network using the specified priority lane, without blocking the calling
+     * thread. See {@link #output(INDArray[], INDArray[], int)} and {@link #outputAsync(INDArray[], INDArray[])}
+     *
+     * @param input      Input to the network
+     * @param inputMasks Input masks for the network. May be null.
+     * @param priority   Priority lane, 0 (lowest, default) to priorityLanes-1 (highest)
+     * @return Future for the output from the network
+     */
+    public CompletableFuture<INDArray[]> outputAsync(INDArray[] input, INDArray[] inputMasks, int priority) {
+        checkNotShutdown();
+        if (scheduler == null)
+            return outputAsync(input, inputMasks);
+
+        Nd4j.getExecutioner().commit(); //Commit before passing input to other thread
+        return scheduler.submitAsync(input, inputMasks, priority);
+    }
+
     /**
      * This method does forward pass and returns output provided by OutputAdapter
      *
@@ -296,6 +493,9 @@ public class ParallelInference {
         private InferenceMode inferenceMode = DEFAULT_INFERENCE_MODE;
         private int queueLimit = DEFAULT_QUEUE_LIMIT;
         protected LoadBalanceMode loadBalanceMode = LoadBalanceMode.FIFO;
+        private long targetLatencyNanos;
+        private int priorityLanes = 1;
+        private boolean shareParameters = false;
 
         public Builder(@NonNull Model model) {
             this.model = model;
@@ -381,12 +581,73 @@ public class ParallelInference {
             return this;
         }
 
+        /**
+         * This method enables adaptive batching, targeting the specified p99 latency (from the request being
+         * submitted until the output is available). Batch sizes, and how long requests wait for a batch to fill, are
+         * adapted to the observed model compute time and request arrival rate. Batches will not exceed the
+         * {@link #batchLimit(int)}.
+         *
+         * PLEASE NOTE: This option is only available in BATCHED inference mode
+         *
+         * @param latency Target latency
+         * @param unit    Time unit for the target latency
+         * @return
+         */
+        public Builder targetLatency(long latency, @NonNull TimeUnit unit) {
+            if (latency < 1)
+                throw new IllegalStateException("Target latency should be positive value");
+
+            this.targetLatencyNanos = unit.toNanos(latency);
+            return this;
+        }
+
+        /**
+         * This method defines number of priority lanes for adaptive batching. See
+         * {@link ParallelInference#output(INDArray[], INDArray[], int)}
+         *
+         * Default value: 1
+         * PLEASE NOTE: This option requires a target latency to be set, see {@link #targetLatency(long, TimeUnit)}
+         *
+         * @param lanes
+         * @return
+         */
+        public Builder priorityLanes(int lanes) {
+            if (lanes < 1)
+                throw new IllegalStateException("Number of priority lanes should be positive value");
+
+            this.priorityLanes = lanes;
+            return this;
+        }
+
+        /**
+         * This method allows to share parameters between workers: each worker still has its own replica of the model
+         * (and its own activations), but all replicas on the same device use a single, read-only, parameters array.
+         * Parameters memory is thus no longer multiplied by the number of workers.<br>
+         * PLEASE NOTE: The model must not be trained or otherwise modified while used for inference. Use
+         * {@link ParallelInference#updateModel(Model)} instead.<br>
+         * PLEASE NOTE: INPLACE mode always shares parameters between replicas.<br>
+         * Default value: false
+         *
+         * @param reallyShare
+         * @return
+         */
+        public Builder shareParameters(boolean reallyShare) {
+            this.shareParameters = reallyShare;
+            return this;
+        }
+
         /**
          * This method builds new ParallelInference instance
          *
          * @return
          */
         public ParallelInference build() {
+            if (this.targetLatencyNanos > 0 && this.inferenceMode != InferenceMode.BATCHED)
+                throw new IllegalStateException("Target latency can only be used in BATCHED inference mode");
+
+            if (this.priorityLanes > 1 && this.targetLatencyNanos == 0)
+                throw new IllegalStateException("Priority lanes require target latency to be set");
+
             if (this.inferenceMode == InferenceMode.INPLACE) {
                 val inf = new InplaceParallelInference();
                 inf.inferenceMode = this.inferenceMode;
@@ -405,6 +666,9 @@ public class ParallelInference {
                 inference.model = this.model;
                 inference.workers = this.workers;
                 inference.loadBalanceMode = this.loadBalanceMode;
+                inference.targetLatencyNanos = this.targetLatencyNanos;
+                inference.priorityLanes = this.priorityLanes;
+                inference.shareParameters = this.shareParameters;
 
                 inference.init();
 
@@ -426,13 +690,16 @@ public class ParallelInference {
         private Model replicatedModel;
         private AtomicLong counter = new AtomicLong(0);
         private boolean rootDevice;
+        private int deviceId;
 
         private ReentrantReadWriteLock modelLock = new ReentrantReadWriteLock();
 
-        private InferenceWorker(int id, @NonNull Model model, @NonNull BlockingQueue inputQueue, boolean rootDevice) {
+        private InferenceWorker(int id, @NonNull Model model, @NonNull BlockingQueue inputQueue, boolean rootDevice,
+                        int deviceId) {
             this.inputQueue = inputQueue;
             this.protoModel = model;
             this.rootDevice = rootDevice;
+            this.deviceId = deviceId;
 
             this.setDaemon(true);
             this.setName("InferenceThread-" + id);
@@ -460,7 +727,13 @@ public class ParallelInference {
          */
         protected void initializeReplicaModel() {
             if (protoModel instanceof ComputationGraph) {
-                if (!rootDevice) {
+                if (!rootDevice && shareParameters) {
+                    // replica uses parameters view, without copying
+                    val cg = new ComputationGraph(ComputationGraphConfiguration
+                            .fromJson(((ComputationGraph) protoModel).getConfiguration().toJson()));
+                    cg.init(getSharedParams(protoModel, deviceId), false);
+                    this.replicatedModel = cg;
+                } else if (!rootDevice) {
                     this.replicatedModel = new ComputationGraph(ComputationGraphConfiguration
                             .fromJson(((ComputationGraph) protoModel).getConfiguration().toJson()));
                     this.replicatedModel.init();
@@ -474,7 +747,12 @@ public class ParallelInference {
                     this.replicatedModel = protoModel;
                 }
             } else if (protoModel instanceof MultiLayerNetwork) {
-                if (!rootDevice) {
+                if (!rootDevice && shareParameters) {
+                    val mln = new MultiLayerNetwork(MultiLayerConfiguration.fromJson(
+                            ((MultiLayerNetwork) protoModel).getLayerWiseConfigurations().toJson()));
+                    mln.init(getSharedParams(protoModel, deviceId), false);
+                    this.replicatedModel = mln;
+                } else if (!rootDevice) {
                     this.replicatedModel = new MultiLayerNetwork(MultiLayerConfiguration.fromJson(
                             ((MultiLayerNetwork) protoModel).getLayerWiseConfigurations().toJson()));
                     this.replicatedModel.init();
@@ -604,8 +882,9 @@ public class ParallelInference {
                     currentObservable = new BatchedInferenceObservable();
                 }
 
-                currentObservable.addInput(input, inputMask);
+                // observer goes first: once input is added, worker may process the batch and notify observers
                 currentObservable.addObserver(observer);
+                currentObservable.addInput(input, inputMask);
 
                 try {
                     if (isNew)
@@ -618,5 +897,16 @@ public class ParallelInference {
                 return currentObservable;
             }
         }
+
+        /**
+         * Fail all requests in the queue. The current observable is reset too: inputs added later go to a new
+         * observable (which is queued, and must then be failed by another call of this method)
+         */
+        protected void failQueued() {
+            synchronized (locker) {
+                currentObservable = null;
+                ParallelInference.failQueued(targetQueue);
+            }
+        }
     }
 }
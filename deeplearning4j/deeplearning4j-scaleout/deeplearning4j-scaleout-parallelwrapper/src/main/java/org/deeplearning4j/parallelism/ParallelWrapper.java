@@ -40,6 +40,7 @@ import org.deeplearning4j.optimize.solvers.accumulation.Registerable;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ResidualPostProcessor;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ThresholdAlgorithm;
 import org.deeplearning4j.parallelism.factory.DefaultTrainerContext;
+import org.deeplearning4j.parallelism.factory.HogwildTrainerContext;
 import org.deeplearning4j.parallelism.factory.SymmetricTrainerContext;
 import org.deeplearning4j.parallelism.factory.TrainerContext;
 import org.deeplearning4j.parallelism.trainer.Trainer;
@@ -89,6 +90,11 @@ public class ParallelWrapper implements AutoCloseable {
          * This option assumes use of GradientsAccumulator with any MessageHandler
          */
         CUSTOM,
+
+        /**
+         * Models within ParallelWrapper instance will share parameters, and apply updates to them without locks
+         */
+        HOGWILD,
     }
 
     protected Supplier<INDArray> modelParamsSupplier;
@@ -309,12 +315,6 @@ public class ParallelWrapper implements AutoCloseable {
         if (debug)
             log.info("Stopping everyone...");
 
-        if (debug)
-            log.info("Shutting down iterator...");
-
-        if (prefetchSize > 0 && source.asyncSupported())
-            ((AsyncMultiDataSetIterator) iterator).shutdown();
-
         /*
         // TODO: get rid of this code, 0 model is not replicated anyway
         // now we transfer models back from workers
@@ -332,6 +332,12 @@ public class ParallelWrapper implements AutoCloseable {
             throw new RuntimeException(e);
         }
 
+        if (debug)
+            log.info("Shutting down iterator...");
+
+        if (prefetchSize > 0 && source.asyncSupported())
+            ((AsyncMultiDataSetIterator) iterator).shutdown();
+
         // sanity checks, or the dataset may never average
         if (!wasAveraged)
             log.warn("Parameters were never averaged on current fit(). Ratios of batch size, num workers, and averaging frequency may be responsible.");
@@ -625,18 +631,20 @@ public class ParallelWrapper implements AutoCloseable {
             }
         }
 
-        if (debug)
-            log.info("Shutting down iterator...");
-
-        if (prefetchSize > 0 && source.asyncSupported())
-            ((AsyncDataSetIterator) iterator).shutdown();
-
+        // trainers must be drained before the iterator (and its workspace) goes away, since some of them may still hold
+        // minibatches, i.e. in HOGWILD mode
         try {
             close();
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
 
+        if (debug)
+            log.info("Shutting down iterator...");
+
+        if (prefetchSize > 0 && source.asyncSupported())
+            ((AsyncDataSetIterator) iterator).shutdown();
+
         if (debug)
             log.info("Iterations passed: {}", iterationsCounter.get());
     }
@@ -687,6 +695,7 @@ public class ParallelWrapper implements AutoCloseable {
         protected Supplier<INDArray> updaterParamsSupplier;
         protected ThresholdAlgorithm thresholdAlgorithm;
         protected ResidualPostProcessor residualPostProcessor;
+        protected int maxStaleness = HogwildTrainerContext.DEFAULT_MAX_STALENESS;
 
         protected GradientsAccumulator accumulator;
 
@@ -827,6 +836,7 @@ public class ParallelWrapper implements AutoCloseable {
          *  1) AVERAGING - stands for parameters averaging. Each X epochs weights and updaters state will be averaged across all models<br>
          *  2) SHARED_GRADIENTS - stands for gradients sharing - more details available here: <a href="https://deeplearning4j.org/docs/latest/deeplearning4j-scaleout-intro">https://deeplearning4j.org/docs/latest/deeplearning4j-scaleout-intro</a><br>
          *  3) CUSTOM - this method allows you to specify custom gradients accumulator, this giving you better control of configuration params for training.<br>
+         *  4) HOGWILD - lock-free asynchronous training: all workers update the same parameters in place. Best suited for sparse models, i.e. large EmbeddingLayers on CPU. See {@link #maxStaleness(int)}<br>
          *
          * @param mode
          * @return
@@ -836,6 +846,25 @@ public class ParallelWrapper implements AutoCloseable {
             return this;
         }
 
+        /**
+         * This method allows you to specify maximum number of minibatches each worker may lag behind the data
+         * dispatched by ParallelWrapper. 0 means workers are synchronized after each round.
+         *
+         * Default value: 4
+         *
+         * PLEASE NOTE: This method is applicable only to HOGWILD training mode
+         *
+         * @param maxStaleness
+         * @return
+         */
+        public Builder maxStaleness(int maxStaleness) {
+            if (maxStaleness < 0)
+                throw new IllegalArgumentException("Max staleness can't be negative, got " + maxStaleness);
+
+            this.maxStaleness = maxStaleness;
+            return this;
+        }
+
         /**
          * This method allows you to specify GradientsAccumulator instance to be used in this ParallelWrapper instance
          *
@@ -921,6 +950,15 @@ public class ParallelWrapper implements AutoCloseable {
                                         "Please specify GradientsAccumulator fo encoded gradients mode");
                 }
                     break;
+                case HOGWILD: {
+                    if (Nd4j.getAffinityManager().getNumberOfDevices() > 1)
+                        log.warn("HOGWILD training mode shares parameters between all devices, this will be slow");
+
+                    this.trainerContext = new HogwildTrainerContext(maxStaleness);
+                    this.accumulator = null;
+                    log.info("Creating new HogwildTraining instance");
+                }
+                    break;
                 default:
                     throw new UnsupportedOperationException("Unknown trainingMode: [" + trainingMode + "]");
             }
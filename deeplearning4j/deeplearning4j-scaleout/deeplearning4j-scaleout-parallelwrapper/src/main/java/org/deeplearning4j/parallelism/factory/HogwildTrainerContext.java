@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism.factory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.conf.WorkspaceMode;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.optimize.api.TrainingListener;
+import org.deeplearning4j.parallelism.ParallelWrapper;
+import org.deeplearning4j.parallelism.trainer.HogwildTrainer;
+import org.deeplearning4j.parallelism.trainer.Trainer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates {@link HogwildTrainer}
+ * instances for use with {@link ParallelWrapper}
+ */
+@Slf4j
+public class HogwildTrainerContext implements TrainerContext {
+    public static final int DEFAULT_MAX_STALENESS = 4;
+
+    private final int maxStaleness;
+    private AtomicInteger iterations;
+
+    public HogwildTrainerContext() {
+        this(DEFAULT_MAX_STALENESS);
+    }
+
+    /**
+     * @param maxStaleness Maximum number of minibatches each worker may lag behind. 0 means no lag
+     */
+    public HogwildTrainerContext(int maxStaleness) {
+        this.maxStaleness = maxStaleness;
+    }
+
+    /**
+     * Initialize the context
+     *
+     * @param model
+     * @param args the arguments to initialize with (maybe null)
+     */
+    @Override
+    public void init(Model model, Object... args) {
+        // params and updater state of the original model are shared by all workers, so they must exist before
+        // any worker starts
+        if (model instanceof MultiLayerNetwork) {
+            MultiLayerNetwork net = (MultiLayerNetwork) model;
+            if (!net.isInitCalled())
+                net.init();
+            net.getUpdater();
+        } else if (model instanceof ComputationGraph) {
+            ComputationGraph graph = (ComputationGraph) model;
+            graph.init();
+            graph.getUpdater();
+        }
+
+        // shared by all workers, so iteration-based schedules see the total number of minibatches applied
+        iterations = new AtomicInteger(model instanceof MultiLayerNetwork ? ((MultiLayerNetwork) model).getIterationCount()
+                        : model instanceof ComputationGraph ? ((ComputationGraph) model).getIterationCount() : 0);
+    }
+
+    /**
+     * Create a {@link Trainer}
+     * based on the given parameters
+     *
+     * @param threadId   the thread id to use for this worker
+     * @param model      the model to start the trainer with
+     * @param rootDevice the root device id
+     * @param useMDS     whether to use MultiDataSet or DataSet
+     *                   or not
+     * @param wrapper    the wrapper instance to use with this trainer (this refernece is needed
+     *                   for coordination with the {@link ParallelWrapper} 's {@link TrainingListener}
+     * @return the created training instance
+     */
+    @Override
+    public Trainer create(String uuid, int threadId, Model model, int rootDevice, boolean useMDS, ParallelWrapper wrapper,
+                    WorkspaceMode mode, int averagingFrequency) {
+
+        if (iterations == null)
+            init(model);
+
+        HogwildTrainer trainer = new HogwildTrainer(model, uuid, threadId, mode, wrapper, useMDS, maxStaleness,
+                        iterations);
+
+        trainer.setName("HogwildTrainer thread " + threadId);
+        trainer.setDaemon(true);
+
+        return trainer;
+    }
+
+    @Override
+    public void finalizeRound(Model originalModel, Model... models) {
+        // no-op
+    }
+
+    @Override
+    public void finalizeTraining(Model originalModel, Model... models) {
+        // no-op: original model params are updated in place by all workers
+    }
+}
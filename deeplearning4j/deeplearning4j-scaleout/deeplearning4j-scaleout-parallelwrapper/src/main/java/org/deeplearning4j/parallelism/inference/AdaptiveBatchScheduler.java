@@ -0,0 +1,561 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism.inference;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.parallelism.inference.observers.BasicInferenceObserver;
+import org.deeplearning4j.parallelism.inference.observers.BatchedInferenceObservable;
+import org.deeplearning4j.parallelism.inference.observers.FutureInferenceObserver;
+import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.primitives.Pair;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Adaptive batching scheduler for BATCHED mode {@link org.deeplearning4j.parallelism.ParallelInference}, enabled
+ * via {@link org.deeplearning4j.parallelism.ParallelInference.Builder#targetLatency(long, TimeUnit)}.<br>
+ * Requests are queued in priority lanes, and a dispatcher thread forms batches and hands them to the inference
+ * workers. Batch sizes and the maximum time a request may wait for its batch to fill are derived from:<br>
+ * - A model of batch compute time as a function of batch size (fixed overhead + per request cost), fitted online
+ * from the observed batch compute times<br>
+ * - The observed request arrival rate<br>
+ * - The target latency, scaled by a feedback factor that is reduced when the observed p99 latency exceeds the target,
+ * and slowly increased while it is well below the target<br>
+ * A new batch is only dispatched once a worker is free, so requests arriving while all workers are busy are batched
+ * together. If the oldest request has already waited longer than the allowed time, batches up to the batch limit are
+ * dispatched to catch up.<br>
+ * <br>
+ * Lanes are strictly prioritized: requests in a higher priority lane are always dispatched before requests in lower
+ * priority lanes. Consequently, under sustained overload, lower priority lanes can be starved.<br>
+ * <br>
+ * Per-request latency histograms are available: queue latency (from submission until the worker starts processing
+ * the batch, overall and per lane), compute latency (time the worker spent on the request's batch) and total latency.<br>
+ * <br>
+ * After {@link #shutdown()}, new requests are rejected, and requests that were not yet dispatched fail with an
+ * IllegalStateException: {@link Request#getOutput()} throws it, and futures are completed exceptionally with it.
+ */
+@Slf4j
+public class AdaptiveBatchScheduler {
+    protected static final double MODEL_DECAY = 0.9;
+    protected static final double RATE_DECAY = 0.8;
+    protected static final double MIN_SCALE = 0.05;
+    protected static final double INITIAL_SCALE = 0.5;
+    protected static final int FEEDBACK_WINDOW = 64;
+    protected static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    protected static final long BUSY_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    protected final BlockingQueue<InferenceObservable> targetQueue;
+    protected final long targetLatencyNanos;
+    protected final int batchLimit;
+    protected final int numWorkers;
+    protected final List<ConcurrentLinkedQueue<Request>> lanes;
+
+    protected final AtomicInteger pending = new AtomicInteger(0);
+    protected final AtomicInteger inFlight = new AtomicInteger(0);
+    protected final AtomicLong arrivals = new AtomicLong(0);
+    protected final Dispatcher dispatcher;
+    protected volatile boolean running = true;
+
+    protected final LatencyHistogram queueLatency = new LatencyHistogram();
+    protected final List<LatencyHistogram> laneQueueLatency;
+    protected final LatencyHistogram computeLatency = new LatencyHistogram();
+    protected final LatencyHistogram totalLatency = new LatencyHistogram();
+
+    // compute time model and feedback state, guarded by modelLock
+    protected final Object modelLock = new Object();
+    protected final LatencyHistogram windowLatency = new LatencyHistogram();
+    protected double sw, sx, sy, sxx, sxy;
+    protected double scale = INITIAL_SCALE;
+
+    // dispatcher thread state
+    protected double arrivalRate;           // requests per nanosecond
+    protected long lastRateNanos;
+    protected long lastRateArrivals;
+    protected volatile int targetBatchSize = 1;
+    protected volatile long maxWaitNanos;
+
+    /**
+     * @param targetQueue   Queue consumed by the inference workers
+     * @param targetLatency Target p99 latency
+     * @param unit          Time unit for the target latency
+     * @param batchLimit    Maximum number of requests per batch
+     * @param numWorkers    Number of inference workers consuming the target queue
+     * @param numLanes      Number of priority lanes. Priorities 0 (lowest) to numLanes-1 (highest) can be used
+     */
+    public AdaptiveBatchScheduler(@NonNull BlockingQueue<InferenceObservable> targetQueue, long targetLatency,
+                    @NonNull TimeUnit unit, int batchLimit, int numWorkers, int numLanes) {
+        Preconditions.checkArgument(targetLatency > 0, "Target latency must be positive, got %s", targetLatency);
+        Preconditions.checkArgument(batchLimit > 0, "Batch limit must be positive, got %s", batchLimit);
+        Preconditions.checkArgument(numWorkers > 0, "Number of workers must be positive, got %s", numWorkers);
+        Preconditions.checkArgument(numLanes > 0, "Number of priority lanes must be positive, got %s", numLanes);
+
+        this.targetQueue = targetQueue;
+        this.targetLatencyNanos = unit.toNanos(targetLatency);
+        this.batchLimit = batchLimit;
+        this.numWorkers = numWorkers;
+        this.maxWaitNanos = (long) (targetLatencyNanos * INITIAL_SCALE);
+
+        this.lanes = new ArrayList<>(numLanes);
+        this.laneQueueLatency = new ArrayList<>(numLanes);
+        for (int i = 0; i < numLanes; i++) {
+            lanes.add(new ConcurrentLinkedQueue<Request>());
+            laneQueueLatency.add(new LatencyHistogram());
+        }
+
+        this.dispatcher = new Dispatcher();
+        this.dispatcher.start();
+    }
+
+    /**
+     * Submit a request. Use {@link Request#getOutput()} to wait for, and get, the output
+     *
+     * @param input      Input arrays
+     * @param inputMasks Input mask arrays. May be null
+     * @param priority   Priority lane of the request, 0 (lowest) to numLanes-1 (highest)
+     * @return The submitted request
+     */
+    public Request submit(@NonNull INDArray[] input, INDArray[] inputMasks, int priority) {
+        Preconditions.checkArgument(priority >= 0 && priority < lanes.size(),
+                        "Priority must be between 0 and %s inclusive, got %s", lanes.size() - 1, priority);
+        Preconditions.checkState(running, "Scheduler was shut down");
+
+        return enqueue(new Request(input, inputMasks, priority, System.nanoTime(), null));
+    }
+
+    /**
+     * Submit a request, without blocking on its output: the returned future is completed by the inference worker
+     *
+     * @param input      Input arrays
+     * @param inputMasks Input mask arrays. May be null
+     * @param priority   Priority lane of the request, 0 (lowest) to numLanes-1 (highest)
+     * @return Future for the output
+     */
+    public CompletableFuture<INDArray[]> submitAsync(@NonNull INDArray[] input, INDArray[] inputMasks, int priority) {
+        Preconditions.checkArgument(priority >= 0 && priority < lanes.size(),
+                        "Priority must be between 0 and %s inclusive, got %s", lanes.size() - 1, priority);
+        Preconditions.checkState(running, "Scheduler was shut down");
+
+        FutureInferenceObserver observer = new FutureInferenceObserver();
+        enqueue(new Request(input, inputMasks, priority, System.nanoTime(), observer));
+        return observer.getFuture();
+    }
+
+    private Request enqueue(Request request) {
+        lanes.get(request.priority).add(request);
+        pending.incrementAndGet();
+        arrivals.incrementAndGet();
+        if (!running) {
+            // shutdown started after the check in submit: shutdown may have drained the lanes already
+            failPending();
+        }
+        LockSupport.unpark(dispatcher);
+        return request;
+    }
+
+    /**
+     * Stop the dispatcher thread. New requests are rejected, and requests that were not yet dispatched fail with an
+     * IllegalStateException (see {@link Request#getOutput()}). Batches that were already dispatched to the target
+     * queue are not affected
+     */
+    public void shutdown() {
+        running = false;
+        dispatcher.interrupt();
+        try {
+            dispatcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        failPending();
+    }
+
+    /**
+     * Fail all requests that are still in the lanes
+     */
+    protected void failPending() {
+        for (ConcurrentLinkedQueue<Request> lane : lanes) {
+            Request r;
+            while ((r = lane.poll()) != null) {
+                pending.decrementAndGet();
+                r.fail(new IllegalStateException("AdaptiveBatchScheduler was shut down before the request was dispatched"));
+            }
+        }
+    }
+
+    public int numLanes() {
+        return lanes.size();
+    }
+
+    public long getTargetLatencyNanos() {
+        return targetLatencyNanos;
+    }
+
+    /**
+     * @return Current target batch size (number of requests), as determined by the scheduler
+     */
+    public int getTargetBatchSize() {
+        return targetBatchSize;
+    }
+
+    /**
+     * @return Current maximum time, in nanoseconds, a request waits for its batch to fill, as determined by the scheduler
+     */
+    public long getMaxWaitNanos() {
+        return maxWaitNanos;
+    }
+
+    /**
+     * @return Histogram of queue latency (submission until a worker starts processing) across all lanes
+     */
+    public LatencyHistogram getQueueLatency() {
+        return queueLatency;
+    }
+
+    /**
+     * @return Histogram of queue latency (submission until a worker starts processing) for the specified lane
+     */
+    public LatencyHistogram getQueueLatency(int priority) {
+        return laneQueueLatency.get(priority);
+    }
+
+    /**
+     * @return Histogram of compute latency: time spent by the worker on the batch containing the request
+     */
+    public LatencyHistogram getComputeLatency() {
+        return computeLatency;
+    }
+
+    /**
+     * @return Histogram of total latency: submission until the output is available
+     */
+    public LatencyHistogram getTotalLatency() {
+        return totalLatency;
+    }
+
+    /**
+     * Reset all latency histograms
+     */
+    public void resetHistograms() {
+        queueLatency.reset();
+        computeLatency.reset();
+        totalLatency.reset();
+        for (LatencyHistogram h : laneQueueLatency)
+            h.reset();
+    }
+
+    /**
+     * Predicted batch compute time, in nanoseconds, for the specified number of requests
+     */
+    protected double predictComputeNanos(int batchSize) {
+        synchronized (modelLock) {
+            if (sw == 0.0)
+                return 0.0;
+
+            double den = sw * sxx - sx * sx;
+            if (den > 1e-6 * sw * sxx) {
+                double c = (sw * sxy - sx * sy) / den;
+                double a = (sy - c * sx) / sw;
+                if (c >= 0 && a >= 0)
+                    return a + c * batchSize;
+                if (c >= 0)
+                    return (sxy / sxx) * batchSize;
+            }
+            // not enough variation in batch sizes (or an implausible fit): assume compute time is proportional to batch size
+            return (sy / sx) * batchSize;
+        }
+    }
+
+    protected void updateTargets(long now) {
+        // arrival rate: exponentially weighted, updated at most once per millisecond
+        long elapsed = now - lastRateNanos;
+        if (lastRateNanos == 0) {
+            lastRateNanos = now;
+            lastRateArrivals = arrivals.get();
+        } else if (elapsed >= IDLE_PARK_NANOS) {
+            long a = arrivals.get();
+            double rate = (a - lastRateArrivals) / (double) elapsed;
+            arrivalRate = arrivalRate == 0.0 ? rate : RATE_DECAY * arrivalRate + (1.0 - RATE_DECAY) * rate;
+            lastRateNanos = now;
+            lastRateArrivals = a;
+        }
+
+        double budget;
+        synchronized (modelLock) {
+            budget = targetLatencyNanos * scale;
+        }
+
+        // largest batch where (time to fill the batch + compute) fits the latency budget
+        int best = 1;
+        for (int b = 2; b <= batchLimit; b++) {
+            if (arrivalRate <= 0.0)
+                break;
+            double fill = (b - 1) / arrivalRate;
+            if (fill + predictComputeNanos(b) > budget)
+                break;
+            best = b;
+        }
+
+        // but no smaller than required to keep up with the arrival rate, given the number of workers
+        if (arrivalRate > 0.0) {
+            int b = best;
+            while (b < batchLimit && arrivalRate * predictComputeNanos(b) / b >= numWorkers)
+                b++;
+            best = b;
+        }
+
+        targetBatchSize = best;
+        maxWaitNanos = Math.max(0L, (long) (budget - predictComputeNanos(best)));
+    }
+
+    protected Request oldestPending() {
+        Request oldest = null;
+        for (ConcurrentLinkedQueue<Request> lane : lanes) {
+            Request r = lane.peek();
+            if (r != null && (oldest == null || r.arrivalNanos - oldest.arrivalNanos < 0))
+                oldest = r;
+        }
+        return oldest;
+    }
+
+    protected void dispatch(int maxRequests, long now) throws InterruptedException {
+        ScheduledBatch batch = new ScheduledBatch();
+        int count = 0;
+        for (int lane = lanes.size() - 1; lane >= 0 && count < maxRequests; lane--) {
+            ConcurrentLinkedQueue<Request> queue = lanes.get(lane);
+            Request r;
+            while (count < maxRequests && (r = queue.poll()) != null) {
+                pending.decrementAndGet();
+                batch.add(r);
+                count++;
+            }
+        }
+
+        if (count == 0)
+            return;
+
+        batch.dispatchNanos = now;
+        inFlight.incrementAndGet();
+        try {
+            targetQueue.put(batch);
+        } catch (InterruptedException e) {
+            // shutdown while waiting for space in the target queue: the batch was never dispatched
+            inFlight.decrementAndGet();
+            for (Request r : batch.requests)
+                r.fail(new IllegalStateException("AdaptiveBatchScheduler was shut down before the request was dispatched"));
+            throw e;
+        }
+    }
+
+    protected void onBatchComplete(ScheduledBatch batch) {
+        long end = System.nanoTime();
+        long start = batch.startNanos == 0 ? batch.dispatchNanos : batch.startNanos;
+        long compute = end - start;
+        int n = batch.requests.size();
+
+        for (Request r : batch.requests) {
+            long queued = start - r.arrivalNanos;
+            queueLatency.record(queued);
+            laneQueueLatency.get(r.priority).record(queued);
+            computeLatency.record(compute);
+            totalLatency.record(end - r.arrivalNanos);
+        }
+
+        synchronized (modelLock) {
+            sw = MODEL_DECAY * sw + 1.0;
+            sx = MODEL_DECAY * sx + n;
+            sy = MODEL_DECAY * sy + compute;
+            sxx = MODEL_DECAY * sxx + (double) n * n;
+            sxy = MODEL_DECAY * sxy + (double) n * compute;
+
+            for (Request r : batch.requests)
+                windowLatency.record(end - r.arrivalNanos);
+
+            if (windowLatency.count() >= FEEDBACK_WINDOW) {
+                long p99 = windowLatency.percentile(99.0);
+                if (p99 > targetLatencyNanos) {
+                    scale = Math.max(MIN_SCALE, scale * 0.75);
+                } else if (p99 < 0.75 * targetLatencyNanos) {
+                    scale = Math.min(1.0, scale * 1.1);
+                }
+                windowLatency.reset();
+            }
+        }
+
+        inFlight.decrementAndGet();
+        LockSupport.unpark(dispatcher);
+    }
+
+    /**
+     * @return Human readable summary of the scheduler state and latency histograms
+     */
+    public String statsString() {
+        double s;
+        synchronized (modelLock) {
+            s = scale;
+        }
+        return "AdaptiveBatchScheduler(targetLatency=" + TimeUnit.NANOSECONDS.toMicros(targetLatencyNanos) / 1000.0
+                        + "ms, targetBatchSize=" + targetBatchSize + ", maxWait="
+                        + TimeUnit.NANOSECONDS.toMicros(maxWaitNanos) / 1000.0 + "ms, scale=" + String.format("%.3f", s)
+                        + ")\n queue: " + queueLatency + "\n compute: " + computeLatency + "\n total: " + totalLatency;
+    }
+
+    /**
+     * A single inference request submitted to the scheduler
+     */
+    public static class Request {
+        protected final INDArray[] input;
+        protected final INDArray[] inputMasks;
+        protected final int priority;
+        protected final long arrivalNanos;
+        protected final BasicInferenceObserver observer = new BasicInferenceObserver();
+        protected final FutureInferenceObserver futureObserver;
+        protected volatile ScheduledBatch batch;
+        protected volatile int position;
+        protected volatile RuntimeException exception;
+
+        protected Request(INDArray[] input, INDArray[] inputMasks, int priority, long arrivalNanos,
+                        FutureInferenceObserver futureObserver) {
+            this.input = input;
+            this.inputMasks = inputMasks;
+            this.priority = priority;
+            this.arrivalNanos = arrivalNanos;
+            this.futureObserver = futureObserver;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        /**
+         * Block until the request was processed, and return the output
+         *
+         * @throws IllegalStateException If the scheduler was shut down before the request was dispatched
+         */
+        public INDArray[] getOutput() {
+            observer.waitTillDone();
+            if (exception != null)
+                throw exception;
+
+            // output position is tracked per thread by the batched observable
+            batch.setPosition(position);
+            return batch.getOutput();
+        }
+
+        /**
+         * Fail the request without processing it: unblocks {@link #getOutput()}, and completes the future (if any)
+         * exceptionally
+         */
+        protected void fail(RuntimeException e) {
+            exception = e;
+            observer.update(null, null);
+            if (futureObserver != null)
+                futureObserver.getFuture().completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Batched observable that records when a worker starts and finishes processing it
+     */
+    protected class ScheduledBatch extends BatchedInferenceObservable {
+        protected final List<Request> requests = new ArrayList<>();
+        protected volatile long dispatchNanos;
+        protected volatile long startNanos;
+
+        protected void add(Request r) {
+            addInput(r.input, r.inputMasks);
+            r.position = getCounter() - 1;
+            r.batch = this;
+            requests.add(r);
+            addObserver(r.observer);
+            if (r.futureObserver != null) {
+                r.futureObserver.setPosition(r.position);
+                addObserver(r.futureObserver);
+            }
+        }
+
+        @Override
+        public List<Pair<INDArray[], INDArray[]>> getInputBatches() {
+            startNanos = System.nanoTime();
+            return super.getInputBatches();
+        }
+
+        @Override
+        public void setOutputBatches(List<INDArray[]> output) {
+            onBatchComplete(this);
+            super.setOutputBatches(output);
+        }
+
+        @Override
+        public void setOutputException(Exception e) {
+            onBatchComplete(this);
+            super.setOutputException(e);
+        }
+    }
+
+    protected class Dispatcher extends Thread {
+        protected Dispatcher() {
+            setName("AdaptiveBatchScheduler-dispatcher");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    long now = System.nanoTime();
+                    Request oldest = oldestPending();
+                    if (oldest == null) {
+                        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                        continue;
+                    }
+
+                    if (inFlight.get() >= numWorkers) {
+                        // all workers are busy: keep accumulating requests, batch completion will wake us up
+                        LockSupport.parkNanos(this, BUSY_PARK_NANOS);
+                        continue;
+                    }
+
+                    updateTargets(now);
+                    long waited = now - oldest.arrivalNanos;
+                    long maxWait = maxWaitNanos;
+                    if (waited >= maxWait) {
+                        // we're late already: dispatch as much as possible
+                        dispatch(batchLimit, now);
+                    } else if (pending.get() >= targetBatchSize) {
+                        dispatch(targetBatchSize, now);
+                    } else {
+                        LockSupport.parkNanos(this, maxWait - waited);
+                    }
+
+                    if (Thread.interrupted())
+                        break;
+                }
+            } catch (InterruptedException e) {
+                // shutdown
+            }
+        }
+    }
+}
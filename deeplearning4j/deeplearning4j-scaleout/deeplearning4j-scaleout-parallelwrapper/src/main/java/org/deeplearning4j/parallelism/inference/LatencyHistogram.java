@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism.inference;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free, fixed size histogram of latencies in nanoseconds, with log-linear buckets: values are grouped by their
+ * power of 2, and each power of 2 is split into {@link #SUB_BUCKETS} linear buckets. Percentiles are accurate to within
+ * about 6% (relative), for any value between 1ns and Long.MAX_VALUE.<br>
+ * Recording is thread safe and allocation free. Reads (percentiles, mean etc) are not atomic with respect to concurrent
+ * recording, which is fine for monitoring purposes.
+ */
+public class LatencyHistogram {
+    public static final int SUB_BUCKET_BITS = 4;
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int NUM_BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+    private final AtomicLong count = new AtomicLong(0);
+    private final AtomicLong sum = new AtomicLong(0);
+    private final AtomicLong max = new AtomicLong(0);
+
+    /**
+     * Record a single value
+     *
+     * @param nanos Latency in nanoseconds. Negative values are recorded as 0
+     */
+    public void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+
+        counts.incrementAndGet(bucketIndex(nanos));
+        count.incrementAndGet();
+        sum.addAndGet(nanos);
+
+        long m;
+        while (nanos > (m = max.get())) {
+            if (max.compareAndSet(m, nanos))
+                break;
+        }
+    }
+
+    /**
+     * @return Number of recorded values
+     */
+    public long count() {
+        return count.get();
+    }
+
+    /**
+     * @return Mean of the recorded values in nanoseconds, or 0 if nothing was recorded
+     */
+    public double mean() {
+        long c = count.get();
+        return c == 0 ? 0.0 : sum.get() / (double) c;
+    }
+
+    /**
+     * @return Maximum recorded value in nanoseconds (exact), or 0 if nothing was recorded
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile Percentile, between 0 and 100 (for example, 99.0 for the 99th percentile)
+     * @return Approximate value at the specified percentile in nanoseconds, or 0 if nothing was recorded
+     */
+    public long percentile(double percentile) {
+        if (percentile < 0.0 || percentile > 100.0)
+            throw new IllegalArgumentException("Percentile must be between 0 and 100, got " + percentile);
+
+        long c = count.get();
+        if (c == 0)
+            return 0;
+        if (percentile == 100.0)
+            return max.get();
+
+        long threshold = Math.max(1, (long) Math.ceil(c * percentile / 100.0));
+        long cumulative = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            cumulative += counts.get(i);
+            if (cumulative >= threshold)
+                return Math.min(max.get(), bucketMidpoint(i));
+        }
+
+        return max.get();
+    }
+
+    /**
+     * @param percentile Percentile, between 0 and 100
+     * @param unit       Time unit for the returned value
+     * @return Approximate value at the specified percentile, in the specified time unit
+     */
+    public long percentile(double percentile, TimeUnit unit) {
+        return unit.convert(percentile(percentile), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Clear all recorded values
+     */
+    public void reset() {
+        for (int i = 0; i < NUM_BUCKETS; i++)
+            counts.set(i, 0);
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    protected static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    protected static long bucketLowerBound(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        return (1L << exponent) + (subBucket << (exponent - SUB_BUCKET_BITS));
+    }
+
+    protected static long bucketMidpoint(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return bucketLowerBound(index) + width / 2;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LatencyHistogram(count=%d, mean=%.3fms, p50=%.3fms, p90=%.3fms, p99=%.3fms, max=%.3fms)",
+                        count(), mean() / 1e6, percentile(50.0) / 1e6, percentile(90.0) / 1e6, percentile(99.0) / 1e6,
+                        max() / 1e6);
+    }
+}
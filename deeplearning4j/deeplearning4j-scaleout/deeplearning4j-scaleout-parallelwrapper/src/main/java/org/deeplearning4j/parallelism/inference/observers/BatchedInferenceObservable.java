@@ -236,10 +236,28 @@ public class BatchedInferenceObservable extends BasicInferenceObservable impleme
     }
 
 
+    /**
+     * @return Position of the last input added by the current thread
+     */
+    public int getPosition() {
+        return position.get();
+    }
+
     @Override
     public INDArray[] getOutput() {
         // basically we should take care of splits here: each client should get its own part of output, wrt order number
+        return getOutput(position.get());
+    }
+
+    /**
+     * This method returns output for the input at the specified position. Unlike {@link #getOutput()}, this method
+     * can be used from any thread
+     *
+     * @param position Position of the input, as returned by {@link #getPosition()} in the thread that added it
+     * @return Output arrays
+     */
+    public INDArray[] getOutput(int position) {
         checkOutputException();
-        return outputs.get(position.get());
+        return outputs.get(position);
     }
 }
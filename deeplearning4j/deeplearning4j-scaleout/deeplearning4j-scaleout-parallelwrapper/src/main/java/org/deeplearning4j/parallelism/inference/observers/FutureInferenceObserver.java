@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism.inference.observers;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.parallelism.inference.InferenceObservable;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Observer implementation for asynchronous inference: completes a {@link CompletableFuture} with the output (or the
+ * exception) as soon as the observable is updated, i.e., in the inference worker thread, without any thread blocking
+ * on the result.<br>
+ * For {@link BatchedInferenceObservable}s, the position of the input within the batch must be provided via
+ * {@link #setPosition(int)}. It may be set before or after the observable is updated: in the latter case, the future
+ * is completed by the thread setting the position.
+ */
+@Slf4j
+public class FutureInferenceObserver implements Observer {
+    private final CompletableFuture<INDArray[]> future = new CompletableFuture<>();
+    private int position = -1;
+    private InferenceObservable pending;
+
+    /**
+     * @return Future that will be completed with the output
+     */
+    public CompletableFuture<INDArray[]> getFuture() {
+        return future;
+    }
+
+    /**
+     * Set the position of the input within the batch. Only required for {@link BatchedInferenceObservable}s
+     *
+     * @param position Position of the input, as returned by {@link BatchedInferenceObservable#getPosition()}
+     */
+    public void setPosition(int position) {
+        InferenceObservable observable;
+        synchronized (this) {
+            this.position = position;
+            observable = pending;
+            pending = null;
+        }
+
+        if (observable != null)
+            complete(observable);
+    }
+
+    @Override
+    public void update(Observable o, Object arg) {
+        InferenceObservable observable = (InferenceObservable) o;
+        synchronized (this) {
+            if (observable instanceof BatchedInferenceObservable && position < 0) {
+                // position isn't known yet: future will be completed by setPosition
+                pending = observable;
+                return;
+            }
+        }
+
+        complete(observable);
+    }
+
+    private void complete(InferenceObservable observable) {
+        try {
+            INDArray[] output;
+            if (observable instanceof BatchedInferenceObservable) {
+                output = ((BatchedInferenceObservable) observable).getOutput(position);
+            } else {
+                output = observable.getOutput();
+            }
+            future.complete(output);
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+        }
+    }
+}
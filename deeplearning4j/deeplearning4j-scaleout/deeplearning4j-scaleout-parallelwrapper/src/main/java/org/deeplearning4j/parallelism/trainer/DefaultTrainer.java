@@ -284,6 +284,79 @@ public class DefaultTrainer extends Thread implements Trainer {
         this.replicatedModel.setListeners(replicatedListeners);
     }
 
+    /**
+     * This method creates replica of the original model for this worker, or uses the original model itself for the
+     * root worker
+     */
+    protected void initializeReplicaModel() {
+        // we create fresh network, with the same configuration, as initially created by user
+        // however, we don't need clone or anything here
+        if (originalModel instanceof MultiLayerNetwork) {
+            if (!onRootModel) {
+                MultiLayerConfiguration conf = MultiLayerConfiguration.fromJson(
+                                ((MultiLayerNetwork) originalModel).getLayerWiseConfigurations().toJson());
+                conf.setTrainingWorkspaceMode(workspaceMode);
+                this.replicatedModel = new MultiLayerNetwork(conf);
+
+                replicatedModel.init();
+
+                // we replicate original model params & updater state, just in case it's pre-trained model
+                try {
+                    modelLock.writeLock().lock();
+                    replicatedModel.setParams(originalModel.params().unsafeDuplication(true));
+
+                    Updater updaterReplica = ((MultiLayerNetwork) replicatedModel).getUpdater();
+                    Updater updaterOrigina = ((MultiLayerNetwork) originalModel).getUpdater();
+
+                    if (updaterOrigina != null && updaterOrigina.getStateViewArray() != null)
+                        updaterReplica.setStateViewArray((MultiLayerNetwork) replicatedModel,
+                                updaterOrigina.getStateViewArray().unsafeDuplication(true), false);
+
+                    Nd4j.getExecutioner().commit();
+                } finally {
+                    modelLock.writeLock().unlock();
+                }
+            } else {
+                this.replicatedModel = originalModel;
+                if (!((MultiLayerNetwork) replicatedModel).isInitCalled())
+                    this.replicatedModel.init();
+
+                ((MultiLayerNetwork) replicatedModel).getLayerWiseConfigurations()
+                                .setTrainingWorkspaceMode(workspaceMode);
+            }
+        } else if (originalModel instanceof ComputationGraph) {
+            if (!onRootModel) {
+                ComputationGraphConfiguration conf = ComputationGraphConfiguration
+                                .fromJson(((ComputationGraph) originalModel).getConfiguration().toJson());
+                conf.setTrainingWorkspaceMode(workspaceMode);
+
+                this.replicatedModel = new ComputationGraph(conf);
+                this.replicatedModel.init();
+
+                // we replicate original model params & updater state, just in case it's pre-trained model
+                try {
+                    modelLock.writeLock().lock();
+                    replicatedModel.setParams(originalModel.params().unsafeDuplication(true));
+
+                    ComputationGraphUpdater updaterReplica = ((ComputationGraph) replicatedModel).getUpdater();
+                    ComputationGraphUpdater updaterOrigina = ((ComputationGraph) originalModel).getUpdater();
+
+                    if (updaterOrigina != null && updaterOrigina.getStateViewArray() != null)
+                        updaterReplica.setStateViewArray(
+                                updaterOrigina.getStateViewArray().unsafeDuplication(true));
+
+                    Nd4j.getExecutioner().commit();
+                } finally {
+                    modelLock.writeLock().unlock();
+                }
+            } else {
+                this.replicatedModel = originalModel;
+                this.replicatedModel.init();
+                ((ComputationGraph) replicatedModel).getConfiguration().setTrainingWorkspaceMode(workspaceMode);
+            }
+        }
+    }
+
     @Override
     public void run() {
         setupIfNeccessary();
@@ -294,72 +367,7 @@ public class DefaultTrainer extends Thread implements Trainer {
             onRootModel = true;
 
         try {
-            // we create fresh network, with the same configuration, as initially created by user
-            // however, we don't need clone or anything here
-            if (originalModel instanceof MultiLayerNetwork) {
-                if (!onRootModel) {
-                    MultiLayerConfiguration conf = MultiLayerConfiguration.fromJson(
-                                    ((MultiLayerNetwork) originalModel).getLayerWiseConfigurations().toJson());
-                    conf.setTrainingWorkspaceMode(workspaceMode);
-                    this.replicatedModel = new MultiLayerNetwork(conf);
-
-                    replicatedModel.init();
-
-                    // we replicate original model params & updater state, just in case it's pre-trained model
-                    try {
-                        modelLock.writeLock().lock();
-                        replicatedModel.setParams(originalModel.params().unsafeDuplication(true));
-
-                        Updater updaterReplica = ((MultiLayerNetwork) replicatedModel).getUpdater();
-                        Updater updaterOrigina = ((MultiLayerNetwork) originalModel).getUpdater();
-
-                        if (updaterOrigina != null && updaterOrigina.getStateViewArray() != null)
-                            updaterReplica.setStateViewArray((MultiLayerNetwork) replicatedModel,
-                                    updaterOrigina.getStateViewArray().unsafeDuplication(true), false);
-
-                        Nd4j.getExecutioner().commit();
-                    } finally {
-                        modelLock.writeLock().unlock();
-                    }
-                } else {
-                    this.replicatedModel = originalModel;
-                    if (!((MultiLayerNetwork) replicatedModel).isInitCalled())
-                        this.replicatedModel.init();
-
-                    ((MultiLayerNetwork) replicatedModel).getLayerWiseConfigurations()
-                                    .setTrainingWorkspaceMode(workspaceMode);
-                }
-            } else if (originalModel instanceof ComputationGraph) {
-                if (!onRootModel) {
-                    ComputationGraphConfiguration conf = ComputationGraphConfiguration
-                                    .fromJson(((ComputationGraph) originalModel).getConfiguration().toJson());
-                    conf.setTrainingWorkspaceMode(workspaceMode);
-
-                    this.replicatedModel = new ComputationGraph(conf);
-                    this.replicatedModel.init();
-
-                    // we replicate original model params & updater state, just in case it's pre-trained model
-                    try {
-                        modelLock.writeLock().lock();
-                        replicatedModel.setParams(originalModel.params().unsafeDuplication(true));
-
-                        ComputationGraphUpdater updaterReplica = ((ComputationGraph) replicatedModel).getUpdater();
-                        ComputationGraphUpdater updaterOrigina = ((ComputationGraph) originalModel).getUpdater();
-
-                        if (updaterOrigina != null && updaterOrigina.getStateViewArray() != null)
-                            updaterReplica.setStateViewArray(
-                                    updaterOrigina.getStateViewArray().unsafeDuplication(true));
-
-                        Nd4j.getExecutioner().commit();
-                    } finally {
-                        modelLock.writeLock().unlock();
-                    }
-                } else {
-                    this.replicatedModel = originalModel;
-                    this.replicatedModel.init();
-                    ((ComputationGraph) replicatedModel).getConfiguration().setTrainingWorkspaceMode(workspaceMode);
-                }
-            }
+            initializeReplicaModel();
 
             if (replicatedModel == null)
                 log.error("replicatedModel is NULL at worker_{}", threadId);
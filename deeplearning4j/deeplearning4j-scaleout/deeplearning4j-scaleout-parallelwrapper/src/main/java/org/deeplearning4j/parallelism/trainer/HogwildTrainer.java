@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism.trainer;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.WorkspaceMode;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.updater.MultiLayerUpdater;
+import org.deeplearning4j.nn.updater.graph.ComputationGraphUpdater;
+import org.deeplearning4j.parallelism.ParallelWrapper;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.api.DataSet;
+import org.nd4j.linalg.dataset.api.MultiDataSet;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This trainer implementation does Hogwild-style asynchronous training: all workers use the same parameters (and
+ * updater state) arrays, and apply their updates straight into them, without any locks, averaging or gradients
+ * encoding. This works best for sparse models (i.e. large EmbeddingLayers), where concurrent updates rarely touch the
+ * same parameters.<br>
+ * Staleness is bounded: each worker may lag behind the data dispatched by ParallelWrapper by at most maxStaleness
+ * minibatches. With maxStaleness of 0, all workers are synchronized after each round, as in other training modes.
+ * Minibatches are detached from the prefetch workspace when handed to a worker, as up to maxStaleness + 1 of them may
+ * be held by each worker - more than the prefetch workspace is sized for.<br>
+ * All workers share a single iteration counter, so iteration-based schedules (i.e. learning rate schedules) see the
+ * total number of minibatches applied to the shared parameters, not the number applied by a single worker.
+ */
+@Slf4j
+public class HogwildTrainer extends DefaultTrainer {
+    protected int maxStaleness;
+    protected AtomicInteger iterations;
+
+    public HogwildTrainer(@NonNull Model originalModel, String uuid, int threadIdx, @NonNull WorkspaceMode mode,
+                    @NonNull ParallelWrapper wrapper, boolean useMDS, int maxStaleness) {
+        this(originalModel, uuid, threadIdx, mode, wrapper, useMDS, maxStaleness,
+                        new AtomicInteger(getIterationCount(originalModel)));
+    }
+
+    /**
+     * @param iterations Iteration counter shared by all workers of the same ParallelWrapper
+     */
+    public HogwildTrainer(@NonNull Model originalModel, String uuid, int threadIdx, @NonNull WorkspaceMode mode,
+                    @NonNull ParallelWrapper wrapper, boolean useMDS, int maxStaleness, @NonNull AtomicInteger iterations) {
+        super();
+        if (maxStaleness < 0)
+            throw new IllegalArgumentException("Max staleness can't be negative, got " + maxStaleness);
+
+        this.uuid = uuid + "_thread_" + threadIdx;
+        this.useMDS = useMDS;
+        this.originalModel = originalModel;
+        this.threadId = threadIdx;
+        this.workspaceMode = mode;
+        this.parallelWrapper = wrapper;
+        this.maxStaleness = maxStaleness;
+        this.iterations = iterations;
+
+        // room for all pending minibatches, so feeding never blocks before waitTillRunning does
+        this.queue = new LinkedBlockingQueue<>(maxStaleness + 1);
+        this.queueMDS = new LinkedBlockingQueue<>(maxStaleness + 1);
+    }
+
+    @Override
+    public void feedDataSet(DataSet dataSet, long etlTime) {
+        // this minibatch may outlive the prefetch workspace cycle, so it must not stay attached to it
+        if (dataSet != null && maxStaleness > 0)
+            dataSet.detach();
+
+        super.feedDataSet(dataSet, etlTime);
+    }
+
+    @Override
+    public void feedMultiDataSet(@NonNull MultiDataSet dataSet, long etlTime) {
+        if (maxStaleness > 0)
+            dataSet.detach();
+
+        super.feedMultiDataSet(dataSet, etlTime);
+    }
+
+    @Override
+    protected void fit(DataSet dataSet) {
+        setIterationCount(replicatedModel, iterations.getAndIncrement());
+        super.fit(dataSet);
+    }
+
+    @Override
+    protected void fit(MultiDataSet dataSet) {
+        setIterationCount(replicatedModel, iterations.getAndIncrement());
+        super.fit(dataSet);
+    }
+
+    protected static int getIterationCount(Model model) {
+        if (model instanceof MultiLayerNetwork)
+            return ((MultiLayerNetwork) model).getIterationCount();
+        else if (model instanceof ComputationGraph)
+            return ((ComputationGraph) model).getIterationCount();
+
+        return 0;
+    }
+
+    protected static void setIterationCount(Model model, int iterationCount) {
+        if (model instanceof MultiLayerNetwork)
+            ((MultiLayerNetwork) model).getLayerWiseConfigurations().setIterationCount(iterationCount);
+        else if (model instanceof ComputationGraph)
+            ((ComputationGraph) model).getConfiguration().setIterationCount(iterationCount);
+    }
+
+    @Override
+    public boolean averagingRequired() {
+        return false;
+    }
+
+    @Override
+    protected void initializeReplicaModel() {
+        if (onRootModel) {
+            super.initializeReplicaModel();
+            return;
+        }
+
+        // replica is created with views of original params & updater state, so no copies are made
+        if (originalModel instanceof MultiLayerNetwork) {
+            MultiLayerConfiguration conf = MultiLayerConfiguration.fromJson(
+                            ((MultiLayerNetwork) originalModel).getLayerWiseConfigurations().toJson());
+            conf.setTrainingWorkspaceMode(workspaceMode);
+
+            MultiLayerNetwork replica = new MultiLayerNetwork(conf);
+            replica.init(originalModel.params(), false);
+
+            INDArray state = ((MultiLayerNetwork) originalModel).getUpdater().getStateViewArray();
+            replica.setUpdater(new MultiLayerUpdater(replica, state));
+            this.replicatedModel = replica;
+        } else if (originalModel instanceof ComputationGraph) {
+            ComputationGraphConfiguration conf = ComputationGraphConfiguration
+                            .fromJson(((ComputationGraph) originalModel).getConfiguration().toJson());
+            conf.setTrainingWorkspaceMode(workspaceMode);
+
+            ComputationGraph replica = new ComputationGraph(conf);
+            replica.init(originalModel.params(), false);
+
+            INDArray state = ((ComputationGraph) originalModel).getUpdater().getStateViewArray();
+            replica.setUpdater(new ComputationGraphUpdater(replica, state));
+            this.replicatedModel = replica;
+        }
+
+        Nd4j.getExecutioner().commit();
+    }
+
+    /**
+     * Block until this worker has no more than maxStaleness minibatches queued or in progress
+     */
+    @Override
+    public void waitTillRunning() {
+        while (running.get() > maxStaleness) {
+            // if Trainer thread got exception during training - rethrow it here
+            if (thrownException != null)
+                throw new RuntimeException(thrownException);
+
+            LockSupport.parkNanos(1000L);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        // all minibatches fed to this worker must be applied before stopping
+        try {
+            while (running.get() != 0) {
+                if (thrownException != null)
+                    throw new RuntimeException(thrownException);
+
+                LockSupport.parkNanos(1000L);
+            }
+        } finally {
+            super.shutdown();
+
+            // the last worker to stop leaves the original model with the total iteration count of all workers
+            synchronized (iterations) {
+                setIterationCount(originalModel, Math.max(getIterationCount(originalModel), iterations.get()));
+            }
+        }
+    }
+}
@@ -20,13 +20,18 @@ import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.deeplearning4j.exception.DL4JInvalidInputException;
+import org.deeplearning4j.nn.api.MaskState;
 import org.deeplearning4j.nn.api.Model;
 import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
 import org.deeplearning4j.nn.conf.ConvolutionMode;
+import org.deeplearning4j.nn.conf.InputPreProcessor;
 import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.inputs.InputType;
 import org.deeplearning4j.nn.conf.layers.*;
 import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.workspace.ArrayType;
+import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
 import org.nd4j.linalg.activations.Activation;
 import org.nd4j.linalg.io.ClassPathResource;
 import org.deeplearning4j.datasets.iterator.impl.MnistDataSetIterator;
@@ -49,7 +54,11 @@ import org.nd4j.linalg.primitives.Pair;
 import java.io.File;
 import java.lang.reflect.Field;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
@@ -648,6 +657,215 @@ public class ParallelInferenceTest {
         }
     }
 
+    @Test(timeout = 60000L)
+    public void testOutputAsync() throws Exception {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .activation(Activation.TANH)
+                .seed(12345)
+                .list()
+                .layer(new DenseLayer.Builder().nIn(10).nOut(5).build())
+                .layer(new OutputLayer.Builder().nIn(5).nOut(5).activation(Activation.SOFTMAX).build())
+                .build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        List<INDArray> in = new ArrayList<>();
+        List<INDArray> exp = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            INDArray arr = Nd4j.rand(1 + i % 4, 10);
+            in.add(arr);
+            exp.add(net.output(arr));
+        }
+
+        for (InferenceMode m : InferenceMode.values()) {
+            for (int w : new int[]{1, 2}) {
+                log.info("Starting: m={}, w={}", m, w);
+
+                final ParallelInference inf =
+                        new ParallelInference.Builder(net)
+                                .inferenceMode(m)
+                                .batchLimit(20)
+                                .queueLimit(128)
+                                .workers(w).build();
+
+                //All requests are submitted from a single thread, without waiting for results
+                List<CompletableFuture<INDArray[]>> futures = new ArrayList<>();
+                for (INDArray arr : in) {
+                    futures.add(inf.outputAsync(arr));
+                }
+
+                for (int i = 0; i < in.size(); i++) {
+                    INDArray[] out = futures.get(i).get();
+                    assertEquals(1, out.length);
+                    assertEquals(exp.get(i), out[0]);
+                }
+
+                //Errors should be propagated via the future
+                try {
+                    inf.outputAsync(Nd4j.ones(1, 5)).get();
+                    fail("Expected exception");
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof DL4JInvalidInputException);
+                }
+
+                assertEquals(exp.get(0), inf.outputAsync(in.get(0)).get()[0]);
+
+                inf.shutdown();
+            }
+        }
+    }
+
+    @Test(timeout = 60000L)
+    public void testShutdownWithPendingRequests() throws Exception {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .activation(Activation.TANH)
+                .seed(12345)
+                .list()
+                .layer(new DenseLayer.Builder().nIn(10).nOut(5).build())
+                .layer(new OutputLayer.Builder().nIn(5).nOut(5).activation(Activation.SOFTMAX).build())
+                .inputPreProcessor(0, new BlockingPreProcessor())
+                .build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        INDArray in = Nd4j.rand(2, 10);
+        INDArray exp = net.output(in);
+
+        for (InferenceMode m : new InferenceMode[]{InferenceMode.SEQUENTIAL, InferenceMode.BATCHED}) {
+            log.info("Starting: m={}", m);
+            final ParallelInference inf = new ParallelInference.Builder(net)
+                    .inferenceMode(m)
+                    .workers(1)
+                    .build();
+
+            //Block the only worker on the first request; later requests stay queued
+            BlockingPreProcessor.entered = new CountDownLatch(1);
+            BlockingPreProcessor.release = new CountDownLatch(1);
+            CompletableFuture<INDArray[]> first = inf.outputAsync(in);
+            assertTrue(BlockingPreProcessor.entered.await(30, TimeUnit.SECONDS));
+
+            List<CompletableFuture<INDArray[]>> pending = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                pending.add(inf.outputAsync(Nd4j.rand(1, 10)));
+            }
+
+            Thread shutdown = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    inf.shutdown();
+                }
+            });
+            shutdown.start();
+            Thread.sleep(50);
+            BlockingPreProcessor.release.countDown();
+            shutdown.join();
+
+            //Request in progress completes normally, queued requests fail
+            assertEquals(exp, first.get()[0]);
+            for (CompletableFuture<INDArray[]> f : pending) {
+                assertTrue(f.isCompletedExceptionally());
+                try {
+                    f.get();
+                    fail("Expected exception");
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof IllegalStateException);
+                }
+            }
+
+            assertRejectedAfterShutdown(inf, in);
+        }
+        BlockingPreProcessor.entered = null;
+        BlockingPreProcessor.release = null;
+
+        //Priority lanes (adaptive batch scheduler)
+        ParallelInference inf = new ParallelInference.Builder(net)
+                .inferenceMode(InferenceMode.BATCHED)
+                .workers(1)
+                .targetLatency(10, TimeUnit.MILLISECONDS)
+                .priorityLanes(2)
+                .build();
+        assertEquals(exp, inf.output(new INDArray[]{in}, null, 1)[0]);
+        inf.shutdown();
+        assertRejectedAfterShutdown(inf, in);
+    }
+
+    private static void assertRejectedAfterShutdown(ParallelInference inf, INDArray in) {
+        try {
+            inf.output(in);
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            //OK
+        }
+        try {
+            inf.outputAsync(in);
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            //OK
+        }
+        try {
+            inf.output(new INDArray[]{in}, null, 1);
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            //OK
+        }
+        try {
+            inf.outputAsync(new INDArray[]{in}, null, 1);
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            //OK
+        }
+    }
+
+    /**
+     * Identity preprocessor that (if latches are set) blocks the inference worker until released
+     */
+    public static class BlockingPreProcessor implements InputPreProcessor {
+        private static volatile CountDownLatch entered;
+        private static volatile CountDownLatch release;
+
+        @Override
+        public INDArray preProcess(INDArray input, int miniBatchSize, LayerWorkspaceMgr workspaceMgr) {
+            CountDownLatch e = entered;
+            CountDownLatch r = release;
+            if (e != null && r != null && e.getCount() > 0) {
+                e.countDown();
+                //Ignore interrupts (from shutdown): keep blocking until released
+                boolean interrupted = false;
+                while (r.getCount() > 0) {
+                    try {
+                        r.await();
+                    } catch (InterruptedException ex) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted)
+                    Thread.currentThread().interrupt();
+            }
+            return workspaceMgr.leverageTo(ArrayType.ACTIVATIONS, input);
+        }
+
+        @Override
+        public INDArray backprop(INDArray output, int miniBatchSize, LayerWorkspaceMgr workspaceMgr) {
+            return workspaceMgr.leverageTo(ArrayType.ACTIVATION_GRAD, output);
+        }
+
+        @Override
+        public InputPreProcessor clone() {
+            return new BlockingPreProcessor();
+        }
+
+        @Override
+        public InputType getOutputType(InputType inputType) {
+            return inputType;
+        }
+
+        @Override
+        public Pair<INDArray, MaskState> feedForwardMaskArray(INDArray maskArray, MaskState currentMaskState, int minibatchSize) {
+            return new Pair<>(maskArray, currentMaskState);
+        }
+    }
+
     @Test
     public void testInputMaskingCyclic() throws Exception {
         for (int e = 0; e < 3; e++) {
@@ -796,6 +1014,74 @@ public class ParallelInferenceTest {
         inf.shutdown();
     }
 
+    @Test(timeout = 60000L)
+    public void testSharedParameters() throws Exception {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .activation(Activation.TANH)
+                .seed(12345)
+                .list()
+                .layer(new DenseLayer.Builder().nIn(10).nOut(32).build())
+                .layer(new DenseLayer.Builder().nIn(32).nOut(32).build())
+                .layer(new OutputLayer.Builder().nIn(32).nOut(5).activation(Activation.SOFTMAX).build())
+                .build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        INDArray paramsBefore = net.params().dup();
+
+        List<INDArray> in = new ArrayList<>();
+        List<INDArray> exp = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            INDArray arr = Nd4j.rand(1 + i % 4, 10);
+            in.add(arr);
+            exp.add(net.output(arr));
+        }
+
+        for (InferenceMode m : new InferenceMode[]{InferenceMode.SEQUENTIAL, InferenceMode.BATCHED}) {
+            log.info("Starting: m={}", m);
+
+            val inf = new ParallelInference.Builder(net)
+                    .inferenceMode(m)
+                    .batchLimit(8)
+                    .queueLimit(128)
+                    .workers(4)
+                    .shareParameters(true)
+                    .build();
+
+            //Concurrent inference on replicas sharing the same parameters
+            testParallelInference(inf, in, exp);
+
+            //All replicas on the same device should use the parameters array of the original model, without copies
+            Model[] models = inf.getCurrentModelsFromWorkers();
+            assertEquals(4, models.length);
+            for (int i = 0; i < models.length; i++) {
+                while (models[i] == null) {
+                    Thread.sleep(10);
+                    models = inf.getCurrentModelsFromWorkers();
+                }
+                if (Nd4j.getAffinityManager().getNumberOfDevices() == 1)
+                    assertSame("Failed at model [" + i + "]", net.params(), models[i].params());
+                assertEquals(net.params(), models[i].params());
+            }
+
+            //Updated model should be shared too
+            MultiLayerNetwork net2 = new MultiLayerNetwork(conf.clone());
+            net2.init();
+            inf.updateModel(net2);
+            for (Model model : inf.getCurrentModelsFromWorkers()) {
+                if (Nd4j.getAffinityManager().getNumberOfDevices() == 1)
+                    assertSame(net2.params(), model.params());
+            }
+            INDArray arr = Nd4j.rand(3, 10);
+            assertEquals(net2.output(arr), inf.output(arr));
+
+            inf.shutdown();
+        }
+
+        //Inference should never modify the shared parameters
+        assertEquals(paramsBefore, net.params());
+    }
+
     @Test(timeout = 60000L)
     public void testMultiOutputNet() throws Exception {
 
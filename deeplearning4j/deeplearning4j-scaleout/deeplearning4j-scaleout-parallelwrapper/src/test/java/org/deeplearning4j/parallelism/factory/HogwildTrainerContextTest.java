@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism.factory;
+
+import lombok.val;
+import org.deeplearning4j.datasets.iterator.impl.ListDataSetIterator;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.WorkspaceMode;
+import org.deeplearning4j.nn.conf.layers.EmbeddingLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.parallelism.ParallelWrapper;
+import org.deeplearning4j.parallelism.trainer.HogwildTrainer;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class HogwildTrainerContextTest {
+    private static final int VOCAB = 1000;
+    private static final int CLASSES = 5;
+
+    private static MultiLayerNetwork getNet() {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .seed(12345)
+                .updater(new Adam(0.05))
+                .list()
+                .layer(new EmbeddingLayer.Builder().nIn(VOCAB).nOut(16).build())
+                .layer(new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nIn(16).nOut(CLASSES)
+                        .activation(Activation.SOFTMAX).build())
+                .build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        return net;
+    }
+
+    private static DataSet getData(int numExamples, long seed) {
+        Random r = new Random(seed);
+        INDArray features = Nd4j.create(numExamples, 1);
+        INDArray labels = Nd4j.create(numExamples, CLASSES);
+        for (int i = 0; i < numExamples; i++) {
+            int idx = r.nextInt(VOCAB);
+            features.putScalar(i, 0, idx);
+            labels.putScalar(i, idx % CLASSES, 1.0);
+        }
+        return new DataSet(features, labels);
+    }
+
+    @Test
+    public void testEqualUuid1() {
+        MultiLayerNetwork model = getNet();
+
+        ParallelWrapper wrapper = new ParallelWrapper.Builder(model)
+                .workers(2)
+                .trainingMode(ParallelWrapper.TrainingMode.HOGWILD)
+                .build();
+
+        val trainer = new HogwildTrainer(model, "alpha", 3, WorkspaceMode.NONE, wrapper, true, 2);
+
+        assertEquals("alpha_thread_3", trainer.getUuid());
+        assertFalse(trainer.averagingRequired());
+    }
+
+    @Test(timeout = 120000L)
+    public void testHogwildTraining() {
+        for (int staleness : new int[]{0, 3}) {
+            MultiLayerNetwork model = getNet();
+            INDArray params = model.params();
+
+            DataSet all = getData(4096, 12345);
+            List<DataSet> list = new ArrayList<>(all.asList());
+            ListDataSetIterator<DataSet> iter = new ListDataSetIterator<>(list, 32);
+
+            double scoreBefore = model.score(all);
+
+            ParallelWrapper wrapper = new ParallelWrapper.Builder(model)
+                    .workers(4)
+                    .prefetchBuffer(8)
+                    .trainingMode(ParallelWrapper.TrainingMode.HOGWILD)
+                    .maxStaleness(staleness)
+                    .build();
+
+            for (int epoch = 0; epoch < 3; epoch++) {
+                wrapper.fit(iter);
+                iter.reset();
+            }
+            wrapper.shutdown();
+
+            //All workers update parameters of the original model in place
+            assertSame(params, model.params());
+
+            //Iteration count is shared by all workers: one iteration per minibatch, regardless of the worker
+            assertEquals(3 * 4096 / 32, model.getIterationCount());
+
+            double scoreAfter = model.score(all);
+            assertTrue("Score did not decrease: " + scoreBefore + " -> " + scoreAfter, scoreAfter < 0.5 * scoreBefore);
+        }
+    }
+
+    @Test
+    public void testInvalidStaleness() {
+        try {
+            new ParallelWrapper.Builder(getNet()).trainingMode(ParallelWrapper.TrainingMode.HOGWILD).maxStaleness(-1);
+            fail("Expected exception");
+        } catch (IllegalArgumentException e) {
+            //OK
+        }
+    }
+}
@@ -0,0 +1,317 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism.inference;
+
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.parallelism.ParallelInference;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+@Slf4j
+public class AdaptiveBatchSchedulerTest {
+
+    private static MultiLayerNetwork getNet() {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .seed(12345)
+                .list()
+                .layer(new DenseLayer.Builder().nIn(10).nOut(32).activation(Activation.TANH).build())
+                .layer(new OutputLayer.Builder().nIn(32).nOut(5).activation(Activation.SOFTMAX).build())
+                .build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        return net;
+    }
+
+    @Test
+    public void testLatencyHistogram() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.count());
+        assertEquals(0, h.percentile(99.0));
+
+        for (int i = 1; i <= 1000; i++) {
+            h.record(i * 1000L);
+        }
+
+        assertEquals(1000, h.count());
+        assertEquals(1000000L, h.max());
+        assertEquals(500500.0, h.mean(), 1e-6);
+
+        //Log-linear buckets: relative error is bounded by bucket width
+        assertEquals(500000.0, h.percentile(50.0), 500000.0 / 16);
+        assertEquals(990000.0, h.percentile(99.0), 990000.0 / 16);
+        assertEquals(1000000L, h.percentile(100.0));
+        assertEquals(990, h.percentile(99.0, TimeUnit.MICROSECONDS), 990 / 16);
+
+        for (long v : new long[]{0, 1, 15, 16, 17, 31, 32, 1000, 123456789, Long.MAX_VALUE}) {
+            int idx = LatencyHistogram.bucketIndex(v);
+            assertTrue(LatencyHistogram.bucketLowerBound(idx) <= v);
+            assertTrue(idx == LatencyHistogram.bucketIndex(LatencyHistogram.bucketLowerBound(idx)));
+        }
+
+        h.reset();
+        assertEquals(0, h.count());
+        assertEquals(0, h.max());
+    }
+
+    @Test(timeout = 60000L)
+    public void testAdaptiveBatchingOutputs() throws Exception {
+        final MultiLayerNetwork net = getNet();
+
+        final ParallelInference inf = new ParallelInference.Builder(net)
+                .inferenceMode(InferenceMode.BATCHED)
+                .batchLimit(16)
+                .workers(2)
+                .targetLatency(50, TimeUnit.MILLISECONDS)
+                .priorityLanes(2)
+                .build();
+
+        final AdaptiveBatchScheduler scheduler = inf.getBatchScheduler();
+        assertNotNull(scheduler);
+        assertEquals(2, scheduler.numLanes());
+
+        int numThreads = 8;
+        final int perThread = 50;
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < numThreads; t++) {
+            final int priority = t % 2;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < perThread; i++) {
+                            INDArray in = Nd4j.rand(1 + i % 3, 10);
+                            INDArray exp = net.output(in);
+                            INDArray[] out = inf.output(new INDArray[]{in}, null, priority);
+                            assertEquals(1, out.length);
+                            assertEquals(exp, out[0]);
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        for (Thread t : threads)
+            t.join();
+
+        if (failure.get() != null)
+            throw new RuntimeException(failure.get());
+
+        log.info(scheduler.statsString());
+
+        int total = numThreads * perThread;
+        assertEquals(total, scheduler.getTotalLatency().count());
+        assertEquals(total, scheduler.getQueueLatency().count());
+        assertEquals(total, scheduler.getComputeLatency().count());
+        assertEquals(total / 2, scheduler.getQueueLatency(0).count());
+        assertEquals(total / 2, scheduler.getQueueLatency(1).count());
+        assertTrue(scheduler.getTargetBatchSize() >= 1 && scheduler.getTargetBatchSize() <= 16);
+
+        //Default priority, and single input method
+        INDArray in = Nd4j.rand(1, 10);
+        assertEquals(net.output(in), inf.output(in));
+        assertEquals(total + 1, scheduler.getTotalLatency().count());
+
+        //Non-blocking output, completed by the workers
+        List<INDArray> asyncIn = new ArrayList<>();
+        List<CompletableFuture<INDArray[]>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            asyncIn.add(Nd4j.rand(1, 10));
+            futures.add(inf.outputAsync(new INDArray[]{asyncIn.get(i)}, null, i % 2));
+        }
+        for (int i = 0; i < 20; i++) {
+            assertEquals(net.output(asyncIn.get(i)), futures.get(i).get()[0]);
+        }
+        assertEquals(total + 21, scheduler.getTotalLatency().count());
+
+        scheduler.resetHistograms();
+        assertEquals(0, scheduler.getTotalLatency().count());
+
+        try {
+            inf.output(new INDArray[]{in}, null, 2);
+            fail("Expected exception");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("Priority"));
+        }
+
+        inf.shutdown();
+    }
+
+    @Test(timeout = 60000L)
+    public void testPriorityLanes() throws Exception {
+        //Single worker, blocked by the first batch: higher priority requests submitted later should be dispatched first
+        final MultiLayerNetwork net = getNet();
+        final LinkedBlockingQueue<InferenceObservable> queue = new LinkedBlockingQueue<>();
+        AdaptiveBatchScheduler scheduler = new AdaptiveBatchScheduler(queue, 1, TimeUnit.SECONDS, 4, 1, 3);
+
+        INDArray first = Nd4j.rand(1, 10);
+        scheduler.submit(new INDArray[]{first}, null, 0);
+        InferenceObservable b0 = queue.poll(10, TimeUnit.SECONDS);
+        assertNotNull(b0);
+
+        //Worker is busy with b0: requests accumulate
+        List<AdaptiveBatchScheduler.Request> low = new ArrayList<>();
+        List<AdaptiveBatchScheduler.Request> high = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            low.add(scheduler.submit(new INDArray[]{Nd4j.rand(1, 10)}, null, 0));
+        }
+        for (int i = 0; i < 2; i++) {
+            high.add(scheduler.submit(new INDArray[]{Nd4j.rand(1, 10)}, null, 2));
+        }
+        Thread.sleep(50);
+        assertTrue(queue.isEmpty());
+
+        //Complete b0: high priority requests should be dispatched first, then the low priority requests in order
+        complete(net, b0);
+        List<AdaptiveBatchScheduler.Request> dispatched = new ArrayList<>();
+        while (dispatched.size() < 6) {
+            InferenceObservable b = queue.poll(10, TimeUnit.SECONDS);
+            assertNotNull(b);
+            List<AdaptiveBatchScheduler.Request> requests = ((AdaptiveBatchScheduler.ScheduledBatch) b).requests;
+            assertTrue(requests.size() >= 1 && requests.size() <= 4);
+            dispatched.addAll(requests);
+            complete(net, b);
+        }
+        List<AdaptiveBatchScheduler.Request> expOrder = new ArrayList<>(high);
+        expOrder.addAll(low);
+        assertEquals(expOrder, dispatched);
+
+        for (AdaptiveBatchScheduler.Request r : high) {
+            assertEquals(net.output(r.input[0]), r.getOutput()[0]);
+        }
+        for (AdaptiveBatchScheduler.Request r : low) {
+            assertEquals(net.output(r.input[0]), r.getOutput()[0]);
+        }
+
+        assertEquals(7, scheduler.getTotalLatency().count());
+        assertEquals(2, scheduler.getQueueLatency(2).count());
+        assertEquals(0, scheduler.getQueueLatency(1).count());
+        scheduler.shutdown();
+    }
+
+    @Test(timeout = 60000L)
+    public void testShutdownFailsPendingRequests() throws Exception {
+        //Single worker, blocked by the first batch: other requests stay pending until shutdown
+        final MultiLayerNetwork net = getNet();
+        final LinkedBlockingQueue<InferenceObservable> queue = new LinkedBlockingQueue<>();
+        AdaptiveBatchScheduler scheduler = new AdaptiveBatchScheduler(queue, 1, TimeUnit.SECONDS, 4, 1, 2);
+
+        AdaptiveBatchScheduler.Request first = scheduler.submit(new INDArray[]{Nd4j.rand(1, 10)}, null, 0);
+        InferenceObservable b0 = queue.poll(10, TimeUnit.SECONDS);
+        assertNotNull(b0);
+
+        final AdaptiveBatchScheduler.Request blocking = scheduler.submit(new INDArray[]{Nd4j.rand(1, 10)}, null, 1);
+        CompletableFuture<INDArray[]> future = scheduler.submitAsync(new INDArray[]{Nd4j.rand(1, 10)}, null, 0);
+
+        final AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread waiting = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    blocking.getOutput();
+                } catch (Throwable t) {
+                    thrown.set(t);
+                }
+            }
+        });
+        waiting.start();
+        Thread.sleep(50);
+        assertTrue(waiting.isAlive());
+
+        scheduler.shutdown();
+        waiting.join();
+        assertTrue(String.valueOf(thrown.get()), thrown.get() instanceof IllegalStateException);
+
+        assertTrue(future.isCompletedExceptionally());
+        try {
+            future.get();
+            fail("Expected exception");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        try {
+            scheduler.submit(new INDArray[]{Nd4j.rand(1, 10)}, null, 0);
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            //OK
+        }
+
+        //Batch that was already dispatched is unaffected
+        assertTrue(queue.isEmpty());
+        complete(net, b0);
+        assertEquals(net.output(first.input[0]), first.getOutput()[0]);
+    }
+
+    private static void complete(MultiLayerNetwork net, InferenceObservable observable) {
+        val batches = observable.getInputBatches();
+        List<INDArray[]> out = new ArrayList<>();
+        for (val b : batches) {
+            out.add(new INDArray[]{net.output(b.getFirst()[0])});
+        }
+        observable.setOutputBatches(out);
+    }
+
+    @Test
+    public void testBuilderValidation() {
+        MultiLayerNetwork net = getNet();
+        try {
+            new ParallelInference.Builder(net).inferenceMode(InferenceMode.SEQUENTIAL)
+                    .targetLatency(10, TimeUnit.MILLISECONDS).build();
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            //OK
+        }
+
+        try {
+            new ParallelInference.Builder(net).inferenceMode(InferenceMode.BATCHED).priorityLanes(2).build();
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            //OK
+        }
+
+        ParallelInference inf = new ParallelInference.Builder(net).inferenceMode(InferenceMode.BATCHED).workers(1).build();
+        assertNull(inf.getBatchScheduler());
+        //Priority is ignored without adaptive batching
+        INDArray in = Nd4j.rand(2, 10);
+        assertEquals(net.output(in), inf.output(new INDArray[]{in}, null, 0)[0]);
+        inf.shutdown();
+    }
+}
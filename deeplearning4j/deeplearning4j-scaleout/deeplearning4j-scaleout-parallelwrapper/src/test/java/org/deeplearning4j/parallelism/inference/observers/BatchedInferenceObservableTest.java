@@ -31,6 +31,8 @@ import java.util.List;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author raver119@gmail.com
@@ -64,6 +66,35 @@ public class BatchedInferenceObservableTest {
     }
 
 
+    @Test
+    public void testFutureObserver() throws Exception {
+        BatchedInferenceObservable observable = new BatchedInferenceObservable();
+
+        List<FutureInferenceObserver> observers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            FutureInferenceObserver observer = new FutureInferenceObserver();
+            observable.addObserver(observer);
+            observable.addInput(new INDArray[]{Nd4j.create(1,10).assign(i)}, null);
+            //Position of the last observer is set only after output is available
+            if (i < 2)
+                observer.setPosition(observable.getPosition());
+            observers.add(observer);
+        }
+
+        INDArray batch = observable.getInputBatches().get(0).getFirst()[0];
+        observable.setOutputBatches(Collections.singletonList(new INDArray[]{batch.mul(2)}));
+
+        assertTrue(observers.get(0).getFuture().isDone());
+        assertTrue(observers.get(1).getFuture().isDone());
+        assertFalse(observers.get(2).getFuture().isDone());
+        observers.get(2).setPosition(2);
+
+        for (int i = 0; i < 3; i++) {
+            INDArray[] out = observers.get(i).getFuture().get();
+            assertEquals(Nd4j.create(1,10).assign(2 * i), out[0]);
+        }
+    }
+
     @Test
     public void testVerticalBatch2() throws Exception {
         BatchedInferenceObservable observable = new BatchedInferenceObservable();
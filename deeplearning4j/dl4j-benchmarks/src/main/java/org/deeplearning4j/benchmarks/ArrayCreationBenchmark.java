@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.benchmarks;
+
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for array creation via Nd4j.create and related methods: zero-initialized, uninitialized, from Java arrays
+ * and scalars
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ArrayCreationBenchmark {
+
+    @Param({"1", "32x32", "256x256", "16x3x32x32"})
+    public String shape;
+
+    @Param({"FLOAT", "DOUBLE"})
+    public String dataType;
+
+    private DataType dt;
+    private long[] s;
+    private float[] floatData;
+    private double[] doubleData;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        dt = DataType.valueOf(dataType);
+        s = BenchmarkUtils.parseShape(shape);
+        long length = 1;
+        for (long l : s) {
+            length *= l;
+        }
+        floatData = new float[(int) length];
+        doubleData = new double[(int) length];
+    }
+
+    @Benchmark
+    public INDArray create() {
+        return Nd4j.create(dt, s);
+    }
+
+    @Benchmark
+    public INDArray createUninitialized() {
+        return Nd4j.createUninitialized(dt, s);
+    }
+
+    @Benchmark
+    public INDArray zeros() {
+        return Nd4j.zeros(dt, s);
+    }
+
+    @Benchmark
+    public INDArray createFromJavaArray() {
+        if (dt == DataType.FLOAT) {
+            return Nd4j.create(floatData, s, dt);
+        } else {
+            return Nd4j.create(doubleData, s, dt);
+        }
+    }
+
+    @Benchmark
+    public INDArray scalar() {
+        return Nd4j.scalar(dt, 1.0);
+    }
+}
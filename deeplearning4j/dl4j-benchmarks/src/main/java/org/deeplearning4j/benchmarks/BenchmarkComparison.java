@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.benchmarks;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NonNull;
+import org.nd4j.shade.jackson.databind.JsonNode;
+import org.nd4j.shade.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Compare two sets of JMH benchmark results (JSON format, as written by {@link BenchmarkRunner}) - for example, from
+ * two different versions - and report the relative change for each benchmark/parameter combination present in both.<br>
+ * For time-based modes (average time, sample time, single shot), lower scores are better; for throughput, higher is
+ * better. A change is reported as a regression if the benchmark is slower by more than the threshold.<br>
+ * <br>
+ * Usage: {@code java -cp benchmarks.jar org.deeplearning4j.benchmarks.BenchmarkComparison <baseline.json> <current.json> [thresholdPercent]}<br>
+ * The exit code is 1 if any regressions were found, or 0 otherwise.
+ */
+public class BenchmarkComparison {
+    public static final double DEFAULT_THRESHOLD_PERCENT = 10.0;
+
+    private BenchmarkComparison() {
+    }
+
+    /**
+     * A single benchmark result: one benchmark method, with one combination of parameters
+     */
+    @Data
+    @AllArgsConstructor
+    public static class Result {
+        private String benchmark;
+        private String mode;
+        private Map<String, String> params;
+        private double score;
+        private double scoreError;
+        private String unit;
+
+        /**
+         * @return Key for this result: benchmark name, mode and parameters
+         */
+        public String key() {
+            StringBuilder sb = new StringBuilder(benchmark).append(" [").append(mode).append("]");
+            if (params != null && !params.isEmpty()) {
+                sb.append(" ").append(new TreeMap<>(params));
+            }
+            return sb.toString();
+        }
+
+        /**
+         * @return True if a higher score is better (throughput mode)
+         */
+        public boolean higherIsBetter() {
+            return "thrpt".equalsIgnoreCase(mode);
+        }
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Comparison {
+        private String key;
+        private Result baseline;
+        private Result current;
+        /**
+         * Relative speedup of current vs. baseline: > 1.0 is faster, < 1.0 is slower
+         */
+        private double speedup;
+        private boolean regression;
+    }
+
+    /**
+     * Load the results from a JMH JSON results file
+     */
+    public static List<Result> load(@NonNull File file) throws IOException {
+        return parse(new ObjectMapper().readTree(file));
+    }
+
+    /**
+     * Parse the results from JMH JSON format
+     */
+    public static List<Result> parse(@NonNull String json) throws IOException {
+        return parse(new ObjectMapper().readTree(json));
+    }
+
+    protected static List<Result> parse(JsonNode root) {
+        if (!root.isArray()) {
+            throw new IllegalArgumentException("Expected JSON array of JMH results, got: " + root.getNodeType());
+        }
+        List<Result> out = new ArrayList<>();
+        for (JsonNode n : root) {
+            Map<String, String> params = new LinkedHashMap<>();
+            JsonNode p = n.get("params");
+            if (p != null) {
+                Iterator<Map.Entry<String, JsonNode>> iter = p.fields();
+                while (iter.hasNext()) {
+                    Map.Entry<String, JsonNode> e = iter.next();
+                    params.put(e.getKey(), e.getValue().asText());
+                }
+            }
+            JsonNode m = n.get("primaryMetric");
+            double error = m.has("scoreError") ? m.get("scoreError").asDouble(Double.NaN) : Double.NaN;
+            out.add(new Result(n.get("benchmark").asText(), n.get("mode").asText(), params,
+                    m.get("score").asDouble(), error, m.get("scoreUnit").asText()));
+        }
+        return out;
+    }
+
+    /**
+     * Compare the baseline and current results. Results present in only one of the two sets are ignored
+     *
+     * @param baseline         Baseline results
+     * @param current          Current results
+     * @param thresholdPercent Slowdown (as a percentage) above which a result is considered a regression
+     * @return Comparisons, in the order of the current results
+     */
+    public static List<Comparison> compare(@NonNull List<Result> baseline, @NonNull List<Result> current, double thresholdPercent) {
+        Map<String, Result> baseMap = new HashMap<>();
+        for (Result r : baseline) {
+            baseMap.put(r.key(), r);
+        }
+
+        List<Comparison> out = new ArrayList<>();
+        for (Result c : current) {
+            Result b = baseMap.get(c.key());
+            if (b == null)
+                continue;
+            if (!b.getUnit().equals(c.getUnit())) {
+                throw new IllegalStateException("Different units for benchmark " + c.key() + ": " + b.getUnit() + " vs. " + c.getUnit());
+            }
+            double speedup = c.higherIsBetter() ? c.getScore() / b.getScore() : b.getScore() / c.getScore();
+            boolean regression = speedup < 1.0 / (1.0 + thresholdPercent / 100.0);
+            out.add(new Comparison(c.key(), b, c, speedup, regression));
+        }
+        return out;
+    }
+
+    /**
+     * Format the comparisons as a table
+     */
+    public static String format(List<Comparison> comparisons) {
+        int keyWidth = 10;
+        for (Comparison c : comparisons) {
+            keyWidth = Math.max(keyWidth, c.getKey().length());
+        }
+        StringBuilder sb = new StringBuilder();
+        String fmt = "%-" + keyWidth + "s  %14s  %14s  %-10s  %8s  %s\n";
+        sb.append(String.format(fmt, "Benchmark", "Baseline", "Current", "Unit", "Speedup", ""));
+        for (Comparison c : comparisons) {
+            sb.append(String.format(fmt, c.getKey(), String.format("%.3f", c.getBaseline().getScore()),
+                    String.format("%.3f", c.getCurrent().getScore()), c.getCurrent().getUnit(),
+                    String.format("%.3fx", c.getSpeedup()), c.isRegression() ? "REGRESSION" : ""));
+        }
+        return sb.toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: BenchmarkComparison <baseline.json> <current.json> [thresholdPercent]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD_PERCENT;
+        List<Comparison> comparisons = compare(load(new File(args[0])), load(new File(args[1])), threshold);
+        System.out.println(format(comparisons));
+
+        int regressions = 0;
+        for (Comparison c : comparisons) {
+            if (c.isRegression())
+                regressions++;
+        }
+        System.out.println(regressions + " regression(s) found (threshold: " + threshold + "%)");
+        System.exit(regressions > 0 ? 1 : 0);
+    }
+}
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.benchmarks;
+
+import lombok.extern.slf4j.Slf4j;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point for the benchmark jar. Accepts all of the standard JMH command line options (for example: benchmark
+ * regex, -p for parameters, -f for forks), but unlike the default JMH main method, results are always written in JSON
+ * format unless otherwise specified - by default to {@code dl4j-benchmarks-<version>.json}, where the version is taken
+ * from the "dl4j.benchmark.version" system property, or the jar manifest.<br>
+ * Results from different versions can then be compared using {@link BenchmarkComparison}.<br>
+ * <br>
+ * Usage: {@code java -jar benchmarks.jar [JMH options]}, for example
+ * {@code java -jar benchmarks.jar LayerBenchmark -p layer=lstm -rff lstm.json}
+ */
+@Slf4j
+public class BenchmarkRunner {
+    public static final String VERSION_PROPERTY = "dl4j.benchmark.version";
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        if (cmd.shouldHelp() || cmd.shouldList() || cmd.shouldListWithParams() || cmd.shouldListProfilers()
+                || cmd.shouldListResultFormats()) {
+            Main.main(args);
+            return;
+        }
+
+        ChainedOptionsBuilder b = new OptionsBuilder().parent(cmd);
+        if (!cmd.getResultFormat().hasValue()) {
+            b.resultFormat(ResultFormatType.JSON);
+        }
+        if (!cmd.getResult().hasValue()) {
+            b.result("dl4j-benchmarks-" + version() + ".json");
+        }
+        new Runner(b.build()).run();
+    }
+
+    /**
+     * @return The version to use for the default results file name
+     */
+    public static String version() {
+        String v = System.getProperty(VERSION_PROPERTY);
+        if (v == null) {
+            v = BenchmarkRunner.class.getPackage().getImplementationVersion();
+        }
+        return v == null ? "dev" : v;
+    }
+}
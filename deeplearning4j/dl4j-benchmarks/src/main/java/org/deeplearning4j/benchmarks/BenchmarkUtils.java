@@ -0,0 +1,47 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.benchmarks;
+
+/**
+ * Utilities for parsing benchmark parameters
+ */
+public class BenchmarkUtils {
+
+    private BenchmarkUtils() {
+    }
+
+    /**
+     * Parse a shape parameter, in the format "AxBxC". Note that commas can't be used as a separator here, as JMH uses
+     * commas to separate multiple values for the same parameter on the command line
+     */
+    public static long[] parseShape(String shape) {
+        String[] split = shape.split("x");
+        long[] out = new long[split.length];
+        for (int i = 0; i < split.length; i++) {
+            out[i] = Long.parseLong(split[i].trim());
+        }
+        return out;
+    }
+
+    public static int[] toInt(long[] shape) {
+        int[] out = new int[shape.length];
+        for (int i = 0; i < shape.length; i++) {
+            out[i] = (int) shape[i];
+        }
+        return out;
+    }
+}
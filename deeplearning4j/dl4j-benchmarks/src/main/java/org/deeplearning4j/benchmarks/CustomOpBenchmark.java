@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.benchmarks;
+
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.DynamicCustomOp;
+import org.nd4j.linalg.api.ops.OpContext;
+import org.nd4j.linalg.api.ops.impl.transforms.pairwise.arithmetic.AddOp;
+import org.nd4j.linalg.factory.Nd4j;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the invocation overhead of custom ops ({@link DynamicCustomOp}). For small arrays, the time is
+ * dominated by op construction, argument marshalling and JNI overhead rather than the actual computation.<br>
+ * Compares: building a new op per call, re-executing the same op instance, executing via a reused {@link OpContext},
+ * and the equivalent INDArray method
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CustomOpBenchmark {
+
+    @Param({"1", "1024", "65536"})
+    public long length;
+
+    @Param({"FLOAT", "DOUBLE"})
+    public String dataType;
+
+    private INDArray x;
+    private INDArray y;
+    private INDArray z;
+    private DynamicCustomOp op;
+    private OpContext context;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        DataType dt = DataType.valueOf(dataType);
+        x = Nd4j.rand(dt, 1, length);
+        y = Nd4j.rand(dt, 1, length);
+        z = Nd4j.create(dt, 1, length);
+        op = new AddOp(new INDArray[]{x, y}, new INDArray[]{z});
+
+        context = Nd4j.getExecutioner().buildContext();
+        context.setInputArray(0, x);
+        context.setInputArray(1, y);
+        context.setOutputArray(0, z);
+    }
+
+    @Benchmark
+    public INDArray[] newOpPerCall() {
+        DynamicCustomOp add = DynamicCustomOp.builder("add")
+                .addInputs(x, y)
+                .addOutputs(z)
+                .build();
+        return Nd4j.exec(add);
+    }
+
+    @Benchmark
+    public INDArray[] reuseOp() {
+        return Nd4j.exec(op);
+    }
+
+    @Benchmark
+    public INDArray[] reuseOpContext() {
+        return Nd4j.exec(op, context);
+    }
+
+    @Benchmark
+    public INDArray ndarrayMethod() {
+        return x.add(y, z);
+    }
+}
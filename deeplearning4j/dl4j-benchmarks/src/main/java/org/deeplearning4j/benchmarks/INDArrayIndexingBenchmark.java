@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.benchmarks;
+
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.shape.Shape;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for element access and view creation on BaseNDArray: scalar get/put (by linear index and by
+ * N-dimensional index), row/tensor views and interval indexing
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class INDArrayIndexingBenchmark {
+
+    @Param({"64x64", "512x512", "16x32x32"})
+    public String shape;
+
+    @Param({"FLOAT", "DOUBLE"})
+    public String dataType;
+
+    private INDArray arr;
+    private long length;
+    private long[][] indices;
+    private long next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        arr = Nd4j.rand(DataType.valueOf(dataType), BenchmarkUtils.parseShape(shape));
+        length = arr.length();
+
+        //Pre-compute N-dimensional indices for a subset of elements, so index calculation isn't part of the benchmark
+        int n = (int) Math.min(length, 1024);
+        indices = new long[n][0];
+        for (int i = 0; i < n; i++) {
+            indices[i] = Shape.ind2sub(arr.shape(), (i * 7919L) % length);
+        }
+    }
+
+    private long nextLinear() {
+        next = (next + 7919) % length;
+        return next;
+    }
+
+    @Benchmark
+    public double getDoubleLinear() {
+        return arr.getDouble(nextLinear());
+    }
+
+    @Benchmark
+    public double getDoubleIndices() {
+        next = (next + 1) % indices.length;
+        return arr.getDouble(indices[(int) next]);
+    }
+
+    @Benchmark
+    public INDArray putScalarLinear() {
+        return arr.putScalar(nextLinear(), 1.0);
+    }
+
+    @Benchmark
+    public INDArray getRow() {
+        next = (next + 1) % arr.size(0);
+        return arr.getRow(next);
+    }
+
+    @Benchmark
+    public INDArray tensorAlongLastDimension() {
+        next = (next + 1) % (length / arr.size(arr.rank() - 1));
+        return arr.tensorAlongDimension((int) next, arr.rank() - 1);
+    }
+
+    @Benchmark
+    public INDArray getInterval() {
+        return arr.get(NDArrayIndex.interval(1, arr.size(0) - 1), NDArrayIndex.all());
+    }
+
+    @Benchmark
+    public INDArray dupView() {
+        return arr.get(NDArrayIndex.interval(0, 2, arr.size(0)), NDArrayIndex.all()).dup();
+    }
+}
@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.benchmarks;
+
+import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.conf.ConvolutionMode;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.ConvolutionLayer;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.LSTM;
+import org.deeplearning4j.nn.gradient.Gradient;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.primitives.Pair;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for layer forward pass (inference) and forward + backward pass (training) for Dense, 2D convolution and
+ * LSTM layers.<br>
+ * Layer sizes: Dense 256 -> 256; Conv2d 16 -> 32 channels, 3x3 kernel, 32x32 input (same mode); LSTM 64 -> 64, 32 time
+ * steps
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LayerBenchmark {
+
+    @Param({"dense", "conv2d", "lstm"})
+    public String layer;
+
+    @Param({"1", "32"})
+    public int minibatch;
+
+    @Param({"FLOAT", "DOUBLE"})
+    public String dataType;
+
+    private Layer l;
+    private INDArray input;
+    private INDArray epsilon;
+    private final LayerWorkspaceMgr mgr = LayerWorkspaceMgr.noWorkspaces();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        DataType dt = DataType.valueOf(dataType);
+        NeuralNetConfiguration.ListBuilder b = new NeuralNetConfiguration.Builder()
+                .dataType(dt)
+                .seed(12345)
+                .list();
+        switch (layer) {
+            case "dense":
+                b.layer(new DenseLayer.Builder().nIn(256).nOut(256).activation(Activation.TANH).build());
+                input = Nd4j.rand(dt, minibatch, 256);
+                break;
+            case "conv2d":
+                b.layer(new ConvolutionLayer.Builder().kernelSize(3, 3).nIn(16).nOut(32)
+                        .convolutionMode(ConvolutionMode.Same).activation(Activation.RELU).build());
+                input = Nd4j.rand(dt, minibatch, 16, 32, 32);
+                break;
+            case "lstm":
+                b.layer(new LSTM.Builder().nIn(64).nOut(64).activation(Activation.TANH).build());
+                input = Nd4j.rand(dt, minibatch, 64, 32);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown layer type: " + layer);
+        }
+        MultiLayerConfiguration conf = b.build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        net.initGradientsView();        //Usually initialized on first fit call
+        l = net.getLayer(0);
+
+        INDArray out = l.activate(input, true, mgr);
+        epsilon = Nd4j.rand(dt, out.shape());
+    }
+
+    @Benchmark
+    public INDArray forward() {
+        return l.activate(input, false, mgr);
+    }
+
+    @Benchmark
+    public Pair<Gradient, INDArray> forwardBackward() {
+        l.activate(input, true, mgr);
+        return l.backpropGradient(epsilon, mgr);
+    }
+}
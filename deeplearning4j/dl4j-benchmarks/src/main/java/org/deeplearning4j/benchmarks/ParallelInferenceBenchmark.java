@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.benchmarks;
+
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.parallelism.ParallelInference;
+import org.deeplearning4j.parallelism.inference.InferenceMode;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of ParallelInference with 8 concurrent callers, comparing per-worker model copies (SEQUENTIAL and BATCHED
+ * modes), workers sharing a single parameters array ("_shared" variants) and INPLACE mode (replicas used in the calling
+ * threads, always sharing parameters).<br>
+ * Model: MLP 512 -> 1024 -> 1024 -> 10, about 1.6M parameters; single example per request
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class ParallelInferenceBenchmark {
+
+    @Param({"sequential", "sequential_shared", "batched", "batched_shared", "inplace"})
+    public String mode;
+
+    @Param({"4"})
+    public int workers;
+
+    private ParallelInference inference;
+
+    @State(Scope.Thread)
+    public static class Input {
+        private INDArray features;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            features = Nd4j.rand(1, 512);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .seed(12345)
+                .activation(Activation.RELU)
+                .list()
+                .layer(new DenseLayer.Builder().nIn(512).nOut(1024).build())
+                .layer(new DenseLayer.Builder().nIn(1024).nOut(1024).build())
+                .layer(new OutputLayer.Builder().nIn(1024).nOut(10).activation(Activation.SOFTMAX).build())
+                .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        ParallelInference.Builder b = new ParallelInference.Builder(net)
+                .workers(workers)
+                .batchLimit(32)
+                .queueLimit(64);
+        switch (mode) {
+            case "sequential":
+            case "sequential_shared":
+                b.inferenceMode(InferenceMode.SEQUENTIAL);
+                break;
+            case "batched":
+            case "batched_shared":
+                b.inferenceMode(InferenceMode.BATCHED);
+                break;
+            case "inplace":
+                b.inferenceMode(InferenceMode.INPLACE);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+        inference = b.shareParameters(mode.endsWith("_shared")).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        inference.shutdown();
+    }
+
+    @Benchmark
+    public INDArray output(Input input) {
+        return inference.output(input.features);
+    }
+}
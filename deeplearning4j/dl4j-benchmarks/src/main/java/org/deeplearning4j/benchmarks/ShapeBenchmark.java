@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.benchmarks;
+
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.shape.Shape;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the {@link Shape} utilities used on (almost) every op invocation: stride calculation, offset and
+ * index calculation, shape comparison, reduction and broadcast shapes, and reshape without copy
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ShapeBenchmark {
+
+    @Param({"128x128", "8x16x32x32", "2x4x8x8x8x4"})
+    public String shape;
+
+    private long[] s;
+    private long[] sCopy;
+    private int[] sInt;
+    private long[] shapeInfo;
+    private long[] idx;
+    private int[] idxInt;
+    private long[] broadcastShape;
+    private long[] reshape;
+    private int[] reduceDims;
+    private INDArray arr;
+    private INDArray view;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        s = BenchmarkUtils.parseShape(shape);
+        sCopy = s.clone();
+        sInt = BenchmarkUtils.toInt(s);
+        arr = Nd4j.create(DataType.FLOAT, s);
+        shapeInfo = arr.shapeInfoJava();
+        view = arr.get(NDArrayIndex.interval(0, s[0] / 2), NDArrayIndex.all());
+
+        idx = new long[s.length];
+        idxInt = new int[s.length];
+        for (int i = 0; i < s.length; i++) {
+            idx[i] = s[i] - 1;
+            idxInt[i] = (int) s[i] - 1;
+        }
+
+        broadcastShape = s.clone();
+        broadcastShape[0] = 1;
+
+        reshape = new long[]{s[0], arr.length() / s[0]};
+        reduceDims = new int[]{s.length - 1};
+    }
+
+    @Benchmark
+    public long[] strides() {
+        return Nd4j.getStrides(s, 'c');
+    }
+
+    @Benchmark
+    public long offset() {
+        return Shape.getOffset(shapeInfo, idx);
+    }
+
+    @Benchmark
+    public long sub2Ind() {
+        return Shape.sub2Ind(sInt, idxInt);
+    }
+
+    @Benchmark
+    public long[] ind2sub() {
+        return Shape.ind2sub(s, arr.length() - 1);
+    }
+
+    @Benchmark
+    public boolean shapeEquals() {
+        return Shape.shapeEquals(s, sCopy);
+    }
+
+    @Benchmark
+    public long[] reducedShape() {
+        return Shape.getReducedShape(s, reduceDims, true);
+    }
+
+    @Benchmark
+    public long[] broadcastOutputShape() {
+        return Shape.broadcastOutputShape(s, broadcastShape);
+    }
+
+    @Benchmark
+    public boolean isContiguousView() {
+        return Shape.isContiguousInBuffer(view);
+    }
+
+    @Benchmark
+    public INDArray reshapeNoCopy() {
+        return Shape.newShapeNoCopy(arr, reshape, false);
+    }
+}
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.benchmarks;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestBenchmarkComparison {
+
+    private static String result(String benchmark, String mode, String layer, double score) {
+        return "{\"benchmark\":\"" + benchmark + "\",\"mode\":\"" + mode + "\",\"threads\":1,\"forks\":1," +
+                "\"params\":{\"layer\":\"" + layer + "\",\"minibatch\":\"32\"}," +
+                "\"primaryMetric\":{\"score\":" + score + ",\"scoreError\":0.5,\"scoreUnit\":\"us/op\"}}";
+    }
+
+    @Test
+    public void testCompare() throws Exception {
+        String base = "[" + result("LayerBenchmark.forward", "avgt", "dense", 100.0) + "," +
+                result("LayerBenchmark.forward", "avgt", "lstm", 200.0) + "," +
+                result("LayerBenchmark.forward", "thrpt", "dense", 50.0) + "," +
+                result("LayerBenchmark.forwardBackward", "avgt", "dense", 300.0) + "]";
+        String curr = "[" + result("LayerBenchmark.forward", "avgt", "dense", 50.0) + "," +
+                result("LayerBenchmark.forward", "avgt", "lstm", 250.0) + "," +
+                result("LayerBenchmark.forward", "thrpt", "dense", 40.0) + "," +
+                result("LayerBenchmark.forward", "avgt", "conv2d", 10.0) + "]";
+
+        List<BenchmarkComparison.Result> b = BenchmarkComparison.parse(base);
+        List<BenchmarkComparison.Result> c = BenchmarkComparison.parse(curr);
+        assertEquals(4, b.size());
+        assertEquals("32", b.get(0).getParams().get("minibatch"));
+        assertEquals("us/op", b.get(0).getUnit());
+
+        List<BenchmarkComparison.Comparison> cmp = BenchmarkComparison.compare(b, c, 10.0);
+        //conv2d and forwardBackward are only present in one of the two sets
+        assertEquals(3, cmp.size());
+
+        assertEquals(2.0, cmp.get(0).getSpeedup(), 1e-6);
+        assertFalse(cmp.get(0).isRegression());
+
+        assertEquals(0.8, cmp.get(1).getSpeedup(), 1e-6);
+        assertTrue(cmp.get(1).isRegression());
+
+        //Throughput: higher is better
+        assertEquals(0.8, cmp.get(2).getSpeedup(), 1e-6);
+        assertTrue(cmp.get(2).isRegression());
+
+        String table = BenchmarkComparison.format(cmp);
+        assertTrue(table, table.contains("REGRESSION"));
+        assertTrue(table, table.contains("{layer=lstm, minibatch=32}"));
+    }
+}
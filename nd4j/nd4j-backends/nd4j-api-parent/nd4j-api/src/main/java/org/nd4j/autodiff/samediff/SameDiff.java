@@ -112,6 +112,8 @@ public class SameDiff extends SDBaseOps {
     private final Map<String,SameDiffOp> ops = new LinkedHashMap<>();
     @Getter
     private final Map<Long,InferenceSession> sessions = new ConcurrentHashMap<>();      //Key: thread ID
+    //Ops whose output arrays were shared between ops by the execution plans of cleared sessions - see clearSessions()
+    private final Set<String> planSharedOutputOps = Collections.newSetFromMap(new ConcurrentHashMap<String,Boolean>());
 
     private final Map<String,DeviceLocalNDArray> constantArrays = new ConcurrentHashMap<>();
     private final Map<String,DeviceLocalNDArray> variablesArrays = new ConcurrentHashMap<>();     //TODO issues with DeviceLocal +  mutable / changed during training?
@@ -243,6 +245,27 @@ public class SameDiff extends SDBaseOps {
     @Setter
     boolean logExecution = true;
 
+    /**
+     * If true: inference (via the exec methods) compiles the required subgraph into a static
+     * {@link org.nd4j.autodiff.samediff.internal.ExecutionPlan}, which is cached and reused for subsequent calls with the
+     * same requested outputs and placeholder shapes. This avoids the per-call scheduling and output shape calculation
+     * overhead of dynamic execution, and reuses intermediate arrays. Graphs containing control flow ops are always
+     * executed dynamically.<br>
+     * Note that when enabled, only the requested outputs are available after execution.
+     */
+    @Getter
+    @Setter
+    private boolean useExecutionPlans = false;
+
+    /**
+     * Number of ops that may be executed concurrently during inference, and the number of (OpenMP) threads each op may
+     * use. See {@link #setInterOpParallelism(int, int)}
+     */
+    @Getter
+    private int interOpThreads = 1;
+    @Getter
+    private int intraOpThreads = 0;
+
     @Getter
     private SameDiff parent;
 
@@ -804,7 +827,7 @@ public class SameDiff extends SDBaseOps {
 
         // FIXME: remove this before release
         if (sessions.get(Thread.currentThread().getId()) == null) {
-            sessions.put(Thread.currentThread().getId(), new InferenceSession(this));
+            sessions.put(Thread.currentThread().getId(), new InferenceSession(this, planSharedOutputOps));
         }
 
         boolean duped = false;
@@ -2363,7 +2386,7 @@ public class SameDiff extends SDBaseOps {
         }
 
         //Remove all sessions in case they have any cached arrays/state
-        sessions.clear();
+        clearSessions();
 
         //If gradient function has been defined, remove it (so it will be recreated later)
         sameDiffFunctionInstances.remove("grad");
@@ -2471,7 +2494,7 @@ public class SameDiff extends SDBaseOps {
         }
 
         //Remove all sessions in case they have any cached arrays/state
-        sessions.clear();
+        clearSessions();
 
         //If gradient function has been defined, remove it (so it will be recreated later)
         sameDiffFunctionInstances.remove("grad");
@@ -2536,6 +2559,27 @@ public class SameDiff extends SDBaseOps {
     }
 
 
+    /**
+     * Remove a variable - and its array, if any - from the graph. The variable must not be used as an input to any op.<br>
+     * Note that this does not remove the op that the variable is an output of (if any): this method is usually used by
+     * graph transforms (see {@link org.nd4j.autodiff.samediff.transform.GraphOptimizer}) after the ops have been removed.
+     *
+     * @param name Name of the variable to remove
+     */
+    public void removeVariable(@NonNull String name) {
+        Variable v = variables.get(name);
+        Preconditions.checkState(v != null, "No variable with name \"%s\" exists", name);
+        Preconditions.checkState(v.getInputsForOp() == null || v.getInputsForOp().isEmpty(),
+                "Cannot remove variable \"%s\": variable is used as input to ops %s", name, v.getInputsForOp());
+        variables.remove(name);
+        constantArrays.remove(name);
+        variablesArrays.remove(name);
+        variableNameToShape.remove(name);
+        for (Map<String, INDArray> m : placeholdersPerThread.values()) {
+            m.remove(name);
+        }
+    }
+
     /**
      * Remove an argument for a function. Note that if this function does not contain the argument, it will just be a no op.
      *
@@ -3910,7 +3954,7 @@ public class SameDiff extends SDBaseOps {
         long threadId = Thread.currentThread().getId();
         if(!sessions.containsKey(threadId)){
             log.info("Creating new InferenceSession for thread {}", threadId);
-            sessions.put(threadId, new InferenceSession(this));
+            sessions.put(threadId, new InferenceSession(this, planSharedOutputOps));
         }
 
         List<String> phNames = inputs();
@@ -3934,6 +3978,63 @@ public class SameDiff extends SDBaseOps {
     }
 
 
+    /**
+     * See {@link #setInterOpParallelism(int, int)} - the number of intra-op threads is set automatically
+     */
+    public void setInterOpParallelism(int interOpThreads){
+        setInterOpParallelism(interOpThreads, 0);
+    }
+
+    /**
+     * Set the number of ops that may be executed concurrently during inference. If greater than 1, inference compiles
+     * the required subgraph into an {@link org.nd4j.autodiff.samediff.internal.ExecutionPlan} (as per
+     * {@link #setUseExecutionPlans(boolean)}) whose independent ops are executed in parallel on a work-stealing thread
+     * pool - see {@link InterOpExecutor}. Graphs containing control flow ops are always executed dynamically, on the
+     * calling thread.<br>
+     * Executors (thread pools) are shared between all SameDiff instances using the same configuration.
+     *
+     * @param interOpThreads Number of ops that may execute concurrently. 1 (default) to disable parallel execution
+     * @param intraOpThreads Number of (OpenMP) threads each op may use when executed in parallel. If <= 0: the number of
+     *                       available processors divided by interOpThreads
+     */
+    public void setInterOpParallelism(int interOpThreads, int intraOpThreads){
+        Preconditions.checkArgument(interOpThreads >= 1, "Number of inter-op threads must be >= 1, got %s", interOpThreads);
+        this.interOpThreads = interOpThreads;
+        this.intraOpThreads = intraOpThreads;
+        //Execution plans compiled for sequential execution can't be executed in parallel, and vice versa
+        clearSessions();
+    }
+
+    /**
+     * Get the planned memory footprint for calculating the specified outputs, given the placeholder arrays (shapes).
+     * Execution plans must be enabled via {@link #setUseExecutionPlans(boolean)}. If the execution plan for these outputs
+     * and placeholder shapes has not been executed yet, a single forward pass is performed to determine all array shapes.
+     *
+     * @param placeholders Placeholder arrays
+     * @param outputs      Outputs to calculate
+     * @return The memory plan, or null if the outputs cannot be statically planned (for example, due to control flow ops)
+     */
+    public MemoryPlan planMemory(Map<String,INDArray> placeholders, String... outputs){
+        Preconditions.checkState(useExecutionPlans, "Execution plans must be enabled to plan memory: use setUseExecutionPlans(true)");
+        Preconditions.checkState(outputs != null && outputs.length > 0, "No outputs were specified");
+        long threadId = Thread.currentThread().getId();
+        if(!sessions.containsKey(threadId)){
+            log.info("Creating new InferenceSession for thread {}", threadId);
+            sessions.put(threadId, new InferenceSession(this, planSharedOutputOps));
+        }
+        return sessions.get(threadId).getMemoryPlan(Arrays.asList(outputs), placeholders);
+    }
+
+    private void clearSessions(){
+        for(InferenceSession s : sessions.values()){
+            //Closing a plan releases its arena, but the ops still reference arena arrays as their outputs: sessions
+            // created later must always allocate new output arrays for these ops
+            planSharedOutputOps.addAll(s.getSharedOutputOps());
+            s.clearExecutionPlans();
+        }
+        sessions.clear();
+    }
+
     protected int asFlatNode(String name, @NonNull SameDiff scope, @NonNull FlatBufferBuilder bufferBuilder) {
         int scopeName = bufferBuilder.createString(name);
 
@@ -0,0 +1,759 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.autodiff.samediff.internal;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.javacpp.*;
+import org.bytedeco.javacpp.indexer.*;
+import org.nd4j.autodiff.functions.DifferentialFunction;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.VariableType;
+import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
+import org.nd4j.linalg.api.memory.enums.AllocationPolicy;
+import org.nd4j.linalg.api.memory.enums.LearningPolicy;
+import org.nd4j.linalg.api.memory.enums.MemoryKind;
+import org.nd4j.linalg.api.memory.enums.SpillPolicy;
+import org.nd4j.linalg.api.memory.pointers.PagedPointer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.*;
+import org.nd4j.linalg.api.ops.executioner.OpExecutioner;
+import org.nd4j.linalg.api.ops.impl.controlflow.If;
+import org.nd4j.linalg.api.ops.impl.controlflow.Where;
+import org.nd4j.linalg.api.ops.impl.controlflow.WhereNumpy;
+import org.nd4j.linalg.api.ops.impl.controlflow.While;
+import org.nd4j.linalg.api.ops.impl.controlflow.compat.*;
+import org.nd4j.linalg.api.ops.impl.image.NonMaxSuppression;
+import org.nd4j.linalg.api.ops.impl.shape.tensorops.BaseTensorOp;
+import org.nd4j.linalg.api.ops.impl.transforms.custom.*;
+import org.nd4j.linalg.api.ops.impl.transforms.gradient.GradientBackwardsMarker;
+import org.nd4j.linalg.api.ops.impl.transforms.same.Identity;
+import org.nd4j.linalg.api.shape.LongShapeDescriptor;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.lang.ref.WeakReference;
+import java.util.*;
+
+/**
+ * ExecutionPlan: a statically compiled schedule for a SameDiff forward pass.<br>
+ * Where {@link InferenceSession} (via {@link AbstractSession}) works out dynamically - on every call - which ops are
+ * available for execution, an ExecutionPlan does this once: the required subgraph for a given set of outputs is
+ * topologically sorted into a flat list of steps, with every variable assigned an integer slot. Execution then
+ * simply runs the steps in order, looking up inputs by slot index.<br>
+ * <br>
+ * The first execution of a plan is used to determine the output shapes of all ops. On subsequent executions:<br>
+ * - Output shape calculation is skipped for all ops whose output shapes can't change (given the placeholder
+ * shapes/types the plan was compiled for)<br>
+ * - Output arrays are preallocated and reused between calls. Arrays for intermediate values are shared between ops
+ * based on liveness: once the last consumer of a value has executed, its array may be used as the output of a later op
+ * with the same shape and datatype<br>
+ * <br>
+ * Only graphs without control flow (Switch/Merge/Enter/Exit etc) or TensorArray ops can be planned - see
+ * {@link #canPlan(SameDiff, List)}. Ops whose output shapes depend on the <i>values</i> (not just the shapes) of their
+ * inputs - for example, ops with non-constant integer inputs such as a shape argument, or ops like Unique - have their
+ * output shapes calculated on every execution, as do all ops downstream of them.<br>
+ * <br>
+ * The memory for intermediate arrays is planned via {@link MemoryPlanner}; see {@link #getMemoryPlan()} for the
+ * planned peak memory footprint.<br>
+ * Note that as intermediate arrays are reused, only the requested output arrays are valid after execution.
+ * Output arrays (as with {@link InferenceSession}) are reused by the next execution.<br>
+ * <br>
+ * Plans compiled for parallel execution ({@link #create(SameDiff, List, boolean)}) are executed by an
+ * {@link InterOpExecutor}: independent steps may run concurrently, hence intermediate arrays are not shared between ops.
+ */
+@Slf4j
+public class ExecutionPlan {
+
+    protected final SameDiff sameDiff;
+    @Getter
+    protected final List<String> outputs;
+    //Number of ops and variables when the plan was compiled - used to detect graph modifications
+    protected final int numOps;
+    protected final int numVariables;
+
+    //Slot index -> variable name
+    protected final String[] slotNames;
+    protected final int[] placeholderSlots;
+    protected final int[] constVarSlots;
+    protected final int[] outputSlots;
+    protected final Step[] steps;
+    //Number of steps each step depends on, and the indices of the steps that depend on each step
+    protected final int[] numDependencies;
+    protected final int[][] dependents;
+    @Getter
+    protected final boolean parallel;
+
+    //Arrays, shapes and types for the constants and variables, as of compilation. If these change, the plan is no
+    // longer valid. Arrays are weakly referenced: the plan shouldn't keep replaced arrays alive
+    protected final WeakReference<INDArray>[] constVarArrays;
+    protected final long[][] constVarShapes;
+    protected final DataType[] constVarTypes;
+
+    protected final INDArray[] values;
+    @Getter
+    protected boolean shapesResolved = false;
+    protected boolean closed = false;
+    /**
+     * The memory plan for this execution plan: null until the first execution (which determines array shapes)
+     */
+    @Getter
+    protected MemoryPlan memoryPlan;
+    protected MemoryWorkspace arenaWorkspace;
+    protected PagedPointer arena;
+    //Names of ops that have one or more output arrays shared with other ops
+    @Getter
+    protected final Set<String> sharedOutputOps = new HashSet<>();
+
+    protected static class Step {
+        protected final String opName;
+        protected final DifferentialFunction op;
+        protected final int[] inputs;
+        protected final int[] outputs;
+        protected final boolean identity;
+        //If true: output shapes must be calculated on every execution
+        protected boolean dynamicShape;
+        protected INDArray[] outArrays;
+
+        protected Step(String opName, DifferentialFunction op, int[] inputs, int[] outputs) {
+            this.opName = opName;
+            this.op = op;
+            this.inputs = inputs;
+            this.outputs = outputs;
+            this.identity = op instanceof Identity;
+        }
+    }
+
+    protected ExecutionPlan(@NonNull SameDiff sameDiff, @NonNull List<String> outputs, boolean parallel) {
+        this.sameDiff = sameDiff;
+        this.parallel = parallel;
+        this.outputs = Collections.unmodifiableList(new ArrayList<>(outputs));
+        this.numOps = sameDiff.getOps().size();
+        this.numVariables = sameDiff.getVariables().size();
+
+        //Step 1: topological sort of the required subgraph (depth first, from the requested outputs)
+        List<String> opOrder = new ArrayList<>();
+        List<String> leafVars = new ArrayList<>();
+        Set<String> visitedVars = new HashSet<>();
+        Set<String> visitedOps = new HashSet<>();
+        for (String s : outputs) {
+            visitVariable(s, visitedVars, visitedOps, opOrder, leafVars, new HashSet<String>());
+        }
+
+        //Step 2: assign slots to all variables
+        Map<String, Integer> slotIdx = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        List<Integer> phSlots = new ArrayList<>();
+        List<Integer> cvSlots = new ArrayList<>();
+        for (String s : leafVars) {
+            int idx = names.size();
+            names.add(s);
+            slotIdx.put(s, idx);
+            SDVariable v = sameDiff.getVariable(s);
+            if (v.isPlaceHolder()) {
+                phSlots.add(idx);
+            } else {
+                cvSlots.add(idx);
+            }
+        }
+
+        steps = new Step[opOrder.size()];
+        for (int i = 0; i < steps.length; i++) {
+            String opName = opOrder.get(i);
+            DifferentialFunction df = sameDiff.getFunctionById(opName);
+            String[] argNames = df.argNames();
+            int[] in = new int[argNames == null ? 0 : argNames.length];
+            for (int j = 0; j < in.length; j++) {
+                Integer idx = slotIdx.get(argNames[j]);
+                Preconditions.checkState(idx != null, "No slot for input %s of op %s", argNames[j], opName);
+                in[j] = idx;
+            }
+            String[] outNames = df.outputVariablesNames();
+            int[] out = new int[outNames.length];
+            for (int j = 0; j < outNames.length; j++) {
+                int idx = names.size();
+                names.add(outNames[j]);
+                slotIdx.put(outNames[j], idx);
+                out[j] = idx;
+            }
+            steps[i] = new Step(opName, df, in, out);
+        }
+
+        slotNames = names.toArray(new String[names.size()]);
+        placeholderSlots = toIntArray(phSlots);
+        constVarSlots = toIntArray(cvSlots);
+        outputSlots = new int[outputs.size()];
+        for (int i = 0; i < outputSlots.length; i++) {
+            outputSlots[i] = slotIdx.get(outputs.get(i));
+        }
+        values = new INDArray[slotNames.length];
+
+        constVarArrays = new WeakReference[constVarSlots.length];
+        constVarShapes = new long[constVarSlots.length][0];
+        constVarTypes = new DataType[constVarSlots.length];
+        for (int i = 0; i < constVarSlots.length; i++) {
+            INDArray arr = sameDiff.getArrForVarName(slotNames[constVarSlots[i]]);
+            Preconditions.checkState(arr != null, "No array for constant or variable %s", slotNames[constVarSlots[i]]);
+            constVarArrays[i] = new WeakReference<>(arr);
+            constVarShapes[i] = arr.shape();
+            constVarTypes[i] = arr.dataType();
+        }
+
+        //Step 3: work out the dependencies between steps - data inputs and control dependencies
+        int[] producer = new int[slotNames.length];
+        Arrays.fill(producer, -1);
+        for (int i = 0; i < steps.length; i++) {
+            for (int j : steps[i].outputs) {
+                producer[j] = i;
+            }
+        }
+        numDependencies = new int[steps.length];
+        List<List<Integer>> dependentsList = new ArrayList<>();
+        for (int i = 0; i < steps.length; i++) {
+            dependentsList.add(new ArrayList<Integer>());
+        }
+        for (int i = 0; i < steps.length; i++) {
+            Set<String> depVars = new HashSet<>();
+            for (int j : steps[i].inputs) {
+                depVars.add(slotNames[j]);
+                List<String> cd = sameDiff.getVariables().get(slotNames[j]).getControlDeps();
+                if (cd != null)
+                    depVars.addAll(cd);
+            }
+            List<String> opControlDeps = sameDiff.getOps().get(steps[i].opName).getControlDeps();
+            if (opControlDeps != null)
+                depVars.addAll(opControlDeps);
+
+            Set<Integer> deps = new HashSet<>();
+            for (String v : depVars) {
+                Integer slot = slotIdx.get(v);
+                if (slot != null && producer[slot] >= 0)
+                    deps.add(producer[slot]);
+            }
+            numDependencies[i] = deps.size();
+            for (Integer d : deps) {
+                dependentsList.get(d).add(i);
+            }
+        }
+        dependents = new int[steps.length][0];
+        for (int i = 0; i < steps.length; i++) {
+            dependents[i] = toIntArray(dependentsList.get(i));
+        }
+
+        //Step 4: work out which ops need shape calculation on every execution
+        boolean[] dynamicSlot = new boolean[slotNames.length];
+        for (int i : placeholderSlots) {
+            //Shape of a value-dependent op may change when placeholder values change (even if placeholder shapes don't)
+            dynamicSlot[i] = !sameDiff.getVariable(slotNames[i]).dataType().isFPType();
+        }
+        for (Step s : steps) {
+            boolean dynamic = isValueDependentShape(s.op);
+            for (int i : s.inputs) {
+                dynamic |= dynamicSlot[i];
+            }
+            s.dynamicShape = dynamic;
+            for (int i : s.outputs) {
+                //Floating point outputs of a "static" op don't make downstream shapes dynamic
+                dynamicSlot[i] = dynamic || !sameDiff.getVariable(slotNames[i]).dataType().isFPType();
+            }
+        }
+    }
+
+    /**
+     * Compile an execution plan for the specified outputs, if possible
+     *
+     * @param sameDiff SameDiff instance
+     * @param outputs  Outputs to calculate
+     * @return The execution plan, or null if the required subgraph can't be statically planned
+     */
+    public static ExecutionPlan create(@NonNull SameDiff sameDiff, @NonNull List<String> outputs) {
+        return create(sameDiff, outputs, false);
+    }
+
+    /**
+     * Compile an execution plan for the specified outputs, if possible
+     *
+     * @param sameDiff SameDiff instance
+     * @param outputs  Outputs to calculate
+     * @param parallel If true: the plan is compiled for parallel execution via {@link InterOpExecutor}
+     * @return The execution plan, or null if the required subgraph can't be statically planned
+     */
+    public static ExecutionPlan create(@NonNull SameDiff sameDiff, @NonNull List<String> outputs, boolean parallel) {
+        if (!canPlan(sameDiff, outputs))
+            return null;
+        return new ExecutionPlan(sameDiff, outputs, parallel);
+    }
+
+    /**
+     * Determine if the subgraph required to calculate the specified outputs can be statically planned.
+     * Subgraphs containing control flow ops (Switch, Merge, Enter, Exit, NextIteration, LoopCond, If, While),
+     * TensorArray ops or gradient ops can't be statically planned.
+     */
+    public static boolean canPlan(@NonNull SameDiff sameDiff, @NonNull List<String> outputs) {
+        Set<String> seen = new HashSet<>();
+        Queue<String> queue = new LinkedList<>(outputs);
+        while (!queue.isEmpty()) {
+            String varName = queue.remove();
+            if (!seen.add(varName))
+                continue;
+            Variable v = sameDiff.getVariables().get(varName);
+            if (v == null)
+                return false;
+            if (v.getControlDeps() != null)
+                queue.addAll(v.getControlDeps());
+            if (v.getOutputOfOp() == null) {
+                if (v.getVariable().getVariableType() == VariableType.ARRAY)
+                    return false;
+                continue;
+            }
+            SameDiffOp op = sameDiff.getOps().get(v.getOutputOfOp());
+            DifferentialFunction df = op.getOp();
+            if (df instanceof LoopCond || df instanceof Enter || df instanceof Exit || df instanceof NextIteration ||
+                    df instanceof Merge || df instanceof Switch || df instanceof If || df instanceof While ||
+                    df instanceof BaseTensorOp || df instanceof GradientBackwardsMarker || !(df instanceof Op || df instanceof CustomOp)) {
+                return false;
+            }
+            if (op.getInputsToOp() != null)
+                queue.addAll(op.getInputsToOp());
+            if (op.getControlDeps() != null)
+                queue.addAll(op.getControlDeps());
+        }
+        return true;
+    }
+
+    /**
+     * @return True if the plan was compiled against the current structure of the SameDiff instance, and the arrays for
+     * its constants and variables have not been replaced (and their shapes and datatypes are unchanged). Note that
+     * in-place modification of the values of integer constants (for example, a shape argument) is not detected
+     */
+    public boolean isValid() {
+        if (sameDiff.getOps().size() != numOps || sameDiff.getVariables().size() != numVariables)
+            return false;
+        for (int i = 0; i < constVarSlots.length; i++) {
+            INDArray arr = sameDiff.getArrForVarName(slotNames[constVarSlots[i]]);
+            if (arr == null || arr != constVarArrays[i].get() || arr.dataType() != constVarTypes[i] || !Arrays.equals(arr.shape(), constVarShapes[i]))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return Number of op execution steps in this plan
+     */
+    public int numSteps() {
+        return steps.length;
+    }
+
+    /**
+     * Execute the plan
+     *
+     * @param session           Session used to parameterize and execute the ops
+     * @param placeholderValues Placeholder values. Should already be preprocessed (cast to the correct type)
+     * @return The values of the requested outputs
+     */
+    public Map<String, INDArray> exec(@NonNull InferenceSession session, Map<String, INDArray> placeholderValues) {
+        return exec(session, placeholderValues, null);
+    }
+
+    /**
+     * Execute the plan, optionally running independent steps in parallel
+     *
+     * @param session           Session used to parameterize and execute the ops
+     * @param placeholderValues Placeholder values. Should already be preprocessed (cast to the correct type)
+     * @param executor          Executor to use for parallel execution. May be null only if this plan was not compiled
+     *                          for parallel execution
+     * @return The values of the requested outputs
+     */
+    public Map<String, INDArray> exec(@NonNull InferenceSession session, Map<String, INDArray> placeholderValues, InterOpExecutor executor) {
+        Preconditions.checkState(!closed, "Execution plan for outputs %s has been closed", outputs);
+        Preconditions.checkState(!parallel || executor != null, "Execution plan for outputs %s was compiled for parallel execution, but no executor was provided", outputs);
+        for (int i : placeholderSlots) {
+            values[i] = placeholderValues.get(slotNames[i]);
+            Preconditions.checkState(values[i] != null, "No array provided for placeholder %s", slotNames[i]);
+        }
+        for (int i : constVarSlots) {
+            values[i] = sameDiff.getArrForVarName(slotNames[i]);
+        }
+
+        boolean first = !shapesResolved;
+        if (parallel) {
+            executor.exec(this, session, first);
+        } else {
+            for (Step s : steps) {
+                execStep(session, s, first);
+            }
+        }
+
+        Map<String, INDArray> ret = new HashMap<>();
+        for (int i = 0; i < outputSlots.length; i++) {
+            ret.put(outputs.get(i), values[outputSlots[i]]);
+        }
+
+        if (first) {
+            shapesResolved = true;
+            allocateOutputs();
+        }
+
+        //Release references: constants, placeholders and intermediate arrays shouldn't be kept alive by the plan
+        Arrays.fill(values, null);
+        return ret;
+    }
+
+    /**
+     * Execute a single step, storing its outputs in the values array
+     */
+    protected void execStep(InferenceSession session, Step s, boolean first) {
+        if (s.identity) {
+            values[s.outputs[0]] = values[s.inputs[0]];
+            return;
+        }
+
+        INDArray[] args = new INDArray[s.inputs.length];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = values[s.inputs[i]];
+        }
+
+        INDArray[] out;
+        if (first || s.dynamicShape) {
+            if (s.outArrays != null) {
+                setOutputs(s.op, s.outArrays);
+            }
+            //On the first execution, always allocate new arrays: the op may currently hold arrays shared by another plan
+            session.parameterizeOp(s.opName, s.op, args, first);
+            out = session.execOp(s.op);
+            s.outArrays = out.clone();
+        } else {
+            session.setOpInputs(s.op, args);
+            setOutputs(s.op, s.outArrays);
+            s.op.resolvePropertiesFromSameDiffBeforeExecution();
+            out = session.execOp(s.op);
+        }
+
+        for (int i = 0; i < s.outputs.length; i++) {
+            values[s.outputs[i]] = out[i];
+        }
+    }
+
+    /**
+     * Assign output arrays to ops based on the liveness of each value: once all consumers of a value have executed,
+     * its memory can be reused for the output of a later op. Requested outputs, empty arrays and outputs of dynamic
+     * shape ops are never shared.<br>
+     * On CPU, all other op outputs are placed at offsets within a single arena (allocated in a dedicated
+     * {@link MemoryWorkspace}), as determined by {@link MemoryPlanner}. Elementwise legacy ops (transform, scalar,
+     * broadcast) are computed in place where their input is not used later. On other backends, arrays are instead
+     * reused only between values with exactly the same shape and datatype.<br>
+     * Plans compiled for parallel execution keep the (separate) output arrays allocated on the first execution, as the
+     * liveness of values depends on the order in which steps happen to execute.
+     */
+    protected void allocateOutputs() {
+        if (parallel)
+            return;
+
+        //Identity ops alias their input: work out the "root" slot for each slot
+        int[] root = new int[slotNames.length];
+        for (int i = 0; i < root.length; i++) {
+            root[i] = i;
+        }
+        int[] producer = new int[slotNames.length];
+        Arrays.fill(producer, -1);
+        for (int i = 0; i < steps.length; i++) {
+            Step s = steps[i];
+            for (int j : s.outputs) {
+                producer[j] = i;
+                if (s.identity) {
+                    root[j] = root[s.inputs[0]];
+                }
+            }
+        }
+
+        //Last step (index) that uses each root slot
+        int[] lastUse = new int[slotNames.length];
+        Arrays.fill(lastUse, -1);
+        for (int i = 0; i < steps.length; i++) {
+            for (int j : steps[i].inputs) {
+                lastUse[root[j]] = i;
+            }
+            for (int j : steps[i].outputs) {
+                lastUse[root[j]] = Math.max(lastUse[root[j]], i);
+            }
+        }
+
+        boolean[] pinned = new boolean[slotNames.length];
+        for (int i : outputSlots) {
+            pinned[root[i]] = true;
+        }
+
+        //Plan the memory for all (non-pinned) op outputs
+        MemoryPlanner planner = new MemoryPlanner();
+        int[] requests = new int[slotNames.length];
+        Arrays.fill(requests, -1);
+        for (int i = 0; i < steps.length; i++) {
+            Step s = steps[i];
+            if (s.identity)
+                continue;
+            for (int j = 0; j < s.outputs.length; j++) {
+                int slot = s.outputs[j];
+                INDArray arr = s.outArrays[j];
+                if (arr == null)
+                    continue;
+                long bytes = arr.length() * arr.data().getElementSize();
+                if (s.dynamicShape || pinned[slot] || arr.isEmpty()) {
+                    planner.pinned(bytes);
+                    continue;
+                }
+
+                int inPlaceOf = -1;
+                if (s.outputs.length == 1 && s.inputs.length > 0 && supportsInPlace(s.op)) {
+                    int in = root[s.inputs[0]];
+                    if (requests[in] >= 0 && arr.shapeDescriptor().equals(slotArray(in).shapeDescriptor())) {
+                        inPlaceOf = requests[in];
+                    }
+                }
+                requests[slot] = planner.request(bytes, i, lastUse[slot], inPlaceOf);
+            }
+        }
+        memoryPlan = planner.plan();
+        log.debug("Compiled SameDiff execution plan for outputs {}: {} steps, {}", outputs, steps.length, memoryPlan);
+
+        if (Nd4j.getExecutioner().type() == OpExecutioner.ExecutionerType.NATIVE_CPU) {
+            if (memoryPlan.getArenaBytes() > 0) {
+                allocateArena(memoryPlan.getArenaBytes());
+            }
+            for (int slot = 0; slot < slotNames.length; slot++) {
+                if (requests[slot] < 0)
+                    continue;
+                Step s = steps[producer[slot]];
+                int j = indexOf(s.outputs, slot);
+                s.outArrays[j] = arenaArray(memoryPlan.getOffset(requests[slot]), s.outArrays[j]);
+                sharedOutputOps.add(s.opName);
+            }
+        } else {
+            allocatePooledOutputs(requests, producer, lastUse);
+        }
+    }
+
+    /**
+     * Reuse output arrays between values with the same shape and datatype, once all consumers of a value have executed
+     */
+    protected void allocatePooledOutputs(int[] requests, int[] producer, int[] lastUse) {
+        List<List<Integer>> releaseAt = new ArrayList<>();
+        for (int i = 0; i < steps.length; i++) {
+            releaseAt.add(new ArrayList<Integer>());
+        }
+        for (int i = 0; i < slotNames.length; i++) {
+            if (requests[i] >= 0) {
+                releaseAt.get(lastUse[i]).add(i);
+            }
+        }
+
+        Map<LongShapeDescriptor, Deque<INDArray>> free = new HashMap<>();
+        for (int i = 0; i < steps.length; i++) {
+            Step s = steps[i];
+            for (int j = 0; j < s.outputs.length; j++) {
+                if (requests[s.outputs[j]] < 0)
+                    continue;
+                Deque<INDArray> d = free.get(s.outArrays[j].shapeDescriptor());
+                if (d != null && !d.isEmpty()) {
+                    s.outArrays[j] = d.pop();
+                    sharedOutputOps.add(s.opName);
+                }
+            }
+
+            //Inputs are released after outputs are assigned: an op's output must never alias its own input
+            for (int slot : releaseAt.get(i)) {
+                Step p = steps[producer[slot]];
+                INDArray arr = p.outArrays[indexOf(p.outputs, slot)];
+                LongShapeDescriptor lsd = arr.shapeDescriptor();
+                if (!free.containsKey(lsd)) {
+                    free.put(lsd, new ArrayDeque<INDArray>());
+                }
+                free.get(lsd).push(arr);
+                sharedOutputOps.add(p.opName);
+            }
+        }
+    }
+
+    protected void allocateArena(long bytes) {
+        WorkspaceConfiguration conf = WorkspaceConfiguration.builder()
+                .initialSize(bytes)
+                .policyAllocation(AllocationPolicy.STRICT)
+                .policyLearning(LearningPolicy.NONE)
+                .policySpill(SpillPolicy.FAIL)
+                .build();
+        arenaWorkspace = Nd4j.getWorkspaceManager().createNewWorkspace(conf, "SD_EXEC_PLAN_" + UUID.randomUUID().toString());
+        //The workspace is never entered again after this: the arena memory stays valid until the workspace is destroyed
+        try (MemoryWorkspace ws = arenaWorkspace.notifyScopeEntered()) {
+            arena = ws.alloc(bytes, MemoryKind.HOST, DataType.BYTE, false);
+        }
+    }
+
+    protected INDArray arenaArray(long offset, INDArray like) {
+        DataType dt = like.dataType();
+        long length = like.length();
+        PagedPointer p = new PagedPointer(arena, length, offset);
+        Pointer pointer;
+        Indexer indexer;
+        switch (dt) {
+            case DOUBLE:
+                pointer = p.asDoublePointer();
+                indexer = DoubleIndexer.create((DoublePointer) pointer);
+                break;
+            case FLOAT:
+                pointer = p.asFloatPointer();
+                indexer = FloatIndexer.create((FloatPointer) pointer);
+                break;
+            case HALF:
+                pointer = p.asShortPointer();
+                indexer = HalfIndexer.create((ShortPointer) pointer);
+                break;
+            case SHORT:
+                pointer = p.asShortPointer();
+                indexer = ShortIndexer.create((ShortPointer) pointer);
+                break;
+            case LONG:
+                pointer = p.asLongPointer();
+                indexer = LongIndexer.create((LongPointer) pointer);
+                break;
+            case INT:
+                pointer = p.asIntPointer();
+                indexer = IntIndexer.create((IntPointer) pointer);
+                break;
+            case BOOL:
+                pointer = p.asBoolPointer();
+                indexer = BooleanIndexer.create((BooleanPointer) pointer);
+                break;
+            case BYTE:
+                pointer = p.asBytePointer();
+                indexer = ByteIndexer.create((BytePointer) pointer);
+                break;
+            case UBYTE:
+                pointer = p.asBytePointer();
+                indexer = UByteIndexer.create((BytePointer) pointer);
+                break;
+            default:
+                throw new UnsupportedOperationException("Unsupported datatype for execution plan arena: " + dt);
+        }
+        DataBuffer buffer = Nd4j.getDataBufferFactory().create(pointer, dt, length, indexer);
+        return Nd4j.create(buffer, like.shape(), like.stride(), 0, like.ordering());
+    }
+
+    /**
+     * Release the memory arena for this plan, if any. The plan can't be executed after it has been closed.<br>
+     * Note that the ops in {@link #getSharedOutputOps()} may still hold (now invalid) arena arrays as their outputs: any
+     * later dynamic execution of these ops must allocate new output arrays
+     */
+    public void close() {
+        closed = true;
+        if (arenaWorkspace != null) {
+            arenaWorkspace.destroyWorkspace(true);
+            Nd4j.getWorkspaceManager().destroyWorkspace(arenaWorkspace);
+            arenaWorkspace = null;
+            arena = null;
+        }
+    }
+
+    protected INDArray slotArray(int slot) {
+        for (Step s : steps) {
+            int idx = indexOf(s.outputs, slot);
+            if (idx >= 0)
+                return s.outArrays[idx];
+        }
+        return null;
+    }
+
+    protected void visitVariable(String varName, Set<String> visitedVars, Set<String> visitedOps, List<String> opOrder,
+                                 List<String> leafVars, Set<String> inProgress) {
+        if (visitedVars.contains(varName))
+            return;
+        Variable v = sameDiff.getVariables().get(varName);
+        Preconditions.checkState(v != null, "Variable %s does not exist in SameDiff instance", varName);
+        if (v.getControlDeps() != null) {
+            for (String s : v.getControlDeps()) {
+                visitVariable(s, visitedVars, visitedOps, opOrder, leafVars, inProgress);
+            }
+        }
+        if (v.getOutputOfOp() == null) {
+            visitedVars.add(varName);
+            leafVars.add(varName);
+            return;
+        }
+
+        String opName = v.getOutputOfOp();
+        if (!visitedOps.contains(opName)) {
+            Preconditions.checkState(inProgress.add(opName), "Cycle detected in graph at op %s", opName);
+            SameDiffOp op = sameDiff.getOps().get(opName);
+            if (op.getInputsToOp() != null) {
+                for (String s : op.getInputsToOp()) {
+                    visitVariable(s, visitedVars, visitedOps, opOrder, leafVars, inProgress);
+                }
+            }
+            if (op.getControlDeps() != null) {
+                for (String s : op.getControlDeps()) {
+                    visitVariable(s, visitedVars, visitedOps, opOrder, leafVars, inProgress);
+                }
+            }
+            inProgress.remove(opName);
+            visitedOps.add(opName);
+            opOrder.add(opName);
+            if (op.getOutputsOfOp() != null) {
+                visitedVars.addAll(op.getOutputsOfOp());
+            }
+        }
+        visitedVars.add(varName);
+    }
+
+    protected static boolean supportsInPlace(DifferentialFunction df) {
+        return df instanceof TransformOp || df instanceof ScalarOp || df instanceof BroadcastOp;
+    }
+
+    protected static boolean isValueDependentShape(DifferentialFunction df) {
+        return df instanceof Unique || df instanceof UniqueWithCounts || df instanceof ListDiff || df instanceof DynamicPartition ||
+                df instanceof NonMaxSuppression || df instanceof Where || df instanceof WhereNumpy || df instanceof Choose;
+    }
+
+    protected static void setOutputs(DifferentialFunction df, INDArray[] outputs) {
+        if (df instanceof CustomOp) {
+            DynamicCustomOp op = (DynamicCustomOp) df;
+            for (int i = 0; i < outputs.length; i++) {
+                op.setOutputArgument(i, outputs[i]);
+            }
+        } else {
+            ((Op) df).setZ(outputs[0]);
+        }
+    }
+
+    private static int indexOf(int[] arr, int value) {
+        for (int i = 0; i < arr.length; i++) {
+            if (arr[i] == value)
+                return i;
+        }
+        return -1;
+    }
+
+    private static int[] toIntArray(List<Integer> list) {
+        int[] out = new int[list.size()];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = list.get(i);
+        }
+        return out;
+    }
+}
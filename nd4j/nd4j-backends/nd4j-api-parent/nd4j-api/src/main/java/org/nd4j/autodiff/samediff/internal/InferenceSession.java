@@ -1,5 +1,6 @@
 package org.nd4j.autodiff.samediff.internal;
 
+import lombok.Getter;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.nd4j.autodiff.functions.DifferentialFunction;
@@ -24,13 +25,18 @@ import org.nd4j.linalg.exception.ND4JIllegalStateException;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.indexing.INDArrayIndex;
 import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.profiler.OpProfiler;
 import org.nd4j.linalg.util.ArrayUtil;
 
 import java.util.*;
 
 /**
  * InferenceSession: Performs inference (forward pass) on a SameDiff instance to get the outputs of the requested nodes.
- * Dynamically (in AbstractSession) calculates the required subgraph to execute to get the required outputs.
+ * Dynamically (in AbstractSession) calculates the required subgraph to execute to get the required outputs.<br>
+ * If execution plans are enabled ({@link SameDiff#setUseExecutionPlans(boolean)}) the subgraph is instead compiled once
+ * (per set of requested outputs and placeholder shapes) into an {@link ExecutionPlan} which is reused for later calls.
+ * If inter-op parallelism is enabled ({@link SameDiff#setInterOpParallelism(int, int)}), execution plans are executed
+ * in parallel via an {@link InterOpExecutor}.
  *
  * @author Alex Black
  */
@@ -38,9 +44,139 @@ import java.util.*;
 public class InferenceSession extends AbstractSession<INDArray,DifferentialFunction> {
     private static final String SCOPE_PANIC_MSG = "If required, arrays in workspaces can be detached using INDArray.detach() before being passed to the SameDiff instance.\n" +
             "Alternatively, arrays defined in a workspace must be replaced after the workspace has been closed.";
+    public static final int MAX_EXECUTION_PLANS = 8;
+    public static final String TRACE_CATEGORY = "samediff";
+
+    //Key: requested outputs + placeholder shapes and types. Least recently used plans are removed first
+    protected final Map<String,ExecutionPlan> executionPlans = new LinkedHashMap<String,ExecutionPlan>(16, 0.75f, true){
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,ExecutionPlan> eldest) {
+            if(size() > MAX_EXECUTION_PLANS){
+                eldest.getValue().close();
+                return true;
+            }
+            return false;
+        }
+    };
+    //Requested outputs (joined) that can't be statically planned, due to control flow etc
+    protected final Set<String> unplannable = new HashSet<>();
+    //Ops that may hold output arrays shared with other ops by an execution plan. Dynamic execution must not reuse these
+    @Getter
+    protected final Set<String> sharedOutputOps = new HashSet<>();
 
     public InferenceSession(@NonNull SameDiff sameDiff) {
+        this(sameDiff, Collections.<String>emptySet());
+    }
+
+    /**
+     * @param sameDiff        SameDiff instance
+     * @param sharedOutputOps Ops that may hold output arrays shared by execution plans of a previous session (see
+     *                        {@link #getSharedOutputOps()}). New output arrays are always allocated for these ops
+     *                        during dynamic execution
+     */
+    public InferenceSession(@NonNull SameDiff sameDiff, @NonNull Set<String> sharedOutputOps) {
         super(sameDiff);
+        this.sharedOutputOps.addAll(sharedOutputOps);
+    }
+
+    @Override
+    public Map<String,INDArray> output(@NonNull List<String> variables, Map<String,INDArray> placeholderValues) {
+        if(!sameDiff.isUseExecutionPlans() && sameDiff.getInterOpThreads() <= 1){
+            return super.output(variables, placeholderValues);
+        }
+
+        ExecutionPlan plan = getExecutionPlan(variables, placeholderValues);
+        if(plan == null){
+            return super.output(variables, placeholderValues);
+        }
+
+        boolean firstExec = !plan.isShapesResolved();
+        InterOpExecutor executor = plan.isParallel() ? InterOpExecutor.getInstance(sameDiff.getInterOpThreads(), sameDiff.getIntraOpThreads()) : null;
+        Map<String,INDArray> out = plan.exec(this, preprocessPlaceholders(placeholderValues), executor);
+        if(firstExec){
+            sharedOutputOps.addAll(plan.getSharedOutputOps());
+        }
+
+        //Only the requested outputs are available after plan execution - intermediate arrays may have been reused
+        nodeOutputs.clear();
+        tensorArrays.clear();
+        for(Map.Entry<String,INDArray> e : out.entrySet()){
+            nodeOutputs.put(newVarId(e.getKey(), OUTER_FRAME, 0, null), e.getValue());
+        }
+        return out;
+    }
+
+    /**
+     * Get the memory plan for calculating the specified outputs, for the given placeholder shapes.
+     * If the execution plan for these outputs has not yet been executed, a single forward pass is performed to
+     * determine the shapes of all arrays.
+     *
+     * @return The memory plan, or null if the outputs can't be statically planned (for example, due to control flow ops)
+     */
+    public MemoryPlan getMemoryPlan(@NonNull List<String> variables, Map<String,INDArray> placeholderValues){
+        ExecutionPlan plan = getExecutionPlan(variables, placeholderValues);
+        if(plan == null)
+            return null;
+        if(!plan.isShapesResolved()){
+            output(variables, placeholderValues);
+        }
+        return plan.getMemoryPlan();
+    }
+
+    /**
+     * Get (or compile) the execution plan for the specified outputs and placeholder shapes
+     *
+     * @return The execution plan, or null if the outputs can't be statically planned
+     */
+    protected ExecutionPlan getExecutionPlan(List<String> variables, Map<String,INDArray> placeholderValues){
+        String outputsKey = variables.toString();
+        if(unplannable.contains(outputsKey)){
+            return null;
+        }
+
+        String key = planKey(outputsKey, placeholderValues);
+        ExecutionPlan plan = executionPlans.get(key);
+        if(plan != null && !plan.isValid()){
+            log.debug("Discarding execution plan for outputs {}: graph structure or constant/variable shapes have changed", variables);
+            executionPlans.remove(key);
+            plan.close();
+            plan = null;
+        }
+        if(plan == null){
+            plan = ExecutionPlan.create(sameDiff, variables, sameDiff.getInterOpThreads() > 1);
+            if(plan == null){
+                log.debug("Outputs {} cannot be statically planned (control flow or TensorArray ops) - using dynamic execution", variables);
+                unplannable.add(outputsKey);
+                return null;
+            }
+            executionPlans.put(key, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * Remove all cached execution plans, releasing any memory held by them
+     */
+    public void clearExecutionPlans(){
+        for(ExecutionPlan p : executionPlans.values()){
+            p.close();
+        }
+        executionPlans.clear();
+        unplannable.clear();
+    }
+
+    protected String planKey(String outputsKey, Map<String,INDArray> placeholderValues){
+        StringBuilder sb = new StringBuilder(outputsKey);
+        List<String> phNames = sameDiff.inputs();
+        if(phNames != null && placeholderValues != null) {
+            for (String s : phNames) {
+                INDArray arr = placeholderValues.get(s);
+                if(arr == null)
+                    continue;
+                sb.append(";").append(s).append(":").append(arr.dataType()).append(Arrays.toString(arr.shape()));
+            }
+        }
+        return sb.toString();
     }
 
     @Override
@@ -444,14 +580,8 @@ public class InferenceSession extends AbstractSession<INDArray,DifferentialFunct
             }
         } else if(op instanceof GradientBackwardsMarker){
             return new INDArray[]{Nd4j.scalar(1.0f)};
-        } else if(op instanceof CustomOp){
-            CustomOp c = (CustomOp)op;
-            Nd4j.getExecutioner().exec(c);
-            return c.outputArguments();
-        } else if(op instanceof Op) {
-            Op o = (Op) op;
-            Nd4j.getExecutioner().exec(o);
-            return new INDArray[]{o.z()};
+        } else if(op instanceof CustomOp || op instanceof Op){
+            return execOp(op);
         } else {
             throw new UnsupportedOperationException("Execution not yet implemented for: " + op.getClass().getName());
         }
@@ -610,9 +740,25 @@ public class InferenceSession extends AbstractSession<INDArray,DifferentialFunct
         //Set the op inputs and output arguments
         //Note that when we are in a loop (and non-first iteration), we want to allocate new arrays even if shapes are
         // ok: this is because we need the values in past iterations for backprop (potentially)
+        //Similarly, if an execution plan has shared this op's output arrays with other ops, we can't reuse them here
         //TODO let's find a way to use in-place modification for loops where possible to reduce memory requirements
         boolean isLoop = !frameIter.getFrame().equals(OUTER_FRAME) && frameIter.getIteration() > 0;
+        boolean forceAlloc = isLoop || (!sharedOutputOps.isEmpty() && sharedOutputOps.contains(opName));
+
+        parameterizeOp(opName, df, args, forceAlloc);
+        return df;
+    }
 
+    /**
+     * Set the inputs for the op, and allocate output arrays if the current output arrays are absent or of the wrong
+     * shape/type
+     *
+     * @param opName     Name of the op
+     * @param df         Op to parameterize
+     * @param args       Input arrays, in order of the op's arg names
+     * @param forceAlloc If true: always allocate new output arrays, even if the existing ones are OK
+     */
+    protected void parameterizeOp(String opName, DifferentialFunction df, INDArray[] args, boolean forceAlloc){
         if(df instanceof CustomOp){
             DynamicCustomOp customOp = (DynamicCustomOp) df;
             if(args != null) {
@@ -642,7 +788,7 @@ public class InferenceSession extends AbstractSession<INDArray,DifferentialFunct
                     }
                 }
 
-                if(currOutput == null || !currOutput.shapeDescriptor().equals(reqShape) || currOutput.isEmpty() != reqShape.isEmpty() || isLoop){
+                if(currOutput == null || !currOutput.shapeDescriptor().equals(reqShape) || currOutput.isEmpty() != reqShape.isEmpty() || forceAlloc){
                     INDArray out;
                     try(MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
                         //TODO Proper workspace support will be added to SameDiff later
@@ -654,47 +800,14 @@ public class InferenceSession extends AbstractSession<INDArray,DifferentialFunct
 
         } else if(df instanceof Op){
             Op op = (Op) df;
-
-            boolean axisArg = false;
-            if(op instanceof ReduceOp && ((ReduceOp) op).getOpType() != Op.Type.REDUCE3 && df.argNames().length == 2){
-                //2nd input should be treated as integer axis arg...
-                SDVariable axisArgVar = df.arg(1);
-                Preconditions.checkState(axisArgVar.dataType().isIntType(), "Legacy op %s input 1 (axis) was expected to be an integer type, is %s", df.getClass(), axisArgVar.dataType());
-
-                INDArray arr = getArray(axisArgVar, opInputs, allIterInputs);
-                Preconditions.checkState(arr != null, "Could not get axis argument for op %s: %s", df.getOwnName(), df.getClass());
-                if(!arr.isEmpty()){
-                    int[] axis = arr.toIntVector();
-                    int rank = args[0].rank();
-                    axis = Shape.normalizeAxis(rank, axis);
-                    df.setDimensions(axis);
-                } else {
-                    df.setDimensions(null);
-                }
-                axisArg = true;
-            } else if(op instanceof ScalarOp && df.argNames().length == 2){
-                //Scalar ops: 2nd input should be treated as scalar...
-                SDVariable scalarVar = df.arg(1);
-                String n = scalarVar.getVarName();
-                INDArray scalar = getArray(scalarVar, opInputs, allIterInputs);
-                Preconditions.checkState(scalar != null, "Could not get scalar argument for op %s: %s", df.getOwnName(), df.getClass());
-                Preconditions.checkState(scalar.isScalar(), "Scalar argument for op %s (%s) is not a scalar: has shape %ndShape", df.getOwnName(), df.getClass(), scalar );
-                ((ScalarOp) op).setScalar(scalar);
-            }
-
-            if(args != null && args.length > 0){
-                op.setX(args[0]);
-                if (args.length == 2 && !axisArg)
-                    op.setY(args[1]);
-            }
-
+            setOpInputs(df, args);
 
             //Check output shape; allocate a new Z if required
             //For example, if minibatch size has changed since last op execution
             List<LongShapeDescriptor> outputShape = ((BaseOp)op).calculateOutputShape();
             Preconditions.checkState(outputShape != null && outputShape.size() == 1, "Could not calculate output shape for op: %s", op.getClass());
             INDArray z = op.z();
-            if(z == null || !outputShape.get(0).equals(z.shapeDescriptor()) || isLoop){
+            if(z == null || !outputShape.get(0).equals(z.shapeDescriptor()) || forceAlloc){
                 if(log.isTraceEnabled()){
                     log.trace("Existing op result (z) array shape for op {} was {}, allocating new array of shape {}",
                             op.getClass().getSimpleName(), (z == null ? null : Arrays.toString(z.shape())), outputShape.get(0).toString());
@@ -709,8 +822,83 @@ public class InferenceSession extends AbstractSession<INDArray,DifferentialFunct
             }
             df.resolvePropertiesFromSameDiffBeforeExecution();
         }
+    }
 
-        return df;
+    /**
+     * Set the input arrays for the op, without any output shape calculation or output array allocation.
+     * For legacy ops, this also handles the integer axis argument (reduction ops) and scalar argument (scalar ops)
+     *
+     * @param df   Op to set the inputs for
+     * @param args Input arrays, in order of the op's arg names
+     */
+    protected void setOpInputs(DifferentialFunction df, INDArray[] args){
+        if(df instanceof CustomOp){
+            if(args != null) {
+                ((DynamicCustomOp) df).setInputArguments(args);
+            }
+            return;
+        }
+
+        Op op = (Op) df;
+        boolean axisArg = false;
+        if(op instanceof ReduceOp && ((ReduceOp) op).getOpType() != Op.Type.REDUCE3 && df.argNames().length == 2){
+            //2nd input should be treated as integer axis arg...
+            SDVariable axisArgVar = df.arg(1);
+            Preconditions.checkState(axisArgVar.dataType().isIntType(), "Legacy op %s input 1 (axis) was expected to be an integer type, is %s", df.getClass(), axisArgVar.dataType());
+
+            INDArray arr = args[1];
+            Preconditions.checkState(arr != null, "Could not get axis argument for op %s: %s", df.getOwnName(), df.getClass());
+            if(!arr.isEmpty()){
+                int[] axis = arr.toIntVector();
+                int rank = args[0].rank();
+                axis = Shape.normalizeAxis(rank, axis);
+                df.setDimensions(axis);
+            } else {
+                df.setDimensions(null);
+            }
+            axisArg = true;
+        } else if(op instanceof ScalarOp && df.argNames().length == 2){
+            //Scalar ops: 2nd input should be treated as scalar...
+            INDArray scalar = args[1];
+            Preconditions.checkState(scalar != null, "Could not get scalar argument for op %s: %s", df.getOwnName(), df.getClass());
+            Preconditions.checkState(scalar.isScalar(), "Scalar argument for op %s (%s) is not a scalar: has shape %ndShape", df.getOwnName(), df.getClass(), scalar );
+            ((ScalarOp) op).setScalar(scalar);
+        }
+
+        if(args != null && args.length > 0){
+            op.setX(args[0]);
+            if (args.length == 2 && !axisArg)
+                op.setY(args[1]);
+        }
+    }
+
+    /**
+     * Execute a (parameterized) custom or legacy op, and return its output arrays
+     */
+    protected INDArray[] execOp(DifferentialFunction op){
+        //When tracing, record each SameDiff op as a scope (named by its first output variable, as op names are often
+        // auto-generated): native ops executed are recorded within it
+        boolean trace = OpProfiler.getInstance().isTracing();
+        if(trace){
+            String[] outNames = op.outputVariablesNames();
+            String scope = outNames == null || outNames.length == 0 ? op.getOwnName() : outNames[0];
+            OpProfiler.getInstance().getTracer().startScope(scope, TRACE_CATEGORY);
+        }
+        try {
+            if (op instanceof CustomOp) {
+                CustomOp c = (CustomOp) op;
+                Nd4j.getExecutioner().exec(c);
+                return c.outputArguments();
+            } else {
+                Op o = (Op) op;
+                Nd4j.getExecutioner().exec(o);
+                return new INDArray[]{o.z()};
+            }
+        } finally {
+            if(trace){
+                OpProfiler.getInstance().getTracer().endScope();
+            }
+        }
     }
 
 
@@ -0,0 +1,268 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.autodiff.samediff.internal;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.api.ops.executioner.DefaultOpExecutioner;
+import org.nd4j.linalg.api.ops.executioner.OpExecutioner;
+import org.nd4j.linalg.exception.ND4JIllegalStateException;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * InterOpExecutor: executes the steps of an {@link ExecutionPlan} in parallel, on a fixed-size work-stealing thread pool.
+ * <br>
+ * Rather than executing steps one at a time in topological order, each step is scheduled as soon as all of the steps it
+ * depends on have completed. Independent branches of the graph (for example, the parallel branches of an Inception
+ * module, or the heads of a multi-head model) can then execute concurrently. This is useful when individual ops are too
+ * small to make full use of all cores by themselves.<br>
+ * <br>
+ * Thread budget: native ops are themselves parallelized internally (via OpenMP). To avoid oversubscription, each of the
+ * {@code interOpThreads} worker threads limits the number of OpenMP threads it uses to {@code intraOpThreads}. By default,
+ * intraOpThreads is set such that interOpThreads * intraOpThreads equals the number of available processors.<br>
+ * <br>
+ * Worker threads are daemon threads, and idle workers are released by the pool automatically. Executors created via the
+ * constructor are owned by the caller and should be closed when no longer required; the shared executors (see
+ * {@link #getInstance(int, int)}) can be shut down via {@link #shutdownShared()}.
+ */
+@Slf4j
+public class InterOpExecutor implements Closeable {
+    //Shared executors, keyed by thread configuration
+    private static final Map<String, InterOpExecutor> INSTANCES = new HashMap<>();
+
+    @Getter
+    private final int interOpThreads;
+    @Getter
+    private final int intraOpThreads;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param interOpThreads Number of ops that may execute concurrently. Must be at least 1
+     */
+    public InterOpExecutor(int interOpThreads) {
+        this(interOpThreads, 0);
+    }
+
+    /**
+     * @param interOpThreads Number of ops that may execute concurrently. Must be at least 1
+     * @param intraOpThreads Number of (OpenMP) threads each op may use. If <= 0: the number of available processors
+     *                       divided by interOpThreads is used
+     */
+    public InterOpExecutor(int interOpThreads, int intraOpThreads) {
+        Preconditions.checkArgument(interOpThreads >= 1, "Number of inter-op threads must be >= 1, got %s", interOpThreads);
+        int cores = Runtime.getRuntime().availableProcessors();
+        this.interOpThreads = interOpThreads;
+        this.intraOpThreads = intraOpThreads > 0 ? intraOpThreads : Math.max(1, cores / interOpThreads);
+        if ((long) this.interOpThreads * this.intraOpThreads > cores) {
+            log.warn("Inter-op threads ({}) x intra-op threads ({}) exceeds the number of available processors ({}): " +
+                    "performance may be reduced due to oversubscription", this.interOpThreads, this.intraOpThreads, cores);
+        }
+
+        final int numOmpThreads = this.intraOpThreads;
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.pool = new ForkJoinPool(interOpThreads, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+            @Override
+            public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+                ForkJoinWorkerThread t = new ForkJoinWorkerThread(pool) {
+                    @Override
+                    protected void onStart() {
+                        super.onStart();
+                        OpExecutioner exec = Nd4j.getExecutioner();
+                        if (exec instanceof DefaultOpExecutioner)
+                            ((DefaultOpExecutioner) exec).setOmpNumThreads(numOmpThreads);
+                    }
+                };
+                t.setName("SameDiff-InterOp-" + threadCount.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            }
+        }, null, false);
+    }
+
+    /**
+     * Get the shared executor for the specified thread configuration, creating it if necessary. Shared executors should
+     * not be closed directly - use {@link #shutdownShared()} instead.
+     *
+     * @param interOpThreads Number of ops that may execute concurrently. Must be at least 1
+     * @param intraOpThreads Number of (OpenMP) threads each op may use. If <= 0: set automatically
+     */
+    public static synchronized InterOpExecutor getInstance(int interOpThreads, int intraOpThreads) {
+        String key = interOpThreads + "," + Math.max(0, intraOpThreads);
+        InterOpExecutor e = INSTANCES.get(key);
+        if (e == null || e.pool.isShutdown()) {
+            e = new InterOpExecutor(interOpThreads, intraOpThreads);
+            INSTANCES.put(key, e);
+        }
+        return e;
+    }
+
+    /**
+     * Shut down all shared executors (see {@link #getInstance(int, int)}), waiting for any in-progress executions to
+     * complete. New shared executors will be created if required by subsequent executions.
+     */
+    public static void shutdownShared() {
+        List<InterOpExecutor> toClose;
+        synchronized (InterOpExecutor.class) {
+            toClose = new ArrayList<>(INSTANCES.values());
+            INSTANCES.clear();
+        }
+        for (InterOpExecutor e : toClose) {
+            e.close();
+        }
+    }
+
+    /**
+     * Execute all steps of the specified execution plan, blocking until all steps have completed
+     *
+     * @param plan    Execution plan to execute. Placeholder, constant and variable values must already be set
+     * @param session Session used to parameterize and execute the ops
+     * @param first   Whether this is the first execution of the plan
+     */
+    protected void exec(@NonNull ExecutionPlan plan, @NonNull InferenceSession session, boolean first) {
+        Preconditions.checkState(!pool.isShutdown(), "Inter-op executor has been closed");
+        if (plan.steps.length == 0)
+            return;
+
+        Execution e = new Execution(plan, session, first);
+        //Hold one pending count until all initial steps are submitted, so execution can't be marked as done early
+        e.pending.incrementAndGet();
+        for (int i = 0; i < plan.steps.length; i++) {
+            if (plan.numDependencies[i] == 0)
+                e.submit(i);
+        }
+        e.finish();
+
+        try {
+            e.done.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ND4JIllegalStateException("Interrupted while waiting for execution of plan for outputs " + plan.getOutputs(), ex);
+        }
+
+        Throwable t = e.error.get();
+        if (t != null) {
+            if (t instanceof RuntimeException)
+                throw (RuntimeException) t;
+            if (t instanceof Error)
+                throw (Error) t;
+            throw new ND4JIllegalStateException("Error during parallel execution of plan for outputs " + plan.getOutputs(), t);
+        }
+        Preconditions.checkState(e.completed.get() == plan.steps.length, "Parallel execution did not complete: %s of %s steps executed",
+                e.completed.get(), plan.steps.length);
+    }
+
+    /**
+     * Shut down the thread pool. The executor cannot be used after it has been closed
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+        try {
+            pool.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * State for a single execution of a plan
+     */
+    private class Execution {
+        private final ExecutionPlan plan;
+        private final InferenceSession session;
+        private final boolean first;
+        //Number of dependencies not yet completed, for each step
+        private final AtomicIntegerArray remaining;
+        //Number of steps submitted but not yet finished. Execution is done when this reaches 0
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicInteger completed = new AtomicInteger();
+        private final AtomicReference<Throwable> error = new AtomicReference<>();
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private Execution(ExecutionPlan plan, InferenceSession session, boolean first) {
+            this.plan = plan;
+            this.session = session;
+            this.first = first;
+            this.remaining = new AtomicIntegerArray(plan.numDependencies);
+        }
+
+        private void submit(int step) {
+            pending.incrementAndGet();
+            StepTask t = new StepTask(this, step);
+            if (ForkJoinTask.getPool() == pool) {
+                //Submitted from a worker thread: push to this worker's own queue; idle workers will steal it
+                t.fork();
+            } else {
+                pool.execute(t);
+            }
+        }
+
+        private void run(int step) {
+            try {
+                if (error.get() == null) {
+                    plan.execStep(session, plan.steps[step], first);
+                    completed.incrementAndGet();
+                    for (int d : plan.dependents[step]) {
+                        if (remaining.decrementAndGet(d) == 0)
+                            submit(d);
+                    }
+                }
+            } catch (Throwable t) {
+                error.compareAndSet(null, t);
+            } finally {
+                finish();
+            }
+        }
+
+        private void finish() {
+            if (pending.decrementAndGet() == 0)
+                done.countDown();
+        }
+    }
+
+    private static class StepTask extends RecursiveAction {
+        private final Execution execution;
+        private final int step;
+
+        private StepTask(Execution execution, int step) {
+            this.execution = execution;
+            this.step = step;
+        }
+
+        @Override
+        protected void compute() {
+            execution.run(step);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.autodiff.samediff.internal;
+
+import lombok.Getter;
+
+/**
+ * MemoryPlan: the result of {@link MemoryPlanner#plan()} - the arena offset for every requested array, plus statistics
+ * on the planned memory footprint.
+ */
+@Getter
+public class MemoryPlan {
+    private final long[] offsets;
+    /**
+     * Size of the arena in bytes: i.e., the peak memory used by all planned arrays at any point during execution
+     */
+    private final long arenaBytes;
+    /**
+     * Total size of all planned arrays, in bytes - i.e., the memory required if no arrays were reused
+     */
+    private final long unplannedBytes;
+    /**
+     * Total size of the arrays allocated outside of the arena (outputs, etc), in bytes
+     */
+    private final long pinnedBytes;
+    private final int numArrays;
+    private final int numInPlace;
+    private final int numPinned;
+
+    public MemoryPlan(long[] offsets, long arenaBytes, long unplannedBytes, long pinnedBytes, int numArrays, int numInPlace, int numPinned) {
+        this.offsets = offsets;
+        this.arenaBytes = arenaBytes;
+        this.unplannedBytes = unplannedBytes;
+        this.pinnedBytes = pinnedBytes;
+        this.numArrays = numArrays;
+        this.numInPlace = numInPlace;
+        this.numPinned = numPinned;
+    }
+
+    /**
+     * @param request Request ID, as returned by {@link MemoryPlanner#request(long, int, int)}
+     * @return Offset (in bytes) of the array in the arena
+     */
+    public long getOffset(int request) {
+        return offsets[request];
+    }
+
+    /**
+     * @return The planned peak memory footprint for execution, in bytes: the arena size plus all pinned arrays
+     */
+    public long getPeakBytes() {
+        return arenaBytes + pinnedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "MemoryPlan(arrays=" + numArrays + ", inPlace=" + numInPlace + ", arenaBytes=" + arenaBytes +
+                ", unplannedBytes=" + unplannedBytes + ", pinnedArrays=" + numPinned + ", pinnedBytes=" + pinnedBytes +
+                ", peakBytes=" + getPeakBytes() + ")";
+    }
+}
@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.autodiff.samediff.internal;
+
+import org.nd4j.base.Preconditions;
+
+import java.util.*;
+
+/**
+ * MemoryPlanner: assigns arrays with known sizes and lifetimes to offsets within a single memory arena.<br>
+ * Each array is requested with a size (in bytes) and a lifetime: the index of the execution step that produces it, and
+ * the index of the last step that uses it. Arrays whose lifetimes don't overlap can share the same region of the arena.
+ * Additionally, an array may be requested "in place" of another array: if the other array is last used by the step
+ * that produces this array, and both arrays are the same size, they are assigned to the same memory.<br>
+ * <br>
+ * Offsets are assigned greedily, largest arrays first: each array is placed at the lowest (aligned) offset that does not
+ * overlap with any already placed array with an overlapping lifetime.
+ */
+public class MemoryPlanner {
+    public static final long DEFAULT_ALIGNMENT = 64;
+
+    private final long alignment;
+    private final List<Request> requests = new ArrayList<>();
+    private long pinnedBytes;
+    private int pinnedCount;
+
+    private static class Request {
+        private final long bytes;
+        private final int firstStep;
+        private int lastStep;
+        private final int inPlaceOf;
+        //Index of the request this one was merged into (in-place), or own index
+        private int group;
+        private boolean hasInPlaceSuccessor;
+
+        private Request(long bytes, int firstStep, int lastStep, int inPlaceOf, int idx) {
+            this.bytes = bytes;
+            this.firstStep = firstStep;
+            this.lastStep = lastStep;
+            this.inPlaceOf = inPlaceOf;
+            this.group = idx;
+        }
+    }
+
+    public MemoryPlanner() {
+        this(DEFAULT_ALIGNMENT);
+    }
+
+    /**
+     * @param alignment Alignment (in bytes) for all offsets. Must be a power of 2
+     */
+    public MemoryPlanner(long alignment) {
+        Preconditions.checkArgument(alignment > 0 && (alignment & (alignment - 1)) == 0, "Alignment must be a power of 2, got %s", alignment);
+        this.alignment = alignment;
+    }
+
+    /**
+     * Request space in the arena for an array
+     *
+     * @param bytes     Size of the array, in bytes
+     * @param firstStep Index of the step that produces the array
+     * @param lastStep  Index of the last step that uses the array. Must be >= firstStep
+     * @return Request ID - to be used with {@link MemoryPlan#getOffset(int)}
+     */
+    public int request(long bytes, int firstStep, int lastStep) {
+        return request(bytes, firstStep, lastStep, -1);
+    }
+
+    /**
+     * Request space in the arena for an array, which may reuse the memory of another array in-place
+     *
+     * @param bytes     Size of the array, in bytes
+     * @param firstStep Index of the step that produces the array
+     * @param lastStep  Index of the last step that uses the array. Must be >= firstStep
+     * @param inPlaceOf ID of a previous request that this array may be computed in place of, or -1 if none. In-place
+     *                  reuse only happens if that array is last used at firstStep, and the sizes match
+     * @return Request ID - to be used with {@link MemoryPlan#getOffset(int)}
+     */
+    public int request(long bytes, int firstStep, int lastStep, int inPlaceOf) {
+        Preconditions.checkArgument(bytes >= 0, "Number of bytes must be >= 0, got %s", bytes);
+        Preconditions.checkArgument(lastStep >= firstStep, "Last step (%s) must be >= first step (%s)", lastStep, firstStep);
+        Preconditions.checkArgument(inPlaceOf < requests.size(), "Invalid in-place request ID: %s", inPlaceOf);
+        int idx = requests.size();
+        requests.add(new Request(bytes, firstStep, lastStep, inPlaceOf, idx));
+        return idx;
+    }
+
+    /**
+     * Record an array that is allocated outside of the arena, for the purposes of reporting the peak memory footprint.
+     * For example: network outputs
+     *
+     * @param bytes Size of the array, in bytes
+     */
+    public void pinned(long bytes) {
+        pinnedBytes += bytes;
+        pinnedCount++;
+    }
+
+    /**
+     * Assign offsets to all requested arrays
+     *
+     * @return The memory plan
+     */
+    public MemoryPlan plan() {
+        int n = requests.size();
+        long unplannedBytes = 0;
+
+        //Step 1: merge in-place requests
+        int numInPlace = 0;
+        for (int i = 0; i < n; i++) {
+            Request r = requests.get(i);
+            unplannedBytes += r.bytes;
+            if (r.inPlaceOf < 0)
+                continue;
+            Request other = requests.get(r.inPlaceOf);
+            Request g = requests.get(other.group);
+            if (other.lastStep == r.firstStep && other.bytes == r.bytes && !other.hasInPlaceSuccessor && g.lastStep == r.firstStep) {
+                other.hasInPlaceSuccessor = true;
+                r.group = other.group;
+                g.lastStep = Math.max(g.lastStep, r.lastStep);
+                numInPlace++;
+            }
+        }
+
+        //Step 2: assign offsets for each group, largest first
+        List<Request> groups = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (requests.get(i).group == i)
+                groups.add(requests.get(i));
+        }
+        Collections.sort(groups, new Comparator<Request>() {
+            @Override
+            public int compare(Request o1, Request o2) {
+                int c = Long.compare(o2.bytes, o1.bytes);
+                return c != 0 ? c : Integer.compare(o1.firstStep, o2.firstStep);
+            }
+        });
+
+        Map<Request, Long> groupOffsets = new IdentityHashMap<>();
+        List<Request> placed = new ArrayList<>();
+        long arenaBytes = 0;
+        for (Request g : groups) {
+            //Find all placed groups with overlapping lifetimes, in order of offset
+            List<Request> overlapping = new ArrayList<>();
+            for (Request p : placed) {
+                if (p.firstStep <= g.lastStep && g.firstStep <= p.lastStep)
+                    overlapping.add(p);
+            }
+            final Map<Request, Long> offsets = groupOffsets;
+            Collections.sort(overlapping, new Comparator<Request>() {
+                @Override
+                public int compare(Request o1, Request o2) {
+                    return Long.compare(offsets.get(o1), offsets.get(o2));
+                }
+            });
+
+            long size = align(g.bytes);
+            long offset = 0;
+            for (Request p : overlapping) {
+                long pOffset = groupOffsets.get(p);
+                if (pOffset >= offset + size)
+                    break;      //Fits in the gap before p
+                offset = Math.max(offset, pOffset + align(p.bytes));
+            }
+            groupOffsets.put(g, offset);
+            placed.add(g);
+            arenaBytes = Math.max(arenaBytes, offset + size);
+        }
+
+        long[] offsets = new long[n];
+        for (int i = 0; i < n; i++) {
+            offsets[i] = groupOffsets.get(requests.get(requests.get(i).group));
+        }
+
+        return new MemoryPlan(offsets, arenaBytes, unplannedBytes, pinnedBytes, n, numInPlace, pinnedCount);
+    }
+
+    private long align(long bytes) {
+        return (bytes + alignment - 1) & ~(alignment - 1);
+    }
+}
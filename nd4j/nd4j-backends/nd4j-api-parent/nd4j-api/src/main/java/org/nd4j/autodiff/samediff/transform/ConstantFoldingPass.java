@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.autodiff.samediff.transform;
+
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.autodiff.functions.DifferentialFunction;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.VariableType;
+import org.nd4j.autodiff.samediff.internal.AbstractSession;
+import org.nd4j.autodiff.samediff.internal.AbstractSession.FrameIter;
+import org.nd4j.autodiff.samediff.internal.AbstractSession.VarId;
+import org.nd4j.autodiff.samediff.internal.InferenceSession;
+import org.nd4j.autodiff.samediff.internal.SameDiffOp;
+import org.nd4j.autodiff.samediff.internal.Variable;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.CustomOp;
+import org.nd4j.linalg.api.ops.Op;
+import org.nd4j.linalg.api.ops.RandomOp;
+import org.nd4j.linalg.api.ops.impl.controlflow.If;
+import org.nd4j.linalg.api.ops.impl.controlflow.While;
+import org.nd4j.linalg.api.ops.impl.controlflow.compat.*;
+import org.nd4j.linalg.api.ops.impl.shape.tensorops.BaseTensorOp;
+import org.nd4j.linalg.api.ops.impl.transforms.gradient.GradientBackwardsMarker;
+import org.nd4j.linalg.api.ops.impl.transforms.same.Identity;
+
+import java.util.*;
+
+/**
+ * ConstantFoldingPass: evaluates all ops whose inputs are (directly or indirectly) only constants, and replaces their
+ * outputs with constants. For example, shape arithmetic on constant shapes, Identity ops on constants, and reshapes of
+ * constants, which are common in imported TensorFlow graphs.<br>
+ * Only ops whose inputs are all constants - i.e., ops with no placeholder or variable ancestors - are folded. The folded
+ * ops are evaluated directly (in dependency order, from the constant values only) once, when the pass is applied; no
+ * placeholder values are required or assumed. Output variables of folded ops keep their names; constants that are no
+ * longer used by any op (after folding) are removed, unless they are required variables. If an op can't be evaluated,
+ * it (and any ops that depend on it) are left unchanged.<br>
+ * Ops are not folded if they are control flow ops, random ops, tensor array ops, have control dependencies, or have no
+ * inputs.
+ */
+@Slf4j
+public class ConstantFoldingPass implements GraphOptimizationPass {
+
+    @Override
+    public int apply(SameDiff sd, Set<String> requiredVariables) {
+        //Step 1: work out which ops can be folded. Ops aren't necessarily in topological order, so iterate until no change
+        Set<String> constants = new HashSet<>();
+        for (SDVariable v : sd.variables()) {
+            if (v.getVariableType() == VariableType.CONSTANT)
+                constants.add(v.getVarName());
+        }
+
+        Set<String> folded = new LinkedHashSet<>();
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (SameDiffOp op : sd.getOps().values()) {
+                if (folded.contains(op.getName()) || !canFold(sd, op, constants))
+                    continue;
+                folded.add(op.getName());
+                constants.addAll(op.getOutputsOfOp());
+                changed = true;
+            }
+        }
+
+        if (folded.isEmpty())
+            return 0;
+
+        //Step 2: evaluate and replace the folded ops. Ops were added to the folded set in dependency order, so all inputs
+        // of each op are constants (original or already folded) when it is evaluated. No placeholders are required, as
+        // no folded op depends on a placeholder, directly or indirectly
+        InferenceSession session = new InferenceSession(sd);
+        FrameIter frameIter = new FrameIter(AbstractSession.OUTER_FRAME, 0, null);
+        Set<String> foldedVars = new LinkedHashSet<>();
+        int count = 0;
+        long addedBytes = 0;
+        for (String opName : folded) {
+            SameDiffOp op = sd.getOps().get(opName);
+            boolean inputsAvailable = true;
+            for (String s : op.getInputsToOp()) {
+                if (sd.getVariable(s).getVariableType() != VariableType.CONSTANT) {
+                    inputsAvailable = false;    //Evaluation of an earlier op failed
+                    break;
+                }
+            }
+            if (!inputsAvailable)
+                continue;
+
+            INDArray[] outArrs;
+            try {
+                outArrs = evaluate(session, op, frameIter);
+            } catch (Throwable t) {
+                log.warn("Constant folding: could not evaluate op \"{}\" - op will not be folded", opName, t);
+                continue;
+            }
+
+            foldedVars.addAll(op.getInputsToOp());
+            List<String> outputs = op.getOutputsOfOp();
+            GraphTransformUtil.removeOp(sd, opName);
+            for (int i = 0; i < outputs.size(); i++) {
+                Variable v = sd.getVariables().get(outputs.get(i));
+                INDArray arr = outArrs[i].dup();
+                v.setOutputOfOp(null);
+                v.getVariable().setVariableType(VariableType.CONSTANT);
+                sd.associateArrayWithVariable(arr, v.getVariable());
+                foldedVars.add(outputs.get(i));
+                addedBytes += bytes(arr);
+            }
+            count++;
+        }
+
+        //Step 3: remove any constants that are no longer used - i.e., inputs and intermediate outputs of the folded ops
+        int removedConstants = 0;
+        long removedBytes = 0;
+        for (String s : foldedVars) {
+            Variable v = sd.getVariables().get(s);
+            if (v == null || requiredVariables.contains(s) || v.getVariable().getVariableType() != VariableType.CONSTANT)
+                continue;
+            if (isUnused(v)) {
+                removedBytes += bytes(v.getVariable().getArr());
+                sd.removeVariable(s);
+                removedConstants++;
+            }
+        }
+
+        log.info("Constant folding: folded {} ops ({} bytes of new constants); removed {} unused constants ({} bytes)",
+                count, addedBytes, removedConstants, removedBytes);
+        return count;
+    }
+
+    private static INDArray[] evaluate(InferenceSession session, SameDiffOp op, FrameIter frameIter) {
+        DifferentialFunction df = op.getOp();
+        Set<String> inputs = new HashSet<>(op.getInputsToOp());
+        if (df instanceof Identity) {
+            return new INDArray[]{session.getConstantOrVariable(op.getInputsToOp().get(0))};
+        }
+        Set<VarId> noInputs = Collections.emptySet();
+        DifferentialFunction parameterized = session.getAndParameterizeOp(op.getName(), frameIter, noInputs, noInputs,
+                inputs, Collections.<String, INDArray>emptyMap());
+        return session.getOutputs(parameterized, frameIter, noInputs, noInputs, inputs);
+    }
+
+    protected boolean canFold(SameDiff sd, SameDiffOp op, Set<String> constants) {
+        DifferentialFunction df = op.getOp();
+        if (df instanceof LoopCond || df instanceof Enter || df instanceof Exit || df instanceof NextIteration ||
+                df instanceof Merge || df instanceof Switch || df instanceof If || df instanceof While ||
+                df instanceof BaseTensorOp || df instanceof GradientBackwardsMarker || df instanceof RandomOp ||
+                df.getClass().getName().startsWith("org.nd4j.linalg.api.ops.random.") ||
+                !(df instanceof Op || df instanceof CustomOp)) {
+            return false;
+        }
+
+        if (op.getControlDeps() != null && !op.getControlDeps().isEmpty())
+            return false;
+        List<String> inputs = op.getInputsToOp();
+        if (inputs == null || inputs.isEmpty() || op.getOutputsOfOp() == null || op.getOutputsOfOp().isEmpty())
+            return false;
+        for (String s : inputs) {
+            if (!constants.contains(s))
+                return false;
+            List<String> cd = sd.getVariables().get(s).getControlDeps();
+            if (cd != null && !cd.isEmpty())
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isUnused(Variable v) {
+        return (v.getInputsForOp() == null || v.getInputsForOp().isEmpty()) &&
+                (v.getControlDepsForOp() == null || v.getControlDepsForOp().isEmpty()) &&
+                (v.getControlDepsForVar() == null || v.getControlDepsForVar().isEmpty());
+    }
+
+    protected static long bytes(INDArray arr) {
+        if (arr == null || arr.isEmpty())
+            return 0;
+        return arr.length() * arr.data().getElementSize();
+    }
+}
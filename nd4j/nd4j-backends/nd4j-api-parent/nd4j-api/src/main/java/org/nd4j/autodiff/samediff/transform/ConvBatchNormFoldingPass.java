@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.autodiff.samediff.transform;
+
+import org.nd4j.autodiff.functions.DifferentialFunction;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.impl.layers.convolution.BatchNorm;
+import org.nd4j.linalg.api.ops.impl.layers.convolution.Conv2D;
+import org.nd4j.linalg.api.ops.impl.layers.convolution.config.Conv2DConfig;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ConvBatchNormFoldingPass: folds a batch normalization op that directly follows a 2D convolution into the weights and
+ * bias of the convolution. That is, {@code batchNorm(conv2d(x, W, b))} becomes {@code conv2d(x, W', b')} where:<br>
+ * {@code W'[...,c] = W[...,c] * s[c]}<br>
+ * {@code b'[c] = (b[c] - mean[c]) * s[c] + beta[c]}<br>
+ * {@code s[c] = gamma[c] / sqrt(var[c] + epsilon)}<br>
+ * <br>
+ * This is an inference-only optimization: the convolution weights and batch norm parameters (mean, variance, gamma and
+ * beta) must be variables or constants, and their current values are folded into new constants. Consequently, the
+ * optimized graph should not be used for training.
+ */
+public class ConvBatchNormFoldingPass extends SubGraphOptimizationPass {
+
+    @Override
+    protected SubGraphPredicate predicate() {
+        return SubGraphPredicate.withRoot(OpPredicate.classEquals(BatchNorm.class))
+                .withInputSubgraph(0, SubGraphPredicate.withRoot(OpPredicate.classEquals(Conv2D.class)));
+    }
+
+    @Override
+    protected boolean canReplace(SameDiff sd, SubGraph sg) {
+        BatchNorm bn = (BatchNorm) sg.getRootNode();
+        Conv2D conv = (Conv2D) sg.getChildNodes().get(0);
+
+        //Batch norm must be over the channels dimension only
+        int[] axis = bn.getJaxis();
+        if (axis == null || axis.length != 1)
+            return false;
+        int channelAxis = conv.getConfig().isNHWC() ? 3 : 1;
+        if (axis[0] != channelAxis && !(channelAxis == 3 && axis[0] == -1))
+            return false;
+
+        SDVariable[] convArgs = conv.args();
+        INDArray w = constantArray(convArgs[1]);
+        if (w == null || w.rank() != 4)
+            return false;
+        long nOut = w.size(3);
+        if (convArgs.length > 2 && !isVector(constantArray(convArgs[2]), nOut))
+            return false;
+
+        SDVariable[] bnArgs = bn.args();
+        int numArgs = 3 + (bn.isApplyGamma() ? 1 : 0) + (bn.isApplyBeta() ? 1 : 0);
+        if (bnArgs.length < numArgs)
+            return false;
+        for (int i = 1; i < numArgs; i++) {
+            if (!isVector(constantArray(bnArgs[i]), nOut))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isVector(INDArray arr, long length) {
+        return arr != null && arr.isVector() && arr.length() == length;
+    }
+
+    @Override
+    public List<SDVariable> processSubgraph(SameDiff sd, SubGraph subGraph) {
+        BatchNorm bn = (BatchNorm) subGraph.getRootNode();
+        Conv2D conv = (Conv2D) subGraph.getChildNodes().get(0);
+        SDVariable[] convArgs = conv.args();
+        SDVariable[] bnArgs = bn.args();
+
+        INDArray w = constantArray(convArgs[1]);
+        DataType dt = w.dataType();
+        long nOut = w.size(3);
+        INDArray mean = vector(constantArray(bnArgs[1]), dt);
+        INDArray var = vector(constantArray(bnArgs[2]), dt);
+        //Note: libnd4j takes gamma and beta (if present) from args 3 and 3+applyGamma
+        INDArray gamma = bn.isApplyGamma() ? vector(constantArray(bnArgs[3]), dt) : null;
+        INDArray beta = bn.isApplyBeta() ? vector(constantArray(bnArgs[bn.isApplyGamma() ? 4 : 3]), dt) : null;
+
+        INDArray scale = Transforms.pow(var.add(bn.getEpsilon()), -0.5, false);
+        if (gamma != null)
+            scale.muli(gamma);
+
+        //Weights: [kH, kW, iC, oC] - scale along output channels
+        INDArray newW = w.dup('c').reshape('c', w.length() / nOut, nOut).muliRowVector(scale).reshape('c', w.shape());
+
+        INDArray newB = convArgs.length > 2 ? vector(constantArray(convArgs[2]), dt).dup() : Nd4j.zeros(dt, 1, nOut);
+        newB.subi(mean).muli(scale);
+        if (beta != null)
+            newB.addi(beta);
+        newB = newB.reshape(nOut);
+
+        SDVariable wVar = sd.constant(sd.generateNewVarName(convArgs[1].getVarName() + "_bnfolded", 0), newW);
+        SDVariable bVar = sd.constant(sd.generateNewVarName(bn.getOwnName() + "_bnfolded_bias", 0), newB);
+
+        Conv2DConfig config = conv.getConfig();
+        SDVariable out = sd.cnn().conv2d(convArgs[0], wVar, bVar, config);
+        return Collections.singletonList(out);
+    }
+
+    private static INDArray vector(INDArray arr, DataType dt) {
+        return arr.castTo(dt).reshape(1, arr.length());
+    }
+}
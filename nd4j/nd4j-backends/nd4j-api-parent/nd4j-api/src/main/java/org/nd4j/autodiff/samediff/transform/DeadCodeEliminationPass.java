@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.autodiff.samediff.transform;
+
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.VariableType;
+import org.nd4j.autodiff.samediff.internal.SameDiffOp;
+import org.nd4j.autodiff.samediff.internal.Variable;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.*;
+
+/**
+ * DeadCodeEliminationPass: removes all ops that are not required to calculate the required variables, along with their
+ * outputs and any constants that are only used by those ops. For example, training-only branches, summaries and unused
+ * outputs in imported TensorFlow graphs.<br>
+ * Placeholders and trainable variables are never removed. If no required variables are specified, the graph is not
+ * modified (as it is not possible to determine which ops are dead).
+ */
+@Slf4j
+public class DeadCodeEliminationPass implements GraphOptimizationPass {
+
+    @Override
+    public int apply(SameDiff sd, Set<String> requiredVariables) {
+        if (requiredVariables == null || requiredVariables.isEmpty())
+            return 0;
+
+        Map<String, Variable> vars = sd.getVariables();
+        Map<String, SameDiffOp> ops = sd.getOps();
+
+        //Step 1: Work backwards from the required variables to find all ops and variables that are required
+        Set<String> reachableVars = new HashSet<>();
+        Set<String> reachableOps = new HashSet<>();
+        Queue<String> queue = new LinkedList<>();
+        for (String s : requiredVariables) {
+            if (vars.containsKey(s) && reachableVars.add(s))
+                queue.add(s);
+        }
+
+        while (!queue.isEmpty()) {
+            Variable v = vars.get(queue.remove());
+            List<String> next = new ArrayList<>();
+            if (v.getControlDeps() != null)
+                next.addAll(v.getControlDeps());
+            String opName = v.getOutputOfOp();
+            if (opName != null && ops.containsKey(opName) && reachableOps.add(opName)) {
+                SameDiffOp op = ops.get(opName);
+                if (op.getInputsToOp() != null)
+                    next.addAll(op.getInputsToOp());
+                if (op.getControlDeps() != null)
+                    next.addAll(op.getControlDeps());
+            }
+            for (String s : next) {
+                if (vars.containsKey(s) && reachableVars.add(s))
+                    queue.add(s);
+            }
+        }
+
+        //Outputs of required ops are kept even if not themselves required: the op still produces them
+        for (String opName : reachableOps) {
+            List<String> outputs = ops.get(opName).getOutputsOfOp();
+            if (outputs != null)
+                reachableVars.addAll(outputs);
+        }
+
+        //Step 2: Remove the dead ops and variables
+        List<String> deadOps = new ArrayList<>();
+        for (String opName : ops.keySet()) {
+            if (!reachableOps.contains(opName))
+                deadOps.add(opName);
+        }
+        for (String opName : deadOps) {
+            GraphTransformUtil.removeOp(sd, opName);
+        }
+
+        List<String> deadVars = new ArrayList<>();
+        for (Variable v : vars.values()) {
+            String name = v.getName();
+            VariableType t = v.getVariable().getVariableType();
+            if (!reachableVars.contains(name) && (t == VariableType.ARRAY || t == VariableType.CONSTANT))
+                deadVars.add(name);
+        }
+        long removedBytes = 0;
+        for (String s : deadVars) {
+            INDArray arr = vars.get(s).getVariable().getVariableType() == VariableType.CONSTANT ? sd.getArrForVarName(s) : null;
+            removedBytes += ConstantFoldingPass.bytes(arr);
+            vars.get(s).setInputsForOp(null);
+            sd.removeVariable(s);
+        }
+
+        //Step 3: Remove any remaining references to removed variables (control dependencies)
+        Set<String> removed = new HashSet<>(deadVars);
+        for (Variable v : vars.values()) {
+            if (v.getControlDepsForVar() != null)
+                v.getControlDepsForVar().removeAll(removed);
+            if (v.getControlDeps() != null)
+                v.getControlDeps().removeAll(removed);
+        }
+
+        if (!deadOps.isEmpty() || !deadVars.isEmpty()) {
+            log.info("Dead code elimination: removed {} ops and {} variables ({} bytes of constants)",
+                    deadOps.size(), deadVars.size(), removedBytes);
+        }
+        return deadOps.size();
+    }
+}
@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.autodiff.samediff.transform;
+
+import org.nd4j.autodiff.samediff.SameDiff;
+
+import java.util.Set;
+
+/**
+ * GraphOptimizationPass: a single graph rewrite - such as fusing or folding a pattern of ops - that is applied to a
+ * SameDiff instance by {@link GraphOptimizer}.<br>
+ * Implementations modify the SameDiff instance in place, and must preserve the values (and names) of all variables
+ * that remain in the graph; only the intermediate variables of replaced subgraphs may be removed.
+ */
+public interface GraphOptimizationPass {
+
+    /**
+     * Apply the optimization pass to the specified SameDiff instance, modifying it in place
+     *
+     * @param sd                SameDiff instance to optimize
+     * @param requiredVariables Names of the variables that must not be removed from the graph (usually the outputs
+     *                          that will be requested). May be empty
+     * @return Number of rewrites (i.e., number of replaced subgraphs) applied
+     */
+    int apply(SameDiff sd, Set<String> requiredVariables);
+
+}
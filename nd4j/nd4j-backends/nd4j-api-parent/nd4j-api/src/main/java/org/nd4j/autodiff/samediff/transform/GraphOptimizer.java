@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.autodiff.samediff.transform;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.autodiff.samediff.SameDiff;
+
+import java.util.*;
+
+/**
+ * GraphOptimizer: applies a list of {@link GraphOptimizationPass}es (op fusion, constant folding, etc) to a SameDiff
+ * graph, before execution. The passes are applied in order, each one exactly once.<br>
+ * Note that the original SameDiff instance is not modified; a copy is made, which is then optimized and returned.<br>
+ * Usage:
+ * <pre>
+ * {@code
+ * SameDiff optimized = GraphOptimizer.defaultOptimizer().optimize(sd, "output");
+ * INDArray out = optimized.exec(placeholders, "output").get("output");
+ * }
+ * </pre>
+ * All variables that remain in the optimized graph keep their names. Intermediate variables of fused subgraphs are
+ * removed, unless they are listed as required outputs in {@link #optimize(SameDiff, String...)}.<br>
+ * The default optimizer ({@link #defaultOptimizer()}) includes inference-only optimizations (such as
+ * {@link ConvBatchNormFoldingPass}) - hence optimized graphs should be used for inference only.
+ */
+@Slf4j
+public class GraphOptimizer {
+
+    @Getter
+    private final List<GraphOptimizationPass> passes;
+
+    public GraphOptimizer(@NonNull GraphOptimizationPass... passes) {
+        this(Arrays.asList(passes));
+    }
+
+    public GraphOptimizer(@NonNull List<GraphOptimizationPass> passes) {
+        this.passes = new ArrayList<>(passes);
+    }
+
+    /**
+     * The default set of optimization passes, in order:<br>
+     * {@link ScalarChainFoldingPass}, {@link ConvBatchNormFoldingPass}, {@link LinearFusionPass}, {@link ReluLayerFusionPass}
+     *
+     * @return GraphOptimizer with the default optimization passes
+     */
+    public static GraphOptimizer defaultOptimizer() {
+        return new GraphOptimizer(
+                new ScalarChainFoldingPass(),
+                new ConvBatchNormFoldingPass(),
+                new LinearFusionPass(),
+                new ReluLayerFusionPass());
+    }
+
+    /**
+     * Optimize the specified graph.
+     *
+     * @param sd      SameDiff instance to optimize. Is not modified
+     * @param outputs Names of the variables that must be available in the optimized graph. Need only be specified for
+     *                intermediate variables: i.e., variables that may be removed when fusing ops
+     * @return The optimized copy of the SameDiff instance
+     */
+    public SameDiff optimize(@NonNull SameDiff sd, String... outputs) {
+        return optimizeInPlace(sd.dup(), outputs);
+    }
+
+    /**
+     * Optimize the specified graph in place - i.e., without making a copy first. Note that if a pass fails part way through,
+     * the graph may be left in an invalid state; see {@link #optimize(SameDiff, String...)}
+     *
+     * @param sd      SameDiff instance to optimize. Is modified
+     * @param outputs Names of the variables that must be available in the optimized graph
+     * @return The same SameDiff instance, after optimization
+     */
+    public SameDiff optimizeInPlace(@NonNull SameDiff sd, String... outputs) {
+        Set<String> required = new HashSet<>();
+        if (outputs != null)
+            Collections.addAll(required, outputs);
+
+        int opsBefore = sd.getOps().size();
+        for (GraphOptimizationPass pass : passes) {
+            int count = pass.apply(sd, required);
+            if (count > 0) {
+                log.debug("Optimization pass {}: modified {} ops or subgraphs", pass.getClass().getSimpleName(), count);
+            }
+        }
+        log.info("Optimized graph: {} ops before optimization, {} ops after", opsBefore, sd.getOps().size());
+        return sd;
+    }
+}
@@ -25,6 +25,7 @@ import org.nd4j.autodiff.samediff.internal.Variable;
 import org.nd4j.base.Preconditions;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -57,17 +58,39 @@ public class GraphTransformUtil {
         sd = sd.dup();
 
         List<SubGraph> subgraphs = getSubgraphsMatching(sd, p);
+        replaceSubgraphs(sd, subgraphs, processor, false);
+        return sd;
+    }
 
+    /**
+     * Replace a single subgraph, modifying the SameDiff instance in place (i.e., no copy is made).<br>
+     * Unlike {@link #replaceSubgraphsMatching(SameDiff, SubGraphPredicate, SubGraphProcessor)}, the new output variables
+     * are renamed to the names of the output variables they replace - hence any variable names that are used to
+     * fetch outputs (for example, via {@link SameDiff#exec(Map, String...)}) remain valid after the replacement.<br>
+     * The outputs of the subgraph are defined by {@link SubGraph#outputsIncludingUnconsumed()}: i.e., variables that
+     * are not consumed by any op (for example, graph outputs) are also replaced.
+     *
+     * @param sd        SameDiff instance to modify
+     * @param sg        Subgraph to replace. Must belong to the specified SameDiff instance
+     * @param processor SubGraphProcessor used to define the replacement
+     * @return The new output variables
+     */
+    public static List<SDVariable> replaceSubgraphInPlace(@NonNull SameDiff sd, @NonNull SubGraph sg, @NonNull SubGraphProcessor processor) {
+        return replaceSubgraphs(sd, Collections.singletonList(sg), processor, true);
+    }
+
+    private static List<SDVariable> replaceSubgraphs(SameDiff sd, List<SubGraph> subgraphs, SubGraphProcessor processor,
+                                                     boolean inPlace) {
+        List<SDVariable> lastOutputs = null;
         for (SubGraph sg : subgraphs) {
             List<SDVariable> newOutputs = processor.processSubgraph(sd, sg);
-            List<SDVariable> oldOutputs = sg.outputs();
+            List<SDVariable> oldOutputs = (inPlace ? sg.outputsIncludingUnconsumed() : sg.outputs());
             Preconditions.checkState(oldOutputs.size() == newOutputs.size(), "Error applying subgraph processor: " +
                     "different number of outputs for subgraph (%s) vs. returned by preprocessor (%s)", oldOutputs.size(), newOutputs.size());
 
             //Step 1: replace the old outputs with new outputs
             //So for initial graph (x -> y -> z) and post application of processor we now have (x -> (y, A); y->z),
             // we want to end up with (x -> A -> z)
-            List<DifferentialFunction> allSubGraphFns = sg.allFunctionsInSubgraph();
             for (int i = 0; i < oldOutputs.size(); i++) {
                 String oldOutVarName = oldOutputs.get(i).getVarName();
                 String newOutVarName = newOutputs.get(i).getVarName();
@@ -79,7 +102,7 @@ public class GraphTransformUtil {
                     List<String> newInputsForOps = new ArrayList<>();
                     for (String s : oldInputsForOps) {
                         DifferentialFunction df = sd.getFunctionById(s);
-                        if (!allSubGraphFns.contains(df)) {
+                        if (!sg.inSubgraph(df)) {
                             newInputsForOps.add(s);
                         }
                     }
@@ -142,7 +165,7 @@ public class GraphTransformUtil {
                         // (2) variable is now connected directly as an output: (A->B->C) becomes (A->C)
                         // For the latter case, this
                         DifferentialFunction df = sd.getFunctionById(opName);
-                        if (allSubGraphFns.contains(df)) {
+                        if (sg.inSubgraph(df)) {
                             newInputsForOp.remove(opName);
                         }
                     }
@@ -164,9 +187,47 @@ public class GraphTransformUtil {
                     }
                 }
             }
+
+            if (inPlace) {
+                //Keep the names of the replaced outputs
+                for (int i = 0; i < oldOutputs.size(); i++) {
+                    sd.updateVariableNameAndReference(newOutputs.get(i), oldOutputs.get(i).getVarName());
+                }
+            }
+            lastOutputs = newOutputs;
         }
 
-        return sd;
+        return lastOutputs;
+    }
+
+    /**
+     * Remove the specified op from the graph. References to the op are removed from its input variables (and control
+     * dependencies); the op's output variables are NOT removed - and should be either removed (see
+     * {@link SameDiff#removeVariable(String)}) or converted to another variable type by the caller
+     *
+     * @param sd     SameDiff instance to remove the op from
+     * @param opName Name of the op to remove
+     */
+    public static void removeOp(@NonNull SameDiff sd, @NonNull String opName) {
+        SameDiffOp op = sd.getOps().remove(opName);
+        Preconditions.checkState(op != null, "No op with name \"%s\" exists", opName);
+        Map<String, Variable> vars = sd.getVariables();
+        if (op.getInputsToOp() != null) {
+            for (String s : op.getInputsToOp()) {
+                Variable v = vars.get(s);
+                if (v != null && v.getInputsForOp() != null) {
+                    v.getInputsForOp().removeAll(Collections.singleton(opName));
+                }
+            }
+        }
+        if (op.getControlDeps() != null) {
+            for (String s : op.getControlDeps()) {
+                Variable v = vars.get(s);
+                if (v != null && v.getControlDepsForOp() != null) {
+                    v.getControlDepsForOp().removeAll(Collections.singleton(opName));
+                }
+            }
+        }
     }
 
     /**
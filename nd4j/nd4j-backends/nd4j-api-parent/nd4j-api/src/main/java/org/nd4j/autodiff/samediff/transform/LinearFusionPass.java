@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.autodiff.samediff.transform;
+
+import org.nd4j.autodiff.functions.DifferentialFunction;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.impl.broadcast.BiasAdd;
+import org.nd4j.linalg.api.ops.impl.reduce.Mmul;
+import org.nd4j.linalg.api.ops.impl.transforms.pairwise.arithmetic.AddOp;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * LinearFusionPass: fuses a matrix multiplication followed by a bias add - i.e., {@code mmul(x, W) + b} - into a single
+ * {@code xw_plus_b} op (see {@link org.nd4j.autodiff.samediff.ops.SDNN#linear(SDVariable, SDVariable, SDVariable)}), avoiding the intermediate mmul
+ * array.<br>
+ * Applies to {@link AddOp} and {@link BiasAdd} ops where the weights are a rank 2 variable or constant, the bias is a
+ * rank 1 variable or constant with length equal to the number of weight columns, and the mmul is not transposed.
+ * Other bias shapes (such as [1,nOut] row vectors) are not fused, as their broadcast behaviour for the original add op
+ * may differ from that of {@code xw_plus_b}.
+ */
+public class LinearFusionPass extends SubGraphOptimizationPass {
+
+    @Override
+    protected SubGraphPredicate predicate() {
+        OpPredicate addOrBiasAdd = new OpPredicate() {
+            @Override
+            public boolean matches(SameDiff sameDiff, DifferentialFunction function) {
+                return function.getClass() == AddOp.class || function.getClass() == BiasAdd.class;
+            }
+        };
+        return SubGraphPredicate.withRoot(addOrBiasAdd)
+                .withInputCount(2)
+                .withInputSubgraph(0, SubGraphPredicate.withRoot(OpPredicate.classEquals(Mmul.class)).withInputCount(2));
+    }
+
+    @Override
+    protected boolean canReplace(SameDiff sd, SubGraph sg) {
+        DifferentialFunction mmul = sg.getChildNodes().get(0);
+        long[] iArgs = ((Mmul) mmul).iArgs();
+        for (long l : iArgs) {
+            if (l != 0)
+                return false;   //Transpose A/B/result
+        }
+
+        INDArray w = constantArray(mmul.arg(1));
+        INDArray b = constantArray(sg.getRootNode().arg(1));
+        if (w == null || b == null || w.rank() != 2 || b.rank() != 1 || b.length() != w.size(1))
+            return false;
+
+        long[] inShape = mmul.arg(0).getShape();
+        return inShape == null || inShape.length == 0 || inShape.length == 2;
+    }
+
+    @Override
+    public List<SDVariable> processSubgraph(SameDiff sd, SubGraph subGraph) {
+        DifferentialFunction mmul = subGraph.getChildNodes().get(0);
+        SDVariable out = sd.nn().linear(mmul.arg(0), mmul.arg(1), subGraph.getRootNode().arg(1));
+        return Collections.singletonList(out);
+    }
+}
@@ -0,0 +1,60 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.autodiff.samediff.transform;
+
+import org.nd4j.autodiff.functions.DifferentialFunction;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.linalg.api.ops.impl.scalar.RectifiedLinear;
+import org.nd4j.linalg.api.ops.impl.transforms.custom.XwPlusB;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ReluLayerFusionPass: fuses a {@code xw_plus_b} op followed by a ReLU activation (with cutoff 0) into a single
+ * {@code relu_layer} op (see {@link org.nd4j.autodiff.samediff.ops.SDNN#reluLayer(SDVariable, SDVariable, SDVariable)}).<br>
+ * Usually applied after {@link LinearFusionPass}, so that {@code relu(mmul(x,W) + b)} becomes a single op.
+ */
+public class ReluLayerFusionPass extends SubGraphOptimizationPass {
+
+    @Override
+    protected SubGraphPredicate predicate() {
+        return SubGraphPredicate.withRoot(OpPredicate.classEquals(RectifiedLinear.class))
+                .withInputCount(1)
+                .withInputSubgraph(0, SubGraphPredicate.withRoot(OpPredicate.classEquals(XwPlusB.class)).withInputCount(3));
+    }
+
+    @Override
+    protected boolean canReplace(SameDiff sd, SubGraph sg) {
+        RectifiedLinear relu = (RectifiedLinear) sg.getRootNode();
+        if (relu.scalar() == null || relu.scalar().getDouble(0) != 0.0)
+            return false;
+
+        //relu_layer requires rank 2 input (xw_plus_b also allows rank 1)
+        long[] inShape = sg.getChildNodes().get(0).arg(0).getShape();
+        return inShape == null || inShape.length == 0 || inShape.length == 2;
+    }
+
+    @Override
+    public List<SDVariable> processSubgraph(SameDiff sd, SubGraph subGraph) {
+        DifferentialFunction xwPlusB = subGraph.getChildNodes().get(0);
+        SDVariable out = sd.nn().reluLayer(xwPlusB.arg(0), xwPlusB.arg(1), xwPlusB.arg(2));
+        return Collections.singletonList(out);
+    }
+}
@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.autodiff.samediff.transform;
+
+import org.nd4j.autodiff.functions.DifferentialFunction;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.linalg.api.ops.BaseScalarOp;
+import org.nd4j.linalg.api.ops.impl.scalar.ScalarAdd;
+import org.nd4j.linalg.api.ops.impl.scalar.ScalarDivision;
+import org.nd4j.linalg.api.ops.impl.scalar.ScalarMultiplication;
+import org.nd4j.linalg.api.ops.impl.scalar.ScalarSubtraction;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ScalarChainFoldingPass: folds chains of element-wise scalar ops into a single scalar op. Specifically:<br>
+ * - Consecutive scalar add/subtract ops: {@code (x + a) - b} becomes {@code x + (a - b)}<br>
+ * - Consecutive scalar multiply/divide ops: {@code (x * a) / b} becomes {@code x * (a / b)}<br>
+ * Note that due to floating point rounding, results may differ very slightly from the original graph.
+ */
+public class ScalarChainFoldingPass extends SubGraphOptimizationPass {
+
+    private static final OpPredicate ADD_SUB = new OpPredicate() {
+        @Override
+        public boolean matches(SameDiff sameDiff, DifferentialFunction function) {
+            return (function.getClass() == ScalarAdd.class || function.getClass() == ScalarSubtraction.class) && isSingleInput(function);
+        }
+    };
+
+    private static final OpPredicate MUL_DIV = new OpPredicate() {
+        @Override
+        public boolean matches(SameDiff sameDiff, DifferentialFunction function) {
+            return (function.getClass() == ScalarMultiplication.class || function.getClass() == ScalarDivision.class) && isSingleInput(function);
+        }
+    };
+
+    private static boolean isSingleInput(DifferentialFunction df) {
+        SDVariable[] args = df.args();
+        return args != null && args.length == 1 && ((BaseScalarOp) df).scalar() != null;
+    }
+
+    private final OpPredicate rootOrInput = new OpPredicate() {
+        @Override
+        public boolean matches(SameDiff sameDiff, DifferentialFunction function) {
+            return ADD_SUB.matches(sameDiff, function) || MUL_DIV.matches(sameDiff, function);
+        }
+    };
+
+    @Override
+    protected SubGraphPredicate predicate() {
+        return SubGraphPredicate.withRoot(rootOrInput)
+                .withInputSubgraph(0, rootOrInput);
+    }
+
+    @Override
+    protected boolean canReplace(SameDiff sd, SubGraph sg) {
+        DifferentialFunction root = sg.getRootNode();
+        DifferentialFunction input = sg.getChildNodes().get(0);
+        return (ADD_SUB.matches(sd, root) && ADD_SUB.matches(sd, input)) || (MUL_DIV.matches(sd, root) && MUL_DIV.matches(sd, input));
+    }
+
+    @Override
+    public List<SDVariable> processSubgraph(SameDiff sd, SubGraph subGraph) {
+        DifferentialFunction root = subGraph.getRootNode();
+        DifferentialFunction input = subGraph.getChildNodes().get(0);
+        SDVariable in = input.arg();
+        double s1 = ((BaseScalarOp) input).scalar().getDouble(0);
+        double s2 = ((BaseScalarOp) root).scalar().getDouble(0);
+
+        SDVariable out;
+        if (root instanceof ScalarAdd || root instanceof ScalarSubtraction) {
+            double v1 = input instanceof ScalarSubtraction ? -s1 : s1;
+            double v2 = root instanceof ScalarSubtraction ? -s2 : s2;
+            out = in.add(v1 + v2);
+        } else {
+            double v1 = input instanceof ScalarDivision ? 1.0 / s1 : s1;
+            double v2 = root instanceof ScalarDivision ? 1.0 / s2 : s2;
+            out = in.mul(v1 * v2);
+        }
+        return Collections.singletonList(out);
+    }
+}
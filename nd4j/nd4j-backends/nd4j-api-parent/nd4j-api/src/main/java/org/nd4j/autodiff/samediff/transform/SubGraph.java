@@ -40,6 +40,18 @@ public class SubGraph {
 
 
     public List<SDVariable> outputs(){
+        return outputs(false);
+    }
+
+    /**
+     * As per {@link #outputs()}, but additionally including any variables of the root or child nodes that are not
+     * consumed by any op at all - for example, variables that are graph outputs
+     */
+    public List<SDVariable> outputsIncludingUnconsumed(){
+        return outputs(true);
+    }
+
+    private List<SDVariable> outputs(boolean includeUnconsumed){
         //Outputs: the SDVariables of the root OR child nodes that are not consumed *ONLY* by another op within the subgraph
         List<SDVariable> allOutputs = new ArrayList<>();
         if(rootNode.outputVariables() != null)
@@ -65,7 +77,7 @@ public class SubGraph {
         for(SDVariable v : allOutputs){
             Variable var = sameDiff.getVariables().get(v.getVarName());
             List<String> inputsFor = var.getInputsForOp();
-            boolean allInSubgraph = true;
+            boolean allInSubgraph = !includeUnconsumed || (inputsFor != null && !inputsFor.isEmpty());
             if(inputsFor != null){
                 for(String opOwnName : inputsFor) {
                     if (!inSubgraph(sameDiff.getFunctionById(opOwnName))){
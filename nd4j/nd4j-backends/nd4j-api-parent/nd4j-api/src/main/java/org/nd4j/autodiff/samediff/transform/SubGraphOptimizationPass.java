@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.autodiff.samediff.transform;
+
+import org.nd4j.autodiff.functions.DifferentialFunction;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.VariableType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * SubGraphOptimizationPass: a {@link GraphOptimizationPass} that replaces all subgraphs matching a {@link SubGraphPredicate}
+ * with a new (usually smaller) subgraph, as defined by {@link #processSubgraph(SameDiff, SubGraph)}.<br>
+ * Subgraphs are replaced one at a time (using {@link GraphTransformUtil#replaceSubgraphInPlace(SameDiff, SubGraph, SubGraphProcessor)}),
+ * until no more matching subgraphs remain. A matching subgraph is only replaced if:<br>
+ * (a) It has exactly one output - i.e., none of the intermediate variables are used outside of the subgraph<br>
+ * (b) None of the intermediate variables are in the set of required variables<br>
+ * (c) {@link #canReplace(SameDiff, SubGraph)} returns true<br>
+ * The name of the output variable of the subgraph is preserved.
+ */
+public abstract class SubGraphOptimizationPass implements GraphOptimizationPass, SubGraphProcessor {
+
+    /**
+     * @return The predicate defining the subgraphs to replace
+     */
+    protected abstract SubGraphPredicate predicate();
+
+    /**
+     * Additional checks for whether the specified (matching) subgraph can be replaced - for example, shape or
+     * array availability checks that can't be expressed by a {@link SubGraphPredicate}
+     *
+     * @param sd SameDiff instance
+     * @param sg Subgraph that matches {@link #predicate()}
+     * @return True if the subgraph can be replaced
+     */
+    protected boolean canReplace(SameDiff sd, SubGraph sg) {
+        return true;
+    }
+
+    @Override
+    public int apply(SameDiff sd, Set<String> requiredVariables) {
+        SubGraphPredicate p = predicate();
+        int count = 0;
+        boolean replaced;
+        do {
+            replaced = false;
+            for (DifferentialFunction df : sd.functions()) {
+                if (!sd.getOps().containsKey(df.getOwnName()))
+                    continue;   //Removed by an earlier replacement
+                if (!p.matches(sd, df))
+                    continue;
+                SubGraph sg = p.getSubGraph(sd, df);
+                if (!isReplaceable(sg, requiredVariables) || !canReplace(sd, sg))
+                    continue;
+
+                GraphTransformUtil.replaceSubgraphInPlace(sd, sg, this);
+                count++;
+                replaced = true;
+            }
+        } while (replaced);
+        return count;
+    }
+
+    private static boolean isReplaceable(SubGraph sg, Set<String> requiredVariables) {
+        SDVariable[] rootOutputs = sg.getRootNode().outputVariables();
+        if (rootOutputs == null || rootOutputs.length != 1)
+            return false;
+        List<SDVariable> outputs = sg.outputsIncludingUnconsumed();
+        if (outputs.size() != 1 || outputs.get(0) != rootOutputs[0])
+            return false;
+        if (sg.getChildNodes() != null) {
+            for (DifferentialFunction df : sg.getChildNodes()) {
+                for (SDVariable v : df.outputVariables()) {
+                    if (requiredVariables.contains(v.getVarName()))
+                        return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the array for a variable or constant
+     *
+     * @param v Variable to get the array for
+     * @return The array, or null if the variable is not a variable or constant (or the array is not available)
+     */
+    protected static INDArray constantArray(SDVariable v) {
+        if (v == null || (v.getVariableType() != VariableType.VARIABLE && v.getVariableType() != VariableType.CONSTANT))
+            return null;
+        return v.getArr();
+    }
+}
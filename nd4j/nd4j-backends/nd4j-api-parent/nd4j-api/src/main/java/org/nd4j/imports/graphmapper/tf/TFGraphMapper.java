@@ -27,6 +27,9 @@ import org.nd4j.autodiff.samediff.SameDiff;
 import org.nd4j.autodiff.samediff.VariableType;
 import org.nd4j.autodiff.samediff.internal.SameDiffOp;
 import org.nd4j.autodiff.samediff.internal.Variable;
+import org.nd4j.autodiff.samediff.transform.ConstantFoldingPass;
+import org.nd4j.autodiff.samediff.transform.DeadCodeEliminationPass;
+import org.nd4j.autodiff.samediff.transform.GraphOptimizer;
 import org.nd4j.base.Preconditions;
 import org.nd4j.imports.converters.DifferentialFunctionClassHolder;
 import org.nd4j.imports.descriptors.properties.AttributeAdapter;
@@ -95,6 +98,42 @@ public class TFGraphMapper extends BaseGraphMapper<GraphDef,NodeDef,AttrValue,No
         return MAPPER_INSTANCE;
     }
 
+    /**
+     * Import a frozen TensorFlow graph for inference: after import, ops that are not required to calculate the specified
+     * outputs are removed (see {@link DeadCodeEliminationPass}), and subgraphs that depend only on constants are evaluated
+     * once and replaced by constants (see {@link ConstantFoldingPass})
+     *
+     * @param graphFile Frozen TensorFlow graph file
+     * @param outputs   Names of the outputs that will be requested. If none are specified, no ops are pruned
+     * @return Imported and optimized SameDiff instance
+     */
+    public SameDiff importGraphForInference(File graphFile, String... outputs) {
+        return optimizeForInference(importGraph(graphFile), outputs);
+    }
+
+    /**
+     * See {@link #importGraphForInference(File, String...)}
+     */
+    public SameDiff importGraphForInference(InputStream inputStream, String... outputs) {
+        return optimizeForInference(importGraph(inputStream), outputs);
+    }
+
+    /**
+     * See {@link #importGraphForInference(File, String...)}
+     */
+    public SameDiff importGraphForInference(GraphDef graphDef, String... outputs) {
+        return optimizeForInference(importGraph(graphDef), outputs);
+    }
+
+    protected SameDiff optimizeForInference(SameDiff sd, String... outputs) {
+        if (outputs != null) {
+            for (String s : outputs) {
+                Preconditions.checkState(sd.hasVariable(s), "Requested output \"%s\" does not exist in the imported graph", s);
+            }
+        }
+        return new GraphOptimizer(new DeadCodeEliminationPass(), new ConstantFoldingPass()).optimizeInPlace(sd, outputs);
+    }
+
     @Override
     public void dumpBinaryProtoAsText(InputStream inputFile, File outputFile) {
         try {
@@ -74,6 +74,36 @@ public abstract class BaseOpContext implements OpContext {
         return result;
     }
 
+    /**
+     * This method returns input array with given index, or null if no array was set for this index
+     * @param index
+     * @return
+     */
+    public INDArray getInputArray(int index) {
+        return fastpath_in.get(index);
+    }
+
+    /**
+     * This method removes input array with given index from this context, so it's not referenced by this context anymore.
+     * Array should be set again before next op call
+     * @param index
+     */
+    public void clearInputArray(int index) {
+        fastpath_in.remove(index);
+    }
+
+    /**
+     * This method returns number of input arrays defined within this context
+     * @return
+     */
+    public int numInputArguments() {
+        int cnt = 0;
+        while (fastpath_in.containsKey(cnt))
+            cnt++;
+
+        return cnt;
+    }
+
     @Override
     public List<INDArray> getOutputArrays() {
         val result = new ArrayList<INDArray>();
@@ -88,6 +118,36 @@ public abstract class BaseOpContext implements OpContext {
         return result;
     }
 
+    /**
+     * This method returns output array with given index, or null if no array was set for this index
+     * @param index
+     * @return
+     */
+    public INDArray getOutputArray(int index) {
+        return fastpath_out.get(index);
+    }
+
+    /**
+     * This method removes output array with given index from this context, so it's not referenced by this context anymore.
+     * Array should be set again before next op call
+     * @param index
+     */
+    public void clearOutputArray(int index) {
+        fastpath_out.remove(index);
+    }
+
+    /**
+     * This method returns number of output arrays defined within this context
+     * @return
+     */
+    public int numOutputArguments() {
+        int cnt = 0;
+        while (fastpath_out.containsKey(cnt))
+            cnt++;
+
+        return cnt;
+    }
+
     @Override
     public void setOutputArray(int index, INDArray array) {
         fastpath_out.put(index, array);
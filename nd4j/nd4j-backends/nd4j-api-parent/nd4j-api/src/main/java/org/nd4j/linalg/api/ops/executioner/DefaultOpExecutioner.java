@@ -492,6 +492,10 @@ public class DefaultOpExecutioner implements OpExecutioner {
         if (OpProfiler.getInstance().getConfig() == null)
             return;
 
+        if (OpProfiler.getInstance().getConfig().isTrace()) {
+            OpProfiler.getInstance().getTracer().recordOp(op, timeStart);
+        }
+
         if (OpProfiler.getInstance().getConfig().isStackTrace()) {
             OpProfiler.getInstance().processStackCall(op, timeStart);
         }
@@ -521,10 +525,24 @@ public class DefaultOpExecutioner implements OpExecutioner {
         }
     }
 
+    /**
+     * Record the specified op with the {@link org.nd4j.linalg.profiler.OpTracer}, if tracing is enabled. Unlike
+     * {@link #profilingConfigurableHookOut(Op, long)}, no other profiling or NaN/Inf checks are performed
+     */
+    public void profilingTraceHookOut(Op op, long timeStart) {
+        if (OpProfiler.getInstance().getConfig() != null && OpProfiler.getInstance().getConfig().isTrace()) {
+            OpProfiler.getInstance().getTracer().recordOp(op, timeStart);
+        }
+    }
+
     public void profilingConfigurableHookOut(CustomOp op, long timeStart) {
         if (OpProfiler.getInstance().getConfig() == null)
             return;
 
+        if (OpProfiler.getInstance().getConfig().isTrace()) {
+            OpProfiler.getInstance().getTracer().recordOp(op, timeStart);
+        }
+
         if (OpProfiler.getInstance().getConfig().isStackTrace()) {
             OpProfiler.getInstance().processStackCall(op, timeStart);
         }
@@ -784,6 +802,17 @@ public class DefaultOpExecutioner implements OpExecutioner {
         // no-op
     }
 
+    /**
+     * This method sets the number of OpenMP threads used for op execution by the calling thread.
+     * Useful when ops are executed concurrently from multiple threads, to avoid oversubscribing the available cores.
+     * No-op by default: only applicable to backends that execute ops via OpenMP.
+     *
+     * @param numThreads Number of threads to use for executing ops from the calling thread
+     */
+    public void setOmpNumThreads(int numThreads) {
+        // no-op
+    }
+
     @Override
     public boolean isVerbose() {
         return verbose.get();
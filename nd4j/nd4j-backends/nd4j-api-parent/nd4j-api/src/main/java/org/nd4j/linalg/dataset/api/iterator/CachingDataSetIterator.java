@@ -23,8 +23,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
+import java.util.Random;
 
 /**
+ * Iterator that caches the DataSets returned by the source iterator during the first pass, and returns the cached
+ * DataSets on subsequent passes (i.e., after reset) instead of calling the source iterator again.<br>
+ * Optionally, cached DataSets can be returned in a random order on each pass after the first (shuffling at minibatch
+ * granularity: the examples within each minibatch are not shuffled). See
+ * {@link #CachingDataSetIterator(DataSetIterator, DataSetCache, String, boolean, boolean, long)}
+ *
  * Created by anton on 7/16/16.
  */
 public class CachingDataSetIterator implements DataSetIterator {
@@ -36,6 +43,9 @@ public class CachingDataSetIterator implements DataSetIterator {
     private int currentIndex = 0;
     private boolean usingCache = false;
     private boolean allowPrefetching;
+    private boolean shuffle;
+    private Random rng;
+    private int[] order;
 
     public CachingDataSetIterator(DataSetIterator sourceIterator, DataSetCache cache, String namespace) {
         this(sourceIterator, cache, namespace, false);
@@ -43,6 +53,20 @@ public class CachingDataSetIterator implements DataSetIterator {
 
     public CachingDataSetIterator(DataSetIterator sourceIterator, DataSetCache cache, String namespace,
                     boolean allowPrefetching) {
+        this(sourceIterator, cache, namespace, allowPrefetching, false, 0);
+    }
+
+    /**
+     * @param sourceIterator   Source iterator. Only used until the namespace is completely cached
+     * @param cache            Cache to use
+     * @param namespace        Namespace for the DataSets of the source iterator in the cache
+     * @param allowPrefetching Whether asynchronous prefetching is allowed for this iterator
+     * @param shuffle          If true: return the cached DataSets in a random order on each pass after the first.
+     *                         The first pass (that populates the cache) always uses the order of the source iterator
+     * @param seed             Seed for shuffling. Not used if shuffle is false
+     */
+    public CachingDataSetIterator(DataSetIterator sourceIterator, DataSetCache cache, String namespace,
+                    boolean allowPrefetching, boolean shuffle, long seed) {
         this.sourceIterator = sourceIterator;
         this.cache = cache;
         this.namespace = namespace;
@@ -50,6 +74,12 @@ public class CachingDataSetIterator implements DataSetIterator {
 
         this.usingCache = cache.isComplete(namespace);
         this.allowPrefetching = allowPrefetching;
+        this.shuffle = shuffle;
+        if (shuffle) {
+            this.rng = new Random(seed);
+            if (usingCache)
+                shuffleOrder(countCached());
+        }
     }
 
     public CachingDataSetIterator(DataSetIterator sourceIterator, DataSetCache cache) {
@@ -60,6 +90,34 @@ public class CachingDataSetIterator implements DataSetIterator {
         return String.format("data-set-cache-%s-%06d.bin", namespace, index);
     }
 
+    private int countCached() {
+        int count = 0;
+        while (cache.contains(makeKey(count))) {
+            count++;
+        }
+        return count;
+    }
+
+    private void shuffleOrder(int count) {
+        if (order == null || order.length != count) {
+            order = new int[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+        }
+        //Fisher-Yates shuffle
+        for (int i = count - 1; i > 0; i--) {
+            int j = rng.nextInt(i + 1);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+    }
+
+    private int cacheIndex(int index) {
+        return order == null ? index : order[index];
+    }
+
     @Override
     public DataSet next(int num) {
         throw new UnsupportedOperationException();
@@ -88,6 +146,10 @@ public class CachingDataSetIterator implements DataSetIterator {
     @Override
     public void reset() {
         sourceIterator.reset();
+        if (shuffle && usingCache) {
+            //Only count once: the cached DataSets don't change once the namespace is complete
+            shuffleOrder(order != null ? order.length : countCached());
+        }
         currentIndex = 0;
     }
 
@@ -114,6 +176,8 @@ public class CachingDataSetIterator implements DataSetIterator {
     @Override
     public boolean hasNext() {
         if (usingCache) {
+            if (order != null)
+                return currentIndex < order.length;
             return cache.contains(makeKey(currentIndex));
         } else {
             if (sourceIterator.hasNext()) {
@@ -128,15 +192,13 @@ public class CachingDataSetIterator implements DataSetIterator {
 
     @Override
     public DataSet next() {
-        String key = makeKey(currentIndex);
-
         DataSet ds;
 
         if (usingCache) {
-            ds = cache.get(key);
+            ds = cache.get(makeKey(cacheIndex(currentIndex)));
         } else {
             ds = sourceIterator.next();
-            cache.put(key, ds);
+            cache.put(makeKey(currentIndex), ds);
         }
 
         currentIndex += 1;
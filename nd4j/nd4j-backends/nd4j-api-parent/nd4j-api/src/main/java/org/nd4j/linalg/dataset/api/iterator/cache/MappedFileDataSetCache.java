@@ -0,0 +1,469 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.dataset.api.iterator.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.Pointer;
+import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.buffer.util.MappedBufferUtil;
+import org.nd4j.linalg.api.concurrency.AffinityManager;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.executioner.OpExecutioner;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A {@link DataSetCache} that stores minibatches in a single append-only binary file, designed to be read back with
+ * {@link FileChannel#map}.<br>
+ * Unlike {@link InFileDataSetCache}, which writes one file per DataSet using DataSet serialization, features, labels
+ * and masks are written as raw (native byte order) buffers, each starting on an alignment (by default, page) boundary.
+ * {@link #get(String)} maps the region for the requested minibatch and returns a DataSet whose arrays point directly
+ * at the mapped memory: nothing is deserialized or copied, and pages are only read from disk (or the OS page cache)
+ * when they are first touched.<br>
+ * Regions are mapped with {@link FileChannel.MapMode#PRIVATE} (copy on write): in-place modifications of the returned
+ * arrays (for example, by a preprocessor) are never written back to the cache.<br>
+ * <br>
+ * The cache directory contains:<br>
+ * - {@link #DATA_FILE_NAME}: the array data for all cached minibatches<br>
+ * - {@link #INDEX_FILE_NAME}: a header, followed by one record (key, region offset and length, and data type, order,
+ * shape and offset of each array) per put, appended after the data for that put was written. Records for keys that
+ * are put again override earlier records; the space used by the earlier data is not reclaimed<br>
+ * - One "namespace-complete.txt" marker file per complete namespace, as per {@link InFileDataSetCache}<br>
+ * <br>
+ * Use with {@link org.nd4j.linalg.dataset.api.iterator.CachingDataSetIterator} to avoid repeating ETL after the first
+ * epoch; that iterator can also shuffle cached minibatches.<br>
+ * Note 1: Example metadata and label names are not cached.<br>
+ * Note 2: Zero-copy loading applies to the CPU backend only. With other backends, and for minibatches larger than 2GB,
+ * minibatches with arrays of data types that can't be mapped (see {@link MappedBufferUtil#isSupported(DataType)}), and
+ * minibatches in caches whose data file is not writable by the current user (a requirement for private mappings,
+ * though the file itself is never modified), arrays are read into regular buffers instead.<br>
+ * Note 3: On some platforms (notably Windows) the data file cannot be deleted while arrays returned by this cache are
+ * still reachable.
+ */
+@Slf4j
+public class MappedFileDataSetCache implements DataSetCache {
+
+    public static final String DATA_FILE_NAME = "dataset-cache.bin";
+    public static final String INDEX_FILE_NAME = "dataset-cache.idx";
+    public static final byte[] MAGIC = "ND4JDSC".getBytes(StandardCharsets.US_ASCII);
+    public static final int FORMAT_VERSION = 1;
+    public static final int DEFAULT_ALIGNMENT = 4096;
+
+    private static final int NUM_ARRAYS = 4;        //Features, labels, features mask, labels mask
+    private static final int IO_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    @Data
+    @AllArgsConstructor
+    private static class ArrayEntry {
+        private DataType dataType;
+        private char order;
+        private long[] shape;
+        private long length;
+        private long offset;        //Relative to the start of the region
+        private long lengthBytes;
+    }
+
+    @Data
+    @AllArgsConstructor
+    private static class Entry {
+        private long offset;
+        private long lengthBytes;
+        private ArrayEntry[] arrays;
+    }
+
+    private final File cacheDirectory;
+    private final File dataFile;
+    private final File indexFile;
+    private final int alignment;
+
+    private Map<String, Entry> index;
+    private long dataEnd;
+
+    public MappedFileDataSetCache(@NonNull File cacheDirectory) {
+        this(cacheDirectory, DEFAULT_ALIGNMENT);
+    }
+
+    public MappedFileDataSetCache(@NonNull Path cacheDirectory) {
+        this(cacheDirectory.toFile());
+    }
+
+    public MappedFileDataSetCache(@NonNull String cacheDirectory) {
+        this(new File(cacheDirectory));
+    }
+
+    /**
+     * @param cacheDirectory Directory for the cache files. Will be created if it does not exist
+     * @param alignment      Alignment (in bytes) of the start of each array. Should be a multiple of the OS page size.
+     *                       Only used for new caches: existing caches use the alignment they were created with
+     */
+    public MappedFileDataSetCache(@NonNull File cacheDirectory, int alignment) {
+        if (cacheDirectory.exists() && !cacheDirectory.isDirectory()) {
+            throw new IllegalArgumentException("can't use path " + cacheDirectory + " as file cache directory "
+                            + "because it already exists, but is not a directory");
+        }
+        Preconditions.checkArgument(alignment > 0 && (alignment & (alignment - 1)) == 0,
+                        "Alignment must be a positive power of 2, got %s", alignment);
+        this.cacheDirectory = cacheDirectory;
+        this.dataFile = new File(cacheDirectory, DATA_FILE_NAME);
+        this.indexFile = new File(cacheDirectory, INDEX_FILE_NAME);
+        this.alignment = alignment;
+    }
+
+    private File namespaceFile(String namespace) {
+        String filename = String.format("%s-complete.txt", namespace);
+        return new File(cacheDirectory, filename);
+    }
+
+    @Override
+    public synchronized boolean isComplete(String namespace) {
+        return namespaceFile(namespace).exists();
+    }
+
+    @Override
+    public synchronized void setComplete(String namespace, boolean value) {
+        File file = namespaceFile(namespace);
+        if (value) {
+            if (!file.exists()) {
+                File parentFile = file.getParentFile();
+                parentFile.mkdirs();
+                try {
+                    file.createNewFile();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        } else {
+            if (file.exists()) {
+                file.delete();
+            }
+        }
+    }
+
+    @Override
+    public synchronized boolean contains(String key) {
+        return index().containsKey(key);
+    }
+
+    /**
+     * @return Number of distinct keys in the cache
+     */
+    public synchronized int size() {
+        return index().size();
+    }
+
+    @Override
+    public synchronized DataSet get(String key) {
+        Entry e = index().get(key);
+        if (e == null)
+            return null;
+
+        try {
+            return read(e);
+        } catch (IOException ex) {
+            throw new RuntimeException("Error reading DataSet \"" + key + "\" from cache file " + dataFile, ex);
+        }
+    }
+
+    @Override
+    public synchronized void put(String key, DataSet dataSet) {
+        Map<String, Entry> index = index();
+        try {
+            Entry e = write(dataSet);
+            appendIndexRecord(key, e);
+            index.put(key, e);
+        } catch (IOException ex) {
+            throw new RuntimeException("Error writing DataSet \"" + key + "\" to cache file " + dataFile, ex);
+        }
+    }
+
+    private Map<String, Entry> index() {
+        if (index == null) {
+            try {
+                loadIndex();
+            } catch (IOException e) {
+                throw new RuntimeException("Error reading cache index file " + indexFile, e);
+            }
+        }
+        return index;
+    }
+
+    private void loadIndex() throws IOException {
+        index = new HashMap<>();
+        dataEnd = dataFile.exists() ? dataFile.length() : 0;
+        if (!indexFile.exists())
+            return;
+
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            readIndexHeader(dis);
+            while (true) {
+                String key;
+                try {
+                    key = dis.readUTF();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                Entry entry;
+                try {
+                    entry = readIndexRecord(dis);
+                } catch (EOFException e) {
+                    //Index record was only partially written: the corresponding put never completed
+                    log.warn("Ignoring truncated record for key \"{}\" at end of cache index file {}", key, indexFile);
+                    break;
+                }
+
+                if (entry.getOffset() + entry.getLengthBytes() > dataEnd) {
+                    throw new IOException("Cache index file " + indexFile + " refers to data past the end of data file "
+                                    + dataFile + ": cache files may be corrupt");
+                }
+                index.put(key, entry);
+            }
+        }
+    }
+
+    private void readIndexHeader(DataInputStream dis) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        dis.readFully(magic);
+        if (!Arrays.equals(MAGIC, magic))
+            throw new IOException("Not a valid DataSet cache index file (invalid header): " + indexFile);
+        int version = dis.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported DataSet cache version: got " + version + ", this version of ND4J "
+                            + "supports version " + FORMAT_VERSION);
+        }
+        dis.readInt();      //Alignment - only relevant when writing, and offsets are already aligned
+        boolean littleEndian = dis.readBoolean();
+        if (littleEndian != (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN)) {
+            throw new IOException("Cannot open DataSet cache " + cacheDirectory + ": cache was written on a "
+                            + (littleEndian ? "little" : "big") + " endian platform, this platform is " + ByteOrder.nativeOrder());
+        }
+    }
+
+    private static Entry readIndexRecord(DataInputStream dis) throws IOException {
+        long offset = dis.readLong();
+        long lengthBytes = dis.readLong();
+        ArrayEntry[] arrays = new ArrayEntry[NUM_ARRAYS];
+        for (int i = 0; i < NUM_ARRAYS; i++) {
+            if (!dis.readBoolean())
+                continue;
+            DataType dataType = DataType.valueOf(dis.readUTF());
+            char order = dis.readChar();
+            long[] shape = new long[dis.readInt()];
+            for (int j = 0; j < shape.length; j++) {
+                shape[j] = dis.readLong();
+            }
+            long length = dis.readLong();
+            long arrOffset = dis.readLong();
+            long arrLengthBytes = dis.readLong();
+            arrays[i] = new ArrayEntry(dataType, order, shape, length, arrOffset, arrLengthBytes);
+        }
+        return new Entry(offset, lengthBytes, arrays);
+    }
+
+    private void appendIndexRecord(String key, Entry e) throws IOException {
+        boolean newFile = !indexFile.exists() || indexFile.length() == 0;
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile, true)))) {
+            if (newFile) {
+                dos.write(MAGIC);
+                dos.writeInt(FORMAT_VERSION);
+                dos.writeInt(alignment);
+                dos.writeBoolean(ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN);
+            }
+            dos.writeUTF(key);
+            dos.writeLong(e.getOffset());
+            dos.writeLong(e.getLengthBytes());
+            for (ArrayEntry a : e.getArrays()) {
+                dos.writeBoolean(a != null);
+                if (a == null)
+                    continue;
+                dos.writeUTF(a.getDataType().name());
+                dos.writeChar(a.getOrder());
+                dos.writeInt(a.getShape().length);
+                for (long l : a.getShape()) {
+                    dos.writeLong(l);
+                }
+                dos.writeLong(a.getLength());
+                dos.writeLong(a.getOffset());
+                dos.writeLong(a.getLengthBytes());
+            }
+        }
+    }
+
+    private Entry write(DataSet dataSet) throws IOException {
+        INDArray[] arrays = {dataSet.getFeatures(), dataSet.getLabels(), dataSet.getFeaturesMaskArray(),
+                        dataSet.getLabelsMaskArray()};
+        ArrayEntry[] entries = new ArrayEntry[NUM_ARRAYS];
+        long pos = 0;
+        for (int i = 0; i < NUM_ARRAYS; i++) {
+            INDArray arr = arrays[i];
+            if (arr == null)
+                continue;
+            Preconditions.checkState(!arr.isEmpty() && arr.dataType() != DataType.UTF8 && arr.dataType() != DataType.COMPRESSED,
+                            "Cannot cache DataSet: only non-empty numerical arrays are supported, got array with data type %s",
+                            arr.dataType());
+            if (arr.isView() || arr.data().length() != arr.length()) {
+                //Need a contiguous buffer, starting at offset 0, to write directly
+                arr = arr.dup(arr.ordering());
+                arrays[i] = arr;
+            }
+            long lengthBytes = arr.length() * arr.data().getElementSize();
+            entries[i] = new ArrayEntry(arr.dataType(), arr.ordering(), arr.shape(), arr.length(), pos, lengthBytes);
+            pos = align(pos + lengthBytes, alignment);
+        }
+
+        long regionStart = align(dataEnd, alignment);
+        Nd4j.getExecutioner().commit();
+        if (!cacheDirectory.exists() && !cacheDirectory.mkdirs())
+            throw new IOException("Cannot create cache directory: " + cacheDirectory);
+        try (FileChannel ch = FileChannel.open(dataFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            for (int i = 0; i < NUM_ARRAYS; i++) {
+                if (entries[i] != null)
+                    writeArray(ch, arrays[i], regionStart + entries[i].getOffset(), entries[i].getLengthBytes());
+            }
+            //Pad the file to the end of the region, so the next region and the mapping are in range
+            if (ch.size() < regionStart + pos)
+                writeFully(ch, ByteBuffer.allocate(1), regionStart + pos - 1);
+        }
+
+        dataEnd = regionStart + pos;
+        return new Entry(regionStart, pos, entries);
+    }
+
+    /**
+     * @return Null if the DataSet for the entry can be memory mapped (CPU backend only), or the reason it can't be
+     * otherwise
+     */
+    private String cannotMapReason(Entry e) {
+        for (ArrayEntry a : e.getArrays()) {
+            if (a != null && !MappedBufferUtil.isSupported(a.getDataType()))
+                return "data type " + a.getDataType() + " is not supported for memory mapping";
+        }
+        if (e.getLengthBytes() > Integer.MAX_VALUE)
+            return "DataSet is too large to map: " + e.getLengthBytes() + " bytes";
+        //Private (copy on write) mappings require a channel opened for both reading and writing, even though nothing
+        // is ever written back to the file
+        if (!dataFile.canWrite())
+            return "file is not writable";
+        return null;
+    }
+
+    private DataSet read(Entry e) throws IOException {
+        //DataBufferFactory.create(Pointer, ...) for other backends doesn't support host memory of all data types, and
+        // the data has to be copied to the device anyway: always read into regular buffers
+        boolean cpuBackend = Nd4j.getExecutioner().type() == OpExecutioner.ExecutionerType.NATIVE_CPU;
+        String cannotMapReason = (cpuBackend ? cannotMapReason(e) : null);
+        INDArray[] out = new INDArray[NUM_ARRAYS];
+        if (cpuBackend && cannotMapReason == null) {
+            try (FileChannel ch = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                //The mapping remains valid after the channel is closed, and for as long as any slice of it is reachable
+                MappedByteBuffer mapped = ch.map(FileChannel.MapMode.PRIVATE, e.getOffset(), e.getLengthBytes());
+                for (int i = 0; i < NUM_ARRAYS; i++) {
+                    ArrayEntry a = e.getArrays()[i];
+                    if (a == null)
+                        continue;
+                    ByteBuffer bb = mapped.duplicate();
+                    bb.position((int) a.getOffset());
+                    bb.limit((int) (a.getOffset() + a.getLengthBytes()));
+                    bb = bb.slice().order(ByteOrder.nativeOrder());
+                    Pointer p = MappedBufferUtil.pointerFor(bb, a.getDataType(), a.getLength());
+                    DataBuffer buffer = Nd4j.getDataBufferFactory().create(p, a.getDataType(), a.getLength(),
+                                    MappedBufferUtil.indexerFor(p, a.getDataType()));
+                    out[i] = Nd4j.create(buffer, a.getShape(), Nd4j.getStrides(a.getShape(), a.getOrder()), 0, a.getOrder());
+                }
+            }
+        } else {
+            if (cpuBackend) {
+                log.warn("Cannot memory map cached DataSet in file {} ({}) - reading into memory instead", dataFile,
+                                cannotMapReason);
+            }
+            try (FileChannel ch = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ)) {
+                for (int i = 0; i < NUM_ARRAYS; i++) {
+                    ArrayEntry a = e.getArrays()[i];
+                    if (a == null)
+                        continue;
+                    DataBuffer buffer = Nd4j.createBuffer(a.getDataType(), a.getLength(), false);
+                    readArray(ch, buffer, e.getOffset() + a.getOffset(), a.getLengthBytes());
+                    out[i] = Nd4j.create(buffer, a.getShape(), Nd4j.getStrides(a.getShape(), a.getOrder()), 0, a.getOrder());
+                }
+            }
+        }
+
+        return new DataSet(out[0], out[1], out[2], out[3]);
+    }
+
+    private static long align(long position, int alignment) {
+        long rem = position % alignment;
+        return rem == 0 ? position : position + (alignment - rem);
+    }
+
+    private static void writeArray(FileChannel ch, INDArray arr, long offset, long lengthBytes) throws IOException {
+        Nd4j.getAffinityManager().ensureLocation(arr, AffinityManager.Location.HOST);
+        BytePointer bp = new BytePointer(arr.data().addressPointer());
+        long done = 0;
+        while (done < lengthBytes) {
+            long chunk = Math.min(lengthBytes - done, IO_CHUNK_SIZE);
+            bp.position(done).limit(done + chunk);
+            writeFully(ch, bp.asByteBuffer(), offset + done);
+            done += chunk;
+        }
+    }
+
+    private static void readArray(FileChannel ch, DataBuffer buffer, long offset, long lengthBytes) throws IOException {
+        BytePointer bp = new BytePointer(buffer.addressPointer());
+        long done = 0;
+        while (done < lengthBytes) {
+            long chunk = Math.min(lengthBytes - done, IO_CHUNK_SIZE);
+            bp.position(done).limit(done + chunk);
+            readFully(ch, bp.asByteBuffer(), offset + done);
+            done += chunk;
+        }
+        Nd4j.getAffinityManager().tagLocation(buffer, AffinityManager.Location.HOST);
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer bb, long position) throws IOException {
+        while (bb.hasRemaining()) {
+            position += ch.write(bb, position);
+        }
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer bb, long position) throws IOException {
+        while (bb.hasRemaining()) {
+            int read = ch.read(bb, position);
+            if (read < 0)
+                throw new EOFException("Unexpected end of file: DataSet cache may be truncated or corrupt");
+            position += read;
+        }
+    }
+}
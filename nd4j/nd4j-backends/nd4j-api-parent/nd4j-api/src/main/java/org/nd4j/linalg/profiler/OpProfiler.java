@@ -103,6 +103,8 @@ public class OpProfiler {
     private StackAggregator blasAggregator = new StackAggregator();
     @Getter
     private StringCounter blasOrderCounter = new StringCounter();
+    @Getter
+    private final OpTracer tracer = new OpTracer();
 
 
     private final long THRESHOLD = 100000;
@@ -163,6 +165,7 @@ public class OpProfiler {
         blasOrderCounter.reset();
 
         orderCounter.reset();
+        tracer.reset();
         listeners.clear();
         statistics = INDArrayStatistics.builder().build();
     }
@@ -180,6 +183,13 @@ public class OpProfiler {
 
     }
 
+    /**
+     * @return True if op tracing is enabled - see {@link ProfilerConfig#isTrace()} and {@link OpTracer}
+     */
+    public boolean isTracing() {
+        return config != null && config.isTrace();
+    }
+
     /**
      * This method returns op class opName
      *
@@ -0,0 +1,310 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.linalg.profiler;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.CustomOp;
+import org.nd4j.linalg.api.ops.Op;
+import org.nd4j.linalg.profiler.data.TraceEvent;
+import org.nd4j.shade.jackson.core.JsonEncoding;
+import org.nd4j.shade.jackson.core.JsonFactory;
+import org.nd4j.shade.jackson.core.JsonGenerator;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * OpTracer records a trace of individual op executions - start/end time, input shapes and output array sizes - along
+ * with the scopes (layers, SameDiff ops, etc) that they were executed in.<br>
+ * Tracing is enabled via {@link ProfilerConfig#isTrace()}:
+ * <pre>
+ * {@code Nd4j.getExecutioner().setProfilingConfig(ProfilerConfig.builder().trace(true).build());
+ * ... //Execute network
+ * OpTracer tracer = OpProfiler.getInstance().getTracer();
+ * tracer.writeChromeTrace(new File("trace.json"));
+ * tracer.writeCollapsedStacks(new File("stacks.txt"));
+ * }</pre>
+ * The Chrome trace format can be viewed in chrome://tracing or similar tools; the collapsed stack format can be used to
+ * generate flame graphs (for example, via flamegraph.pl).<br>
+ * Scopes are tracked per thread, via {@link #startScope(String, String)} and {@link #endScope()}. Unlike
+ * {@link OpProfiler}, this class is thread safe.
+ */
+@Slf4j
+public class OpTracer {
+    public static final int DEFAULT_MAX_EVENTS = 1_000_000;
+    public static final String CATEGORY_OP = "op";
+
+    private final ConcurrentLinkedQueue<TraceEvent> events = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger numEvents = new AtomicInteger();
+    private final AtomicBoolean warnedMaxEvents = new AtomicBoolean();
+    private volatile int maxEvents = DEFAULT_MAX_EVENTS;
+
+    private final ThreadLocal<Deque<Scope>> scopes = new ThreadLocal<Deque<Scope>>() {
+        @Override
+        protected Deque<Scope> initialValue() {
+            return new ArrayDeque<>();
+        }
+    };
+
+    private static class Scope {
+        private final String name;
+        private final String category;
+        private final String stack;
+        private final long start;
+        private long childNanos;
+
+        private Scope(String name, String category, String stack, long start) {
+            this.name = name;
+            this.category = category;
+            this.stack = stack;
+            this.start = start;
+        }
+    }
+
+    /**
+     * Set the maximum number of events to record. Once reached, further events are discarded until {@link #reset()}
+     * is called. Default: {@link #DEFAULT_MAX_EVENTS}
+     */
+    public void setMaxEvents(int maxEvents) {
+        this.maxEvents = maxEvents;
+    }
+
+    /**
+     * Start a new scope for the current thread. All events recorded on this thread until the corresponding call to
+     * {@link #endScope()} are nested within this scope
+     *
+     * @param name     Name of the scope - for example, the layer or variable name
+     * @param category Category of the scope - for example, "layer"
+     */
+    public void startScope(@NonNull String name, @NonNull String category) {
+        Deque<Scope> d = scopes.get();
+        Scope parent = d.peekLast();
+        String stack = parent == null ? name : parent.stack + ";" + name;
+        d.addLast(new Scope(name, category, stack, System.nanoTime()));
+    }
+
+    /**
+     * End the most recently started scope for the current thread, recording it as an event
+     */
+    public void endScope() {
+        long end = System.nanoTime();
+        Deque<Scope> d = scopes.get();
+        Scope s = d.pollLast();
+        if (s == null) {
+            log.warn("OpTracer.endScope() called with no active scope");
+            return;
+        }
+        long duration = end - s.start;
+        Scope parent = d.peekLast();
+        if (parent != null)
+            parent.childNanos += duration;
+        add(new TraceEvent(s.name, s.category, Thread.currentThread().getId(), s.start, duration,
+                Math.max(0, duration - s.childNanos), s.stack, null, 0));
+    }
+
+    /**
+     * Record the execution of a legacy op
+     *
+     * @param op         Op that was executed
+     * @param startNanos Start time of the execution, as per {@link System#nanoTime()}
+     */
+    public void recordOp(@NonNull Op op, long startNanos) {
+        long end = System.nanoTime();
+        recordOp(op.opName(), startNanos, end, shapes(op.x(), op.y()), bytes(op.z()));
+    }
+
+    /**
+     * Record the execution of a custom op
+     *
+     * @param op         Op that was executed
+     * @param startNanos Start time of the execution, as per {@link System#nanoTime()}
+     */
+    public void recordOp(@NonNull CustomOp op, long startNanos) {
+        long end = System.nanoTime();
+        recordOp(op.opName(), startNanos, end, shapes(op.inputArguments()), bytes(op.outputArguments()));
+    }
+
+    protected void recordOp(String name, long start, long end, String inputShapes, long outputBytes) {
+        Deque<Scope> d = scopes.get();
+        Scope parent = d.peekLast();
+        long duration = end - start;
+        if (parent != null)
+            parent.childNanos += duration;
+        String stack = parent == null ? name : parent.stack + ";" + name;
+        add(new TraceEvent(name, CATEGORY_OP, Thread.currentThread().getId(), start, duration, duration, stack,
+                inputShapes, outputBytes));
+    }
+
+    protected void add(TraceEvent e) {
+        if (numEvents.incrementAndGet() > maxEvents) {
+            numEvents.decrementAndGet();
+            if (warnedMaxEvents.compareAndSet(false, true))
+                log.warn("OpTracer: maximum number of events ({}) reached - further events will be discarded", maxEvents);
+            return;
+        }
+        events.add(e);
+    }
+
+    /**
+     * @return All recorded events, in order of completion
+     */
+    public List<TraceEvent> getEvents() {
+        return new ArrayList<>(events);
+    }
+
+    /**
+     * Remove all recorded events
+     */
+    public void reset() {
+        events.clear();
+        numEvents.set(0);
+        warnedMaxEvents.set(false);
+    }
+
+    /**
+     * Aggregate the recorded events by stack: the total time (excluding nested events) spent in each unique stack
+     *
+     * @return Map of stack (scopes and op names separated by ';') to total self time, in nanoseconds
+     */
+    public Map<String, Long> collapsedStacks() {
+        Map<String, Long> out = new TreeMap<>();
+        for (TraceEvent e : events) {
+            if (e.getSelfNanos() <= 0)
+                continue;
+            Long l = out.get(e.getStack());
+            out.put(e.getStack(), (l == null ? 0 : l) + e.getSelfNanos());
+        }
+        return out;
+    }
+
+    /**
+     * Write the recorded events in the collapsed stack format, as used by flame graph tools: one line per unique
+     * stack, in the format "scope1;scope2;op durationNanos"
+     */
+    public void writeCollapsedStacks(@NonNull File file) throws IOException {
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(file))) {
+            writeCollapsedStacks(os);
+        }
+    }
+
+    /**
+     * See {@link #writeCollapsedStacks(File)}
+     */
+    public void writeCollapsedStacks(@NonNull OutputStream os) throws IOException {
+        Writer w = new OutputStreamWriter(os, StandardCharsets.UTF_8);
+        for (Map.Entry<String, Long> e : collapsedStacks().entrySet()) {
+            //Spaces are not permitted in frame names
+            w.write(e.getKey().replace(' ', '_'));
+            w.write(' ');
+            w.write(String.valueOf(e.getValue()));
+            w.write('\n');
+        }
+        w.flush();
+    }
+
+    /**
+     * Write the recorded events in the Chrome trace event JSON format (as "complete" events)
+     */
+    public void writeChromeTrace(@NonNull File file) throws IOException {
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(file))) {
+            writeChromeTrace(os);
+        }
+    }
+
+    /**
+     * See {@link #writeChromeTrace(File)}
+     */
+    public void writeChromeTrace(@NonNull OutputStream os) throws IOException {
+        List<TraceEvent> list = getEvents();
+        long origin = Long.MAX_VALUE;
+        for (TraceEvent e : list) {
+            origin = Math.min(origin, e.getStartNanos());
+        }
+
+        JsonGenerator g = new JsonFactory().createGenerator(os, JsonEncoding.UTF8);
+        g.writeStartObject();
+        g.writeArrayFieldStart("traceEvents");
+        for (TraceEvent e : list) {
+            g.writeStartObject();
+            g.writeStringField("name", e.getName());
+            g.writeStringField("cat", e.getCategory());
+            g.writeStringField("ph", "X");
+            //Timestamps and durations are in microseconds
+            g.writeNumberField("ts", (e.getStartNanos() - origin) / 1000.0);
+            g.writeNumberField("dur", e.getDurationNanos() / 1000.0);
+            g.writeNumberField("pid", 0);
+            g.writeNumberField("tid", e.getThreadId());
+            if (e.getInputShapes() != null) {
+                g.writeObjectFieldStart("args");
+                g.writeStringField("inputShapes", e.getInputShapes());
+                g.writeNumberField("outputBytes", e.getOutputBytes());
+                g.writeEndObject();
+            }
+            g.writeEndObject();
+        }
+        g.writeEndArray();
+        g.writeStringField("displayTimeUnit", "ms");
+        g.writeEndObject();
+        g.flush();
+    }
+
+    /**
+     * @return The recorded events in the Chrome trace event JSON format
+     */
+    public String toChromeTraceJson() {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try {
+            writeChromeTrace(baos);
+        } catch (IOException e) {
+            //Should never happen for in-memory stream
+            throw new RuntimeException(e);
+        }
+        return new String(baos.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String shapes(INDArray... arrays) {
+        if (arrays == null)
+            return "";
+        StringBuilder sb = new StringBuilder();
+        for (INDArray arr : arrays) {
+            if (arr == null)
+                continue;
+            if (sb.length() > 0)
+                sb.append(",");
+            sb.append(Arrays.toString(arr.shape()));
+        }
+        return sb.toString();
+    }
+
+    private static long bytes(INDArray... arrays) {
+        if (arrays == null)
+            return 0;
+        long bytes = 0;
+        for (INDArray arr : arrays) {
+            if (arr != null && !arr.isEmpty())
+                bytes += arr.length() * arr.data().getElementSize();
+        }
+        return bytes;
+    }
+}
@@ -16,4 +16,9 @@ public class ProfilerConfig {
     private boolean checkElapsedTime;
     @Builder.Default
     private boolean checkWorkspaces = true;
+    /**
+     * If true: record a trace of all op executions (timing, input shapes, output sizes), within any enclosing scopes
+     * such as layers or SameDiff ops. See {@link OpTracer}
+     */
+    private boolean trace;
 }
@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.nd4j.linalg.profiler.data;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * A single traced event: an op execution, or a scope (such as a layer, or a SameDiff op) that encloses op executions.
+ * See {@link org.nd4j.linalg.profiler.OpTracer}
+ */
+@Data
+@AllArgsConstructor
+public class TraceEvent {
+    private final String name;
+    private final String category;
+    private final long threadId;
+    /**
+     * Start time, in nanoseconds (as per {@link System#nanoTime()})
+     */
+    private final long startNanos;
+    private final long durationNanos;
+    /**
+     * Duration excluding any nested events, in nanoseconds
+     */
+    private final long selfNanos;
+    /**
+     * Names of all enclosing scopes, and this event, separated by ';'
+     */
+    private final String stack;
+    /**
+     * Shapes of the input arrays, for op events. May be null
+     */
+    private final String inputShapes;
+    /**
+     * Total size of the output arrays, in bytes, for op events. 0 for scopes
+     */
+    private final long outputBytes;
+}
@@ -2640,12 +2640,17 @@ public class CudaExecutioner extends DefaultOpExecutioner {
 
     @Override
     public INDArray[] exec(CustomOp op, OpContext context) {
-        nativeOps.execCustomOp(null, op.opHash(), context.contextPointer());
+        long st = profilingConfigurableHookIn(op);
+
+        val status = OpStatus.byNumber(nativeOps.execCustomOp(null, op.opHash(), context.contextPointer()));
+        if (status != OpStatus.ND4J_STATUS_OK)
+            throw new ND4JIllegalStateException("Failed to execute op [" + op.opName() + "] with error code [" + status + "]. Context had " +
+                    context.getInputArrays().size() + " inputs and " + context.getOutputArrays().size() + " outputs");
+
+        profilingConfigurableHookOut(op, st);
 
-        if (context.getOutputArrays().isEmpty())
-            return new INDArray[0];
-        else
-            return context.getOutputArrays().toArray(new INDArray[context.getOutputArrays().size()]);
+        val outputs = context.getOutputArrays();
+        return outputs.toArray(new INDArray[outputs.size()]);
     }
 
     @Override
@@ -63,6 +63,10 @@ public class CudaOpContext extends BaseOpContext implements OpContext {
 
     @Override
     public void setInputArray(int index, @NonNull INDArray array) {
+        // same instance is already bound to this slot - no need to cross JNI boundary again
+        if (fastpath_in.get(index) == array)
+            return;
+
         context.setInputArray(index, array.data().addressPointer(), array.shapeInfoDataBuffer().addressPointer(), null, null);
 
         super.setInputArray(index, array);
@@ -70,6 +74,9 @@ public class CudaOpContext extends BaseOpContext implements OpContext {
 
     @Override
     public void setOutputArray(int index, @NonNull INDArray array) {
+        if (fastpath_out.get(index) == array)
+            return;
+
         context.setOutputArray(index, array.data().addressPointer(), array.shapeInfoDataBuffer().addressPointer(), null, null);
 
         super.setOutputArray(index, array);
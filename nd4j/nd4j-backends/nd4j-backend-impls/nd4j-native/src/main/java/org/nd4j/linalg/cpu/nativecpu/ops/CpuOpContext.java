@@ -64,6 +64,10 @@ public class CpuOpContext extends BaseOpContext implements OpContext {
 
     @Override
     public void setInputArray(int index, @NonNull INDArray array) {
+        // same instance is already bound to this slot - no need to cross JNI boundary again
+        if (fastpath_in.get(index) == array)
+            return;
+
         context.setInputArray(index, array.data().addressPointer(), array.shapeInfoDataBuffer().addressPointer(), null, null);
 
         super.setInputArray(index, array);
@@ -71,6 +75,9 @@ public class CpuOpContext extends BaseOpContext implements OpContext {
 
     @Override
     public void setOutputArray(int index, @NonNull INDArray array) {
+        if (fastpath_out.get(index) == array)
+            return;
+
         context.setOutputArray(index, array.data().addressPointer(), array.shapeInfoDataBuffer().addressPointer(), null, null);
 
         super.setOutputArray(index, array);
@@ -517,6 +517,8 @@ public class NativeOpExecutioner extends DefaultOpExecutioner {
                 }
             }
 
+        profilingTraceHookOut(op, st);
+
         return ret;
     }
 
@@ -916,6 +918,7 @@ public class NativeOpExecutioner extends DefaultOpExecutioner {
                 throw new UnsupportedOperationException("Unknown operation type: [" + op.getOpType() + "]");
         }
 
+        profilingTraceHookOut(op, st);
 
         return op.z();
     }
@@ -1944,6 +1947,11 @@ public class NativeOpExecutioner extends DefaultOpExecutioner {
         loop.setTADThreshold(threshold);
     }
 
+    @Override
+    public void setOmpNumThreads(int numThreads) {
+        loop.setOmpNumThreads(numThreads);
+    }
+
     @Override
     public String getString(Utf8Buffer buffer, long index) {
         val addr = ((LongIndexer) buffer.indexer()).get(index);
@@ -1983,12 +1991,17 @@ public class NativeOpExecutioner extends DefaultOpExecutioner {
 
     @Override
     public INDArray[] exec(CustomOp op, @NonNull OpContext context) {
-        loop.execCustomOp(null, op.opHash(), context.contextPointer());
+        long st = profilingConfigurableHookIn(op);
+
+        val status = OpStatus.byNumber(loop.execCustomOp(null, op.opHash(), context.contextPointer()));
+        if (status != OpStatus.ND4J_STATUS_OK)
+            throw new ND4JIllegalStateException("Failed to execute op [" + op.opName() + "] with error code [" + status + "]. Context had " +
+                    context.getInputArrays().size() + " inputs and " + context.getOutputArrays().size() + " outputs");
+
+        profilingConfigurableHookOut(op, st);
 
-        if (context.getOutputArrays().isEmpty())
-            return new INDArray[0];
-        else
-            return context.getOutputArrays().toArray(new INDArray[context.getOutputArrays().size()]);
+        val outputs = context.getOutputArrays();
+        return outputs.toArray(new INDArray[outputs.size()]);
     }
 
     @Override
@@ -4,17 +4,25 @@ import org.junit.Test;
 import org.nd4j.autodiff.samediff.SDVariable;
 import org.nd4j.autodiff.samediff.SameDiff;
 import org.nd4j.autodiff.samediff.internal.AbstractSession;
+import org.nd4j.autodiff.samediff.internal.ExecutionPlan;
 import org.nd4j.autodiff.samediff.internal.InferenceSession;
+import org.nd4j.autodiff.samediff.internal.InterOpExecutor;
+import org.nd4j.autodiff.samediff.internal.MemoryPlan;
+import org.nd4j.autodiff.samediff.internal.MemoryPlanner;
 import org.nd4j.imports.graphmapper.tf.TFGraphMapper;
 import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.impl.transforms.custom.Unique;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.io.ClassPathResource;
+import org.nd4j.linalg.ops.transforms.Transforms;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.Assert.*;
@@ -222,4 +230,302 @@ public class TestSessions {
         }
 
     }
+
+    @Test
+    public void testExecutionPlanMatchesDynamic(){
+        Nd4j.getRandom().setSeed(12345);
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable w0 = sd.var("w0", Nd4j.rand(DataType.FLOAT, 4, 5));
+        SDVariable b0 = sd.var("b0", Nd4j.rand(DataType.FLOAT, 1, 5));
+        SDVariable w1 = sd.var("w1", Nd4j.rand(DataType.FLOAT, 5, 3));
+        SDVariable b1 = sd.var("b1", Nd4j.rand(DataType.FLOAT, 1, 3));
+
+        SDVariable h0 = sd.nn().tanh("h0", in.mmul(w0).add(b0));
+        SDVariable h1 = sd.nn().sigmoid("h1", h0.mul(2.0).sub(h0.div(3.0)).add(1.0));
+        SDVariable out = sd.nn().softmax("out", h1.mmul(w1).add(b1));
+        SDVariable sum = sd.sum("sum", out.add(h1.sum(true, 1)), 1);
+
+        List<String> outputs = Arrays.asList("out", "sum");
+        for(int minibatch : new int[]{3, 7, 3}) {
+            for (int i = 0; i < 3; i++) {
+                Map<String, INDArray> ph = Collections.singletonMap("in", Nd4j.rand(DataType.FLOAT, minibatch, 4));
+
+                sd.setUseExecutionPlans(false);
+                Map<String, INDArray> expMap = sd.exec(ph, outputs);
+                INDArray expOut = expMap.get("out").dup();
+                INDArray expSum = expMap.get("sum").dup();
+
+                sd.setUseExecutionPlans(true);
+                Map<String, INDArray> actMap = sd.exec(ph, outputs);
+                assertEquals(expOut, actMap.get("out"));
+                assertEquals(expSum, actMap.get("sum"));
+                assertEquals(expOut, sd.getArrForVarName("out"));
+            }
+        }
+    }
+
+    @Test
+    public void testExecutionPlanReusesArrays(){
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, 3, 4);
+        SDVariable x = in;
+        for( int i=0; i<6; i++ ){
+            x = sd.math().cos(x.add(i));
+        }
+        SDVariable out = sd.identity("out", x.mul(2.0));
+
+        List<String> outputs = Collections.singletonList("out");
+        ExecutionPlan plan = ExecutionPlan.create(sd, outputs);
+        assertNotNull(plan);
+        assertEquals(14, plan.numSteps());
+        assertFalse(plan.isShapesResolved());
+
+        InferenceSession is = new InferenceSession(sd);
+        for( int i=0; i<3; i++ ) {
+            INDArray inArr = Nd4j.rand(DataType.FLOAT, 3, 4);
+            INDArray exp = inArr.dup();
+            for( int j=0; j<6; j++ ){
+                exp = Transforms.cos(exp.add(j));
+            }
+            exp.muli(2.0);
+
+            Map<String, INDArray> m = plan.exec(is, Collections.singletonMap("in", inArr));
+            assertTrue(plan.isShapesResolved());
+            assertEquals(exp, m.get("out"));
+        }
+        //Intermediate arrays should be shared between ops after the first execution
+        assertFalse(plan.getSharedOutputOps().isEmpty());
+
+        //Dynamic execution after plan execution (same session, same ops) should not use the shared arrays
+        sd.setUseExecutionPlans(true);
+        INDArray inArr = Nd4j.rand(DataType.FLOAT, 3, 4);
+        INDArray exp = sd.execSingle(Collections.singletonMap("in", inArr), "out").dup();
+        sd.setUseExecutionPlans(false);
+        assertEquals(exp, sd.execSingle(Collections.singletonMap("in", inArr), "out"));
+    }
+
+    @Test
+    public void testDynamicExecutionAfterPlanClosed(){
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, 3, 4);
+        SDVariable x = in;
+        for( int i=0; i<6; i++ ){
+            x = sd.math().cos(x.add(i));
+        }
+        SDVariable out = x.mul("out", 2.0);
+        sd.setUseExecutionPlans(true);
+
+        INDArray inArr = Nd4j.rand(DataType.FLOAT, 3, 4);
+        INDArray exp = inArr.dup();
+        for( int j=0; j<6; j++ ){
+            exp = Transforms.cos(exp.add(j));
+        }
+        exp.muli(2.0);
+        Map<String,INDArray> ph = Collections.singletonMap("in", inArr);
+        for( int i=0; i<2; i++ ) {
+            //Second execution uses the planned (arena) arrays
+            assertEquals(exp, sd.execSingle(ph, "out"));
+        }
+
+        //Adding a variable invalidates (and closes) the plan; dynamic execution in the same session follows
+        sd.var("unused", Nd4j.rand(DataType.FLOAT, 2, 2));
+        sd.setUseExecutionPlans(false);
+        assertEquals(exp, sd.execSingle(ph, "out"));
+
+        //Run the plan again, then clear the sessions: dynamic execution in the new session must not write to the
+        // released arena memory
+        sd.setUseExecutionPlans(true);
+        for( int i=0; i<2; i++ ) {
+            assertEquals(exp, sd.execSingle(ph, "out"));
+        }
+        sd.setInterOpParallelism(1);
+        sd.setUseExecutionPlans(false);
+        for( int i=0; i<2; i++ ) {
+            assertEquals(exp, sd.execSingle(ph, "out"));
+        }
+    }
+
+    @Test
+    public void testExecutionPlanInvalidatedByReplacedArray(){
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, 3, 4);
+        SDVariable w = sd.var("w", Nd4j.rand(DataType.FLOAT, 4, 5));
+        SDVariable out = in.mmul("out", w);
+
+        ExecutionPlan plan = ExecutionPlan.create(sd, Collections.singletonList("out"));
+        assertNotNull(plan);
+        assertTrue(plan.isValid());
+
+        //Same shape and datatype, but a different array
+        sd.getVariable("w").setArray(Nd4j.rand(DataType.FLOAT, 4, 5));
+        assertFalse(plan.isValid());
+    }
+
+    @Test
+    public void testExecutionPlanValueDependentShape(){
+        //Output shape of unique op depends on the input values, not just the input shape
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, 6);
+        SDVariable[] unique = new Unique(sd, in).outputVariables();
+        SDVariable out = unique[0].add(1.0).mul("out", 2.0);
+        sd.setUseExecutionPlans(true);
+
+        float[][] inputs = {{1, 1, 2, 2, 3, 3}, {1, 2, 3, 4, 5, 6}, {5, 5, 5, 5, 5, 5}};
+        float[][] expected = {{4, 6, 8}, {4, 6, 8, 10, 12, 14}, {12}};
+        for( int i=0; i<inputs.length; i++ ){
+            INDArray exp = Nd4j.createFromArray(expected[i]);
+            assertEquals(exp, sd.execSingle(Collections.singletonMap("in", Nd4j.createFromArray(inputs[i])), "out"));
+        }
+    }
+
+    @Test
+    public void testExecutionPlanControlFlowFallback(){
+        SameDiff sd = SameDiff.create();
+        SDVariable x = sd.placeHolder("x", DataType.FLOAT, 3,3);
+        SDVariable b = sd.placeHolder("b", DataType.BOOL);
+
+        SDVariable[] switchOut = sd.f().switchOp(x, b); //Order: false then true
+        SDVariable falsePlusOne = switchOut[0].add("addFalseBranch", 1);
+        SDVariable truePlusTen = switchOut[1].add("addTrueBranch", 10.0);
+        SDVariable merge = sd.f().merge(falsePlusOne, truePlusTen);
+        String n = merge.getVarName();
+
+        assertFalse(ExecutionPlan.canPlan(sd, Collections.singletonList(n)));
+        assertFalse(ExecutionPlan.canPlan(sd, Collections.singletonList("addTrueBranch")));
+        sd.setUseExecutionPlans(true);
+
+        INDArray xArr = Nd4j.rand(DataType.FLOAT, 3,3);
+        Map<String,INDArray> m = new HashMap<>();
+        m.put("x", xArr);
+        m.put("b", Nd4j.scalar(true));
+        assertEquals(xArr.add(10.0), sd.execSingle(m, n));
+    }
+
+    @Test
+    public void testMemoryPlanner(){
+        MemoryPlanner mp = new MemoryPlanner(64);
+        int a = mp.request(100, 0, 1);
+        int b = mp.request(100, 1, 2);
+        int c = mp.request(100, 2, 3);
+        int d = mp.request(100, 3, 4, c);       //In place of c: c is last used at step 3
+        int e = mp.request(40, 3, 5, b);        //Not in place of b: b is not last used at step 3
+        mp.pinned(1000);
+
+        MemoryPlan plan = mp.plan();
+        assertEquals(5, plan.getNumArrays());
+        assertEquals(1, plan.getNumInPlace());
+        assertEquals(440, plan.getUnplannedBytes());
+        assertEquals(0, plan.getOffset(a));
+        assertEquals(128, plan.getOffset(b));
+        assertEquals(0, plan.getOffset(c));
+        assertEquals(0, plan.getOffset(d));
+        assertEquals(128, plan.getOffset(e));
+        assertEquals(256, plan.getArenaBytes());
+        assertEquals(1256, plan.getPeakBytes());
+    }
+
+    @Test
+    public void testExecutionPlanMemoryPlan(){
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, 3, 4);
+        SDVariable x = in;
+        for( int i=0; i<6; i++ ){
+            x = sd.math().cos(x.add(i));
+        }
+        SDVariable out = x.mul("out", 2.0);
+        sd.setUseExecutionPlans(true);
+
+        INDArray inArr = Nd4j.rand(DataType.FLOAT, 3, 4);
+        Map<String,INDArray> ph = Collections.singletonMap("in", inArr);
+        MemoryPlan mp = sd.planMemory(ph, "out");
+        assertNotNull(mp);
+
+        //12 intermediate arrays of 48 bytes each. All except the first can be calculated in place
+        assertEquals(12, mp.getNumArrays());
+        assertEquals(11, mp.getNumInPlace());
+        assertEquals(12 * 48, mp.getUnplannedBytes());
+        assertEquals(64, mp.getArenaBytes());
+        assertEquals(1, mp.getNumPinned());
+        assertEquals(64 + 48, mp.getPeakBytes());
+
+        for( int i=0; i<3; i++ ) {
+            inArr = Nd4j.rand(DataType.FLOAT, 3, 4);
+            INDArray exp = inArr.dup();
+            for (int j = 0; j < 6; j++) {
+                exp = Transforms.cos(exp.add(j));
+            }
+            exp.muli(2.0);
+            assertEquals(exp, sd.execSingle(Collections.singletonMap("in", inArr), "out"));
+        }
+    }
+
+    @Test
+    public void testInterOpParallelExecution(){
+        //Wide graph: multiple independent branches, as per an Inception-style block
+        Nd4j.getRandom().setSeed(12345);
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, 8, 16);
+        SDVariable[] branches = new SDVariable[6];
+        for( int i=0; i<branches.length; i++ ){
+            SDVariable w = sd.var("w" + i, Nd4j.rand(DataType.FLOAT, 16, 16));
+            SDVariable b = sd.var("b" + i, Nd4j.rand(DataType.FLOAT, 16));
+            SDVariable x = sd.nn().tanh(sd.mmul(in, w).add(b));
+            for( int j=0; j<i; j++ ){
+                x = sd.math().cos(x.mul(j + 1));
+            }
+            branches[i] = x;
+        }
+        SDVariable out = sd.concat("out", 1, branches);
+        SDVariable sum = out.sum("sum");
+
+        List<INDArray> inputs = new ArrayList<>();
+        List<Map<String,INDArray>> expected = new ArrayList<>();
+        for( int i=0; i<5; i++ ){
+            INDArray inArr = Nd4j.rand(DataType.FLOAT, 8, 16);
+            inputs.add(inArr);
+            Map<String,INDArray> exp = sd.exec(Collections.singletonMap("in", inArr), "out", "sum");
+            Map<String,INDArray> m = new HashMap<>();
+            for(Map.Entry<String,INDArray> e : exp.entrySet()){
+                m.put(e.getKey(), e.getValue().dup());
+            }
+            expected.add(m);
+        }
+
+        sd.setInterOpParallelism(4, 1);
+        for( int iter=0; iter<3; iter++ ) {
+            for (int i = 0; i < inputs.size(); i++) {
+                Map<String, INDArray> act = sd.exec(Collections.singletonMap("in", inputs.get(i)), "out", "sum");
+                assertEquals(expected.get(i).get("out"), act.get("out"));
+                assertEquals(expected.get(i).get("sum"), act.get("sum"));
+            }
+        }
+
+        //Shared executors can be shut down; new ones are created when next required
+        InterOpExecutor.shutdownShared();
+        assertEquals(expected.get(0).get("out"), sd.exec(Collections.singletonMap("in", inputs.get(0)), "out").get("out"));
+
+        //Back to sequential execution
+        sd.setInterOpParallelism(1);
+        assertEquals(expected.get(0).get("out"), sd.exec(Collections.singletonMap("in", inputs.get(0)), "out").get("out"));
+    }
+
+    @Test
+    public void testInterOpExecutorError(){
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, 3, 4);
+        SDVariable w = sd.var("w", Nd4j.rand(DataType.FLOAT, 4, 5));
+        SDVariable out = sd.nn().relu("out", sd.mmul(in, w).add(1.0), 0);
+        sd.setInterOpParallelism(2);
+
+        assertNotNull(sd.exec(Collections.singletonMap("in", Nd4j.rand(DataType.FLOAT, 3, 4)), "out").get("out"));
+
+        //Invalid input shape: error should be propagated to the calling thread
+        try {
+            sd.exec(Collections.singletonMap("in", Nd4j.rand(DataType.FLOAT, 3, 7)), "out");
+            fail("Expected exception");
+        } catch (Exception e){
+            //OK
+        }
+    }
 }
@@ -0,0 +1,276 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.autodiff.samediff;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Test;
+import org.nd4j.autodiff.functions.DifferentialFunction;
+import org.nd4j.autodiff.samediff.transform.*;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.impl.layers.convolution.BatchNorm;
+import org.nd4j.linalg.api.ops.impl.layers.convolution.Conv2D;
+import org.nd4j.linalg.api.ops.impl.layers.convolution.config.Conv2DConfig;
+import org.nd4j.linalg.api.ops.impl.reduce.Mmul;
+import org.nd4j.linalg.api.ops.impl.transforms.ReluLayer;
+import org.nd4j.linalg.api.ops.impl.transforms.custom.XwPlusB;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+@Slf4j
+public class GraphOptimizerTests {
+
+    @Test
+    public void testLinearReluFusion() {
+        Nd4j.getRandom().setSeed(12345);
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable w0 = sd.var("w0", Nd4j.rand(DataType.FLOAT, 4, 5));
+        SDVariable b0 = sd.var("b0", Nd4j.rand(DataType.FLOAT, 5));
+        SDVariable w1 = sd.var("w1", Nd4j.rand(DataType.FLOAT, 5, 3));
+        SDVariable b1 = sd.var("b1", Nd4j.rand(DataType.FLOAT, 3));
+
+        SDVariable l0 = sd.nn().relu("l0", sd.mmul(in, w0).add(b0), 0);
+        SDVariable out = sd.nn().tanh("out", sd.nn().biasAdd(sd.mmul(l0, w1), b1));
+
+        SameDiff opt = GraphOptimizer.defaultOptimizer().optimize(sd, "out");
+
+        assertEquals(3, numOps(opt, null));
+        assertEquals(1, numOps(opt, ReluLayer.class));
+        assertEquals(1, numOps(opt, XwPlusB.class));
+        assertEquals(0, numOps(opt, Mmul.class));
+        //Original should not be modified
+        assertEquals(2, numOps(sd, Mmul.class));
+
+        INDArray inArr = Nd4j.rand(DataType.FLOAT, 3, 4).subi(0.5);
+        assertOutputsEqual(sd, opt, inArr, "l0", "out");
+    }
+
+    @Test
+    public void testLinearFusionIntermediateUsed() {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable w = sd.var("w", Nd4j.rand(DataType.FLOAT, 4, 5));
+        SDVariable b = sd.var("b", Nd4j.rand(DataType.FLOAT, 5));
+
+        SDVariable mmul = sd.mmul("mmul", in, w);
+        SDVariable out = mmul.add("out", b);
+
+        //Intermediate variable is required - no fusion
+        SameDiff opt = GraphOptimizer.defaultOptimizer().optimize(sd, "mmul", "out");
+        assertEquals(1, numOps(opt, Mmul.class));
+        assertEquals(0, numOps(opt, XwPlusB.class));
+
+        //Intermediate variable is used elsewhere - no fusion
+        SDVariable other = mmul.mul("other", 2.0);
+        opt = GraphOptimizer.defaultOptimizer().optimize(sd, "out", "other");
+        assertEquals(1, numOps(opt, Mmul.class));
+        assertEquals(0, numOps(opt, XwPlusB.class));
+
+        INDArray inArr = Nd4j.rand(DataType.FLOAT, 3, 4);
+        assertOutputsEqual(sd, opt, inArr, "out", "other");
+    }
+
+    @Test
+    public void testLinearFusionBiasShape() {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable w = sd.var("w", Nd4j.rand(DataType.FLOAT, 4, 5));
+        SDVariable b = sd.var("b", Nd4j.rand(DataType.FLOAT, 1, 5));
+        SDVariable out = sd.mmul(in, w).add("out", b);
+
+        //Rank 2 bias: not fused
+        SameDiff opt = GraphOptimizer.defaultOptimizer().optimize(sd, "out");
+        assertEquals(1, numOps(opt, Mmul.class));
+        assertEquals(0, numOps(opt, XwPlusB.class));
+
+        INDArray inArr = Nd4j.rand(DataType.FLOAT, 3, 4);
+        assertOutputsEqual(sd, opt, inArr, "out");
+    }
+
+    @Test
+    public void testConvBatchNormFolding() {
+        for (boolean nhwc : new boolean[]{false, true}) {
+            for (boolean convBias : new boolean[]{false, true}) {
+                Nd4j.getRandom().setSeed(12345);
+                SameDiff sd = SameDiff.create();
+                SDVariable in = nhwc ? sd.placeHolder("in", DataType.FLOAT, -1, 8, 8, 3) : sd.placeHolder("in", DataType.FLOAT, -1, 3, 8, 8);
+                SDVariable w = sd.var("w", Nd4j.rand(DataType.FLOAT, 3, 3, 3, 4));
+                SDVariable b = convBias ? sd.var("b", Nd4j.rand(DataType.FLOAT, 4)) : null;
+
+                Conv2DConfig c = Conv2DConfig.builder().kH(3).kW(3).sH(1).sW(1).isSameMode(true)
+                        .dataFormat(nhwc ? Conv2DConfig.NHWC : Conv2DConfig.NCHW).build();
+                SDVariable conv = sd.cnn().conv2d(in, w, b, c);
+
+                SDVariable mean = sd.constant("mean", Nd4j.rand(DataType.FLOAT, 4));
+                SDVariable var = sd.constant("var", Nd4j.rand(DataType.FLOAT, 4).addi(0.5));
+                SDVariable gamma = sd.var("gamma", Nd4j.rand(DataType.FLOAT, 4).addi(0.5));
+                SDVariable beta = sd.var("beta", Nd4j.rand(DataType.FLOAT, 4));
+                SDVariable bn = sd.nn().batchNorm("bn", conv, mean, var, gamma, beta, 1e-3, nhwc ? 3 : 1);
+                SDVariable out = sd.nn().relu("out", bn, 0);
+
+                SameDiff opt = GraphOptimizer.defaultOptimizer().optimize(sd, "out");
+                assertEquals(0, numOps(opt, BatchNorm.class));
+                assertEquals(1, numOps(opt, Conv2D.class));
+                assertEquals(2, numOps(opt, null));
+
+                INDArray inArr = nhwc ? Nd4j.rand(DataType.FLOAT, 2, 8, 8, 3) : Nd4j.rand(DataType.FLOAT, 2, 3, 8, 8);
+                assertOutputsEqual(sd, opt, inArr, "bn", "out");
+            }
+        }
+    }
+
+    @Test
+    public void testScalarChainFolding() {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.DOUBLE, 3, 4);
+
+        SDVariable a = in.add(1.0).sub(3.0).add(0.5);
+        SDVariable b = sd.math().tanh(a).mul(2.0).div(4.0);
+        SDVariable out = b.add("out", 1.0);
+
+        SameDiff opt = GraphOptimizer.defaultOptimizer().optimize(sd, "out");
+        //add/sub/add -> add, tanh, mul/div -> mul, add
+        assertEquals(4, numOps(opt, null));
+
+        INDArray inArr = Nd4j.rand(DataType.DOUBLE, 3, 4);
+        assertOutputsEqual(sd, opt, inArr, "out");
+    }
+
+    @Test
+    public void testCustomPass() {
+        //Passes are pluggable: replace tanh with (equivalent) 2*sigmoid(2x)-1
+        SubGraphOptimizationPass pass = new SubGraphOptimizationPass() {
+            @Override
+            protected SubGraphPredicate predicate() {
+                return SubGraphPredicate.withRoot(OpPredicate.opNameEquals("tanh"));
+            }
+
+            @Override
+            public java.util.List<SDVariable> processSubgraph(SameDiff sd, SubGraph subGraph) {
+                SDVariable x = subGraph.inputs().get(0);
+                return Collections.singletonList(sd.nn().sigmoid(x.mul(2.0)).mul(2.0).sub(1.0));
+            }
+        };
+
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.DOUBLE, 3, 4);
+        SDVariable out = sd.math().tanh("out", in);
+
+        SameDiff opt = new GraphOptimizer(pass).optimize(sd, "out");
+        assertEquals(4, numOps(opt, null));
+        assertOutputsEqual(sd, opt, Nd4j.rand(DataType.DOUBLE, 3, 4), "out");
+    }
+
+    @Test
+    public void testConstantFolding() {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, 3, 4);
+        SDVariable c1 = sd.constant("c1", Nd4j.rand(DataType.FLOAT, 2, 2));
+        SDVariable c2 = sd.constant("c2", Nd4j.rand(DataType.FLOAT, 4));
+
+        //Constant-only subgraph: reshape(c1) * 2 + c2 - evaluated once
+        SDVariable folded = sd.reshape(c1, 4).mul(2.0).add("folded", c2);
+        SDVariable out = in.add("out", folded);
+
+        int opsBefore = numOps(sd, null);
+        SameDiff opt = new GraphOptimizer(new ConstantFoldingPass()).optimize(sd, "out");
+        assertEquals(4, opsBefore);
+        assertEquals(1, numOps(opt, null));
+        assertEquals(VariableType.CONSTANT, opt.getVariable("folded").getVariableType());
+        //Folded value is calculated from the constants only - no placeholder values are needed
+        INDArray expFolded = c1.getArr().reshape(4).mul(2.0).add(c2.getArr());
+        assertEquals(expFolded, opt.getVariable("folded").getArr());
+        //Original constants are no longer used, and should be removed
+        assertFalse(opt.hasVariable("c1"));
+        assertFalse(opt.hasVariable("c2"));
+
+        INDArray inArr = Nd4j.rand(DataType.FLOAT, 3, 4);
+        assertOutputsEqual(sd, opt, inArr, "out");
+    }
+
+    @Test
+    public void testDeadCodeElimination() {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, 3, 4);
+        SDVariable w = sd.var("w", Nd4j.rand(DataType.FLOAT, 4, 5));
+        SDVariable c = sd.constant("c", Nd4j.rand(DataType.FLOAT, 3, 5));
+
+        SDVariable mmul = sd.mmul("mmul", in, w);
+        SDVariable out = sd.nn().relu("out", mmul, 0);
+        //Branch not required for "out" - i.e., training only
+        SDVariable unused = sd.math().tanh("unused", mmul.add(c));
+        SDVariable unused2 = unused.sum("unused2");
+
+        SameDiff opt = new GraphOptimizer(new DeadCodeEliminationPass()).optimize(sd, "out");
+        assertEquals(2, numOps(opt, null));
+        assertFalse(opt.hasVariable("unused"));
+        assertFalse(opt.hasVariable("unused2"));
+        assertFalse(opt.hasVariable("c"));
+        assertTrue(opt.hasVariable("w"));
+        assertTrue(opt.hasVariable("in"));
+        assertEquals(5, numOps(sd, null));
+
+        assertOutputsEqual(sd, opt, Nd4j.rand(DataType.FLOAT, 3, 4), "out");
+
+        //No outputs specified: nothing should be removed
+        opt = new GraphOptimizer(new DeadCodeEliminationPass()).optimize(sd);
+        assertEquals(5, numOps(opt, null));
+    }
+
+    @Test
+    public void testFoldingAndPruning() {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.DOUBLE, 2, 3);
+        SDVariable c = sd.constant("c", Nd4j.rand(DataType.DOUBLE, 2, 3));
+        SDVariable shape = sd.constant("shape", Nd4j.createFromArray(3, 2));
+
+        SDVariable c2 = sd.math().exp(c).sub(1.0);
+        SDVariable out = sd.reshape("out", in.mul(c2), shape);
+        SDVariable dead = sd.math().log(c2).mean("dead");
+
+        SameDiff opt = new GraphOptimizer(new DeadCodeEliminationPass(), new ConstantFoldingPass()).optimize(sd, "out");
+        assertFalse(opt.hasVariable("dead"));
+        //exp and sub folded; mul + reshape remain
+        assertEquals(2, numOps(opt, null));
+        assertOutputsEqual(sd, opt, Nd4j.rand(DataType.DOUBLE, 2, 3), "out");
+    }
+
+    private static int numOps(SameDiff sd, Class<?> c) {
+        int count = 0;
+        for (DifferentialFunction df : sd.functions()) {
+            if (c == null || df.getClass() == c)
+                count++;
+        }
+        return count;
+    }
+
+    private static void assertOutputsEqual(SameDiff sd, SameDiff opt, INDArray in, String... outputs) {
+        Map<String, INDArray> exp = sd.exec(Collections.singletonMap("in", in), outputs);
+        Map<String, INDArray> act = opt.exec(Collections.singletonMap("in", in), outputs);
+        for (String s : outputs) {
+            INDArray e = exp.get(s);
+            INDArray a = act.get(s);
+            assertArrayEquals(s, e.shape(), a.shape());
+            assertTrue(s + ": max abs diff " + e.sub(a).amaxNumber(), e.equalsWithEps(a, 1e-4));
+        }
+    }
+}
@@ -7,6 +7,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 import org.nd4j.linalg.BaseNd4jTest;
+import org.nd4j.linalg.api.buffer.util.MappedBufferUtil;
 import org.nd4j.linalg.api.memory.MemoryWorkspace;
 import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
 import org.nd4j.linalg.api.memory.enums.AllocationPolicy;
@@ -14,6 +15,9 @@ import org.nd4j.linalg.api.memory.enums.LearningPolicy;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.factory.Nd4jBackend;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 import static org.junit.Assert.*;
 
 @Slf4j
@@ -320,6 +324,34 @@ public class DataBufferTests extends BaseNd4jTest {
 
     }
 
+    @Test
+    public void testMappedBufferUtilNonZeroPosition() {
+        //Wrapped pointer should start at the buffer's position, for all element sizes
+        ByteBuffer bb = ByteBuffer.allocateDirect(64).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < 8; i++) {
+            bb.putDouble(8 * i, i);
+        }
+        bb.position(16);
+        Pointer p = MappedBufferUtil.pointerFor(bb, DataType.DOUBLE, 6);
+        DoubleIndexer di = (DoubleIndexer) MappedBufferUtil.indexerFor(p, DataType.DOUBLE);
+        for (int i = 0; i < 6; i++) {
+            assertEquals(i + 2, di.get(i), 0.0);
+        }
+
+        for (int i = 0; i < 16; i++) {
+            bb.putInt(4 * i, i);
+        }
+        bb.position(12);
+        p = MappedBufferUtil.pointerFor(bb, DataType.INT, 13);
+        IntIndexer ii = (IntIndexer) MappedBufferUtil.indexerFor(p, DataType.INT);
+        for (int i = 0; i < 13; i++) {
+            assertEquals(i + 3, ii.get(i));
+        }
+
+        assertTrue(MappedBufferUtil.isSupported(DataType.FLOAT));
+        assertFalse(MappedBufferUtil.isSupported(DataType.UTF8));
+    }
+
     @Override
     public char ordering() {
         return 'c';
@@ -28,6 +28,7 @@ import org.nd4j.linalg.api.ops.custom.Flatten;
 import org.nd4j.linalg.api.ops.custom.ScatterUpdate;
 import org.nd4j.linalg.api.ops.executioner.OpExecutioner;
 import org.nd4j.linalg.api.ops.executioner.OpStatus;
+import org.nd4j.linalg.api.ops.impl.transforms.custom.XwPlusB;
 import org.nd4j.linalg.api.ops.impl.transforms.pairwise.arithmetic.AddOp;
 import org.nd4j.linalg.api.ops.random.compat.RandomStandardNormal;
 import org.nd4j.linalg.api.shape.LongShapeDescriptor;
@@ -473,6 +474,38 @@ public class CustomOpsTests {
         assertTrue(arrayZ == output[0]);
     }
 
+    @Test
+    public void testOpContextExecution_4() {
+        //Context reuse: W and b stay bound, input and output change between calls
+        val w = Nd4j.rand(DataType.FLOAT, 4, 3);
+        val b = Nd4j.rand(DataType.FLOAT, 1, 3);
+
+        val context = Nd4j.getExecutioner().buildContext();
+        context.setInputArray(1, w);
+        context.setInputArray(2, b);
+
+        val op = new XwPlusB();
+        for (int i = 0; i < 3; i++) {
+            val x = Nd4j.rand(DataType.FLOAT, 5, 4);
+            val z = Nd4j.create(DataType.FLOAT, 5, 3);
+            val exp = x.mmul(w).addiRowVector(b);
+
+            context.setInputArray(0, x);
+            context.setInputArray(1, w);
+            context.setInputArray(2, b);
+            context.setOutputArray(0, z);
+
+            assertEquals(3, context.getInputArrays().size());
+            assertEquals(1, context.getOutputArrays().size());
+            assertTrue(x == context.getInputArrays().get(0));
+
+            val output = Nd4j.exec(op, context);
+            assertEquals(1, output.length);
+            assertTrue(z == output[0]);
+            assertEquals(exp, z);
+        }
+    }
+
     @Test
     public void testFlatten_1() {
         val arrayA = Nd4j.createFromArray(1.f, 2.f, 3.f);
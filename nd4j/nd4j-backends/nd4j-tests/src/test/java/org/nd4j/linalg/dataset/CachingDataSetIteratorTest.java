@@ -22,19 +22,28 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 import org.nd4j.linalg.BaseNd4jTest;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
 import org.nd4j.linalg.dataset.api.iterator.CachingDataSetIterator;
 import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
 import org.nd4j.linalg.dataset.api.iterator.SamplingDataSetIterator;
+import org.nd4j.linalg.dataset.api.iterator.TestDataSetIterator;
 import org.nd4j.linalg.dataset.api.iterator.cache.DataSetCache;
 import org.nd4j.linalg.dataset.api.iterator.cache.InFileDataSetCache;
 import org.nd4j.linalg.dataset.api.iterator.cache.InMemoryDataSetCache;
+import org.nd4j.linalg.dataset.api.iterator.cache.MappedFileDataSetCache;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.factory.Nd4jBackend;
+import org.nd4j.linalg.indexing.NDArrayIndex;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import static org.junit.Assert.*;
 
@@ -70,6 +79,119 @@ public class CachingDataSetIteratorTest extends BaseNd4jTest {
         FileUtils.deleteDirectory(cacheDir.toFile());
     }
 
+    @Test
+    public void testMappedFile() throws IOException {
+        Path cacheDir = Files.createTempDirectory("nd4j-data-set-cache-test");
+        DataSetCache cache = new MappedFileDataSetCache(cacheDir);
+
+        runDataSetTest(cache);
+
+        FileUtils.deleteDirectory(cacheDir.toFile());
+    }
+
+    @Test
+    public void testMappedFileContent() throws IOException {
+        Path cacheDir = Files.createTempDirectory("nd4j-data-set-cache-test");
+
+        Nd4j.getRandom().setSeed(12345);
+        List<DataSet> expected = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            INDArray f = Nd4j.rand(DataType.FLOAT, 3, 4, 5 + i);
+            INDArray l = Nd4j.rand(DataType.DOUBLE, new int[]{3, 2, 5 + i}).dup('f');
+            INDArray fm = i % 2 == 0 ? null : Nd4j.ones(DataType.FLOAT, 3, 5 + i);
+            INDArray lm = i % 2 == 0 ? null : Nd4j.rand(DataType.FLOAT, 3, 5 + i);
+            expected.add(new DataSet(f, l, fm, lm));
+        }
+
+        MappedFileDataSetCache cache = new MappedFileDataSetCache(cacheDir);
+        for (int i = 0; i < expected.size(); i++) {
+            assertFalse(cache.contains("key" + i));
+            cache.put("key" + i, expected.get(i));
+            assertTrue(cache.contains("key" + i));
+        }
+        //View: should be written as a contiguous copy
+        INDArray viewFeatures = Nd4j.linspace(1, 40, 40, DataType.FLOAT).reshape(5, 8)
+                        .get(NDArrayIndex.interval(1, 3), NDArrayIndex.all());
+        cache.put("view", new DataSet(viewFeatures, null));
+        assertEquals(expected.size() + 1, cache.size());
+
+        //Read back from this instance and from a new instance (reopened)
+        for (MappedFileDataSetCache c : new MappedFileDataSetCache[]{cache, new MappedFileDataSetCache(cacheDir)}) {
+            assertNull(c.get("notPresent"));
+            for (int i = 0; i < expected.size(); i++) {
+                DataSet exp = expected.get(i);
+                DataSet act = c.get("key" + i);
+                assertEquals(exp.getFeatures(), act.getFeatures());
+                assertEquals(exp.getLabels(), act.getLabels());
+                assertEquals(exp.getLabels().ordering(), act.getLabels().ordering());
+                assertEquals(exp.getFeaturesMaskArray(), act.getFeaturesMaskArray());
+                assertEquals(exp.getLabelsMaskArray(), act.getLabelsMaskArray());
+            }
+            DataSet view = c.get("view");
+            assertEquals(viewFeatures, view.getFeatures());
+            assertNull(view.getLabels());
+        }
+
+        //Modifications to returned arrays are not written back
+        cache.get("key0").getFeatures().assign(0);
+        assertEquals(expected.get(0).getFeatures(), cache.get("key0").getFeatures());
+
+        //Overwriting a key: latest value is returned, including after reopening
+        cache.put("key1", expected.get(2));
+        assertEquals(expected.get(2).getFeatures(), cache.get("key1").getFeatures());
+        assertEquals(expected.get(2).getFeatures(), new MappedFileDataSetCache(cacheDir).get("key1").getFeatures());
+
+        FileUtils.deleteDirectory(cacheDir.toFile());
+    }
+
+    @Test
+    public void testShuffle() throws IOException {
+        Path cacheDir = Files.createTempDirectory("nd4j-data-set-cache-test");
+        DataSetCache cache = new MappedFileDataSetCache(cacheDir);
+
+        int numBatches = 20;
+        DataSet dataSet = new DataSet(Nd4j.linspace(0, numBatches - 1, numBatches, DataType.FLOAT).reshape(numBatches, 1),
+                        Nd4j.zeros(numBatches, 1));
+        DataSetIterator it = new TestDataSetIterator(dataSet, 1);
+
+        CachingDataSetIterator cachedIt = new CachingDataSetIterator(it, cache, "shuffle", false, true, 12345);
+
+        //First pass: populates the cache, source order
+        List<Integer> first = epoch(cachedIt);
+        List<Integer> expFirst = new ArrayList<>();
+        for (int i = 0; i < numBatches; i++) {
+            expFirst.add(i);
+        }
+        assertEquals(expFirst, first);
+
+        //Subsequent passes: all minibatches, different order
+        Set<List<Integer>> orders = new HashSet<>();
+        for (int i = 0; i < 3; i++) {
+            cachedIt.reset();
+            List<Integer> l = epoch(cachedIt);
+            assertEquals(new HashSet<>(expFirst), new HashSet<>(l));
+            assertEquals(numBatches, l.size());
+            orders.add(l);
+        }
+        assertTrue(orders.size() > 1);
+        assertFalse(orders.contains(expFirst));
+
+        //Same seed, existing cache: same order
+        CachingDataSetIterator cachedIt2 = new CachingDataSetIterator(it, cache, "shuffle", false, true, 12345);
+        CachingDataSetIterator cachedIt3 = new CachingDataSetIterator(it, cache, "shuffle", false, true, 12345);
+        assertEquals(epoch(cachedIt2), epoch(cachedIt3));
+
+        FileUtils.deleteDirectory(cacheDir.toFile());
+    }
+
+    private static List<Integer> epoch(DataSetIterator iter) {
+        List<Integer> out = new ArrayList<>();
+        while (iter.hasNext()) {
+            out.add(iter.next().getFeatures().getInt(0, 0));
+        }
+        return out;
+    }
+
     private void runDataSetTest(DataSetCache cache) {
         int rows = 500;
         int inputColumns = 100;
@@ -23,7 +23,10 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
 import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.memory.MemoryWorkspace;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.api.ops.executioner.OpExecutioner;
@@ -31,9 +34,17 @@ import org.nd4j.linalg.exception.ND4JIllegalStateException;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.primitives.Pair;
 import org.nd4j.linalg.profiler.OpProfiler;
+import org.nd4j.linalg.profiler.OpTracer;
 import org.nd4j.linalg.profiler.ProfilerConfig;
+import org.nd4j.linalg.profiler.data.TraceEvent;
+import org.nd4j.shade.jackson.databind.ObjectMapper;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.*;
 
@@ -415,4 +426,80 @@ public class OperationProfilerTests {
         assertEquals(1.0f, stats.getMeanValue(), 1e-5);
     }
 
+    @Test
+    public void testOpTracing() throws Exception {
+        Nd4j.getExecutioner().setProfilingConfig(ProfilerConfig.builder().trace(true).checkWorkspaces(false).build());
+        INDArray x = Nd4j.rand(DataType.FLOAT, 3, 4);
+        OpTracer tracer = OpProfiler.getInstance().getTracer();
+        tracer.reset();
+
+        tracer.startScope("outer", "test");
+        x.add(1.0);
+        tracer.startScope("inner", "test");
+        x.sum(1);
+        tracer.endScope();
+        tracer.endScope();
+
+        List<TraceEvent> events = tracer.getEvents();
+        assertEquals(4, events.size());
+        TraceEvent add = events.get(0);
+        assertEquals(OpTracer.CATEGORY_OP, add.getCategory());
+        assertTrue(add.getStack(), add.getStack().startsWith("outer;"));
+        assertEquals("[3, 4]", add.getInputShapes());
+        assertEquals(3 * 4 * 4, add.getOutputBytes());
+
+        TraceEvent sum = events.get(1);
+        assertTrue(sum.getStack(), sum.getStack().startsWith("outer;inner;"));
+
+        TraceEvent outer = events.get(3);
+        assertEquals("outer", outer.getName());
+        assertEquals("outer", outer.getStack());
+        assertTrue(outer.getDurationNanos() >= outer.getSelfNanos());
+        assertTrue(outer.getDurationNanos() >= events.get(2).getDurationNanos());
+
+        String json = tracer.toChromeTraceJson();
+        Map<String, Object> m = new ObjectMapper().readValue(json, Map.class);
+        List<Map<String, Object>> traceEvents = (List<Map<String, Object>>) m.get("traceEvents");
+        assertEquals(4, traceEvents.size());
+        assertEquals("X", traceEvents.get(0).get("ph"));
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        tracer.writeCollapsedStacks(baos);
+        String[] lines = new String(baos.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        for (String line : lines) {
+            assertTrue(line, line.matches("\\S+ \\d+"));
+        }
+        assertEquals(tracer.collapsedStacks().size(), lines.length);
+
+        //Tracing disabled: no more events recorded
+        Nd4j.getExecutioner().setProfilingConfig(ProfilerConfig.builder().build());
+        x.add(1.0);
+        assertEquals(4, tracer.getEvents().size());
+        tracer.reset();
+        assertEquals(0, tracer.getEvents().size());
+    }
+
+    @Test
+    public void testOpTracingSameDiff() {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, 3, 4);
+        SDVariable w = sd.var("w", Nd4j.rand(DataType.FLOAT, 4, 5));
+        SDVariable out = sd.math().tanh("out", sd.mmul("mmul", in, w));
+
+        Nd4j.getExecutioner().setProfilingConfig(ProfilerConfig.builder().trace(true).checkWorkspaces(false).build());
+        OpTracer tracer = OpProfiler.getInstance().getTracer();
+        tracer.reset();
+        sd.exec(Collections.singletonMap("in", Nd4j.rand(DataType.FLOAT, 3, 4)), "out");
+        Nd4j.getExecutioner().setProfilingConfig(ProfilerConfig.builder().build());
+
+        Map<String, Long> stacks = tracer.collapsedStacks();
+        boolean foundMmul = false;
+        boolean foundTanh = false;
+        for (String s : stacks.keySet()) {
+            foundMmul |= s.startsWith("mmul;");
+            foundTanh |= s.startsWith("out;");
+        }
+        assertTrue(stacks.toString(), foundMmul);
+        assertTrue(stacks.toString(), foundTanh);
+    }
 }
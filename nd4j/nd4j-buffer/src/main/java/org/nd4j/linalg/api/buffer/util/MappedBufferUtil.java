@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.api.buffer.util;
+
+import lombok.NonNull;
+import org.bytedeco.javacpp.*;
+import org.bytedeco.javacpp.indexer.*;
+import org.nd4j.linalg.api.buffer.DataType;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Utilities for wrapping direct (usually memory mapped) {@link ByteBuffer}s as typed pointers and indexers, so that
+ * they can be used as the backing memory of a DataBuffer without copying.
+ */
+public class MappedBufferUtil {
+
+    private MappedBufferUtil() {
+    }
+
+    /**
+     * @param dataType Data type of the elements
+     * @return True if buffers of the specified data type can be wrapped by {@link #pointerFor(ByteBuffer, DataType, long)}.
+     * Note that this doesn't check whether the DataBufferFactory of the current backend can create a DataBuffer
+     * from the resulting pointer: only the CPU backend supports all of these data types
+     */
+    public static boolean isSupported(@NonNull DataType dataType) {
+        switch (dataType) {
+            case DOUBLE:
+            case FLOAT:
+            case HALF:
+            case SHORT:
+            case LONG:
+            case INT:
+            case BOOL:
+            case BYTE:
+            case UBYTE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Wrap the direct buffer in a typed pointer, starting at the buffer's current position (the first element of the
+     * returned pointer is the element at the buffer's position, and the pointer's own position is 0). Pointers don't
+     * keep a reference to the buffer they were created from, so the returned pointer holds one: for a memory mapped
+     * buffer, the mapping stays valid as long as the pointer (and any DataBuffer created from it) is reachable
+     *
+     * @param buffer   Direct buffer to wrap
+     * @param dataType Data type of the elements
+     * @param length   Number of elements
+     */
+    public static Pointer pointerFor(@NonNull final ByteBuffer buffer, @NonNull DataType dataType, long length) {
+        if (!buffer.isDirect())
+            throw new IllegalArgumentException("Only direct buffers can be wrapped");
+
+        //Pointer(Buffer) sets the pointer's position to the buffer's position, in bytes - and the typed pointer
+        // created from it would interpret that as a number of elements. Slice instead, so the address itself starts
+        // at the buffer's position. The slice keeps a reference to the original (mapped) buffer
+        Pointer p = new Pointer(buffer.slice());
+        Pointer ret;
+        switch (dataType) {
+            case DOUBLE:
+                ret = new DoublePointer(p) {
+                    private final ByteBuffer ref = buffer;
+                };
+                break;
+            case FLOAT:
+                ret = new FloatPointer(p) {
+                    private final ByteBuffer ref = buffer;
+                };
+                break;
+            case HALF:
+            case SHORT:
+                ret = new ShortPointer(p) {
+                    private final ByteBuffer ref = buffer;
+                };
+                break;
+            case LONG:
+                ret = new LongPointer(p) {
+                    private final ByteBuffer ref = buffer;
+                };
+                break;
+            case INT:
+                ret = new IntPointer(p) {
+                    private final ByteBuffer ref = buffer;
+                };
+                break;
+            case BOOL:
+                ret = new BooleanPointer(p) {
+                    private final ByteBuffer ref = buffer;
+                };
+                break;
+            case BYTE:
+            case UBYTE:
+                ret = new BytePointer(p) {
+                    private final ByteBuffer ref = buffer;
+                };
+                break;
+            default:
+                throw new UnsupportedOperationException("Unsupported data type for memory mapped array: " + dataType);
+        }
+        ret.capacity(length);
+        ret.limit(length);
+        return ret;
+    }
+
+    /**
+     * @param pointer  Pointer created by {@link #pointerFor(ByteBuffer, DataType, long)}
+     * @param dataType Data type of the elements
+     * @return Indexer for the pointer
+     */
+    public static Indexer indexerFor(@NonNull Pointer pointer, @NonNull DataType dataType) {
+        switch (dataType) {
+            case DOUBLE:
+                return DoubleIndexer.create((DoublePointer) pointer);
+            case FLOAT:
+                return FloatIndexer.create((FloatPointer) pointer);
+            case HALF:
+                return HalfIndexer.create((ShortPointer) pointer);
+            case SHORT:
+                return ShortIndexer.create((ShortPointer) pointer);
+            case LONG:
+                return LongIndexer.create((LongPointer) pointer);
+            case INT:
+                return IntIndexer.create((IntPointer) pointer);
+            case BOOL:
+                return BooleanIndexer.create((BooleanPointer) pointer);
+            case BYTE:
+                return ByteIndexer.create((BytePointer) pointer);
+            case UBYTE:
+                return UByteIndexer.create((BytePointer) pointer);
+            default:
+                throw new UnsupportedOperationException("Unsupported data type for memory mapped array: " + dataType);
+        }
+    }
+}